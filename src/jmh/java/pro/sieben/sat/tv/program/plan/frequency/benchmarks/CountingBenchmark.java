@@ -0,0 +1,90 @@
+package pro.sieben.sat.tv.program.plan.frequency.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.sieben.sat.tv.program.plan.frequency.model.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting and ranking the TV shows of a schedule: counting Item lists compared to DaySchedule columns,
+ * ordering the frequencies overall and per {@link ShowType}, selecting a top page and refreshing an index incrementally.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CountingBenchmark {
+
+    @Param({"1x1", "1x30", "20x30"})
+    public String size;
+
+    private List<Item> items;
+    private DaySchedule schedule;
+    private ShowFrequencies frequencies;
+    private EpgSnapshot snapshot;
+    private DaySchedule refreshedSchedule;
+
+    @State(Scope.Benchmark)
+    public static class TypeState {
+        @Param({"TVSHOW", "SERIES", "MOVIE"})
+        public ShowType type;
+    }
+
+    @Setup
+    public void setUp() {
+        items = EPGFixtures.days(size).stream().flatMap(Collection::stream).toList();
+        schedule = DaySchedule.of(items);
+        frequencies = schedule.countFrequencies();
+        snapshot = EpgSnapshot.of("2024-03-15", schedule, Instant.now());
+
+        // A refresh that replaces three slots by breaking news, as a same-day schedule change usually does
+        List<Item> refreshed = new ArrayList<>(items);
+        for (int i = refreshed.size() / 4; i < refreshed.size(); i += refreshed.size() / 4) {
+            Item item = refreshed.get(i);
+            refreshed.set(i, Item.builder().id(item.getId()).startTime(item.getStartTime()).endTime(item.getEndTime())
+                    .tvShow(new TvShow("Breaking News", null)).build());
+        }
+        refreshedSchedule = DaySchedule.of(refreshed);
+    }
+
+    @Benchmark
+    public ShowFrequencies countItems() {
+        return ShowFrequencies.of(items);
+    }
+
+    @Benchmark
+    public ShowFrequencies countSchedule() {
+        return schedule.countFrequencies();
+    }
+
+    @Benchmark
+    public FrequencyIndex orderAll() {
+        return FrequencyIndex.of(frequencies);
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> orderByType(TypeState state) {
+        return FrequencyIndex.top(frequencies.getFrequencies(state.type), 0, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> topTen() {
+        return FrequencyIndex.top(frequencies.getFrequencies(), 0, 10);
+    }
+
+    @Benchmark
+    public EpgSnapshot refreshIncrementally() {
+        return EpgSnapshot.update(snapshot, refreshedSchedule, Instant.now());
+    }
+
+    @Benchmark
+    public EpgSnapshot refreshFromScratch() {
+        return EpgSnapshot.of("2024-03-15", refreshedSchedule, Instant.now());
+    }
+}
@@ -0,0 +1,121 @@
+package pro.sieben.sat.tv.program.plan.frequency.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import pro.sieben.sat.tv.program.plan.frequency.model.*;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGQuery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Builds GraphQL responses of realistic sizes from the recorded EPG response of one day of one channel.
+ * A size is given as {@code <channels>x<days>}, e.g. {@code 20x30}. Every channel airs its own TV shows
+ * (the recorded titles with the channel as suffix), every day shifts the slots by a day and skips a few of them,
+ * so the frequencies differ from day to day.
+ */
+public final class EPGFixtures {
+
+    public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final String RECORDED = "/fixtures/epg-prosieben-2024-03-15.json";
+
+    private static final long DAY_MILLIS = Duration.ofDays(1).toMillis();
+
+    private EPGFixtures() {
+    }
+
+    /**
+     * @return The items of the recorded response.
+     */
+    public static List<Item> recordedItems() {
+        try (InputStream in = EPGFixtures.class.getResourceAsStream(RECORDED)) {
+            return OBJECT_MAPPER.readValue(Objects.requireNonNull(in, RECORDED), ApiResponse.class)
+                    .getData().getSite().getEpg().getItems();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Generates the items of every channel for each day of a size.
+     *
+     * @param size The size, {@code <channels>x<days>}.
+     * @return The items per day, in airing order.
+     */
+    public static List<List<Item>> days(String size) {
+        String[] dimensions = size.split("x");
+        int channels = Integer.parseInt(dimensions[0]);
+        int days = Integer.parseInt(dimensions[1]);
+        List<Item> recorded = recordedItems();
+
+        List<List<Item>> result = new ArrayList<>(days);
+        for (int day = 0; day < days; day++) {
+            List<Item> items = new ArrayList<>(channels * recorded.size());
+            for (int channel = 0; channel < channels; channel++) {
+                for (int i = 0; i < recorded.size(); i++) {
+                    if (day > 0 && (i + day) % 7 == 0) {
+                        continue;
+                    }
+                    items.add(copy(recorded.get(i), channel, day, i));
+                }
+            }
+            result.add(items);
+        }
+        return result;
+    }
+
+    /**
+     * Serializes items to a GraphQL response of the EPG API.
+     *
+     * @param items The items of the response.
+     * @return The JSON response body.
+     */
+    public static byte[] response(List<Item> items) {
+        return response(items, EPGQuery.FULL);
+    }
+
+    /**
+     * Serializes items to the response of the EPG API to a projected query, holding only the fields the query requests.
+     *
+     * @param items The items of the response.
+     * @param query The query the response answers.
+     * @return The JSON response body.
+     */
+    public static byte[] response(List<Item> items, EPGQuery query) {
+        ApiResponse response = new ApiResponse(new Data(new Site(new Epg(items))), null, null);
+        try {
+            JsonNode tree = OBJECT_MAPPER.valueToTree(response);
+            for (JsonNode item : tree.path("data").path("site").path("epg").path("items")) {
+                ((ObjectNode) item).retain(query.getItemFields());
+            }
+            return OBJECT_MAPPER.writeValueAsBytes(tree);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Item copy(Item item, int channel, int day, int index) {
+        String suffix = channel == 0 ? "" : " (" + channel + ")";
+        TvShow tvShow = item.getTvShow();
+        return Item.builder()
+                .id("epg-" + channel + "-" + day + "-" + index)
+                .title(item.getTitle())
+                .description(item.getDescription())
+                .startTime(shift(item.getStartTime(), day))
+                .endTime(shift(item.getEndTime(), day))
+                .season(item.getSeason())
+                .tvShow(new TvShow(tvShow.getTitle() + suffix, tvShow.getId() == null ? null : tvShow.getId() + suffix))
+                .build();
+    }
+
+    private static Date shift(Date date, int days) {
+        return date == null ? null : new Date(date.getTime() + days * DAY_MILLIS);
+    }
+}
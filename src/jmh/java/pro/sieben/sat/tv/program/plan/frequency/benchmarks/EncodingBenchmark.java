@@ -0,0 +1,82 @@
+package pro.sieben.sat.tv.program.plan.frequency.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.openjdk.jmh.annotations.*;
+import pro.sieben.sat.tv.program.plan.frequency.model.FrequencyResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.Item;
+import pro.sieben.sat.tv.program.plan.frequency.model.ShowFrequencies;
+import pro.sieben.sat.tv.program.plan.frequency.utils.FrequencyProtobuf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the ordered TV shows of all days of a size in each response format, with and without gzip, as the
+ * controllers do for a range query. The payload size of each format is printed on setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+
+    @Param({"1x1", "20x30"})
+    public String size;
+
+    @Param({"json", "cbor", "smile", "protobuf"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    private List<FrequencyResponse> frequencies;
+    private ObjectWriter writer;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        ShowFrequencies showFrequencies = new ShowFrequencies();
+        for (List<Item> day : EPGFixtures.days(size)) {
+            for (Item item : day) {
+                showFrequencies.add(item.getTitle(), item.getTvShow().getTitle(), item.getTvShow().getId());
+            }
+        }
+        frequencies = showFrequencies.getFrequencies().entrySet().stream()
+                .sorted(Comparator.comparing(Map.Entry<String, Integer>::getValue).reversed())
+                .map(entry -> new FrequencyResponse(entry.getKey(), entry.getValue()))
+                .toList();
+        writer = switch (format) {
+            case "json" -> new ObjectMapper().writer();
+            case "cbor" -> new CBORMapper().writer();
+            case "smile" -> new SmileMapper().writer();
+            case "protobuf" -> null;
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+        out = new ByteArrayOutputStream(1 << 16);
+        System.out.printf("%n%s, %d shows, %s%s: %d bytes%n", size, frequencies.size(), format, gzip ? "+gzip" : "", encode().length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        out.reset();
+        OutputStream target = gzip ? new GZIPOutputStream(out) : out;
+        if (writer == null) {
+            FrequencyProtobuf.write(frequencies, target);
+        } else {
+            writer.writeValue(target, frequencies);
+        }
+        target.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,51 @@
+package pro.sieben.sat.tv.program.plan.frequency.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.sieben.sat.tv.program.plan.frequency.model.ApiResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.DaySchedule;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGQuery;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGStreamingParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an EPG API response: binding it to ApiResponse and Item objects compared to streaming it into a DaySchedule,
+ * for the responses to each projected query. The size of each response is printed when it is generated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParsingBenchmark {
+
+    @Param({"1x1", "1x30", "20x30"})
+    public String size;
+
+    @Param({"FULL", "SCHEDULE", "FREQUENCIES"})
+    public EPGQuery projection;
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        response = EPGFixtures.response(EPGFixtures.days(size).stream().flatMap(Collection::stream).toList(), projection);
+        System.out.printf("%n%s %s: %d bytes%n", size, projection, response.length);
+    }
+
+    @Benchmark
+    public ApiResponse bindApiResponse() throws IOException {
+        return EPGFixtures.OBJECT_MAPPER.readValue(response, ApiResponse.class);
+    }
+
+    @Benchmark
+    public DaySchedule streamDaySchedule() throws IOException {
+        DaySchedule.Builder schedule = DaySchedule.builder();
+        EPGStreamingParser.parse(new ByteArrayInputStream(response), schedule::add);
+        return schedule.build();
+    }
+}
@@ -0,0 +1,143 @@
+package pro.sieben.sat.tv.program.plan.frequency.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
+import pro.sieben.sat.tv.program.plan.frequency.model.EpgSnapshot;
+import pro.sieben.sat.tv.program.plan.frequency.model.FrequencyResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.Item;
+import pro.sieben.sat.tv.program.plan.frequency.model.ShowType;
+import pro.sieben.sat.tv.program.plan.frequency.services.EPGService;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGItemsParser;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGMetrics;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queries of EPGService over cached snapshots: lookups for a single day and aggregations over all days of a size.
+ * The search over all days is compared to scanning the items of every day for the query, as a client would have to.
+ * The search indexes are built on the first search of the warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final LocalDate FIRST_DAY = LocalDate.parse("2024-03-15");
+
+    @Param({"1x1", "1x30", "20x30"})
+    public String size;
+
+    private CachedParser parser;
+    private EPGService service;
+    private String from;
+    private String to;
+
+    @State(Scope.Benchmark)
+    public static class TypeState {
+        @Param({"TVSHOW", "SERIES", "MOVIE"})
+        public ShowType type;
+    }
+
+    @Setup
+    public void setUp() {
+        Map<String, EpgSnapshot> snapshots = new HashMap<>();
+        List<List<Item>> days = EPGFixtures.days(size);
+        for (int day = 0; day < days.size(); day++) {
+            String date = FIRST_DAY.plusDays(day).toString();
+            snapshots.put(date, EpgSnapshot.of(date, days.get(day), Instant.now()));
+        }
+        from = FIRST_DAY.toString();
+        to = FIRST_DAY.plusDays(days.size() - 1).toString();
+        parser = new CachedParser(snapshots);
+        service = new EPGService(parser, EPGMetrics.disabled(), new EPGProperties());
+        service.setUp();
+    }
+
+    @TearDown
+    public void tearDown() {
+        parser.close();
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> orderedShows() {
+        return service.getOrderedShowsByFrequency(from).getResult();
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> orderedShowsByType(TypeState state) {
+        return service.getOrderedShowsByFrequencyByType(from, state.type).getResult();
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> mostFrequentShowsInRange() {
+        return service.getMostFrequentShows(from, to).getResult();
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> orderedShowsInRange() {
+        return service.getOrderedShowsByFrequency(from, to).getResult();
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> orderedShowsByTypeInRange(TypeState state) {
+        return service.getOrderedShowsByFrequencyByType(from, to, state.type).getResult();
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> topTenInRange() {
+        return service.getOrderedShowsByFrequency(from, to, 0, 10).getResult();
+    }
+
+    @Benchmark
+    public List<FrequencyResponse> searchInRange() {
+        return service.searchShows(from, to, "simpsons", 0, Integer.MAX_VALUE).getResult();
+    }
+
+    @Benchmark
+    public Map<String, Integer> scanItemsInRange() {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (LocalDate day = FIRST_DAY; !day.isAfter(LocalDate.parse(to)); day = day.plusDays(1)) {
+            for (Item item : parser.getSnapshot(day.toString()).getSchedule().toItems()) {
+                if (contains(item.getTitle()) || contains(item.getTvShow().getTitle()) || contains(item.getDescription())) {
+                    frequencies.merge(item.getTvShow().getTitle(), 1, Integer::sum);
+                }
+            }
+        }
+        return frequencies;
+    }
+
+    private static boolean contains(String text) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains("simpsons");
+    }
+
+    /**
+     * A parser answering from prepared snapshots, as if every day was cached.
+     */
+    private static final class CachedParser extends EPGItemsParser {
+        private final Map<String, EpgSnapshot> snapshots;
+
+        private CachedParser(Map<String, EpgSnapshot> snapshots) {
+            this.snapshots = snapshots;
+        }
+
+        @Override
+        public EpgSnapshot getSnapshot(String date) {
+            return snapshots.get(date);
+        }
+
+        @Override
+        public CompletableFuture<EpgSnapshot> getSnapshotAsync(String date) {
+            return CompletableFuture.completedFuture(snapshots.get(date));
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package pro.sieben.sat.tv.program.plan.frequency.loadtest;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import pro.sieben.sat.tv.program.plan.frequency.TvProgramPlanFrequencyApplication;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many concurrent in-flight requests one instance sustains while every request waits for the EPG API,
+ * for the servlet stack and for the reactive mode. It starts a {@link StubEpgServer} with a long latency and, for each
+ * mode, starts the application against it and ramps up the number of concurrent clients. Every request asks for
+ * a date that has not been requested before, so each one is a cache miss that waits for the stub.
+ * <p>
+ * For each level the requests per second, the p50/p99 latency and the errors are reported, together with the requests
+ * in flight on average (requests per second times the mean latency, Little's law). A mode sustains a level as long as
+ * its in-flight requests keep up with the clients and the p99 latency stays close to the stub latency; the servlet
+ * stack is capped by its request threads ({@code server.tomcat.threads.max}), the reactive mode by the connection pool.
+ * <p>
+ * The benchmark user's password is stored without encoding, so the per-request password check of HTTP basic
+ * authentication does not cap the throughput of both modes alike.
+ * <p>
+ * Options (all {@code --name=value}):
+ * <ul>
+ *     <li>{@code modes}: the comma separated web application types to measure, default {@code servlet,reactive}</li>
+ *     <li>{@code levels}: the comma separated numbers of concurrent clients, default {@code 100,200,400,800}</li>
+ *     <li>{@code duration}: how long each level is measured, default {@code 10s}</li>
+ *     <li>{@code warmup}: how long the first level is called before measuring, default {@code 5s}</li>
+ *     <li>{@code payloads}: a JSON file or directory replayed by the stub, default a day with a single airing</li>
+ *     <li>{@code latency} (default {@code 1s}), {@code jitter}: the delay of the stub server</li>
+ *     <li>{@code epg.*}, {@code server.*}, {@code spring.*}, {@code logging.*}: passed on to the application</li>
+ * </ul>
+ */
+public final class InFlightBenchmark {
+
+    // Each request asks for the next of these dates, so no request is answered from the cache
+    private static final LocalDate FIRST_DATE = LocalDate.parse("1970-01-01");
+
+    private static final String ENDPOINT = "/api/mostFrequantShows/";
+
+    // A day with a single airing, so the requests spend their time waiting for the stub rather than parsing
+    private static final String SINGLE_ITEM_DAY = """
+            {"data":{"site":{"epg":{"items":[{"id":"epg-0","title":"Der Kinoabend",\
+            "startTime":"2024-03-15T05:00:00.000Z","endTime":"2024-03-15T05:25:00.000Z",\
+            "tvShow":{"title":"Die Goldbergs","id":"s-goldbergs"}}]}}}}""";
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    private final String baseUrl;
+    private final String authorization;
+    private final AtomicLong nextDate;
+
+    private InFlightBenchmark(String baseUrl, String user, String password, AtomicLong nextDate) {
+        this.baseUrl = baseUrl;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+        this.nextDate = nextDate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        List<String> modes = Arrays.asList(options.get("modes", "servlet,reactive").split(","));
+        List<Integer> levels = Arrays.stream(options.get("levels", "100,200,400,800").split(",")).map(Integer::parseInt).toList();
+        Duration duration = options.getDuration("duration", Duration.ofSeconds(10));
+        Duration warmup = options.getDuration("warmup", Duration.ofSeconds(5));
+        Duration latency = options.getDuration("latency", Duration.ofSeconds(1));
+        AtomicLong nextDate = new AtomicLong();
+
+        // DevTools would restart the application in another class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        List<byte[]> payloads = options.get("payloads", null) == null
+                ? List.of(SINGLE_ITEM_DAY.getBytes(StandardCharsets.UTF_8))
+                : StubEpgServer.readPayloads(options.get("payloads", null));
+
+        try (StubEpgServer stub = new StubEpgServer(0, payloads, latency, options.getDuration("jitter", Duration.ZERO), 0).start()) {
+
+            System.out.printf("%-9s %7s %9s %7s %9s %9s %9s %10s%n",
+                    "mode", "clients", "requests", "errors", "req/s", "p50 ms", "p99 ms", "in flight");
+            for (String mode : modes) {
+                List<String> applicationArgs = new ArrayList<>(List.of(
+                        "--server.port=0",
+                        "--spring.main.web-application-type=" + mode,
+                        "--spring.main.allow-bean-definition-overriding=true",
+                        "--epg.client.base-url=" + stub.getBaseUrl(),
+                        "--epg.client.max-concurrent-requests=100000",
+                        "--epg.cache.max-entries=64",
+                        "--epg.archive.enabled=false",
+                        "--epg.prefetch.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--spring.main.banner-mode=off"));
+                applicationArgs.addAll(options.argumentsStartingWith("epg.", "server.", "spring.", "logging."));
+
+                try (ConfigurableApplicationContext application = new SpringApplicationBuilder(
+                        TvProgramPlanFrequencyApplication.class, BenchmarkUsers.class)
+                        .run(applicationArgs.toArray(String[]::new))) {
+                    String port = application.getEnvironment().getProperty("local.server.port");
+                    InFlightBenchmark benchmark = new InFlightBenchmark("http://localhost:" + port,
+                            BenchmarkUsers.USER, BenchmarkUsers.PASSWORD, nextDate);
+
+                    benchmark.run(levels.get(0), warmup);
+                    for (int clients : levels) {
+                        Result result = benchmark.run(clients, duration);
+                        System.out.printf("%-9s %7d %9d %7d %9.1f %9.1f %9.1f %10.1f%n", mode, clients, result.requests(),
+                                result.errors(), result.requestsPerSecond(), result.percentileMillis(0.50),
+                                result.percentileMillis(0.99), result.inFlight());
+                    }
+                }
+            }
+            System.out.printf("Stub EPG server: %d requests%n", stub.getRequests());
+        }
+    }
+
+    /**
+     * Calls the endpoint from the given number of clients until the duration is over.
+     */
+    private Result run(int clients, Duration duration) throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<long[]>> futures = new ArrayList<>(clients);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < clients; client++) {
+                futures.add(executor.submit(() -> callUntil(deadline)));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[0];
+        long errors = 0;
+        for (Future<long[]> future : futures) {
+            long[] client = future.get();
+            // The last element of a client's latencies is its number of errors
+            errors += client[client.length - 1];
+            int size = latencies.length;
+            latencies = Arrays.copyOf(latencies, size + client.length - 1);
+            System.arraycopy(client, 0, latencies, size, client.length - 1);
+        }
+        Arrays.sort(latencies);
+        return new Result(latencies, errors, elapsed);
+    }
+
+    private long[] callUntil(long deadline) {
+        long[] latencies = new long[64];
+        int size = 0;
+        long errors = 0;
+        while (System.nanoTime() < deadline) {
+            String date = FIRST_DATE.plusDays(nextDate.getAndIncrement()).toString();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + ENDPOINT + date))
+                    .header("Authorization", authorization)
+                    .timeout(Duration.ofSeconds(60))
+                    .GET()
+                    .build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() != 200) {
+                    errors++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                errors++;
+            }
+            if (size == latencies.length - 1) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[size++] = System.nanoTime() - start;
+        }
+        latencies = Arrays.copyOf(latencies, size + 1);
+        latencies[size] = errors;
+        return latencies;
+    }
+
+    private record Result(long[] sortedLatencies, long errors, long elapsedNanos) {
+
+        long requests() {
+            return sortedLatencies.length;
+        }
+
+        double requestsPerSecond() {
+            return requests() * 1e9 / elapsedNanos;
+        }
+
+        double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(index, 0)] / 1e6;
+        }
+
+        /**
+         * @return The mean number of requests in flight: the throughput times the mean latency.
+         */
+        double inFlight() {
+            return requestsPerSecond() * Arrays.stream(sortedLatencies).average().orElse(0) / 1e9;
+        }
+    }
+
+    /**
+     * Replaces the users of both security configurations with a user whose password is not encoded. Registered as an
+     * additional source rather than scanned, so it only applies to the benchmark, and bound to the same bean names so
+     * it overrides the application's users. The user stores are plain lookups: the in-memory stores of Spring Security
+     * would upgrade the password to bcrypt on the first login.
+     */
+    static class BenchmarkUsers {
+
+        static final String USER = "user";
+        static final String PASSWORD = "password";
+
+        @Bean
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+        UserDetailsService userDetailsService() {
+            return username -> {
+                if (!USER.equals(username)) {
+                    throw new UsernameNotFoundException(username);
+                }
+                return user();
+            };
+        }
+
+        @Bean
+        @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+        ReactiveUserDetailsService reactiveUserDetailsService() {
+            return username -> Mono.justOrEmpty(USER.equals(username) ? user() : null);
+        }
+
+        // A new instance for every login, as the credentials of the authenticated user are erased
+        private static UserDetails user() {
+            return User.withUsername(USER).password("{noop}" + PASSWORD).roles("USER").build();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package pro.sieben.sat.tv.program.plan.frequency.loadtest;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import pro.sieben.sat.tv.program.plan.frequency.TvProgramPlanFrequencyApplication;
+import pro.sieben.sat.tv.program.plan.frequency.model.ShowType;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures the whole service under concurrent load, offline: it starts a {@link StubEpgServer}, starts the application
+ * on a free port with {@code epg.client.base-url} pointing to the stub, and calls each controller endpoint from
+ * a number of concurrent clients for a fixed time. For each endpoint the number of requests and errors,
+ * the requests per second and the p50/p99 latency are reported.
+ * <p>
+ * Options (all {@code --name=value}):
+ * <ul>
+ *     <li>{@code duration}: how long each endpoint is measured, default {@code 10s}</li>
+ *     <li>{@code warmup}: how long each endpoint is called before measuring, default {@code 2s}</li>
+ *     <li>{@code concurrency}: the number of concurrent clients, default {@code 32}</li>
+ *     <li>{@code dates}: the number of different dates requested, default {@code 7}</li>
+ *     <li>{@code endpoints}: a comma separated filter on the endpoint paths, default all</li>
+ *     <li>{@code payloads}, {@code latency}, {@code jitter}, {@code error-rate}: the settings of the stub server</li>
+ *     <li>{@code epg.*}, {@code server.*}, {@code spring.*}, {@code logging.*}: passed on to the application</li>
+ * </ul>
+ */
+public final class LoadDriver {
+
+    private static final LocalDate FIRST_DATE = LocalDate.parse("2024-03-01");
+
+    private static final List<String> ENDPOINTS = List.of(
+            "/api/mostFrequantShows/{date}",
+            "/api/mostFrequantShows",
+            "/api/mostFrequantShows/{from}/{to}",
+            "/api/frequencyOrderedShows/{date}",
+            "/api/frequencyOrderedShows/{date}?limit=10",
+            "/api/frequencyOrderedShows/{from}/{to}",
+            "/api/mostFrequantShowsOrderedShowsByType/{date}/{type}",
+            "/api/frequencyOrderedShowsByType/{date}/{type}",
+            "/api/frequencyOrderedShowsByType/{from}/{to}/{type}",
+            "/api/SeriesByStatus/{date}");
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final String baseUrl;
+    private final String authorization;
+    private final int concurrency;
+    private final int dates;
+
+    private LoadDriver(String baseUrl, String user, String password, int concurrency, int dates) {
+        this.baseUrl = baseUrl;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+        this.concurrency = concurrency;
+        this.dates = dates;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Duration duration = options.getDuration("duration", Duration.ofSeconds(10));
+        Duration warmup = options.getDuration("warmup", Duration.ofSeconds(2));
+        List<String> filters = Arrays.asList(options.get("endpoints", "").split(","));
+
+        // DevTools would restart the application in another class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        try (StubEpgServer stub = new StubEpgServer(0, StubEpgServer.readPayloads(options.get("payloads", null)),
+                options.getDuration("latency", Duration.ofMillis(50)), options.getDuration("jitter", Duration.ofMillis(20)),
+                options.getDouble("error-rate", 0)).start()) {
+
+            List<String> applicationArgs = new ArrayList<>(List.of(
+                    "--server.port=0",
+                    "--epg.client.base-url=" + stub.getBaseUrl(),
+                    "--epg.archive.enabled=false",
+                    "--epg.prefetch.enabled=false",
+                    "--logging.level.root=WARN",
+                    "--spring.main.banner-mode=off"));
+            applicationArgs.addAll(options.argumentsStartingWith("epg.", "server.", "spring.", "logging."));
+
+            try (ConfigurableApplicationContext application = new SpringApplicationBuilder(TvProgramPlanFrequencyApplication.class)
+                    .run(applicationArgs.toArray(String[]::new))) {
+                String port = application.getEnvironment().getProperty("local.server.port");
+                LoadDriver driver = new LoadDriver("http://localhost:" + port, "user", "password",
+                        options.getInt("concurrency", 32), options.getInt("dates", 7));
+
+                System.out.printf("%-58s %9s %7s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms");
+                for (String endpoint : ENDPOINTS) {
+                    if (filters.stream().allMatch(String::isEmpty) || filters.stream().anyMatch(f -> !f.isEmpty() && endpoint.contains(f))) {
+                        driver.run(endpoint, warmup);
+                        Result result = driver.run(endpoint, duration);
+                        System.out.printf("%-58s %9d %7d %9.1f %9.2f %9.2f%n", endpoint, result.requests(), result.errors(),
+                                result.requestsPerSecond(), result.percentileMillis(0.50), result.percentileMillis(0.99));
+                    }
+                }
+                System.out.printf("Stub EPG server: %d requests, %d injected errors%n", stub.getRequests(), stub.getErrors());
+            }
+        }
+    }
+
+    /**
+     * Calls an endpoint from all clients until the duration is over.
+     */
+    private Result run(String endpoint, Duration duration) throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Future<Latencies>> clients = new ArrayList<>(concurrency);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < concurrency; client++) {
+                clients.add(executor.submit(() -> callUntil(endpoint, deadline)));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Latencies all = new Latencies();
+        for (Future<Latencies> client : clients) {
+            all.addAll(client.get());
+        }
+        return all.toResult(elapsed);
+    }
+
+    private Latencies callUntil(String endpoint, long deadline) {
+        Latencies latencies = new Latencies();
+        while (System.nanoTime() < deadline) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + expand(endpoint)))
+                    .header("Authorization", authorization)
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            long start = System.nanoTime();
+            boolean failed;
+            try {
+                HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                failed = response.statusCode() != 200;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                failed = true;
+            }
+            latencies.add(System.nanoTime() - start, failed);
+        }
+        return latencies;
+    }
+
+    /**
+     * Fills the placeholders of an endpoint with a random date, range of dates and type.
+     */
+    private String expand(String endpoint) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate from = FIRST_DATE.plusDays(random.nextInt(dates));
+        return endpoint
+                .replace("{date}", from.toString())
+                .replace("{from}", FIRST_DATE.toString())
+                .replace("{to}", FIRST_DATE.plusDays(dates - 1).toString())
+                .replace("{type}", ShowType.values()[random.nextInt(ShowType.values().length)].name());
+    }
+
+    /**
+     * The latencies recorded by a client, in nanoseconds.
+     */
+    private static final class Latencies {
+        private long[] values = new long[1024];
+        private int size;
+        private long errors;
+
+        private void add(long latency, boolean failed) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = latency;
+            if (failed) {
+                errors++;
+            }
+        }
+
+        private void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i], false);
+            }
+            errors += other.errors;
+        }
+
+        private Result toResult(long elapsedNanos) {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return new Result(sorted, errors, elapsedNanos);
+        }
+    }
+
+    private record Result(long[] sortedLatencies, long errors, long elapsedNanos) {
+
+        long requests() {
+            return sortedLatencies.length;
+        }
+
+        double requestsPerSecond() {
+            return requests() * 1e9 / elapsedNanos;
+        }
+
+        double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package pro.sieben.sat.tv.program.plan.frequency.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code --name=value} command line options of the load test tools. Options that are not known to a tool,
+ * e.g. {@code --epg.cache.max-entries=8}, are kept as they are so they can be passed on to the application.
+ */
+final class Options {
+
+    private final Map<String, String> values;
+    private final List<String> arguments;
+
+    private Options(Map<String, String> values, List<String> arguments) {
+        this.values = values;
+        this.arguments = arguments;
+    }
+
+    static Options parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        List<String> arguments = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Options must have the form --name=value: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(separator < 0 ? arg.substring(2) : arg.substring(2, separator), separator < 0 ? "true" : arg.substring(separator + 1));
+            arguments.add(arg);
+        }
+        return new Options(values, arguments);
+    }
+
+    String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    int getInt(String name, int defaultValue) {
+        return values.containsKey(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+    }
+
+    double getDouble(String name, double defaultValue) {
+        return values.containsKey(name) ? Double.parseDouble(values.get(name)) : defaultValue;
+    }
+
+    Duration getDuration(String name, Duration defaultValue) {
+        return values.containsKey(name) ? DurationStyle.detectAndParse(values.get(name)) : defaultValue;
+    }
+
+    /**
+     * @param prefixes The prefixes of the options to select, e.g. {@code epg.}.
+     * @return The original arguments of all options whose name starts with one of the prefixes.
+     */
+    List<String> argumentsStartingWith(String... prefixes) {
+        List<String> selected = new ArrayList<>();
+        for (String argument : arguments) {
+            for (String prefix : prefixes) {
+                if (argument.startsWith("--" + prefix)) {
+                    selected.add(argument);
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,220 @@
+package pro.sieben.sat.tv.program.plan.frequency.loadtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+/**
+ * Measures how fast a new instance serves its first request, for the build modes of the application. For each mode it
+ * starts the application as a separate process against a {@link StubEpgServer} and calls an endpoint until it answers
+ * with {@code 200}. It reports the time from starting the process to that first successful response, and the resident
+ * memory (RSS) of the process right after it, read from {@code /proc} (Linux only).
+ * <p>
+ * The modes, each measured if its artifact has been built:
+ * <ul>
+ *     <li>{@code jar}: the Spring Boot jar ({@code mvn package})</li>
+ *     <li>{@code aot}: the same jar with the AOT-generated initializers ({@code mvn -P native package},
+ *     run with {@code -Dspring.aot.enabled=true})</li>
+ *     <li>{@code cds}: the unpacked jar with its AppCDS archive in {@code target/cds} ({@code mvn -P cds package})</li>
+ *     <li>{@code native}: the native image ({@code mvn -P native native:compile})</li>
+ *     <li>{@code baseline}: another Spring Boot jar given with {@code --baseline}, e.g. of an earlier build</li>
+ * </ul>
+ * In the {@code aot} and {@code native} modes the bean conditions were evaluated at build time, so e.g.
+ * {@code epg.prefetch.enabled} cannot be changed; the application therefore runs with its shipped settings in all modes,
+ * except for the archive, which is disabled so every run fetches from the stub.
+ * <p>
+ * Options (all {@code --name=value}):
+ * <ul>
+ *     <li>{@code modes}: the comma separated modes to measure, default all that have been built</li>
+ *     <li>{@code runs}: the number of starts of each mode, default {@code 5}</li>
+ *     <li>{@code jar}, {@code cds-jar}, {@code cds-archive}, {@code native}, {@code baseline}: the artifacts of the modes,
+ *     defaults in {@code target}</li>
+ *     <li>{@code jvm-args}: space separated options of the JVM modes, e.g. {@code -Xmx256m}, default none</li>
+ *     <li>{@code timeout}: how long a start may take, default {@code 60s}</li>
+ *     <li>{@code epg.*}, {@code server.*}, {@code spring.*}, {@code logging.*}: passed on to the application</li>
+ * </ul>
+ */
+public final class StartupBenchmark {
+
+    private static final String ENDPOINT = "/api/mostFrequantShows/2024-03-15";
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder().encodeToString("user:password".getBytes(StandardCharsets.UTF_8));
+
+    private static final String ARTIFACT = "target/TV-Program-Plan-Frequency-0.0.1-SNAPSHOT";
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private final Duration timeout;
+    private final List<String> applicationArgs;
+    private final Path logs = Path.of("target", "startup");
+
+    private StartupBenchmark(Duration timeout, List<String> applicationArgs) {
+        this.timeout = timeout;
+        this.applicationArgs = applicationArgs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        int runs = options.getInt("runs", 5);
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> jvmArgs = options.get("jvm-args", "").isBlank() ? List.of() : List.of(options.get("jvm-args", "").trim().split("\\s+"));
+
+        String jar = options.get("jar", ARTIFACT + ".jar");
+        String cdsJar = options.get("cds-jar", "target/cds/" + Path.of(ARTIFACT).getFileName() + "-cds.jar");
+        String cdsArchive = options.get("cds-archive", "target/cds/application.jsa");
+        String nativeImage = options.get("native", "target/tv-program-plan-frequency");
+        String baseline = options.get("baseline", null);
+
+        // The command of each mode, in the order they are reported
+        Map<String, List<String>> commands = new LinkedHashMap<>();
+        if (baseline != null) {
+            commands.put("baseline", jvm(java, jvmArgs, "-jar", baseline));
+        }
+        commands.put("jar", jvm(java, jvmArgs, "-jar", jar));
+        if (isAotProcessed(jar)) {
+            commands.put("aot", jvm(java, jvmArgs, "-Dspring.aot.enabled=true", "-jar", jar));
+        }
+        if (Files.exists(Path.of(cdsArchive))) {
+            commands.put("cds", jvm(java, jvmArgs, "-XX:SharedArchiveFile=" + cdsArchive, "-jar", cdsJar));
+        }
+        if (Files.isExecutable(Path.of(nativeImage))) {
+            commands.put("native", List.of(nativeImage));
+        }
+        if (options.get("modes", null) != null) {
+            commands.keySet().retainAll(Arrays.asList(options.get("modes", null).split(",")));
+        }
+
+        try (StubEpgServer stub = new StubEpgServer(0, StubEpgServer.readPayloads(null), Duration.ZERO, Duration.ZERO, 0).start()) {
+            List<String> applicationArgs = new ArrayList<>(List.of(
+                    "--epg.client.base-url=" + stub.getBaseUrl(),
+                    "--epg.archive.enabled=false",
+                    "--logging.level.root=WARN",
+                    "--spring.main.banner-mode=off"));
+            applicationArgs.addAll(options.argumentsStartingWith("epg.", "server.", "spring.", "logging."));
+            StartupBenchmark benchmark = new StartupBenchmark(options.getDuration("timeout", Duration.ofSeconds(60)), applicationArgs);
+
+            System.out.printf("%-9s %5s %13s %13s %9s%n", "mode", "runs", "p50 first ms", "min first ms", "RSS MB");
+            for (Map.Entry<String, List<String>> mode : commands.entrySet()) {
+                long[] firstResponses = new long[runs];
+                long[] rss = new long[runs];
+                for (int run = 0; run < runs; run++) {
+                    Start start = benchmark.start(mode.getKey(), mode.getValue());
+                    firstResponses[run] = start.firstResponseNanos();
+                    rss[run] = start.rssBytes();
+                }
+                Arrays.sort(firstResponses);
+                Arrays.sort(rss);
+                System.out.printf("%-9s %5d %13.0f %13.0f %9.1f%n", mode.getKey(), runs, firstResponses[runs / 2] / 1e6,
+                        firstResponses[0] / 1e6, rss[runs / 2] < 0 ? Double.NaN : rss[runs / 2] / 1e6);
+            }
+        }
+    }
+
+    private static List<String> jvm(String java, List<String> jvmArgs, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvmArgs);
+        command.addAll(List.of(args));
+        return command;
+    }
+
+    /**
+     * @return Whether the jar was built by the native profile, which adds the AOT-generated initializers to it.
+     */
+    private static boolean isAotProcessed(String jar) throws IOException {
+        if (!Files.exists(Path.of(jar))) {
+            return false;
+        }
+        try (JarFile file = new JarFile(jar)) {
+            return "true".equals(file.getManifest().getMainAttributes().getValue("Spring-Boot-Native-Processed"));
+        }
+    }
+
+    /**
+     * Starts the application, waits for its first successful response and stops it again.
+     */
+    private Start start(String mode, List<String> command) throws Exception {
+        int port = freePort();
+        List<String> processCommand = new ArrayList<>(command);
+        processCommand.add("--server.port=" + port);
+        processCommand.addAll(applicationArgs);
+
+        Files.createDirectories(logs);
+        Path log = logs.resolve(mode + ".log");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + ENDPOINT))
+                .header("Authorization", AUTHORIZATION)
+                .timeout(Duration.ofSeconds(10))
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(processCommand).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            long deadline = start + timeout.toNanos();
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException(mode + " exited with " + process.exitValue() + ", see " + log);
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException(mode + " did not answer within " + timeout + ", see " + log);
+                }
+                try {
+                    if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return new Start(System.nanoTime() - start, rssBytes(process.pid()));
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(10);
+            }
+        } finally {
+            process.destroy();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * @return The resident memory of the process, or -1 if it cannot be read.
+     */
+    private static long rssBytes(long pid) {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (!Files.exists(status)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    // e.g. "VmRSS:	  245760 kB"
+                    return Long.parseLong(line.substring("VmRSS:".length()).replace("kB", "").trim()) * 1024;
+                }
+            }
+            return -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Start(long firstResponseNanos, long rssBytes) {
+    }
+}
@@ -0,0 +1,152 @@
+package pro.sieben.sat.tv.program.plan.frequency.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A local stand-in for the GraphQL endpoint of the EPG API. It answers every request with one of the recorded
+ * payloads (round robin), after a configurable latency with random jitter, and fails a configurable share of
+ * the requests with {@code 503 Service Unavailable}.
+ * <p>
+ * Run it on its own with {@code --port=8089 --payloads=<file or directory> --latency=50ms --jitter=20ms --error-rate=0.01}
+ * and point {@code epg.client.base-url} to {@code http://localhost:8089/graphql}.
+ */
+public final class StubEpgServer implements AutoCloseable {
+
+    private static final String RECORDED = "/fixtures/epg-prosieben-2024-03-15.json";
+
+    private final List<byte[]> payloads;
+    private final Duration latency;
+    private final Duration jitter;
+    private final double errorRate;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param port      The port to listen on, 0 for any free port.
+     * @param payloads  The response bodies to replay.
+     * @param latency   The time every response is delayed.
+     * @param jitter    The maximum random delay added to the latency.
+     * @param errorRate The share of requests answered with an error, from 0 to 1.
+     * @throws IOException If the port cannot be bound.
+     */
+    public StubEpgServer(int port, List<byte[]> payloads, Duration latency, Duration jitter, double errorRate) throws IOException {
+        if (payloads.isEmpty()) {
+            throw new IllegalArgumentException("At least one payload is required");
+        }
+        this.payloads = List.copyOf(payloads);
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRate = errorRate;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        this.server.createContext("/graphql", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public StubEpgServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return The URL to configure as {@code epg.client.base-url}.
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/graphql";
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long request = requests.getAndIncrement();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = latency.toMillis() + (jitter.isZero() ? 0 : random.nextLong(jitter.toMillis() + 1));
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (random.nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            byte[] payload = payloads.get((int) (request % payloads.size()));
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, payload.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(payload);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the payloads to replay: a single JSON file, every JSON file of a directory,
+     * or the recorded fixture if no location is given.
+     *
+     * @param location The file or directory, or null.
+     * @return The payloads.
+     */
+    public static List<byte[]> readPayloads(String location) {
+        try {
+            if (location == null) {
+                try (InputStream in = StubEpgServer.class.getResourceAsStream(RECORDED)) {
+                    return List.of(Objects.requireNonNull(in, RECORDED).readAllBytes());
+                }
+            }
+            Path path = Path.of(location);
+            if (!Files.isDirectory(path)) {
+                return List.of(Files.readAllBytes(path));
+            }
+            List<byte[]> payloads = new ArrayList<>();
+            try (Stream<Path> files = Files.list(path)) {
+                for (Path file : files.filter(file -> file.toString().endsWith(".json")).sorted().toList()) {
+                    payloads.add(Files.readAllBytes(file));
+                }
+            }
+            return payloads;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        StubEpgServer server = new StubEpgServer(options.getInt("port", 8089), readPayloads(options.get("payloads", null)),
+                options.getDuration("latency", Duration.ofMillis(50)), options.getDuration("jitter", Duration.ZERO),
+                options.getDouble("error-rate", 0)).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.out.println("Stub EPG server listening on " + server.getBaseUrl());
+    }
+}
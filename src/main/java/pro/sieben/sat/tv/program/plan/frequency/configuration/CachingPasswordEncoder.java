@@ -0,0 +1,118 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A PasswordEncoder that remembers successfully verified credentials for a short time, so clients authenticating every
+ * request with HTTP basic authentication only pay for the slow hash (bcrypt) of the delegate once per time to live.
+ * <p>
+ * Neither the passwords nor their hashes are kept: a verified credential is remembered by the HMAC-SHA256 of the raw
+ * and the encoded password, under a random key generated on startup. A changed password has another encoded form
+ * and is therefore verified again. Failed verifications are never cached, so guessing still costs a full hash.
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+    private static final String HMAC = "HmacSHA256";
+
+    private final PasswordEncoder delegate;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Clock clock;
+    private final SecretKeySpec key;
+    // The keyed hashes of the verified credentials and when they expire
+    private final Map<ByteBuffer, Instant> verified = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate   The encoder verifying credentials that are not remembered.
+     * @param ttl        How long a verified credential is remembered.
+     * @param maxEntries The maximum number of remembered credentials.
+     */
+    public CachingPasswordEncoder(PasswordEncoder delegate, Duration ttl, int maxEntries) {
+        this(delegate, ttl, maxEntries, Clock.systemUTC());
+    }
+
+    CachingPasswordEncoder(PasswordEncoder delegate, Duration ttl, int maxEntries, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The maximum number of credentials must be positive");
+        }
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, HMAC);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+        ByteBuffer credential = keyOf(rawPassword, encodedPassword);
+        Instant now = clock.instant();
+        Instant expiry = verified.get(credential);
+        if (expiry != null && now.isBefore(expiry)) {
+            return true;
+        }
+        if (!delegate.matches(rawPassword, encodedPassword)) {
+            return false;
+        }
+        remember(credential, now);
+        return true;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * @return The number of remembered credentials, including expired ones that have not been evicted yet.
+     */
+    int size() {
+        return verified.size();
+    }
+
+    private void remember(ByteBuffer credential, Instant now) {
+        if (verified.size() >= maxEntries) {
+            verified.values().removeIf(expiry -> !now.isBefore(expiry));
+            // Still full of live credentials: start over rather than track the least recently used one
+            if (verified.size() >= maxEntries) {
+                verified.clear();
+            }
+        }
+        verified.put(credential, now.plus(ttl));
+    }
+
+    private ByteBuffer keyOf(CharSequence rawPassword, String encodedPassword) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+            // Encoded passwords never contain a NUL, so it separates both unambiguously
+            mac.update((byte) 0);
+            mac.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC + " is not available", e);
+        }
+    }
+}
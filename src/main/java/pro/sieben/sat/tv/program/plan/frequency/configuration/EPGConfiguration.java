@@ -0,0 +1,79 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGArchive;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGItemsParser;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGMetrics;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGSnapshotCache;
+
+import java.net.http.HttpClient;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableConfigurationProperties(EPGProperties.class)
+@ImportRuntimeHints(EPGRuntimeHints.class)
+public class EPGConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService epgRevalidationExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    public EPGSnapshotCache epgSnapshotCache(EPGProperties properties, ExecutorService epgRevalidationExecutor) {
+        EPGProperties.Cache cache = properties.getCache();
+        return new EPGSnapshotCache(cache.getMaxEntries(), cache.getCurrentDayTtl(), cache.getPastDayTtl(),
+                cache.isStaleWhileRevalidate() ? epgRevalidationExecutor : null);
+    }
+
+    /**
+     * Creates the RestTemplate used to call the EPG API.
+     * It is backed by the JDK HttpClient, which keeps connections to the API alive (or multiplexes them over HTTP/2)
+     * and reuses them across requests.
+     */
+    @Bean
+    public RestTemplate epgRestTemplate(EPGProperties properties) {
+        EPGProperties.Client client = properties.getClient();
+        HttpClient.Builder httpClient = HttpClient.newBuilder()
+                .connectTimeout(client.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (client.isVirtualThreads()) {
+            httpClient.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient.build());
+        requestFactory.setReadTimeout(client.getReadTimeout());
+        return new RestTemplate(requestFactory);
+    }
+
+    @Bean
+    public EPGArchive epgArchive(EPGProperties properties) {
+        EPGProperties.Archive archive = properties.getArchive();
+        return archive.isEnabled() ? new EPGArchive(archive.getDirectory(), properties.getClient().getQuery()) : EPGArchive.disabled();
+    }
+
+    @Bean
+    public EPGMetrics epgMetrics(MeterRegistry meterRegistry) {
+        return new EPGMetrics(meterRegistry);
+    }
+
+    /**
+     * Creates the parser, with the WebClient of {@link ReactiveConfiguration} in reactive mode.
+     */
+    @Bean
+    public EPGItemsParser epgItemsParser(RestTemplate epgRestTemplate, ObjectProvider<WebClient> epgWebClient,
+                                         EPGSnapshotCache epgSnapshotCache, EPGArchive epgArchive,
+                                         EPGProperties properties, EPGMetrics epgMetrics) {
+        return new EPGItemsParser(epgRestTemplate, epgWebClient.getIfAvailable(), epgSnapshotCache, epgArchive,
+                properties, epgMetrics);
+    }
+}
@@ -0,0 +1,121 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGQuery;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Configuration properties of the EPG client, bound from the {@code epg.*} keys of the application properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "epg")
+public class EPGProperties {
+
+    private Cache cache = new Cache();
+    private Client client = new Client();
+    private Resilience resilience = new Resilience();
+    private Archive archive = new Archive();
+    private Prefetch prefetch = new Prefetch();
+    private Channels channels = new Channels();
+    private Auth auth = new Auth();
+
+    @Data
+    public static class Cache {
+        // The maximum number of dates kept in memory before the least recently used one is evicted
+        private int maxEntries = 64;
+        // How long snapshots of today and future dates are served before being fetched again
+        private Duration currentDayTtl = Duration.ofMinutes(5);
+        // How long snapshots of past dates are served before being fetched again
+        private Duration pastDayTtl = Duration.ofHours(24);
+        // Whether expired snapshots are served while they are reloaded in the background
+        private boolean staleWhileRevalidate = false;
+    }
+
+    @Data
+    public static class Client {
+        // The GraphQL endpoint of the EPG API; {domain} is replaced by the channel, e.g. a local stub server for load tests
+        private String baseUrl = "https://magellan-api.p7s1.io/epg-broadcast/{domain}/graphql";
+        // The maximum time to establish a connection to the EPG API
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        // The maximum time to wait for the EPG API to answer a request
+        private Duration readTimeout = Duration.ofSeconds(10);
+        // The maximum number of requests sent to the EPG API at the same time
+        private int maxConcurrentRequests = 16;
+        // Whether upstream fetches and the HTTP client run on virtual threads
+        private boolean virtualThreads = true;
+        // Whether responses are counted while they are streamed instead of being bound to Item objects
+        private boolean streaming = false;
+        // The fields requested for each EPG item, see EPGQuery
+        private EPGQuery query = EPGQuery.SCHEDULE;
+        // Whether only the hash of the query is sent, falling back to the full text if the API does not know it
+        private boolean persistedQueries = true;
+    }
+
+    @Data
+    public static class Resilience {
+        // The time a fetch of a day may take in total, including waiting for a permit, retries and hedged requests
+        private Duration deadline = Duration.ofSeconds(3);
+        // Whether a second request is sent if the first one takes longer than the usual p95 latency of the EPG API
+        private boolean hedging = true;
+        // The delay before the second request until enough latencies are recorded to estimate the p95
+        private Duration initialHedgeDelay = Duration.ofMillis(500);
+        // The lower bound of the delay before the second request
+        private Duration minHedgeDelay = Duration.ofMillis(20);
+        // The number of recent latencies the p95 is estimated from
+        private int latencyWindow = 200;
+        // The failed fetches in a row after which fetches fail fast, zero or less to never fail fast
+        private int failureThreshold = 5;
+        // How long fetches fail fast before a trial fetch is let through
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Archive {
+        // Whether the schedules of past days are stored on disk and read from there instead of the EPG API
+        private boolean enabled = false;
+        // The directory holding the archived schedules
+        private Path directory = Path.of(System.getProperty("java.io.tmpdir"), "epg-archive");
+    }
+
+    @Data
+    public static class Prefetch {
+        // Whether today's EPG and the next days are refreshed in the background
+        private boolean enabled = false;
+        // The time between two successful refreshes
+        private Duration interval = Duration.ofMinutes(2);
+        // The number of days after today that are refreshed as well
+        private int daysAhead = 1;
+        // The delay before the first retry after a failed refresh, doubled on every further failure
+        private Duration initialBackoff = Duration.ofSeconds(5);
+        // The maximum delay between retries after failed refreshes
+        private Duration maxBackoff = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Channels {
+        // The channels (EPG domains) that can be queried, the first one is the channel of the single-channel endpoints
+        private List<String> names = List.of("prosieben.de");
+        // How long a multi-channel query waits for a channel before answering without it
+        private Duration timeout = Duration.ofSeconds(5);
+        // The time zone of the times of day in time-window queries and of today in trend queries
+        private ZoneId zone = ZoneId.of("Europe/Berlin");
+        // The time window of the prime-time queries, as HH:mm
+        private String primeTimeStart = "20:15";
+        private String primeTimeEnd = "23:00";
+    }
+
+    @Data
+    public static class Auth {
+        // Whether verified credentials are remembered, so basic authentication does not run bcrypt on every request
+        private boolean credentialCache = false;
+        // How long verified credentials are remembered
+        private Duration credentialTtl = Duration.ofMinutes(5);
+        // The maximum number of remembered credentials
+        private int maxCredentials = 1024;
+    }
+}
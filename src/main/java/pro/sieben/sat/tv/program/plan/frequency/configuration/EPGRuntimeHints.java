@@ -0,0 +1,33 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import pro.sieben.sat.tv.program.plan.frequency.model.AirtimeResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.ApiError;
+import pro.sieben.sat.tv.program.plan.frequency.model.ApiResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.BatchQuery;
+import pro.sieben.sat.tv.program.plan.frequency.model.BatchResult;
+import pro.sieben.sat.tv.program.plan.frequency.model.ChannelFrequencyResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.FrequencyResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.StatusResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.TrendResponse;
+
+/**
+ * The reflection the native image needs for Jackson to bind the models, see {@code mvn -P native native:compile}.
+ * Spring AOT only infers the bodies of the servlet controller methods, not the responses of the EPG API read by
+ * {@code RestTemplate} and {@code WebClient}, nor the bodies wrapped in a {@code Mono}.
+ */
+public class EPGRuntimeHints implements RuntimeHintsRegistrar {
+
+    // The nested types, e.g. Item and TvShow of ApiResponse, are registered with them
+    private static final Class<?>[] BOUND_TYPES = {
+            ApiResponse.class, FrequencyResponse.class, ChannelFrequencyResponse.class, StatusResponse.class,
+            AirtimeResponse.class, TrendResponse.class, BatchQuery.class, BatchResult.class, ApiError.class
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), BOUND_TYPES);
+    }
+}
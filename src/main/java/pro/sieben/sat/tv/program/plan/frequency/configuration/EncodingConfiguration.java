@@ -0,0 +1,112 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.accept.HeaderContentTypeResolver;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolver;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolverBuilder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The response encodings besides JSON, chosen by the Accept header of a request:
+ * <ul>
+ *     <li>{@code application/cbor} and {@code application/x-jackson-smile}: the JSON payloads in a binary encoding,
+ *     written by Jackson as its CBOR and Smile data formats are on the classpath</li>
+ *     <li>{@code application/x-protobuf}: lists of TV shows as length-prefixed protobuf messages</li>
+ * </ul>
+ * Requests without a preference, i.e. without an Accept header or with {@code *}{@code /*}, are answered as JSON.
+ */
+@Configuration
+public class EncodingConfiguration {
+
+    /**
+     * Spring MVC writes a response with the first converter that can write it in an accepted media type, so protobuf
+     * is added after the default converters. As a converter bean, Spring Boot would put it before Jackson.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public WebMvcConfigurer encodingWebMvcConfigurer() {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                converters.add(new FrequencyProtobufHttpMessageConverter());
+            }
+        };
+    }
+
+    /**
+     * WebFlux has Smile among its default codecs, but not CBOR, so the CBOR codecs are registered along with protobuf.
+     * Custom codecs always come before the default ones, see {@link #encodingWebFluxConfigurer()}.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public CodecCustomizer encodingCodecCustomizer() {
+        return configurer -> {
+            configurer.customCodecs().registerWithDefaultConfig(new FrequencyProtobufEncoder());
+            configurer.customCodecs().registerWithDefaultConfig(new CborValueEncoder());
+            configurer.customCodecs().registerWithDefaultConfig(new Jackson2CborDecoder());
+        };
+    }
+
+    /**
+     * WebFlux puts custom codecs before the default ones, so protobuf and CBOR would win over JSON for requests that
+     * accept any media type. Such requests are resolved as preferring JSON instead.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public WebFluxConfigurer encodingWebFluxConfigurer() {
+        return new WebFluxConfigurer() {
+            @Override
+            public void configureContentTypeResolver(RequestedContentTypeResolverBuilder builder) {
+                builder.resolver(new JsonFirstContentTypeResolver());
+            }
+        };
+    }
+
+    /**
+     * Resolves the media types of the Accept header, but {@code application/json} ahead of any media type if the request
+     * has no preference. Payloads that cannot be written as JSON are still written in any media type.
+     */
+    static class JsonFirstContentTypeResolver implements RequestedContentTypeResolver {
+
+        private static final List<MediaType> JSON_FIRST = List.of(MediaType.APPLICATION_JSON, MediaType.ALL);
+
+        private final RequestedContentTypeResolver headerResolver = new HeaderContentTypeResolver();
+
+        @Override
+        public List<MediaType> resolveMediaTypes(ServerWebExchange exchange) {
+            List<MediaType> mediaTypes = headerResolver.resolveMediaTypes(exchange);
+            return mediaTypes.equals(MEDIA_TYPE_ALL_LIST) ? JSON_FIRST : mediaTypes;
+        }
+    }
+
+    /**
+     * Jackson's CBOR encoder of WebFlux only encodes single values, not publishers, so every emitted value is encoded
+     * as a whole. The responses of the controllers are single values, there is no CBOR streaming.
+     */
+    static class CborValueEncoder extends Jackson2CborEncoder {
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                       MimeType mimeType, Map<String, Object> hints) {
+            return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import pro.sieben.sat.tv.program.plan.frequency.model.FrequencyResponse;
+import pro.sieben.sat.tv.program.plan.frequency.utils.FrequencyProtobuf;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The reactive counterpart of {@link FrequencyProtobufHttpMessageConverter}, encoding lists of {@link FrequencyResponse}
+ * as {@code application/x-protobuf}.
+ */
+public class FrequencyProtobufEncoder extends AbstractEncoder<List<FrequencyResponse>> {
+
+    public FrequencyProtobufEncoder() {
+        super(FrequencyProtobuf.MEDIA_TYPE);
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return FrequencyProtobufHttpMessageConverter.isFrequencyList(elementType) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends List<FrequencyResponse>> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(frequencies -> encodeValue(frequencies, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(List<FrequencyResponse> frequencies, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        DataBuffer buffer = bufferFactory.allocateBuffer(256);
+        try (OutputStream out = buffer.asOutputStream()) {
+            FrequencyProtobuf.write(frequencies, out);
+            return buffer;
+        } catch (IOException e) {
+            DataBufferUtils.release(buffer);
+            throw new EncodingException("Could not encode the frequencies", e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import pro.sieben.sat.tv.program.plan.frequency.model.FrequencyResponse;
+import pro.sieben.sat.tv.program.plan.frequency.utils.FrequencyProtobuf;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Writes and reads lists of {@link FrequencyResponse} as {@code application/x-protobuf}, see {@link FrequencyProtobuf}.
+ * Other payloads are left to the other converters.
+ */
+public class FrequencyProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<List<FrequencyResponse>> {
+
+    public FrequencyProtobufHttpMessageConverter() {
+        super(FrequencyProtobuf.MEDIA_TYPE);
+    }
+
+    /**
+     * @return Whether the type is a list of FrequencyResponse.
+     */
+    static boolean isFrequencyList(ResolvableType type) {
+        return List.class.isAssignableFrom(type.toClass())
+                && FrequencyResponse.class.isAssignableFrom(type.asCollection().getGeneric(0).toClass());
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return isFrequencyList(ResolvableType.forType(type)) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return type != null && isFrequencyList(ResolvableType.forType(type)) && canWrite(mediaType);
+    }
+
+    @Override
+    protected void writeInternal(List<FrequencyResponse> frequencies, Type type, HttpOutputMessage outputMessage) throws IOException {
+        FrequencyProtobuf.write(frequencies, outputMessage.getBody());
+    }
+
+    @Override
+    public List<FrequencyResponse> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return FrequencyProtobuf.read(inputMessage.getBody());
+    }
+
+    @Override
+    protected List<FrequencyResponse> readInternal(Class<? extends List<FrequencyResponse>> clazz, HttpInputMessage inputMessage) throws IOException {
+        return FrequencyProtobuf.read(inputMessage.getBody());
+    }
+}
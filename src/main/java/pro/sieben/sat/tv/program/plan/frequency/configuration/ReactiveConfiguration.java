@@ -0,0 +1,55 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * The beans of the reactive mode, active with {@code spring.main.web-application-type=reactive}.
+ * The API is then served by Netty and the EPG API is called with a non-blocking WebClient,
+ * so no thread is held while a request waits for the upstream API.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfiguration {
+
+    // The maximum size of an EPG API response held in memory
+    private static final int MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Serves the API with Netty, which Spring Boot would otherwise only pick if Tomcat is not on the classpath.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Creates the WebClient used to call the EPG API in reactive mode.
+     * Its connection pool holds at most {@code epg.client.max-concurrent-requests} connections; further calls wait
+     * for a free connection without blocking a thread, for at most the connect and read timeout.
+     */
+    @Bean
+    public WebClient epgWebClient(WebClient.Builder webClientBuilder, EPGProperties properties) {
+        EPGProperties.Client client = properties.getClient();
+        ConnectionProvider connections = ConnectionProvider.builder("epg")
+                .maxConnections(client.getMaxConcurrentRequests())
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(client.getConnectTimeout().plus(client.getReadTimeout()))
+                .build();
+        HttpClient httpClient = HttpClient.create(connections)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) client.getConnectTimeout().toMillis())
+                .responseTimeout(client.getReadTimeout())
+                .followRedirect(true);
+        return webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(MAX_RESPONSE_SIZE))
+                .build();
+    }
+}
@@ -1,17 +1,52 @@
 package pro.sieben.sat.tv.program.plan.frequency.configuration;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.web.SecurityFilterChain;
+
+import static org.springframework.security.config.Customizer.withDefaults;
 
 @Configuration
 @EnableWebSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WebSecurityConfig {
 
+    /**
+     * The default security of Spring Boot, except that the batch endpoint accepts POST requests without a CSRF token:
+     * it only reads, and is called by jobs with basic authentication rather than from a browser session.
+     */
+    @Bean
+    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        return http
+                .authorizeHttpRequests(requests -> requests.anyRequest().authenticated())
+                .formLogin(withDefaults())
+                .httpBasic(withDefaults())
+                .csrf(csrf -> csrf.ignoringRequestMatchers("/api/batch"))
+                .build();
+    }
+
+    /**
+     * The encoder of the user passwords, bcrypt by default. With {@code epg.auth.credential-cache} verified credentials
+     * are remembered, so clients sending basic authentication with every request do not pay for bcrypt every time.
+     */
+    @Bean
+    public PasswordEncoder passwordEncoder(EPGProperties properties) {
+        PasswordEncoder passwordEncoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        EPGProperties.Auth auth = properties.getAuth();
+        return auth.isCredentialCache()
+                ? new CachingPasswordEncoder(passwordEncoder, auth.getCredentialTtl(), auth.getMaxCredentials())
+                : passwordEncoder;
+    }
+
     @Bean
     public UserDetailsService userDetailsService() {
         UserDetails user =
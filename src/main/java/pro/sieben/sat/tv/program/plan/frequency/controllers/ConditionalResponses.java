@@ -0,0 +1,118 @@
+package pro.sieben.sat.tv.program.plan.frequency.controllers;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import pro.sieben.sat.tv.program.plan.frequency.model.SnapshotVersion;
+import pro.sieben.sat.tv.program.plan.frequency.model.Versioned;
+import reactor.core.publisher.Mono;
+
+/**
+ * Answers the queries of the controllers conditionally. The ETag and Cache-Control headers are derived from the version
+ * of the snapshots a query is answered from, which comes with its result, see {@link Versioned}; if the client already
+ * holds that version, 304 Not Modified is returned without computing the result. As the ETag is the same for every response
+ * format, the responses vary by the Accept header, so caches keep the formats apart.
+ * <p>
+ * Responses from stale snapshots, served because the EPG API could not be reached, carry the {@value #STALE_HEADER}
+ * header and have to be revalidated.
+ */
+final class ConditionalResponses {
+
+    static final String STALE_HEADER = "X-EPG-Stale";
+
+    private ConditionalResponses() {
+    }
+
+    /**
+     * @param ifNoneMatch The If-None-Match header of the request, or null.
+     * @param answer      The result of the query with the version of the snapshots it is answered from.
+     * @return The response with the result of the query, or an empty 304 response, for which the result is never computed.
+     */
+    static <T> ResponseEntity<T> conditional(String ifNoneMatch, Versioned<T> answer) {
+        SnapshotVersion version = answer.getVersion();
+        String eTag = eTagOf(version);
+        if (isNotModified(ifNoneMatch, eTag)) {
+            return notModified(eTag, version);
+        }
+        return ok(version).eTag(eTag).cacheControl(cacheControlOf(version)).varyBy(HttpHeaders.ACCEPT).body(answer.getResult());
+    }
+
+    /**
+     * Like {@link #conditional(String, Versioned)} for a query that completes without blocking.
+     *
+     * @param ifNoneMatch The If-None-Match header of the request, or null.
+     * @param answer      The query, emitting its result with the version of the snapshots it is answered from.
+     * @return A Mono emitting the response with the result of the query, or an empty 304 response.
+     */
+    static <T> Mono<ResponseEntity<T>> conditional(String ifNoneMatch, Mono<Versioned<T>> answer) {
+        return answer.map(current -> conditional(ifNoneMatch, current));
+    }
+
+    /**
+     * Answers a query that is not answered conditionally, only marking the response if the snapshots are stale.
+     *
+     * @param answer The result of the query with the version of the snapshots it is answered from.
+     * @return The response with the result of the query.
+     */
+    static <T> ResponseEntity<T> unconditional(Versioned<T> answer) {
+        return ok(answer.getVersion()).body(answer.getResult());
+    }
+
+    /**
+     * Like {@link #unconditional(Versioned)} for a query that completes without blocking.
+     *
+     * @param answer The query, emitting its result with the version of the snapshots it is answered from.
+     * @return A Mono emitting the response with the result of the query.
+     */
+    static <T> Mono<ResponseEntity<T>> unconditional(Mono<Versioned<T>> answer) {
+        return answer.map(ConditionalResponses::unconditional);
+    }
+
+    private static ResponseEntity.BodyBuilder ok(SnapshotVersion version) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        return version.isStale() ? response.header(STALE_HEADER, "true") : response;
+    }
+
+    private static String eTagOf(SnapshotVersion version) {
+        return "\"" + version.getTag() + "\"";
+    }
+
+    private static CacheControl cacheControlOf(SnapshotVersion version) {
+        return version.getMaxAge().isZero()
+                ? CacheControl.noCache()
+                : CacheControl.maxAge(version.getMaxAge());
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag, SnapshotVersion version) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag)
+                .cacheControl(cacheControlOf(version)).varyBy(HttpHeaders.ACCEPT);
+        return (version.isStale() ? response.header(STALE_HEADER, "true") : response).build();
+    }
+
+    /**
+     * Compares the ETags of an If-None-Match header with the current one, using the weak comparison of RFC 9110.
+     */
+    private static boolean isNotModified(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The limit of a page, all entries if no limit was requested.
+     */
+    static int limitOrAll(Integer limit) {
+        return limit == null ? Integer.MAX_VALUE : limit;
+    }
+}
@@ -1,14 +1,26 @@
 package pro.sieben.sat.tv.program.plan.frequency.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import pro.sieben.sat.tv.program.plan.frequency.model.AirtimeResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.BatchQuery;
+import pro.sieben.sat.tv.program.plan.frequency.model.BatchResult;
+import pro.sieben.sat.tv.program.plan.frequency.model.ChannelFrequencyResponse;
 import pro.sieben.sat.tv.program.plan.frequency.model.FrequencyResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.Item;
 import pro.sieben.sat.tv.program.plan.frequency.model.ShowType;
 import pro.sieben.sat.tv.program.plan.frequency.model.StatusResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.TrendResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.TrendWindows;
+import pro.sieben.sat.tv.program.plan.frequency.model.Versioned;
 import pro.sieben.sat.tv.program.plan.frequency.services.EPGService;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGCircuitOpenException;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGProjectionException;
 
 import java.util.List;
 
@@ -17,6 +29,7 @@ import java.util.List;
  * This class defines endpoints for retrieving most frequent TV shows and frequency-ordered TV shows.
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping(value = "/api")
 public class TVProgramPlanController {
 
@@ -32,42 +45,78 @@ public class TVProgramPlanController {
      * Retrieves the most frequent TV shows airing on the specified date.
      *
      * @param date The date for which the most frequent TV shows are to be retrieved.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of FrequencyResponse objects representing the most frequent TV shows.
      */
     @GetMapping("/mostFrequantShows/{date}")
-    public List<FrequencyResponse> getMostFrequentShows( @PathVariable String date) {
-        return epgService.getMostFrequentShows(date);
+    public ResponseEntity<List<FrequencyResponse>> getMostFrequentShows(@PathVariable String date, WebRequest request) {
+        return conditional(request, epgService.getMostFrequentShows(date));
     }
 
     /**
      * Retrieves the most frequent TV shows airing without specifying the date.
      *
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of FrequencyResponse objects representing the most frequent TV shows.
      */
     @GetMapping("/mostFrequantShows")
-    public List<FrequencyResponse> getMostFrequentShowsWithoutDate() {
-        return epgService.getMostFrequentShows(null);
+    public ResponseEntity<List<FrequencyResponse>> getMostFrequentShowsWithoutDate(WebRequest request) {
+        return conditional(request, epgService.getMostFrequentShows(null));
+    }
+
+    /**
+     * Retrieves the most frequent TV shows airing within the specified date range.
+     *
+     * @param from The first date of the range (inclusive).
+     * @param to   The last date of the range (inclusive).
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
+     * @return A list of FrequencyResponse objects representing the most frequent TV shows of the range.
+     */
+    @GetMapping("/mostFrequantShows/{from}/{to}")
+    public ResponseEntity<List<FrequencyResponse>> getMostFrequentShows(@PathVariable String from, @PathVariable String to, WebRequest request) {
+        return conditional(request, epgService.getMostFrequentShows(from, to));
     }
 
     /**
      * Retrieves the TV shows ordered by frequency for the specified date.
      *
      * @param date The date for which the TV shows are to be retrieved.
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of FrequencyResponse objects representing the TV shows ordered by frequency.
      */
     @GetMapping("/frequencyOrderedShows/{date}")
-    public List<FrequencyResponse> getFrequencyOrderedShows(@PathVariable String date) {
-        return epgService.getOrderedShowsByFrequency(date);
+    public ResponseEntity<List<FrequencyResponse>> getFrequencyOrderedShows(@PathVariable String date, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getOrderedShowsByFrequency(date, offset, limitOrAll(limit)));
     }
 
     /**
      * Retrieves the TV shows ordered by frequency without specifying the date.
      *
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of FrequencyResponse objects representing the TV shows ordered by frequency.
      */
     @GetMapping("/frequencyOrderedShows")
-    public List<FrequencyResponse> getFrequencyOrderedShows() {
-        return epgService.getOrderedShowsByFrequency(null);
+    public ResponseEntity<List<FrequencyResponse>> getFrequencyOrderedShows(@RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getOrderedShowsByFrequency(null, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Retrieves the TV shows ordered by their frequency within the specified date range.
+     *
+     * @param from The first date of the range (inclusive).
+     * @param to   The last date of the range (inclusive).
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
+     * @return A list of FrequencyResponse objects representing the TV shows ordered by frequency.
+     */
+    @GetMapping("/frequencyOrderedShows/{from}/{to}")
+    public ResponseEntity<List<FrequencyResponse>> getFrequencyOrderedShows(@PathVariable String from, @PathVariable String to, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getOrderedShowsByFrequency(from, to, offset, limitOrAll(limit)));
     }
 
     /**
@@ -75,22 +124,24 @@ public class TVProgramPlanController {
      *
      * @param date The date for which the most frequent TV shows are to be retrieved.
      * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of FrequencyResponse objects representing the most frequent TV shows of the specified type.
      */
     @GetMapping("/mostFrequantShowsOrderedShowsByType/{date}/{type}")
-    public List<FrequencyResponse> getMostFrequentShowsByShowType(@PathVariable String date, @PathVariable ShowType type) {
-        return epgService.getMostFrequentShowsByShowType(date,type);
+    public ResponseEntity<List<FrequencyResponse>> getMostFrequentShowsByShowType(@PathVariable String date, @PathVariable ShowType type, WebRequest request) {
+        return conditional(request, epgService.getMostFrequentShowsByShowType(date,type));
     }
 
     /**
      * Retrieves the most frequent TV shows of a specific type without specifying the date.
      *
      * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of FrequencyResponse objects representing the most frequent TV shows of the specified type.
      */
     @GetMapping("/mostFrequantShowsOrderedShowsByType/{type}")
-    public List<FrequencyResponse> getMostFrequentShowsByShowType(@PathVariable ShowType type) {
-        return epgService.getMostFrequentShowsByShowType(null,type);
+    public ResponseEntity<List<FrequencyResponse>> getMostFrequentShowsByShowType(@PathVariable ShowType type, WebRequest request) {
+        return conditional(request, epgService.getMostFrequentShowsByShowType(null,type));
     }
 
     /**
@@ -98,44 +149,326 @@ public class TVProgramPlanController {
      *
      * @param date The date for which the TV shows are to be retrieved.
      * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of FrequencyResponse objects representing the TV shows ordered by frequency for the specified type.
      */
     @GetMapping("/frequencyOrderedShowsByType/{date}/{type}")
-    public List<FrequencyResponse> getFrequencyOrderedShowsByType(@PathVariable String date, @PathVariable ShowType type) {
-        return epgService.getOrderedShowsByFrequencyByType(date,type);
+    public ResponseEntity<List<FrequencyResponse>> getFrequencyOrderedShowsByType(@PathVariable String date, @PathVariable ShowType type, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getOrderedShowsByFrequencyByType(date, type, offset, limitOrAll(limit)));
     }
 
     /**
      * Retrieves the TV shows of a specific type ordered by frequency without specifying the date.
      *
      * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of FrequencyResponse objects representing the TV shows ordered by frequency for the specified type.
      */
     @GetMapping("/frequencyOrderedShowsByType/{type}")
-    public List<FrequencyResponse> getFrequencyOrderedShowsByTypeWithoutDate(@PathVariable ShowType type) {
-        return epgService.getOrderedShowsByFrequencyByType(null,type);
+    public ResponseEntity<List<FrequencyResponse>> getFrequencyOrderedShowsByTypeWithoutDate(@PathVariable ShowType type, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getOrderedShowsByFrequencyByType(null, type, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Retrieves the TV shows of a specific type ordered by their frequency within the specified date range.
+     *
+     * @param from The first date of the range (inclusive).
+     * @param to   The last date of the range (inclusive).
+     * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
+     * @return A list of FrequencyResponse objects representing the TV shows ordered by frequency for the specified type.
+     */
+    @GetMapping("/frequencyOrderedShowsByType/{from}/{to}/{type}")
+    public ResponseEntity<List<FrequencyResponse>> getFrequencyOrderedShowsByType(@PathVariable String from, @PathVariable String to, @PathVariable ShowType type, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getOrderedShowsByFrequencyByType(from, to, type, offset, limitOrAll(limit)));
     }
 
     /**
      * Retrieves a list of series with their statuses based on the provided date.
      *
      * @param date The date for which series statuses are to be retrieved.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of StatusResponse objects representing series and their statuses.
      */
     @GetMapping("/SeriesByStatus/{date}")
-    public List<StatusResponse> getSeriesByStatus(@PathVariable String date) {
-        return epgService.getSeriesByStatus(date);
+    public ResponseEntity<List<StatusResponse>> getSeriesByStatus(@PathVariable String date, WebRequest request) {
+        return conditional(request, epgService.getSeriesByStatus(date));
     }
 
     /**
      * Retrieves a list of series with their statuses for the current date.
      * If no date is provided, the method retrieves series statuses for the current date.
      *
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
      * @return A list of StatusResponse objects representing series and their statuses.
      */
     @GetMapping("/SeriesByStatus")
-    public List<StatusResponse> getSeriesByStatus() {
-        return epgService.getSeriesByStatus(null);
+    public ResponseEntity<List<StatusResponse>> getSeriesByStatus(WebRequest request) {
+        return conditional(request, epgService.getSeriesByStatus(null));
+    }
+
+    /**
+     * Retrieves the TV shows starting within a time window of the specified date, with the number of their airings and
+     * their airtime within the window. Time-window queries are not answered conditionally, as the version of a day
+     * covers its frequencies but not the airing times.
+     *
+     * @param date The date of the window.
+     * @param from The start of the window, HH:mm.
+     * @param to The end of the window, HH:mm. An end not after the start is on the following day.
+     * @return A list of AirtimeResponse objects ordered by frequency and then by airtime.
+     */
+    @GetMapping("/showsInTimeWindow/{date}/{from}/{to}")
+    public ResponseEntity<List<AirtimeResponse>> getShowsInTimeWindow(@PathVariable String date, @PathVariable String from, @PathVariable String to) {
+        return unconditional(epgService.getShowsInTimeWindow(date, from, to, null));
+    }
+
+    /**
+     * Retrieves the TV shows of a specific type starting within a time window of the specified date.
+     *
+     * @param date The date of the window.
+     * @param from The start of the window, HH:mm.
+     * @param to The end of the window, HH:mm. An end not after the start is on the following day.
+     * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @return A list of AirtimeResponse objects ordered by frequency and then by airtime.
+     */
+    @GetMapping("/showsInTimeWindowByType/{date}/{from}/{to}/{type}")
+    public ResponseEntity<List<AirtimeResponse>> getShowsInTimeWindowByType(@PathVariable String date, @PathVariable String from, @PathVariable String to, @PathVariable ShowType type) {
+        return unconditional(epgService.getShowsInTimeWindow(date, from, to, type));
+    }
+
+    /**
+     * Retrieves the TV shows starting in prime time of the specified date.
+     *
+     * @param date The date for which the TV shows are to be retrieved.
+     * @return A list of AirtimeResponse objects ordered by frequency and then by airtime.
+     */
+    @GetMapping("/primeTimeShows/{date}")
+    public ResponseEntity<List<AirtimeResponse>> getPrimeTimeShows(@PathVariable String date) {
+        return unconditional(epgService.getPrimeTimeShows(date, null));
+    }
+
+    /**
+     * Retrieves the TV shows starting in prime time of the current date.
+     *
+     * @return A list of AirtimeResponse objects ordered by frequency and then by airtime.
+     */
+    @GetMapping("/primeTimeShows")
+    public ResponseEntity<List<AirtimeResponse>> getPrimeTimeShowsWithoutDate() {
+        return unconditional(epgService.getPrimeTimeShows(null, null));
+    }
+
+    /**
+     * Retrieves what airs at a time of the specified date.
+     *
+     * @param date The date.
+     * @param time The time of day, HH:mm. Times before the first airing of the date are on the following night.
+     * @return The EPG items airing at the time.
+     */
+    @GetMapping("/airingAt/{date}/{time}")
+    public ResponseEntity<List<Item>> getAiringAt(@PathVariable String date, @PathVariable String time) {
+        return unconditional(epgService.getAiringAt(date, time));
+    }
+
+    /**
+     * Searches the titles, episode titles and descriptions of the specified date and counts the matching airings per
+     * TV show. Searches are not answered conditionally, as the version of a day covers its frequencies but not its texts.
+     *
+     * @param date The date to search.
+     * @param query The search query. Every word matches the words starting with it, ignoring case and diacritics.
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @return A list of FrequencyResponse objects of the matching TV shows, ordered by their number of matching airings.
+     */
+    @GetMapping("/searchShows/{date}")
+    public ResponseEntity<List<FrequencyResponse>> searchShows(@PathVariable String date, @RequestParam("q") String query, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit) {
+        return unconditional(epgService.searchShows(date, query, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Searches the current date, see {@link #searchShows(String, String, int, Integer)}.
+     *
+     * @param query The search query.
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @return A list of FrequencyResponse objects of the matching TV shows, ordered by their number of matching airings.
+     */
+    @GetMapping("/searchShows")
+    public ResponseEntity<List<FrequencyResponse>> searchShows(@RequestParam("q") String query, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit) {
+        return unconditional(epgService.searchShows(null, query, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Searches all days of the specified date range, e.g. how often anything matching "Simpsons" aired in a month.
+     *
+     * @param from The first date of the range (inclusive).
+     * @param to   The last date of the range (inclusive).
+     * @param query The search query.
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @return A list of FrequencyResponse objects of the matching TV shows, ordered by their number of matching airings.
+     */
+    @GetMapping("/searchShows/{from}/{to}")
+    public ResponseEntity<List<FrequencyResponse>> searchShows(@PathVariable String from, @PathVariable String to, @RequestParam("q") String query, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit) {
+        return unconditional(epgService.searchShows(from, to, query, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Ranks the TV shows by how their frequency changed between the last days up to the specified date and the same
+     * number of days before.
+     *
+     * @param date The last day of the current period.
+     * @param days The length of the compared periods in days, 7 or 28. Defaults to 7.
+     * @param type The type of TV shows to rank. Defaults to all types.
+     * @param by The measure to rank by, DELTA or GROWTH. Defaults to DELTA.
+     * @param falling Whether the TV shows falling most come first. Defaults to the TV shows rising most.
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
+     * @return A list of TrendResponse objects with the airings of both periods, ordered by the measure.
+     */
+    @GetMapping("/trendingShows/{date}")
+    public ResponseEntity<List<TrendResponse>> getTrendingShows(@PathVariable String date, @RequestParam(defaultValue = "7") int days, @RequestParam(required = false) ShowType type, @RequestParam(defaultValue = "DELTA") TrendWindows.Measure by, @RequestParam(defaultValue = "false") boolean falling, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getTrendingShows(date, days, type, by, falling, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Ranks the TV shows by how their frequency changed up to the current date, see {@link #getTrendingShows(String, int, ShowType, TrendWindows.Measure, boolean, int, Integer, WebRequest)}.
+     *
+     * @param days The length of the compared periods in days, 7 or 28. Defaults to 7.
+     * @param type The type of TV shows to rank. Defaults to all types.
+     * @param by The measure to rank by, DELTA or GROWTH. Defaults to DELTA.
+     * @param falling Whether the TV shows falling most come first. Defaults to the TV shows rising most.
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
+     * @return A list of TrendResponse objects with the airings of both periods, ordered by the measure.
+     */
+    @GetMapping("/trendingShows")
+    public ResponseEntity<List<TrendResponse>> getTrendingShows(@RequestParam(defaultValue = "7") int days, @RequestParam(required = false) ShowType type, @RequestParam(defaultValue = "DELTA") TrendWindows.Measure by, @RequestParam(defaultValue = "false") boolean falling, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getTrendingShows(null, days, type, by, falling, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Lists the channels that can be queried.
+     *
+     * @return The domains of the channels.
+     */
+    @GetMapping("/channels")
+    public List<String> getChannels() {
+        return epgService.getChannels();
+    }
+
+    /**
+     * Retrieves the most frequent TV shows of several channels airing on the specified date.
+     *
+     * @param date The date for which the most frequent TV shows are to be retrieved.
+     * @param channels The channels to query. Defaults to all channels.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
+     * @return The most frequent TV shows per channel and combined, and the channels that did not answer.
+     */
+    @GetMapping("/channels/mostFrequantShows/{date}")
+    public ResponseEntity<ChannelFrequencyResponse> getMostFrequentShowsOfChannels(@PathVariable String date, @RequestParam(required = false) List<String> channels, WebRequest request) {
+        return conditional(request, epgService.getMostFrequentShowsOfChannels(date, channels));
+    }
+
+    /**
+     * Retrieves the TV shows of several channels ordered by frequency for the specified date.
+     *
+     * @param date The date for which the TV shows are to be retrieved.
+     * @param channels The channels to query. Defaults to all channels.
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
+     * @return The TV shows ordered by frequency per channel and combined, and the channels that did not answer.
+     */
+    @GetMapping("/channels/frequencyOrderedShows/{date}")
+    public ResponseEntity<ChannelFrequencyResponse> getFrequencyOrderedShowsOfChannels(@PathVariable String date, @RequestParam(required = false) List<String> channels, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getOrderedShowsByFrequencyOfChannels(date, channels, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Retrieves the TV shows of a specific type of several channels ordered by frequency for the specified date.
+     *
+     * @param date The date for which the TV shows are to be retrieved.
+     * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param channels The channels to query. Defaults to all channels.
+     * @param offset The number of leading TV shows to skip. Defaults to 0.
+     * @param limit The maximum number of TV shows to return. Defaults to all TV shows.
+     * @param request The request, answered with 304 Not Modified if its If-None-Match header holds the current version.
+     * @return The TV shows ordered by frequency per channel and combined, and the channels that did not answer.
+     */
+    @GetMapping("/channels/frequencyOrderedShowsByType/{date}/{type}")
+    public ResponseEntity<ChannelFrequencyResponse> getFrequencyOrderedShowsByTypeOfChannels(@PathVariable String date, @PathVariable ShowType type, @RequestParam(required = false) List<String> channels, @RequestParam(defaultValue = "0") int offset, @RequestParam(required = false) Integer limit, WebRequest request) {
+        return conditional(request, epgService.getOrderedShowsByFrequencyByTypeOfChannels(date, channels, type, offset, limitOrAll(limit)));
+    }
+
+    /**
+     * Answers many queries in one call. Each date is fetched once however many queries ask for it, and a query that
+     * fails is answered with its error without failing the others.
+     *
+     * @param queries The queries, at most 1000.
+     * @return The results in the order of the queries.
+     */
+    @PostMapping("/batch")
+    public List<BatchResult> getBatch(@RequestBody List<BatchQuery> queries) {
+        return epgService.getBatch(queries);
+    }
+
+    private static <T> ResponseEntity<T> conditional(WebRequest request, Versioned<T> answer) {
+        return ConditionalResponses.conditional(request.getHeader(HttpHeaders.IF_NONE_MATCH), answer);
+    }
+
+    private static <T> ResponseEntity<T> unconditional(Versioned<T> answer) {
+        return ConditionalResponses.unconditional(answer);
+    }
+
+    private static int limitOrAll(Integer limit) {
+        return ConditionalResponses.limitOrAll(limit);
+    }
+
+    /**
+     * Answers requests with invalid parameters, such as malformed or too long date ranges, with 400 Bad Request.
+     *
+     * @param e The exception describing the invalid parameter.
+     * @return The error message.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String handleIllegalArgument(IllegalArgumentException e) {
+        return e.getMessage();
+    }
+
+    /**
+     * Answers requests for queries that read item fields the configured {@code epg.client.query} does not request,
+     * e.g. the time-window queries with {@code frequencies}, with 501 Not Implemented instead of an empty result.
+     *
+     * @param e The exception naming the missing fields.
+     * @return The error message.
+     */
+    @ExceptionHandler(EPGProjectionException.class)
+    @ResponseStatus(HttpStatus.NOT_IMPLEMENTED)
+    public String handleProjection(EPGProjectionException e) {
+        return e.getMessage();
+    }
+
+    /**
+     * Answers requests for days that are not cached while the EPG API keeps failing with 503 Service Unavailable,
+     * telling the client when the API is tried again.
+     *
+     * @param e The exception rejecting the fetch.
+     * @return The error message.
+     */
+    @ExceptionHandler(EPGCircuitOpenException.class)
+    public ResponseEntity<String> handleCircuitOpen(EPGCircuitOpenException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().plusMillis(999).toSeconds()))
+                .body(e.getMessage());
     }
 
 }
@@ -0,0 +1,15 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.*;
+
+@lombok.Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AirtimeResponse {
+    private String title;
+    // The number of airings starting within the time window
+    private int frequency;
+    // The minutes of these airings within the time window
+    private long airtimeMinutes;
+}
@@ -0,0 +1,17 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.*;
+
+import java.util.Map;
+
+@lombok.Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ApiError {
+
+    private String message;
+    // E.g. the error code, see EPGQueryException
+    private Map<String, Object> extensions;
+
+}
@@ -2,6 +2,8 @@ package pro.sieben.sat.tv.program.plan.frequency.model;
 
 import lombok.*;
 
+import java.util.List;
+
 @lombok.Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -10,5 +12,7 @@ public class ApiResponse {
 
     private Data data;
     private Object extensions;
+    // The GraphQL errors, e.g. if the API does not know a persisted query
+    private List<ApiError> errors;
 
 }
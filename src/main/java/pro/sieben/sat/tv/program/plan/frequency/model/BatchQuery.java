@@ -0,0 +1,34 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+
+/**
+ * One query of a batch request: an operation on the TV shows of a date, optionally restricted to a type and paged.
+ */
+@lombok.Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BatchQuery {
+
+    public enum Operation {
+        // The most frequent TV show(s), like /mostFrequantShows and /mostFrequantShowsOrderedShowsByType
+        MOST_FREQUENT,
+        // The TV shows ordered by frequency, like /frequencyOrderedShows and /frequencyOrderedShowsByType
+        ORDERED,
+        // The series with their status, like /SeriesByStatus
+        SERIES_BY_STATUS
+    }
+
+    // An optional id echoed in the result, to correlate results with queries
+    private String id;
+    private Operation operation;
+    // The date (yyyy-MM-dd), today if null
+    private String date;
+    // The type of TV shows, all types if null
+    private ShowType type;
+    private Integer offset;
+    private Integer limit;
+}
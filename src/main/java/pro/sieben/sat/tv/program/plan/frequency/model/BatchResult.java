@@ -0,0 +1,28 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The result of one query of a batch request: either the result of the query or the reason it failed.
+ */
+@lombok.Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BatchResult {
+    private String id;
+    private List<?> result;
+    private String error;
+
+    public static BatchResult of(BatchQuery query, List<?> result) {
+        return new BatchResult(query.getId(), result, null);
+    }
+
+    public static BatchResult failed(BatchQuery query, String error) {
+        return new BatchResult(query.getId(), null, error);
+    }
+}
@@ -0,0 +1,22 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TV show frequencies of several channels: combined over all channels that answered and per channel.
+ * Channels that failed or did not answer in time are listed with the reason, the other results are complete.
+ */
+@lombok.Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ChannelFrequencyResponse {
+    private List<FrequencyResponse> combined;
+    private Map<String, List<FrequencyResponse>> channels;
+    private Map<String, String> failedChannels;
+}
@@ -0,0 +1,638 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A compact, columnar representation of the EPG of one day.
+ * TV shows (title and id), episode titles and descriptions are dictionary-encoded, every slot is stored as a column
+ * entry of int arrays (show, episode title, description, start and end time in epoch seconds) and the {@link ShowType}
+ * of each slot is kept in one bitset per type. Compared to a list of {@link Item} objects this needs a fraction of the
+ * heap, and aggregations run directly on the arrays. The slots are also indexed by start time, so the slots of a time
+ * window are found with a binary search, and by the words of their texts on the first search, see {@link SearchIndex}.
+ * Instances are immutable.
+ */
+public final class DaySchedule {
+
+    // The time value of slots without a start or end time
+    public static final int NO_TIME = Integer.MIN_VALUE;
+
+    private static final int NO_EPISODE = -1;
+
+    private static final int NO_DESCRIPTION = -1;
+
+    private final String[] showTitles;
+    private final String[] showIds;
+    private final String[] episodeTitles;
+    private final String[] descriptionTexts;
+
+    private final String[] itemIds;
+    private final int[] shows;
+    private final int[] episodes;
+    private final int[] descriptions;
+    private final int[] startTimes;
+    private final int[] endTimes;
+    private final BitSet[] types;
+    private final StartIndex startIndex;
+    // Built on the first search, as most days are never searched
+    private volatile SearchIndex searchIndex;
+
+    private DaySchedule(Builder builder) {
+        int size = builder.size;
+        this.showTitles = builder.showTitles.toArray(new String[0]);
+        this.showIds = builder.showIds.toArray(new String[0]);
+        this.episodeTitles = builder.episodeTitles.toArray(new String[0]);
+        this.descriptionTexts = builder.descriptionTexts.toArray(new String[0]);
+        this.itemIds = Arrays.copyOf(builder.itemIds, size);
+        this.shows = Arrays.copyOf(builder.shows, size);
+        this.episodes = Arrays.copyOf(builder.episodes, size);
+        this.descriptions = Arrays.copyOf(builder.descriptions, size);
+        this.startTimes = Arrays.copyOf(builder.startTimes, size);
+        this.endTimes = Arrays.copyOf(builder.endTimes, size);
+        this.types = new BitSet[ShowType.values().length];
+        for (ShowType type : ShowType.values()) {
+            this.types[type.ordinal()] = (BitSet) builder.types[type.ordinal()].clone();
+        }
+        this.startIndex = StartIndex.of(startTimes, endTimes);
+    }
+
+    /**
+     * Encodes the given EPG items.
+     *
+     * @param items The EPG items of a day, in the order they air.
+     * @return The DaySchedule of the items.
+     */
+    public static DaySchedule of(List<Item> items) {
+        Builder builder = builder();
+        for (Item item : items) {
+            builder.add(item.getId(), item.getTitle(), item.getTvShow().getTitle(), item.getTvShow().getId(),
+                    toEpochSecond(item.getStartTime()), toEpochSecond(item.getEndTime()), item.getDescription());
+        }
+        return builder.build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The number of slots of the day.
+     */
+    public int size() {
+        return shows.length;
+    }
+
+    /**
+     * Counts the frequencies of the TV shows, overall and per type, directly on the columns.
+     * TV shows are added to the frequency maps in the order of their first slot, like counting the items one by one would.
+     *
+     * @return The ShowFrequencies of the day.
+     */
+    public ShowFrequencies countFrequencies() {
+        ShowFrequencies showFrequencies = new ShowFrequencies();
+        int[] counts = new int[showTitles.length];
+        int[] firstSeen = new int[showTitles.length];
+
+        int seen = 0;
+        for (int show : shows) {
+            if (counts[show]++ == 0) {
+                firstSeen[seen++] = show;
+            }
+        }
+        for (int i = 0; i < seen; i++) {
+            showFrequencies.add(showTitles[firstSeen[i]], counts[firstSeen[i]]);
+        }
+
+        for (ShowType type : ShowType.values()) {
+            Arrays.fill(counts, 0);
+            seen = 0;
+            BitSet slots = types[type.ordinal()];
+            for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+                if (counts[shows[slot]]++ == 0) {
+                    firstSeen[seen++] = shows[slot];
+                }
+            }
+            for (int i = 0; i < seen; i++) {
+                showFrequencies.add(showTitles[firstSeen[i]], type, counts[firstSeen[i]]);
+            }
+        }
+        return showFrequencies;
+    }
+
+    /**
+     * @return The earliest start time of the day in epoch seconds, or {@link #NO_TIME} if no slot has a start time.
+     */
+    public int firstStartTime() {
+        return startIndex.startTimes.length == 0 ? NO_TIME : startIndex.startTimes[0];
+    }
+
+    /**
+     * @return The latest end time of the day in epoch seconds, or {@link #NO_TIME} if no slot has an end time.
+     */
+    public int lastEndTime() {
+        int last = NO_TIME;
+        for (int endTime : endTimes) {
+            last = Math.max(last, endTime);
+        }
+        return last;
+    }
+
+    /**
+     * Counts the airings starting within a time window and their airtime within the window, per TV show title.
+     * The airings are found with a binary search on the start times, so only the slots of the window are visited.
+     *
+     * @param from The start of the window in epoch seconds, inclusive.
+     * @param to   The end of the window in epoch seconds, exclusive.
+     * @param type The type of TV shows to count, all types if null.
+     * @return The TV shows ordered by frequency and then by airtime, ties in the order of their first airing.
+     */
+    public List<AirtimeResponse> countWindow(int from, int to, ShowType type) {
+        int[] slots = startIndex.slots;
+        int[] starts = startIndex.startTimes;
+        BitSet typeSlots = type == null ? null : types[type.ordinal()];
+
+        Map<String, AirtimeResponse> airtimes = new LinkedHashMap<>();
+        for (int i = startIndex.lowerBound(from), end = startIndex.lowerBound(to); i < end; i++) {
+            int slot = slots[i];
+            if (typeSlots != null && !typeSlots.get(slot)) {
+                continue;
+            }
+            AirtimeResponse airtime = airtimes.computeIfAbsent(showTitles[shows[slot]], title -> new AirtimeResponse(title, 0, 0));
+            airtime.setFrequency(airtime.getFrequency() + 1);
+            if (endTimes[slot] != NO_TIME) {
+                // Seconds for now, converted to minutes once all airings are added
+                airtime.setAirtimeMinutes(airtime.getAirtimeMinutes() + Math.max(Math.min(endTimes[slot], to) - starts[i], 0));
+            }
+        }
+
+        List<AirtimeResponse> ordered = new ArrayList<>(airtimes.values());
+        ordered.forEach(airtime -> airtime.setAirtimeMinutes(airtime.getAirtimeMinutes() / 60));
+        ordered.sort(Comparator.comparingInt(AirtimeResponse::getFrequency)
+                .thenComparingLong(AirtimeResponse::getAirtimeMinutes)
+                .reversed());
+        return ordered;
+    }
+
+    /**
+     * Finds the slots airing at a time, i.e. starting at or before it and ending after it. Only the slots that start
+     * at most the longest slot duration of the day before the time are visited.
+     *
+     * @param time The time in epoch seconds.
+     * @return The EPG items airing at the time, in the order they start.
+     */
+    public List<Item> airingAt(int time) {
+        int[] slots = startIndex.slots;
+        int[] starts = startIndex.startTimes;
+        List<Item> items = new ArrayList<>();
+        for (int i = startIndex.lowerBound(time + 1L) - 1; i >= 0 && (long) starts[i] >= (long) time - startIndex.maxDuration; i--) {
+            if (endTimes[slots[i]] != NO_TIME && endTimes[slots[i]] > time) {
+                items.add(toItem(slots[i]));
+            }
+        }
+        Collections.reverse(items);
+        return items;
+    }
+
+    /**
+     * Returns the inverted index over the episode titles, TV show titles and descriptions of the slots,
+     * building it on the first call.
+     *
+     * @return The SearchIndex of the day.
+     */
+    public SearchIndex searchIndex() {
+        SearchIndex index = searchIndex;
+        if (index == null) {
+            // Concurrent first searches may each build the index, they all build the same one
+            index = SearchIndex.of(showTitles, shows, episodeTitles, episodes, descriptionTexts, descriptions);
+            searchIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Compares this schedule with a previous schedule of the same day by item id and collects
+     * how the show frequencies change between the two. Only slots that were added, removed or now belong
+     * to a different TV show or type contribute to the changes; all other slots are skipped.
+     * Refreshed schedules usually keep the order of their slots, so the leading slots with the same ids are compared
+     * in place and only the rest is matched through a map of ids. Slots without an id, or with an id that has
+     * already been matched, count as added.
+     *
+     * @param previous The previously fetched schedule of the day.
+     * @return The diff of the two schedules.
+     */
+    public Diff diff(DaySchedule previous) {
+        // Each TV show is mapped to the first show of the previous dictionary with the same title, -1 if there is none
+        Map<String, Integer> previousShowsByTitle = new HashMap<>();
+        for (int show = 0; show < previous.showTitles.length; show++) {
+            previousShowsByTitle.putIfAbsent(previous.showTitles[show], show);
+        }
+        int[] previousShows = new int[previous.showTitles.length];
+        for (int show = 0; show < previousShows.length; show++) {
+            previousShows[show] = previousShowsByTitle.get(previous.showTitles[show]);
+        }
+        int[] currentShows = new int[showTitles.length];
+        for (int show = 0; show < currentShows.length; show++) {
+            currentShows[show] = previousShowsByTitle.getOrDefault(showTitles[show], -1);
+        }
+
+        ShowFrequencies changes = new ShowFrequencies();
+        int added = 0;
+        int modified = 0;
+
+        int common = 0;
+        int aligned = Math.min(size(), previous.size());
+        while (common < aligned && itemIds[common] != null && itemIds[common].equals(previous.itemIds[common])) {
+            if (currentShows[shows[common]] != previousShows[previous.shows[common]] || typeOf(common) != previous.typeOf(common)) {
+                modified++;
+                previous.countSlot(changes, common, -1);
+                countSlot(changes, common, 1);
+            }
+            common++;
+        }
+
+        Map<String, Integer> previousSlots = new HashMap<>();
+        for (int previousSlot = common; previousSlot < previous.size(); previousSlot++) {
+            if (previous.itemIds[previousSlot] != null) {
+                previousSlots.putIfAbsent(previous.itemIds[previousSlot], previousSlot);
+            }
+        }
+        boolean[] matched = new boolean[previous.size()];
+        for (int slot = common; slot < size(); slot++) {
+            Integer previousSlot = itemIds[slot] == null ? null : previousSlots.get(itemIds[slot]);
+            if (previousSlot == null || matched[previousSlot]) {
+                added++;
+                countSlot(changes, slot, 1);
+            } else {
+                matched[previousSlot] = true;
+                if (currentShows[shows[slot]] != previousShows[previous.shows[previousSlot]] || typeOf(slot) != previous.typeOf(previousSlot)) {
+                    modified++;
+                    previous.countSlot(changes, previousSlot, -1);
+                    countSlot(changes, slot, 1);
+                }
+            }
+        }
+
+        int removed = 0;
+        for (int previousSlot = common; previousSlot < previous.size(); previousSlot++) {
+            if (!matched[previousSlot]) {
+                removed++;
+                previous.countSlot(changes, previousSlot, -1);
+            }
+        }
+        return new Diff(added, removed, modified, changes);
+    }
+
+    private void countSlot(ShowFrequencies changes, int slot, int count) {
+        String showTitle = showTitles[shows[slot]];
+        changes.add(showTitle, count);
+        ShowType type = typeOf(slot);
+        if (type != null) {
+            changes.add(showTitle, type, count);
+        }
+    }
+
+    private ShowType typeOf(int slot) {
+        for (ShowType type : ShowType.values()) {
+            if (types[type.ordinal()].get(slot)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the slots back to Item objects. Episode and season numbers are not part of the schedule and stay empty.
+     *
+     * @return The EPG items of the day.
+     */
+    public List<Item> toItems() {
+        List<Item> items = new ArrayList<>(size());
+        for (int slot = 0; slot < size(); slot++) {
+            items.add(toItem(slot));
+        }
+        return items;
+    }
+
+    private String episodeTitleOf(int slot) {
+        return episodes[slot] == NO_EPISODE ? null : episodeTitles[episodes[slot]];
+    }
+
+    private String descriptionOf(int slot) {
+        return descriptions[slot] == NO_DESCRIPTION ? null : descriptionTexts[descriptions[slot]];
+    }
+
+    private Item toItem(int slot) {
+        return Item.builder()
+                .id(itemIds[slot])
+                .title(episodeTitleOf(slot))
+                .description(descriptionOf(slot))
+                .startTime(toDate(startTimes[slot]))
+                .endTime(toDate(endTimes[slot]))
+                .tvShow(new TvShow(showTitles[shows[slot]], showIds[shows[slot]]))
+                .build();
+    }
+
+    /**
+     * Writes the dictionaries and columns of the schedule in a compact binary form.
+     *
+     * @param out The output to write to.
+     * @throws IOException If the output cannot be written.
+     * @see #readFrom(ByteBuffer)
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        writeStrings(out, showTitles);
+        writeStrings(out, showIds);
+        writeStrings(out, episodeTitles);
+        writeStrings(out, descriptionTexts);
+        writeStrings(out, itemIds);
+        writeInts(out, shows);
+        writeInts(out, episodes);
+        writeInts(out, descriptions);
+        writeInts(out, startTimes);
+        writeInts(out, endTimes);
+        for (BitSet type : types) {
+            long[] words = type.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    /**
+     * Reads a schedule written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The buffer to read from, positioned at the start of the schedule.
+     * @return The DaySchedule read from the buffer.
+     * @throws IllegalArgumentException If the buffer does not contain a consistent schedule.
+     */
+    public static DaySchedule readFrom(ByteBuffer in) {
+        try {
+            return new DaySchedule(readStrings(in), readStrings(in), readStrings(in), readStrings(in), readStrings(in),
+                    readInts(in), readInts(in), readInts(in), readInts(in), readInts(in), readTypes(in));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid schedule data", e);
+        }
+    }
+
+    private DaySchedule(String[] showTitles, String[] showIds, String[] episodeTitles, String[] descriptionTexts,
+                        String[] itemIds, int[] shows, int[] episodes, int[] descriptions, int[] startTimes, int[] endTimes,
+                        BitSet[] types) {
+        int size = shows.length;
+        if (showIds.length != showTitles.length || itemIds.length != size || episodes.length != size
+                || descriptions.length != size || startTimes.length != size || endTimes.length != size) {
+            throw new IllegalArgumentException("Columns of different length");
+        }
+        for (int slot = 0; slot < size; slot++) {
+            Objects.checkIndex(shows[slot], showTitles.length);
+            if (episodes[slot] != NO_EPISODE) {
+                Objects.checkIndex(episodes[slot], episodeTitles.length);
+            }
+            if (descriptions[slot] != NO_DESCRIPTION) {
+                Objects.checkIndex(descriptions[slot], descriptionTexts.length);
+            }
+        }
+        this.showTitles = showTitles;
+        this.showIds = showIds;
+        this.episodeTitles = episodeTitles;
+        this.descriptionTexts = descriptionTexts;
+        this.itemIds = itemIds;
+        this.shows = shows;
+        this.episodes = episodes;
+        this.descriptions = descriptions;
+        this.startTimes = startTimes;
+        this.endTimes = endTimes;
+        this.types = types;
+        this.startIndex = StartIndex.of(startTimes, endTimes);
+    }
+
+    private static void writeStrings(DataOutput out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values) {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static void writeInts(DataOutput out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer in) {
+        String[] values = new String[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            int length = in.getInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                in.get(bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    private static BitSet[] readTypes(ByteBuffer in) {
+        BitSet[] types = new BitSet[ShowType.values().length];
+        for (int i = 0; i < types.length; i++) {
+            long[] words = new long[in.getInt()];
+            in.asLongBuffer().get(words);
+            in.position(in.position() + words.length * Long.BYTES);
+            types[i] = BitSet.valueOf(words);
+        }
+        return types;
+    }
+
+    private static int toEpochSecond(Date date) {
+        return date == null ? NO_TIME : Math.toIntExact(date.getTime() / 1000);
+    }
+
+    private static Date toDate(int epochSecond) {
+        return epochSecond == NO_TIME ? null : new Date(epochSecond * 1000L);
+    }
+
+    /**
+     * The slots that have a start time, sorted by start time. Derived from the columns, so it is not serialized.
+     */
+    private static final class StartIndex {
+        // The slots in the order of their start times
+        private final int[] slots;
+        // The start times of these slots, ascending
+        private final int[] startTimes;
+        // The longest duration of a slot in seconds, 0 if no slot has both a start and an end time
+        private final long maxDuration;
+
+        private StartIndex(int[] slots, int[] startTimes, long maxDuration) {
+            this.slots = slots;
+            this.startTimes = startTimes;
+            this.maxDuration = maxDuration;
+        }
+
+        static StartIndex of(int[] startTimes, int[] endTimes) {
+            // Slots mostly arrive in airing order already, so sorting (start, slot) pairs is close to linear
+            long[] keys = new long[startTimes.length];
+            int size = 0;
+            long maxDuration = 0;
+            for (int slot = 0; slot < startTimes.length; slot++) {
+                if (startTimes[slot] != NO_TIME) {
+                    keys[size++] = (long) startTimes[slot] << 32 | slot;
+                    if (endTimes[slot] != NO_TIME) {
+                        maxDuration = Math.max(maxDuration, (long) endTimes[slot] - startTimes[slot]);
+                    }
+                }
+            }
+            Arrays.sort(keys, 0, size);
+            int[] slots = new int[size];
+            int[] starts = new int[size];
+            for (int i = 0; i < size; i++) {
+                slots[i] = (int) keys[i];
+                starts[i] = (int) (keys[i] >> 32);
+            }
+            return new StartIndex(slots, starts, maxDuration);
+        }
+
+        /**
+         * @return The index of the first slot starting at or after the time, the number of slots if there is none.
+         */
+        int lowerBound(long time) {
+            int low = 0;
+            int high = startTimes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (startTimes[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * The difference between two schedules of the same day.
+     *
+     * @param added            The number of slots whose id was not part of the previous schedule.
+     * @param removed          The number of previous slots whose id is no longer part of the schedule.
+     * @param modified         The number of slots that now belong to a different TV show or type.
+     * @param frequencyChanges The signed changes of the show frequencies caused by these slots.
+     */
+    public record Diff(int added, int removed, int modified, ShowFrequencies frequencyChanges) {
+
+        /**
+         * @return The number of slots that changed the show frequencies.
+         */
+        public int size() {
+            return added + removed + modified;
+        }
+    }
+
+    /**
+     * Collects the slots of a day in airing order and encodes them.
+     */
+    public static final class Builder {
+        private final Map<ShowKey, Integer> showDictionary = new HashMap<>();
+        private final Map<String, Integer> episodeDictionary = new HashMap<>();
+        private final Map<String, Integer> descriptionDictionary = new HashMap<>();
+        private final List<String> showTitles = new ArrayList<>();
+        private final List<String> showIds = new ArrayList<>();
+        private final List<String> episodeTitles = new ArrayList<>();
+        private final List<String> descriptionTexts = new ArrayList<>();
+
+        private int size;
+        private String[] itemIds = new String[64];
+        private int[] shows = new int[64];
+        private int[] episodes = new int[64];
+        private int[] descriptions = new int[64];
+        private int[] startTimes = new int[64];
+        private int[] endTimes = new int[64];
+        private final BitSet[] types = new BitSet[ShowType.values().length];
+
+        private Builder() {
+            for (ShowType type : ShowType.values()) {
+                types[type.ordinal()] = new BitSet();
+            }
+        }
+
+        /**
+         * Adds the next slot of the day, without a description.
+         *
+         * @see #add(String, String, String, String, int, int, String)
+         */
+        public Builder add(String id, String title, String showTitle, String showId, int startTime, int endTime) {
+            return add(id, title, showTitle, showId, startTime, endTime, null);
+        }
+
+        /**
+         * Adds the next slot of the day.
+         *
+         * @param id          The id of the EPG item.
+         * @param title       The episode title, null if the slot is not an episode of a series.
+         * @param showTitle   The title of the TV show.
+         * @param showId      The id of the TV show, null for movies.
+         * @param startTime   The start of the slot in epoch seconds, or {@link #NO_TIME}.
+         * @param endTime     The end of the slot in epoch seconds, or {@link #NO_TIME}.
+         * @param description The description of the EPG item, or null.
+         * @return This builder.
+         */
+        public Builder add(String id, String title, String showTitle, String showId, int startTime, int endTime,
+                           String description) {
+            if (size == shows.length) {
+                int capacity = size * 2;
+                itemIds = Arrays.copyOf(itemIds, capacity);
+                shows = Arrays.copyOf(shows, capacity);
+                episodes = Arrays.copyOf(episodes, capacity);
+                descriptions = Arrays.copyOf(descriptions, capacity);
+                startTimes = Arrays.copyOf(startTimes, capacity);
+                endTimes = Arrays.copyOf(endTimes, capacity);
+            }
+
+            itemIds[size] = id;
+            shows[size] = showDictionary.computeIfAbsent(new ShowKey(showTitle, showId), key -> {
+                showTitles.add(key.title());
+                showIds.add(key.id());
+                return showTitles.size() - 1;
+            });
+            episodes[size] = title == null ? NO_EPISODE : episodeDictionary.computeIfAbsent(title, key -> {
+                episodeTitles.add(key);
+                return episodeTitles.size() - 1;
+            });
+            descriptions[size] = description == null ? NO_DESCRIPTION : descriptionDictionary.computeIfAbsent(description, key -> {
+                descriptionTexts.add(key);
+                return descriptionTexts.size() - 1;
+            });
+            startTimes[size] = startTime;
+            endTimes[size] = endTime;
+            ShowType type = ShowType.of(title, showId);
+            if (type != null) {
+                types[type.ordinal()].set(size);
+            }
+            size++;
+            return this;
+        }
+
+        public DaySchedule build() {
+            return new DaySchedule(this);
+        }
+
+        private record ShowKey(String title, String id) {
+        }
+    }
+}
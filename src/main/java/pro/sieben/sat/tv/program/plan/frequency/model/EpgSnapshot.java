@@ -0,0 +1,86 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * An immutable view of the EPG fetched for a single date.
+ * The slots are kept in a compact {@link DaySchedule} and their show frequencies are indexed once when the snapshot is created.
+ * A refreshed snapshot derives its index from the previous snapshot of the date, only applying the slots that changed.
+ * A snapshot served because a newer one could not be fetched is marked as stale, see {@link #asStale()}.
+ */
+@Getter
+@AllArgsConstructor
+public class EpgSnapshot {
+
+    private final String date;
+    private final DaySchedule schedule;
+    private final FrequencyIndex frequencyIndex;
+    private final Instant fetchedAt;
+    // The number of slots whose changes had to be applied to the index, all slots if it has been built from scratch
+    private final int changedSlots;
+    // Whether the snapshot is served because the EPG API could not be reached, although it should have been fetched again
+    private final boolean stale;
+
+    public EpgSnapshot(String date, DaySchedule schedule, FrequencyIndex frequencyIndex, Instant fetchedAt, int changedSlots) {
+        this(date, schedule, frequencyIndex, fetchedAt, changedSlots, false);
+    }
+
+    /**
+     * @return The content hash of the indexed frequencies, unchanged by refreshes that do not change any frequency.
+     */
+    public long getVersion() {
+        return frequencyIndex.getVersion();
+    }
+
+    /**
+     * @return This snapshot marked as stale, sharing its schedule and index.
+     */
+    public EpgSnapshot asStale() {
+        return stale ? this : new EpgSnapshot(date, schedule, frequencyIndex, fetchedAt, changedSlots, true);
+    }
+
+    /**
+     * Creates a snapshot of the given day schedule, indexing its show frequencies.
+     *
+     * @param date      The date the schedule belongs to.
+     * @param schedule  The schedule of the date.
+     * @param fetchedAt The time the schedule has been fetched.
+     * @return The EpgSnapshot of the schedule.
+     */
+    public static EpgSnapshot of(String date, DaySchedule schedule, Instant fetchedAt) {
+        return new EpgSnapshot(date, schedule, FrequencyIndex.of(schedule.countFrequencies()), fetchedAt, schedule.size());
+    }
+
+    /**
+     * Creates the snapshot of a refreshed schedule of the same date. The schedule is diffed against the previous one
+     * by item id and only the frequencies of the changed slots are applied to the previous index.
+     *
+     * @param previous  The previous snapshot of the date.
+     * @param schedule  The refreshed schedule of the date.
+     * @param fetchedAt The time the schedule has been fetched.
+     * @return The EpgSnapshot of the refreshed schedule.
+     */
+    public static EpgSnapshot update(EpgSnapshot previous, DaySchedule schedule, Instant fetchedAt) {
+        DaySchedule.Diff diff = schedule.diff(previous.getSchedule());
+        FrequencyIndex frequencyIndex = diff.size() == 0
+                ? previous.getFrequencyIndex()
+                : previous.getFrequencyIndex().update(diff.frequencyChanges());
+        return new EpgSnapshot(previous.getDate(), schedule, frequencyIndex, fetchedAt, diff.size());
+    }
+
+    /**
+     * Creates a snapshot of the given EPG items, encoding them into a DaySchedule.
+     *
+     * @param date      The date the items belong to.
+     * @param items     The EPG items of the date.
+     * @param fetchedAt The time the items have been fetched.
+     * @return The EpgSnapshot of the items.
+     */
+    public static EpgSnapshot of(String date, List<Item> items, Instant fetchedAt) {
+        return of(date, DaySchedule.of(items), fetchedAt);
+    }
+}
@@ -0,0 +1,327 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import java.util.*;
+
+/**
+ * An immutable, precomputed view of the show frequencies of one EPG snapshot.
+ * It is built once per snapshot and holds, overall and per {@link ShowType}, the frequency map,
+ * the TV shows ordered by frequency and the most frequent TV show(s), so it can be shared by all request threads.
+ * The returned lists are shared and must not be modified.
+ */
+public final class FrequencyIndex {
+
+    /**
+     * The order of ranked TV shows: by frequency in descending order, ties broken by title,
+     * so pages taken from a ranking are stable.
+     */
+    public static final Comparator<FrequencyResponse> ORDER = Comparator
+            .comparingInt(FrequencyResponse::getFrequency).reversed()
+            .thenComparing(FrequencyResponse::getTitle, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Ranking all;
+    private final Map<ShowType, Ranking> byType = new EnumMap<>(ShowType.class);
+    private final long version;
+
+    private FrequencyIndex(ShowFrequencies showFrequencies) {
+        this.all = new Ranking(showFrequencies.getFrequencies());
+        for (ShowType type : ShowType.values()) {
+            byType.put(type, new Ranking(showFrequencies.getFrequencies(type)));
+        }
+        this.version = versionOf(all, byType);
+    }
+
+    private FrequencyIndex(FrequencyIndex previous, ShowFrequencies changes) {
+        this.all = new Ranking(previous.all, changes.getFrequencies());
+        for (ShowType type : ShowType.values()) {
+            byType.put(type, new Ranking(previous.byType.get(type), changes.getFrequencies(type)));
+        }
+        this.version = versionOf(all, byType);
+    }
+
+    /**
+     * Builds the index of the given show frequencies.
+     *
+     * @param showFrequencies The counted show frequencies of a snapshot.
+     * @return The FrequencyIndex of the frequencies.
+     */
+    public static FrequencyIndex of(ShowFrequencies showFrequencies) {
+        return new FrequencyIndex(showFrequencies);
+    }
+
+    /**
+     * Derives the index of a refreshed snapshot from this one. Only the TV shows whose frequency changed are hashed
+     * and sorted again; they are merged into the other entries of the rankings, which keep their order.
+     * The maps and rankings are still copied, so the work is linear in the number of TV shows, but it avoids
+     * recounting the day and sorting the whole ranking.
+     * The result equals an index built from the refreshed frequencies with {@link #of(ShowFrequencies)}.
+     *
+     * @param changes The signed changes of the show frequencies, e.g. from {@link DaySchedule#diff(DaySchedule)}.
+     * @return The FrequencyIndex with the changes applied.
+     */
+    public FrequencyIndex update(ShowFrequencies changes) {
+        return new FrequencyIndex(this, changes);
+    }
+
+    /**
+     * Returns a hash of the indexed frequencies. Indexes with the same frequencies, overall and per type, have the same
+     * version however they have been built, so every response derived from the index can be identified by it.
+     *
+     * @return The content hash of the index.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return A map containing TV show titles as keys and their frequencies as values.
+     */
+    public Map<String, Integer> getFrequencies() {
+        return all.frequencies;
+    }
+
+    /**
+     * @param type The type of TV shows.
+     * @return A map containing TV show titles as keys and their frequencies as values for the specified type.
+     */
+    public Map<String, Integer> getFrequencies(ShowType type) {
+        return byType.get(type).frequencies;
+    }
+
+    /**
+     * @return The TV shows ordered by frequency in descending order.
+     */
+    public List<FrequencyResponse> getOrdered() {
+        return all.ordered;
+    }
+
+    /**
+     * @param type The type of TV shows.
+     * @return The TV shows of the specified type ordered by frequency in descending order.
+     */
+    public List<FrequencyResponse> getOrdered(ShowType type) {
+        return byType.get(type).ordered;
+    }
+
+    /**
+     * @return The most frequent TV show(s).
+     */
+    public List<FrequencyResponse> getMostFrequent() {
+        return all.mostFrequent;
+    }
+
+    /**
+     * @param type The type of TV shows.
+     * @return The most frequent TV show(s) of the specified type.
+     */
+    public List<FrequencyResponse> getMostFrequent(ShowType type) {
+        return byType.get(type).mostFrequent;
+    }
+
+    /**
+     * Returns a page of an already ordered list without copying it.
+     *
+     * @param ordered The ordered list.
+     * @param offset  The number of leading entries to skip.
+     * @param limit   The maximum number of entries to return.
+     * @return A view of the requested page.
+     */
+    public static List<FrequencyResponse> page(List<FrequencyResponse> ordered, int offset, int limit) {
+        checkPage(offset, limit);
+        int from = Math.min(offset, ordered.size());
+        int to = (int) Math.min((long) from + limit, ordered.size());
+        return ordered.subList(from, to);
+    }
+
+    /**
+     * Selects a page of the TV shows ranked by {@link #ORDER} from a frequency map without sorting the whole map.
+     * Only the best {@code offset + limit} entries are kept in a bounded heap, which is then sorted.
+     *
+     * @param frequencies A map containing TV show titles as keys and their frequencies as values.
+     * @param offset      The number of leading entries to skip.
+     * @param limit       The maximum number of entries to return.
+     * @return The requested page of the ranking.
+     */
+    public static List<FrequencyResponse> top(Map<String, Integer> frequencies, int offset, int limit) {
+        checkPage(offset, limit);
+        long wanted = (long) offset + limit;
+        if (wanted >= frequencies.size()) {
+            return page(Ranking.order(frequencies), offset, limit);
+        }
+
+        int capacity = (int) wanted;
+        // The head of the heap is the worst entry kept so far
+        PriorityQueue<FrequencyResponse> heap = new PriorityQueue<>(capacity + 1, ORDER.reversed());
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            FrequencyResponse candidate = new FrequencyResponse(entry.getKey(), entry.getValue());
+            if (heap.size() < capacity) {
+                heap.add(candidate);
+            } else if (capacity > 0 && ORDER.compare(candidate, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+
+        List<FrequencyResponse> best = new ArrayList<>(heap);
+        best.sort(ORDER);
+        return page(best, offset, limit);
+    }
+
+    /**
+     * Collects the TV show(s) with the highest frequency of a frequency map.
+     *
+     * @param frequencies A map containing TV show titles as keys and their frequencies as values.
+     * @return The most frequent TV show(s) and their frequency.
+     */
+    public static List<FrequencyResponse> mostFrequent(Map<String, Integer> frequencies) {
+        List<FrequencyResponse> mostFrequent = Ranking.mostFrequent(frequencies);
+        mostFrequent.sort(ORDER);
+        return mostFrequent;
+    }
+
+    private static long versionOf(Ranking all, Map<ShowType, Ranking> byType) {
+        long version = all.hash;
+        for (Ranking ranking : byType.values()) {
+            version = 31 * version + ranking.hash;
+        }
+        return version;
+    }
+
+    private static void checkPage(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+    }
+
+    private static final class Ranking {
+        private final Map<String, Integer> frequencies;
+        private final List<FrequencyResponse> ordered;
+        private final List<FrequencyResponse> mostFrequent;
+        // The sum of the hashes of all entries, so it can be updated entry by entry
+        private final long hash;
+
+        private Ranking(Map<String, Integer> frequencies) {
+            // Copied in iteration order, as the given map may be a view of the ShowFrequencies still being counted
+            this.frequencies = Collections.unmodifiableMap(new LinkedHashMap<>(frequencies));
+            this.ordered = Collections.unmodifiableList(order(frequencies));
+            this.mostFrequent = leading(ordered);
+            long hash = 0;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                hash += entryHash(entry.getKey(), entry.getValue());
+            }
+            this.hash = hash;
+        }
+
+        /**
+         * Applies the changes to a previous ranking. The changed TV shows are sorted on their own and merged with the
+         * unchanged entries of the previous ranking in one pass, so an update costs O(n + k log k) for n TV shows of
+         * which k changed, instead of O(n log n) for sorting them all again.
+         */
+        private Ranking(Ranking previous, Map<String, Integer> changes) {
+            Map<String, Integer> frequencies = new HashMap<>(previous.frequencies);
+            Set<String> changed = new HashSet<>();
+            List<FrequencyResponse> updated = new ArrayList<>();
+            long hash = previous.hash;
+            for (Map.Entry<String, Integer> change : changes.entrySet()) {
+                if (change.getValue() == 0) {
+                    continue;
+                }
+                String title = change.getKey();
+                changed.add(title);
+                Integer frequency = frequencies.remove(title);
+                if (frequency != null) {
+                    hash -= entryHash(title, frequency);
+                }
+                int count = (frequency == null ? 0 : frequency) + change.getValue();
+                if (count > 0) {
+                    frequencies.put(title, count);
+                    updated.add(new FrequencyResponse(title, count));
+                    hash += entryHash(title, count);
+                }
+            }
+            updated.sort(ORDER);
+
+            List<FrequencyResponse> ordered = new ArrayList<>(frequencies.size());
+            int next = 0;
+            for (FrequencyResponse entry : previous.ordered) {
+                if (changed.contains(entry.getTitle())) {
+                    continue;
+                }
+                while (next < updated.size() && ORDER.compare(updated.get(next), entry) < 0) {
+                    ordered.add(updated.get(next++));
+                }
+                ordered.add(entry);
+            }
+            ordered.addAll(updated.subList(next, updated.size()));
+
+            this.frequencies = Collections.unmodifiableMap(frequencies);
+            this.ordered = Collections.unmodifiableList(ordered);
+            this.mostFrequent = leading(this.ordered);
+            this.hash = hash;
+        }
+
+        /**
+         * Hashes a TV show and its frequency with 64-bit FNV-1a, finished with the MurmurHash3 mixer
+         * so that the sum of the entry hashes stays well distributed.
+         */
+        private static long entryHash(String title, int frequency) {
+            long hash = 0xcbf29ce484222325L;
+            if (title != null) {
+                for (int i = 0; i < title.length(); i++) {
+                    hash = (hash ^ title.charAt(i)) * 0x100000001b3L;
+                }
+            }
+            hash = (hash ^ frequency) * 0x100000001b3L;
+            hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+            hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            return hash ^ (hash >>> 33);
+        }
+
+        /**
+         * Returns the leading entries of a ranking that share the highest frequency.
+         */
+        private static List<FrequencyResponse> leading(List<FrequencyResponse> ordered) {
+            int end = 0;
+            while (end < ordered.size() && ordered.get(end).getFrequency() == ordered.get(0).getFrequency()) {
+                end++;
+            }
+            return ordered.subList(0, end);
+        }
+
+        /**
+         * Converts a map of TV show frequencies to a list of FrequencyResponse objects ordered by {@link #ORDER}.
+         */
+        private static List<FrequencyResponse> order(Map<String, Integer> frequencies) {
+            List<FrequencyResponse> frequencyResponses = new ArrayList<>(frequencies.size());
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                frequencyResponses.add(new FrequencyResponse(entry.getKey(), entry.getValue()));
+            }
+            frequencyResponses.sort(ORDER);
+            return frequencyResponses;
+        }
+
+        /**
+         * Collects the TV show(s) with the highest frequency.
+         */
+        private static List<FrequencyResponse> mostFrequent(Map<String, Integer> frequencies) {
+            List<String> mostFrequentShows = new ArrayList<>();
+            int maxFrequency = 0;
+
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                int frequency = entry.getValue();
+                if (frequency > maxFrequency) {
+                    maxFrequency = frequency;
+                    mostFrequentShows.clear();
+                    mostFrequentShows.add(entry.getKey());
+                } else if (frequency == maxFrequency) {
+                    mostFrequentShows.add(entry.getKey());
+                }
+            }
+
+            List<FrequencyResponse> frequencyResponses = new ArrayList<>(mostFrequentShows.size());
+            for (String mostFrequentShow : mostFrequentShows) {
+                frequencyResponses.add(new FrequencyResponse(mostFrequentShow, maxFrequency));
+            }
+            return frequencyResponses;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * An inverted index over the texts of the slots of one {@link DaySchedule}: episode titles, TV show titles and
+ * descriptions. Every word is folded to lower case without diacritics, so "Anfänger" is found as "anfänger" and
+ * "anfanger"; words with German umlauts or ß are also indexed transliterated, so it is found as "anfaenger" as well.
+ * The terms are sorted, so the terms starting with a prefix are a contiguous range found with a binary search,
+ * and each term holds the ascending list of the slots whose texts contain it. Instances are immutable.
+ */
+public final class SearchIndex {
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{M}\\p{N}]+");
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private static final int[] NO_SLOTS = new int[0];
+
+    // The folded words of all texts, sorted
+    private final String[] terms;
+    // The slots whose texts contain each term, ascending
+    private final int[][] postings;
+    // The columns of the schedule the matches are counted on, shared with it
+    private final String[] showTitles;
+    private final int[] shows;
+
+    private SearchIndex(String[] terms, int[][] postings, String[] showTitles, int[] shows) {
+        this.terms = terms;
+        this.postings = postings;
+        this.showTitles = showTitles;
+        this.shows = shows;
+    }
+
+    /**
+     * Indexes the texts of a schedule. Every distinct text of the dictionaries is split into words only once.
+     */
+    static SearchIndex of(String[] showTitles, int[] shows, String[] episodeTitles, int[] episodes,
+                          String[] descriptionTexts, int[] descriptions) {
+        List<Set<String>> showTerms = termsOf(showTitles);
+        List<Set<String>> episodeTerms = termsOf(episodeTitles);
+        List<Set<String>> descriptionTerms = termsOf(descriptionTexts);
+
+        Map<String, Postings> index = new HashMap<>();
+        for (int slot = 0; slot < shows.length; slot++) {
+            addSlot(index, showTerms.get(shows[slot]), slot);
+            if (episodes[slot] >= 0) {
+                addSlot(index, episodeTerms.get(episodes[slot]), slot);
+            }
+            if (descriptions[slot] >= 0) {
+                addSlot(index, descriptionTerms.get(descriptions[slot]), slot);
+            }
+        }
+
+        String[] terms = index.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            postings[i] = index.get(terms[i]).toArray();
+        }
+        return new SearchIndex(terms, postings, showTitles, shows);
+    }
+
+    private static List<Set<String>> termsOf(String[] texts) {
+        List<Set<String>> terms = new ArrayList<>(texts.length);
+        for (String text : texts) {
+            terms.add(termsOf(text));
+        }
+        return terms;
+    }
+
+    private static void addSlot(Map<String, Postings> index, Set<String> terms, int slot) {
+        for (String term : terms) {
+            index.computeIfAbsent(term, key -> new Postings()).add(slot);
+        }
+    }
+
+    /**
+     * Splits a text into its folded words, including the transliterations of words with umlauts.
+     *
+     * @param text The text, may be null.
+     * @return The distinct terms of the text.
+     */
+    static Set<String> termsOf(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : wordsOf(text)) {
+            terms.add(fold(word));
+            String transliterated = transliterate(word);
+            if (!transliterated.equals(word)) {
+                terms.add(fold(transliterated));
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Splits a search query into the folded prefixes it is matched with.
+     *
+     * @param query The search query, e.g. "Scrubs Anfänger".
+     * @return The distinct folded words of the query, empty if it has none.
+     */
+    public static List<String> prefixesOf(String query) {
+        Set<String> prefixes = new LinkedHashSet<>();
+        for (String word : wordsOf(query)) {
+            prefixes.add(fold(word));
+        }
+        return List.copyOf(prefixes);
+    }
+
+    private static List<String> wordsOf(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        return Arrays.stream(WORD_SEPARATOR.split(normalized)).filter(word -> !word.isEmpty()).toList();
+    }
+
+    private static String fold(String word) {
+        return COMBINING_MARKS.matcher(Normalizer.normalize(word, Normalizer.Form.NFD)).replaceAll("").replace("ß", "ss");
+    }
+
+    private static String transliterate(String word) {
+        return word.replace("ä", "ae").replace("ö", "oe").replace("ü", "ue").replace("ß", "ss");
+    }
+
+    /**
+     * @return The number of distinct terms of the day.
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * Finds the slots whose texts contain a term starting with every prefix, e.g. "simp" matches "Die Simpsons".
+     * The postings of the terms of each prefix are merged and the results of the prefixes are intersected.
+     *
+     * @param prefixes The folded prefixes, see {@link #prefixesOf(String)}.
+     * @return The matching slots, none if there are no prefixes.
+     */
+    public BitSet match(List<String> prefixes) {
+        BitSet matches = null;
+        for (String prefix : prefixes) {
+            BitSet slots = new BitSet(shows.length);
+            for (int i = lowerBound(prefix); i < terms.length && terms[i].startsWith(prefix); i++) {
+                for (int slot : postings[i]) {
+                    slots.set(slot);
+                }
+            }
+            if (matches == null) {
+                matches = slots;
+            } else {
+                matches.and(slots);
+            }
+            if (matches.isEmpty()) {
+                break;
+            }
+        }
+        return matches == null ? new BitSet() : matches;
+    }
+
+    /**
+     * Counts the matching slots per TV show title.
+     *
+     * @param prefixes The folded prefixes, see {@link #prefixesOf(String)}.
+     * @return The number of matching airings per TV show title, in the order of their first airing.
+     */
+    public Map<String, Integer> countMatches(List<String> prefixes) {
+        BitSet matches = match(prefixes);
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            frequencies.merge(showTitles[shows[slot]], 1, Integer::sum);
+        }
+        return frequencies;
+    }
+
+    /**
+     * @return The index of the first term not before the prefix, the number of terms if there is none.
+     */
+    private int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(terms, prefix);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * The slots of a term while the index is built, in ascending order as the slots are added in order.
+     */
+    private static final class Postings {
+        private int[] slots = NO_SLOTS;
+        private int size;
+
+        void add(int slot) {
+            // A slot whose texts contain a term more than once is only added once
+            if (size > 0 && slots[size - 1] == slot) {
+                return;
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(4, size * 2));
+            }
+            slots[size++] = slot;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(slots, size);
+        }
+    }
+}
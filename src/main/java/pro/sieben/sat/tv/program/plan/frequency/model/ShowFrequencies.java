@@ -0,0 +1,110 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import java.util.*;
+
+/**
+ * Counts how often each TV show airs, both overall and per {@link ShowType}.
+ * The counts are filled in a single pass over the EPG items and only read afterwards.
+ */
+public class ShowFrequencies {
+
+    private final Map<String, Integer> frequencies = new HashMap<>();
+    private final Map<ShowType, Map<String, Integer>> frequenciesByType = new EnumMap<>(ShowType.class);
+
+    public ShowFrequencies() {
+        for (ShowType type : ShowType.values()) {
+            frequenciesByType.put(type, new HashMap<>());
+        }
+    }
+
+    /**
+     * Counts the frequencies of the given EPG items.
+     *
+     * @param items The EPG items to count.
+     * @return The ShowFrequencies of the items.
+     */
+    public static ShowFrequencies of(List<Item> items) {
+        ShowFrequencies showFrequencies = new ShowFrequencies();
+        for (Item item : items) {
+            showFrequencies.add(item.getTitle(), item.getTvShow().getTitle(), item.getTvShow().getId());
+        }
+        return showFrequencies;
+    }
+
+    /**
+     * Counts one airing of a TV show.
+     *
+     * @param title     The episode title of the airing.
+     * @param showTitle The title of the TV show.
+     * @param showId    The id of the TV show.
+     */
+    public void add(String title, String showTitle, String showId) {
+        frequencies.merge(showTitle, 1, Integer::sum);
+        ShowType type = ShowType.of(title, showId);
+        if (type != null) {
+            frequenciesByType.get(type).merge(showTitle, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Adds several airings of a TV show to the overall frequencies.
+     *
+     * @param showTitle The title of the TV show.
+     * @param count     The number of airings, negative to remove airings.
+     */
+    public void add(String showTitle, int count) {
+        frequencies.merge(showTitle, count, Integer::sum);
+    }
+
+    /**
+     * Adds several airings of a TV show to the frequencies of a type.
+     *
+     * @param showTitle The title of the TV show.
+     * @param type      The type of the airings.
+     * @param count     The number of airings, negative to remove airings.
+     */
+    public void add(String showTitle, ShowType type, int count) {
+        frequenciesByType.get(type).merge(showTitle, count, Integer::sum);
+    }
+
+    /**
+     * Adds the frequencies of an already indexed snapshot, e.g. to aggregate several dates.
+     *
+     * @param frequencyIndex The frequency index whose counts are to be added.
+     */
+    public void addAll(FrequencyIndex frequencyIndex) {
+        frequencyIndex.getFrequencies().forEach((showTitle, count) -> frequencies.merge(showTitle, count, Integer::sum));
+        for (ShowType type : ShowType.values()) {
+            Map<String, Integer> typeFrequencies = frequenciesByType.get(type);
+            frequencyIndex.getFrequencies(type).forEach((showTitle, count) -> typeFrequencies.merge(showTitle, count, Integer::sum));
+        }
+    }
+
+    /**
+     * Adds the frequencies counted by another instance.
+     *
+     * @param other The frequencies to be added.
+     */
+    public void addAll(ShowFrequencies other) {
+        other.frequencies.forEach((showTitle, count) -> frequencies.merge(showTitle, count, Integer::sum));
+        for (ShowType type : ShowType.values()) {
+            Map<String, Integer> typeFrequencies = frequenciesByType.get(type);
+            other.frequenciesByType.get(type).forEach((showTitle, count) -> typeFrequencies.merge(showTitle, count, Integer::sum));
+        }
+    }
+
+    /**
+     * @return A map containing TV show titles as keys and their frequencies as values.
+     */
+    public Map<String, Integer> getFrequencies() {
+        return Collections.unmodifiableMap(frequencies);
+    }
+
+    /**
+     * @param type The type of TV shows to count.
+     * @return A map containing TV show titles as keys and their frequencies as values for the specified type.
+     */
+    public Map<String, Integer> getFrequencies(ShowType type) {
+        return Collections.unmodifiableMap(frequenciesByType.get(type));
+    }
+}
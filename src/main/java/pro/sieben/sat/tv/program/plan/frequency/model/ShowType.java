@@ -1,5 +1,20 @@
 package pro.sieben.sat.tv.program.plan.frequency.model;
 
 public enum ShowType {
-    TVSHOW,SERIES,MOVIE
+    TVSHOW,SERIES,MOVIE;
+
+    /**
+     * Classifies an EPG item by its episode title and the id of its TV show.
+     * Series have an episode title and a show id, TV shows only a show id and movies neither.
+     *
+     * @param title  The episode title of the item.
+     * @param showId The id of the TV show the item belongs to.
+     * @return The ShowType of the item, or null if an item with an episode title has no show id.
+     */
+    public static ShowType of(String title, String showId) {
+        if (showId != null) {
+            return title == null ? TVSHOW : SERIES;
+        }
+        return title == null ? MOVIE : null;
+    }
 }
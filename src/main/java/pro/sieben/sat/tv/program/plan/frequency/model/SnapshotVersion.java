@@ -0,0 +1,27 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * The version of the EPG snapshots a query is answered from. Responses of the same query with the same tag are equal,
+ * so the tag can be sent as an ETag and a client holding it does not need the response again.
+ * A version of stale snapshots is marked, so the response can tell the client.
+ */
+@Getter
+@AllArgsConstructor
+public class SnapshotVersion {
+
+    // The content hash of the snapshots
+    private final String tag;
+    // How long the snapshots may be reused without asking again, zero if they may still change
+    private final Duration maxAge;
+    // Whether any of the snapshots is stale, see EpgSnapshot#isStale()
+    private final boolean stale;
+
+    public SnapshotVersion(String tag, Duration maxAge) {
+        this(tag, maxAge, false);
+    }
+}
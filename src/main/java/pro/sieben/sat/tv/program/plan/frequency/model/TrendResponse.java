@@ -0,0 +1,29 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.*;
+
+@lombok.Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TrendResponse {
+    private String title;
+    // The number of airings in the current period, e.g. the last 7 days
+    private int current;
+    // The number of airings in the period before
+    private int previous;
+    // current - previous
+    private int delta;
+    // (current + 1) / (previous + 1), so TV shows new in the current period have a finite growth
+    private double growth;
+
+    /**
+     * @param title    The title of the TV show.
+     * @param current  The number of airings in the current period.
+     * @param previous The number of airings in the previous period.
+     * @return The TrendResponse with the delta and growth of the airings.
+     */
+    public static TrendResponse of(String title, int current, int previous) {
+        return new TrendResponse(title, current, previous, current - previous, (current + 1.0) / (previous + 1.0));
+    }
+}
@@ -0,0 +1,280 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Ranks the TV shows by how their frequency changed between the last days (the current period) and the same number
+ * of days before (the previous period), for a fixed set of window lengths, e.g. 7 and 28 days.
+ * <p>
+ * The counts of each day are kept as a sparse vector over a dictionary of the titles, in a ring buffer holding twice
+ * the longest window. The sums of both periods of every window are kept as dense vectors over the dictionary, overall
+ * and per {@link ShowType}, so they are never recomputed from all days: when the last day advances, the day leaving
+ * the current period is moved into the previous one and the day leaving the previous period is subtracted, and when
+ * a day is refreshed its old counts are replaced by the new ones. Each of these steps only visits the titles of that
+ * day. The dictionary only grows: a title that no longer airs keeps its id, with sums of zero.
+ * <p>
+ * The windows are updated and the sums are read under the lock of the instance, so one instance can be shared by all
+ * request threads. A ranking holds the lock while it compares the versions of the days, replaces the changed ones and
+ * collects the TV shows of the window, which is linear in the titles of the dictionary; the TV shows are sorted after
+ * the lock is released.
+ */
+public final class TrendWindows {
+
+    /**
+     * The measures the TV shows can be ranked by.
+     */
+    public enum Measure {
+        // The airings in the current period minus those in the previous period
+        DELTA,
+        // The airings in the current period divided by those in the previous period, both plus one
+        GROWTH
+    }
+
+    private static final int CURRENT = 0;
+    private static final int PREVIOUS = 1;
+
+    // The counts overall, followed by those of each ShowType
+    private static final int KINDS = 1 + ShowType.values().length;
+
+    // The window lengths in days, ascending
+    private final int[] windows;
+
+    // The days of both periods of the longest window, at the index of their epoch day modulo its length
+    private final Day[] days;
+
+    // The title dictionary: the id of each title and the title of each id
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> titles = new ArrayList<>();
+
+    // The sums by window, period and kind, indexed by title id
+    private final int[][][][] sums;
+
+    // The last day of the current periods, null before the first update
+    private LocalDate last;
+
+    /**
+     * @param windows The window lengths in days, e.g. 7 and 28.
+     * @throws IllegalArgumentException If no window is given or a window is not positive.
+     */
+    public TrendWindows(int... windows) {
+        if (windows.length == 0 || Arrays.stream(windows).anyMatch(window -> window <= 0)) {
+            throw new IllegalArgumentException("At least one positive window length is required");
+        }
+        this.windows = Arrays.stream(windows).sorted().distinct().toArray();
+        this.days = new Day[2 * this.windows[this.windows.length - 1]];
+        this.sums = new int[this.windows.length][2][KINDS][16];
+    }
+
+    /**
+     * @param window A window length in days.
+     * @return Whether the TV shows can be ranked for the window.
+     */
+    public boolean supports(int window) {
+        return Arrays.binarySearch(windows, window) >= 0;
+    }
+
+    /**
+     * @return The window lengths in days, ascending.
+     */
+    public int[] getWindows() {
+        return windows.clone();
+    }
+
+    /**
+     * Ranks the TV shows by the change of their frequency within a window ending on the given day. The windows are
+     * first advanced to that day, or rebuilt if it is earlier than the last day or past the ring buffer, and the days
+     * whose frequency index has another version than the one counted are replaced. Only this and collecting the TV shows
+     * are done under the lock, see the class comment.
+     *
+     * @param last    The last day of the current period.
+     * @param indexes The frequency indexes of the days of both periods, oldest first, so twice the window length.
+     * @param type    The type of TV shows to rank, all types if null.
+     * @param measure The measure to rank by.
+     * @param falling Whether the TV shows falling most come first, otherwise those rising most.
+     * @param offset  The number of leading TV shows to skip.
+     * @param limit   The maximum number of TV shows to return.
+     * @return The requested page of the TV shows airing in either period, ties broken by title.
+     * @throws IllegalArgumentException If the window is not supported or the offset or limit is negative.
+     */
+    public List<TrendResponse> rank(LocalDate last, List<FrequencyIndex> indexes, ShowType type,
+                                                 Measure measure, boolean falling, int offset, int limit) {
+        int window = indexes.size() / 2;
+        if (indexes.size() % 2 != 0 || !supports(window)) {
+            throw new IllegalArgumentException("The trend window must be one of " + Arrays.toString(windows) + " days");
+        }
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+
+        List<TrendResponse> trends = count(last, indexes, window, type == null ? 0 : 1 + type.ordinal());
+        trends.sort(orderOf(measure, falling));
+
+        int from = Math.min(offset, trends.size());
+        int to = (int) Math.min((long) from + limit, trends.size());
+        return trends.subList(from, to);
+    }
+
+    /**
+     * Brings the windows up to date with the days and collects the TV shows airing in either period of a window.
+     */
+    private synchronized List<TrendResponse> count(LocalDate last, List<FrequencyIndex> indexes, int window, int kind) {
+        advanceTo(last);
+        for (int i = 0; i < indexes.size(); i++) {
+            update(last.minusDays(indexes.size() - 1 - i), indexes.get(i));
+        }
+
+        int[][][] periods = sums[Arrays.binarySearch(windows, window)];
+        int[] current = periods[CURRENT][kind];
+        int[] previous = periods[PREVIOUS][kind];
+        List<TrendResponse> trends = new ArrayList<>();
+        for (int id = 0; id < titles.size(); id++) {
+            if (current[id] != 0 || previous[id] != 0) {
+                trends.add(TrendResponse.of(titles.get(id), current[id], previous[id]));
+            }
+        }
+        return trends;
+    }
+
+    private static Comparator<TrendResponse> orderOf(Measure measure, boolean falling) {
+        Comparator<TrendResponse> order = measure == Measure.GROWTH
+                ? Comparator.comparingDouble(TrendResponse::getGrowth)
+                : Comparator.comparingInt(TrendResponse::getDelta);
+        return (falling ? order : order.reversed())
+                .thenComparing(TrendResponse::getTitle, Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    /**
+     * Moves the last day of the current periods forward day by day, or starts over if that would take longer than
+     * rebuilding the windows from scratch.
+     */
+    private void advanceTo(LocalDate newLast) {
+        if (newLast.equals(last)) {
+            return;
+        }
+        if (last == null || newLast.isBefore(last) || ChronoUnit.DAYS.between(last, newLast) >= days.length) {
+            Arrays.fill(days, null);
+            for (int[][][] window : sums) {
+                for (int[][] period : window) {
+                    for (int[] kind : period) {
+                        Arrays.fill(kind, 0);
+                    }
+                }
+            }
+            last = newLast;
+            return;
+        }
+        for (LocalDate day = last.plusDays(1); !day.isAfter(newLast); day = day.plusDays(1)) {
+            for (int w = 0; w < windows.length; w++) {
+                Day leavingCurrent = dayAt(day.minusDays(windows[w]));
+                add(leavingCurrent, w, CURRENT, -1);
+                add(leavingCurrent, w, PREVIOUS, 1);
+                add(dayAt(day.minusDays(2L * windows[w])), w, PREVIOUS, -1);
+            }
+            // The slot of the new day held the day that just left the previous period of the longest window
+            days[slotOf(day)] = null;
+        }
+        last = newLast;
+    }
+
+    /**
+     * Replaces the counts of a day if its frequency index changed since they were counted.
+     */
+    private void update(LocalDate date, FrequencyIndex index) {
+        Day counted = dayAt(date);
+        if (counted != null && counted.version() == index.getVersion()) {
+            return;
+        }
+        Day day = dayOf(date, index);
+        for (int w = 0; w < windows.length; w++) {
+            int period = periodOf(date, w);
+            if (period >= 0) {
+                add(counted, w, period, -1);
+                add(day, w, period, 1);
+            }
+        }
+        days[slotOf(date)] = day;
+    }
+
+    /**
+     * @return The period of the window the date is in, or -1 if it is in neither.
+     */
+    private int periodOf(LocalDate date, int w) {
+        long age = ChronoUnit.DAYS.between(date, last);
+        if (age < 0 || age >= 2L * windows[w]) {
+            return -1;
+        }
+        return age < windows[w] ? CURRENT : PREVIOUS;
+    }
+
+    private void add(Day day, int w, int period, int sign) {
+        if (day == null) {
+            return;
+        }
+        for (int kind = 0; kind < KINDS; kind++) {
+            int[] sum = sums[w][period][kind];
+            int[] dayIds = day.ids()[kind];
+            int[] dayCounts = day.counts()[kind];
+            for (int i = 0; i < dayIds.length; i++) {
+                sum[dayIds[i]] += sign * dayCounts[i];
+            }
+        }
+    }
+
+    private Day dayAt(LocalDate date) {
+        Day day = days[slotOf(date)];
+        return day != null && day.date().equals(date) ? day : null;
+    }
+
+    private int slotOf(LocalDate date) {
+        return (int) Math.floorMod(date.toEpochDay(), (long) days.length);
+    }
+
+    private Day dayOf(LocalDate date, FrequencyIndex index) {
+        int[][] dayIds = new int[KINDS][];
+        int[][] dayCounts = new int[KINDS][];
+        for (int kind = 0; kind < KINDS; kind++) {
+            Map<String, Integer> frequencies = kind == 0 ? index.getFrequencies() : index.getFrequencies(ShowType.values()[kind - 1]);
+            dayIds[kind] = new int[frequencies.size()];
+            dayCounts[kind] = new int[frequencies.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                dayIds[kind][i] = idOf(entry.getKey());
+                dayCounts[kind][i++] = entry.getValue();
+            }
+        }
+        return new Day(date, index.getVersion(), dayIds, dayCounts);
+    }
+
+    /**
+     * Looks up the id of a title, adding it to the dictionary and growing the sums if it is new.
+     */
+    private int idOf(String title) {
+        Integer id = ids.get(title);
+        if (id != null) {
+            return id;
+        }
+        id = titles.size();
+        ids.put(title, id);
+        titles.add(title);
+        if (id == sums[0][CURRENT][0].length) {
+            for (int[][][] window : sums) {
+                for (int[][] period : window) {
+                    for (int kind = 0; kind < KINDS; kind++) {
+                        period[kind] = Arrays.copyOf(period[kind], 2 * id);
+                    }
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * The counts of one day as sparse vectors over the title dictionary, overall and per ShowType.
+     *
+     * @param version The version of the frequency index the counts were taken from.
+     */
+    private record Day(LocalDate date, long version, int[][] ids, int[][] counts) {
+    }
+}
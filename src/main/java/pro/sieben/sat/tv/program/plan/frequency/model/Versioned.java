@@ -0,0 +1,39 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import lombok.Getter;
+
+import java.util.function.Supplier;
+
+/**
+ * The result of a query together with the version of the snapshots it is computed from.
+ * The snapshots are resolved once per query and both are derived from them, so a refresh landing during the query
+ * can never pair the version, sent as the ETag, of one snapshot with the result of another.
+ * <p>
+ * The result is only computed when it is first read, so a request whose ETag still matches is answered from the
+ * version alone, without aggregating the snapshots.
+ */
+public class Versioned<T> {
+
+    @Getter
+    private final SnapshotVersion version;
+
+    // Computes the result, null once it has been computed
+    private Supplier<T> query;
+    private T result;
+
+    public Versioned(SnapshotVersion version, Supplier<T> query) {
+        this.version = version;
+        this.query = query;
+    }
+
+    /**
+     * @return The result of the query, computed on the first call.
+     */
+    public synchronized T getResult() {
+        if (query != null) {
+            result = query.get();
+            query = null;
+        }
+        return result;
+    }
+}
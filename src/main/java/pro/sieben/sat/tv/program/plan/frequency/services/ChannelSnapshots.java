@@ -0,0 +1,90 @@
+package pro.sieben.sat.tv.program.plan.frequency.services;
+
+import pro.sieben.sat.tv.program.plan.frequency.model.*;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * The snapshots collected for a multi-channel query, in request order: the snapshot of each channel that answered
+ * and the error of each channel that failed or did not answer within the channel timeout.
+ */
+final class ChannelSnapshots {
+
+    private final Duration timeout;
+    private final Map<String, EpgSnapshot> answered = new LinkedHashMap<>();
+    private final Map<String, String> failed = new LinkedHashMap<>();
+    private RuntimeException firstFailure;
+
+    ChannelSnapshots(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    void answered(String channel, EpgSnapshot snapshot) {
+        answered.put(channel, snapshot);
+    }
+
+    void failed(String channel, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        failed.put(channel, cause instanceof TimeoutException
+                ? "No answer within " + timeout.toMillis() + " ms"
+                : String.valueOf(cause.getMessage()));
+        if (firstFailure == null) {
+            firstFailure = cause instanceof RuntimeException runtimeException ? runtimeException : new CompletionException(cause);
+        }
+    }
+
+    /**
+     * @return These snapshots, if at least one channel answered.
+     * @throws RuntimeException The first failure, if no channel answered.
+     */
+    ChannelSnapshots requireAnswer() {
+        if (answered.isEmpty() && firstFailure != null) {
+            throw firstFailure;
+        }
+        return this;
+    }
+
+    /**
+     * Computes the result of each channel that answered and the combined result over all of them.
+     *
+     * @param perChannel Computes the result of one channel from its frequency index.
+     * @param combined   Computes the combined result from the frequencies of all channels that answered.
+     * @return The per-channel and combined results and the failed channels.
+     */
+    ChannelFrequencyResponse aggregate(Function<FrequencyIndex, List<FrequencyResponse>> perChannel,
+                                       Function<ShowFrequencies, List<FrequencyResponse>> combined) {
+        ShowFrequencies frequencies = new ShowFrequencies();
+        Map<String, List<FrequencyResponse>> channelResults = new LinkedHashMap<>();
+        answered.forEach((channel, snapshot) -> {
+            channelResults.put(channel, perChannel.apply(snapshot.getFrequencyIndex()));
+            frequencies.addAll(snapshot.getFrequencyIndex());
+        });
+        return new ChannelFrequencyResponse(combined.apply(frequencies), channelResults, new LinkedHashMap<>(failed));
+    }
+
+    /**
+     * Combines the versions of the channels. The failed channels are part of the version, so a partial response
+     * is never taken for a complete one, and responses with failed or stale channels always have to be revalidated.
+     *
+     * @param maxAge How long the responses may be reused if all channels answered.
+     * @return The version of the channels.
+     */
+    SnapshotVersion version(Duration maxAge) {
+        long version = 0;
+        boolean stale = false;
+        for (Map.Entry<String, EpgSnapshot> snapshot : answered.entrySet()) {
+            version = 31 * (31 * version + snapshot.getKey().hashCode()) + snapshot.getValue().getVersion();
+            stale |= snapshot.getValue().isStale();
+        }
+        for (String channel : failed.keySet()) {
+            version = 31 * (31 * version + channel.hashCode()) - 1;
+        }
+        return new SnapshotVersion(Long.toHexString(version), failed.isEmpty() && !stale ? maxAge : Duration.ZERO, stale);
+    }
+}
@@ -0,0 +1,90 @@
+package pro.sieben.sat.tv.program.plan.frequency.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGItemsParser;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the EPG snapshots of today and the next days in the background, so the endpoints without a date
+ * are answered from the cache instead of waiting for the EPG API. Requests arriving during a refresh are served
+ * the previous snapshot. After a failed refresh, retries back off exponentially with jitter.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "epg.prefetch", name = "enabled", havingValue = "true")
+public class EPGPrefetchScheduler {
+
+    private final EPGItemsParser epgItemsParser;
+
+    private final EPGProperties.Prefetch prefetch;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("epg-prefetch").daemon().factory());
+
+    private int consecutiveFailures = 0;
+
+    @Autowired
+    public EPGPrefetchScheduler(EPGItemsParser epgItemsParser, EPGProperties properties) {
+        this.epgItemsParser = epgItemsParser;
+        this.prefetch = properties.getPrefetch();
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.execute(this::refresh);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Refreshes all prefetched dates once and schedules the next run.
+     */
+    void refresh() {
+        LocalDate today = LocalDate.now();
+        boolean failed = false;
+        for (int day = 0; day <= prefetch.getDaysAhead(); day++) {
+            String date = today.plusDays(day).toString();
+            try {
+                epgItemsParser.refreshSnapshot(date);
+            } catch (RuntimeException e) {
+                failed = true;
+                log.warn("Could not prefetch the EPG of {}: {}", date, e.getMessage());
+            }
+        }
+
+        consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::refresh, nextDelay().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the regular interval after a successful run. After failures the delay grows exponentially
+     * up to the maximum backoff and is randomized between half and the full value, so several instances
+     * do not retry against the EPG API in lockstep.
+     */
+    Duration nextDelay() {
+        if (consecutiveFailures == 0) {
+            return prefetch.getInterval();
+        }
+        double backoff = prefetch.getInitialBackoff().toMillis() * Math.pow(2, consecutiveFailures - 1);
+        long capped = (long) Math.min(backoff, prefetch.getMaxBackoff().toMillis());
+        long half = capped / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+}
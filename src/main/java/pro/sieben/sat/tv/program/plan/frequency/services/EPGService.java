@@ -1,20 +1,94 @@
 package pro.sieben.sat.tv.program.plan.frequency.services;
 
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
 import pro.sieben.sat.tv.program.plan.frequency.model.*;
 import pro.sieben.sat.tv.program.plan.frequency.utils.EPGItemsParser;
-
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGMetrics;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGProjectionException;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGQuery;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Service
 public class EPGService {
 
-    private EPGItemsParser epgItemsParser = new EPGItemsParser();
+    // The maximum number of days a date range query may span
+    static final int MAX_RANGE_DAYS = 31;
+
+    // The maximum number of queries of a batch request
+    static final int MAX_BATCH_QUERIES = 1000;
+
+    // The lengths of the periods compared by the trend queries, in days
+    static final int[] TREND_WINDOWS = {7, 28};
+
+    // The maximum number of end dates other than today whose trend windows are kept
+    static final int MAX_PAST_TREND_WINDOWS = 8;
+
+    private final EPGItemsParser epgItemsParser;
+
+    private final EPGMetrics metrics;
+
+    // The channels that can be queried, the first one is the channel of the single-channel queries
+    private final List<String> channels;
+
+    // How long a multi-channel query waits for a channel
+    private final Duration channelTimeout;
+
+    // How long the snapshots of past days are cached
+    private final Duration pastDayTtl;
+
+    // The time zone of the times of day in time-window queries and of today in trend queries
+    private final ZoneId zone;
+
+    // The time window of the prime-time queries
+    private final LocalTime primeTimeStart;
+    private final LocalTime primeTimeEnd;
+
+    // The query the items are fetched with, the time-window queries and the search fail if it lacks their fields
+    private final EPGQuery epgQuery;
+
+    // The trends of the windows ending today, advanced as the days pass
+    private final TrendWindows trendWindows = new TrendWindows(TREND_WINDOWS);
+
+    // The trends of the windows ending on other days, by their last day, the least recently ranked first
+    private final Map<LocalDate, TrendWindows> pastTrendWindows = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LocalDate, TrendWindows> eldest) {
+            return size() > MAX_PAST_TREND_WINDOWS;
+        }
+    };
 
     // A test data map containing series with their status (RUNNING, ENDED).
     private final Map<String, Status> seriesStatusMap = new HashMap<>();
 
+    @Autowired
+    public EPGService(EPGItemsParser epgItemsParser, EPGMetrics metrics, EPGProperties properties) {
+        this.epgItemsParser = epgItemsParser;
+        this.metrics = metrics;
+        this.channels = List.copyOf(properties.getChannels().getNames());
+        this.channelTimeout = properties.getChannels().getTimeout();
+        this.pastDayTtl = properties.getCache().getPastDayTtl();
+        this.zone = properties.getChannels().getZone();
+        this.primeTimeStart = timeOf(properties.getChannels().getPrimeTimeStart());
+        this.primeTimeEnd = timeOf(properties.getChannels().getPrimeTimeEnd());
+        this.epgQuery = properties.getClient().getQuery();
+    }
+
     @PostConstruct
     public void setUp() {
         seriesStatusMap.put("The Big Bang Theory",Status.ENDED);
@@ -27,44 +101,244 @@ public class EPGService {
     }
 
     /**
-     * Retrieves the frequencies of TV shows from parsed EPG items.
+     * Retrieves the frequency index of the EPG snapshot for a given date.
+     * The index is built once per snapshot, so every query below is a lookup into precomputed results.
      *
-     * @return A map containing TV show titles as keys and their frequencies as values.
+     * @param date The date for which the index is to be retrieved.
+     * @return The FrequencyIndex of the date.
      */
-    Map<String, Integer> getShowsFrequencies(String date) {
-        List<Item> items = epgItemsParser.parseItemsFromEPG(date);
+    private FrequencyIndex getFrequencyIndex(String date) {
+        return epgItemsParser.getSnapshot(date).getFrequencyIndex();
+    }
+
+    /**
+     * Answers a query on the snapshot of a date. The snapshot is resolved once and both the version and the result are
+     * derived from it, so a refresh of the date during the query cannot pair the version of one snapshot with the
+     * result of another. The result is only computed when it is read, see {@link Versioned}.
+     *
+     * @param date  The date (yyyy-MM-dd), the current date if null.
+     * @param query Computes the result from the snapshot.
+     * @return The version of the snapshot with its result.
+     */
+    private <T> Versioned<T> onDay(String date, Function<EpgSnapshot, T> query) {
+        EpgSnapshot snapshot = epgItemsParser.getSnapshot(date);
+        return new Versioned<>(versionOf(List.of(snapshot), maxAgeOf(date)), () -> query.apply(snapshot));
+    }
+
+    /**
+     * Answers a query on the schedule of a date, see {@link #onDay(String, Function)}.
+     */
+    private <T> Versioned<T> onSchedule(String date, Function<DaySchedule, T> query) {
+        return onDay(date, snapshot -> query.apply(snapshot.getSchedule()));
+    }
+
+    /**
+     * Answers a query on the snapshots of all days from {@code from} to {@code to} (both inclusive), deriving the
+     * version and the result from the same snapshots, see {@link #onDay(String, Function)}. The days are fetched in
+     * parallel (cached days are reused, upstream calls are bounded by the parser), so the latency follows the slowest day.
+     *
+     * @param from  The first date of the range (yyyy-MM-dd).
+     * @param to    The last date of the range (yyyy-MM-dd).
+     * @param query Computes the result from the snapshots of the days in order, when the result is read.
+     * @return The combined version of the snapshots with their result.
+     */
+    private <T> Versioned<T> onRange(String from, String to, Function<List<EpgSnapshot>, T> query) {
+        List<EpgSnapshot> snapshots = getRangeSnapshots(from, to);
+        return new Versioned<>(versionOf(snapshots, maxAgeOf(to)), () -> query.apply(snapshots));
+    }
+
+    /**
+     * Aggregates the show frequencies of the snapshots of several days with a parallel reduction.
+     *
+     * @param snapshots The snapshots of the days.
+     * @return The ShowFrequencies of all days.
+     */
+    private static ShowFrequencies frequenciesOf(List<EpgSnapshot> snapshots) {
+        return snapshots.parallelStream()
+                .collect(ShowFrequencies::new,
+                        (frequencies, snapshot) -> frequencies.addAll(snapshot.getFrequencyIndex()),
+                        ShowFrequencies::addAll);
+    }
+
+    /**
+     * Fetches the snapshots of all days from {@code from} to {@code to} (both inclusive) in parallel.
+     *
+     * @param from The first date of the range (yyyy-MM-dd).
+     * @param to   The last date of the range (yyyy-MM-dd).
+     * @return The snapshots of the days in order.
+     */
+    private List<EpgSnapshot> getRangeSnapshots(String from, String to) {
+        return getSnapshots(datesBetween(from, to));
+    }
+
+    /**
+     * Fetches the snapshots of the given days in parallel.
+     *
+     * @param dates The days.
+     * @return The snapshots of the days in order.
+     */
+    private List<EpgSnapshot> getSnapshots(List<LocalDate> dates) {
+        List<CompletableFuture<EpgSnapshot>> snapshots = dates.stream()
+                .map(date -> epgItemsParser.getSnapshotAsync(date.toString()))
+                .toList();
+
+        try {
+            return snapshots.stream()
+                    .map(CompletableFuture::join)
+                    .toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the snapshots of several channels for a date concurrently and aggregates them per channel and combined.
+     * The fetches run on the parser's executor and their upstream calls are bounded by the parser, so the latency
+     * follows the slowest channel rather than the sum of all channels. A channel that fails or does not answer
+     * within the channel timeout is reported as failed and left out of the combined result. The version is derived
+     * from the same snapshots, see {@link #onDay(String, Function)}.
+     *
+     * @param date       The date for which the TV shows are to be retrieved.
+     * @param requested  The channels to query, all channels if null or empty.
+     * @param perChannel Computes the result of one channel from its frequency index.
+     * @param combined   Computes the combined result from the frequencies of all channels that answered.
+     * @return The per-channel and combined results with the version of the channels.
+     * @throws ResourceAccessException If no channel answered.
+     */
+    private Versioned<ChannelFrequencyResponse> aggregateChannels(String date, List<String> requested,
+                                                                 Function<FrequencyIndex, List<FrequencyResponse>> perChannel,
+                                                                 Function<ShowFrequencies, List<FrequencyResponse>> combined) {
+        ChannelSnapshots snapshots = getChannelSnapshots(date, requested);
+        return new Versioned<>(snapshots.version(maxAgeOf(date)), () -> snapshots.aggregate(perChannel, combined));
+    }
+
+    /**
+     * Fetches the snapshots of several channels for a date concurrently, waiting at most the channel timeout for each.
+     *
+     * @param date      The date for which the snapshots are to be retrieved.
+     * @param requested The channels to query, all channels if null or empty.
+     * @return The snapshots of the channels that answered and the errors of those that did not, in request order.
+     * @throws ResourceAccessException If no channel answered.
+     */
+    private ChannelSnapshots getChannelSnapshots(String date, List<String> requested) {
+        Map<String, CompletableFuture<EpgSnapshot>> snapshots = new LinkedHashMap<>();
+        for (String channel : channelsOf(requested)) {
+            snapshots.put(channel, epgItemsParser.getSnapshotAsync(date, channel)
+                    .orTimeout(channelTimeout.toMillis(), TimeUnit.MILLISECONDS));
+        }
 
-        Map<String, Integer> showFrequencyMap = new HashMap<>();
+        ChannelSnapshots channelSnapshots = new ChannelSnapshots(channelTimeout);
+        snapshots.forEach((channel, snapshot) -> {
+            try {
+                channelSnapshots.answered(channel, snapshot.join());
+            } catch (CompletionException e) {
+                channelSnapshots.failed(channel, e);
+            }
+        });
+        return channelSnapshots.requireAnswer();
+    }
+
+    /**
+     * Returns how long the responses of a query ending at the given date may be reused. Past days do not change anymore
+     * and are reused as long as they are cached, responses of today and later dates have to be revalidated.
+     *
+     * @param date The last date of the query, today if null or empty.
+     * @return The maximum age of the responses.
+     */
+    Duration maxAgeOf(String date) {
+        try {
+            return date != null && !date.isEmpty() && LocalDate.parse(date).isBefore(LocalDate.now())
+                    ? pastDayTtl : Duration.ZERO;
+        } catch (DateTimeParseException e) {
+            return Duration.ZERO;
+        }
+    }
 
-        for (Item item : items) {
-            String showTitle = item.getTvShow().getTitle();
-            if (showFrequencyMap.containsKey(showTitle)) {
-                showFrequencyMap.put(showTitle, showFrequencyMap.get(showTitle) + 1);
-            } else {
-                showFrequencyMap.put(showTitle, 1);
+    /**
+     * Validates the requested channels against the configured ones.
+     *
+     * @throws IllegalArgumentException If a channel is not configured.
+     */
+    List<String> channelsOf(List<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return channels;
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        for (String channel : requested) {
+            if (!channels.contains(channel)) {
+                throw new IllegalArgumentException("Unknown channel " + channel + ", expected one of " + channels);
             }
+            selected.add(channel);
         }
+        return List.copyOf(selected);
+    }
 
-        return showFrequencyMap;
+    /**
+     * Validates a date range and lists its days.
+     *
+     * @throws IllegalArgumentException If a date is malformed, the range is reversed or longer than {@link #MAX_RANGE_DAYS}.
+     */
+    static List<LocalDate> datesBetween(String from, String to) {
+        LocalDate fromDate;
+        LocalDate toDate;
+        try {
+            fromDate = LocalDate.parse(from);
+            toDate = LocalDate.parse(to);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Dates must have the format yyyy-MM-dd", e);
+        }
+        if (toDate.isBefore(fromDate)) {
+            throw new IllegalArgumentException("The end of the date range must not be before its start");
+        }
+        if (ChronoUnit.DAYS.between(fromDate, toDate) >= MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("A date range must not span more than " + MAX_RANGE_DAYS + " days");
+        }
+        return fromDate.datesUntil(toDate.plusDays(1)).toList();
+    }
+
+    /**
+     * Retrieves the frequencies of TV shows from parsed EPG items.
+     *
+     * @return A map containing TV show titles as keys and their frequencies as values.
+     */
+    Map<String, Integer> getShowsFrequencies(String date) {
+        return getFrequencyIndex(date).getFrequencies();
     }
 
     /**
      * Retrieves the most frequent TV show(s) along with their frequencies.
      *
-     * @return A list of FrequencyResponse objects representing the most frequent TV show(s).
+     * @return A list of FrequencyResponse objects representing the most frequent TV show(s), with the version of the date.
      */
-    public List<FrequencyResponse> getMostFrequentShows(String date) {
-        return getFrequencyResponses(getShowsFrequencies(date), new ArrayList<>());
+    public Versioned<List<FrequencyResponse>> getMostFrequentShows(String date) {
+        return metrics.timeQuery("mostFrequentShows", null,
+                () -> onDay(date, snapshot -> snapshot.getFrequencyIndex().getMostFrequent()));
     }
 
     /**
      * Retrieves the ordered list of TV shows by frequency for a given date.
      *
      * @param date The date for which the TV shows are to be retrieved.
-     * @return A list of FrequencyResponse objects representing the ordered TV shows by frequency.
+     * @return A list of FrequencyResponse objects representing the ordered TV shows by frequency, with the version of the date.
+     */
+    public Versioned<List<FrequencyResponse>> getOrderedShowsByFrequency(String date) {
+        return getOrderedShowsByFrequency(date, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves a page of the TV shows ordered by frequency for a given date.
+     *
+     * @param date   The date for which the TV shows are to be retrieved.
+     * @param offset The number of leading TV shows to skip.
+     * @param limit  The maximum number of TV shows to return.
+     * @return A list of FrequencyResponse objects representing the requested page of the ordered TV shows, with the version of the date.
      */
-    public List<FrequencyResponse> getOrderedShowsByFrequency(String date) {
-        return convertMapToOrderedFrequencyResponsesList(getShowsFrequencies(date));
+    public Versioned<List<FrequencyResponse>> getOrderedShowsByFrequency(String date, int offset, int limit) {
+        return metrics.timeQuery("orderedShows", null,
+                () -> onDay(date, snapshot -> FrequencyIndex.page(snapshot.getFrequencyIndex().getOrdered(), offset, limit)));
     }
 
     /**
@@ -72,132 +346,544 @@ public class EPGService {
      *
      * @param date The date for which the TV shows are to be retrieved.
      * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
-     * @return A list of FrequencyResponse objects representing the ordered TV shows by frequency for the specified type.
+     * @return A list of FrequencyResponse objects representing the ordered TV shows by frequency for the specified type,
+     * with the version of the date.
      */
-    public List<FrequencyResponse> getOrderedShowsByFrequencyByType(String date, ShowType type) {
-        Map<String, Integer> showFrequencyMap = getShowsMapByType(date, type);
-        return convertMapToOrderedFrequencyResponsesList(showFrequencyMap);
+    public Versioned<List<FrequencyResponse>> getOrderedShowsByFrequencyByType(String date, ShowType type) {
+        return getOrderedShowsByFrequencyByType(date, type, 0, Integer.MAX_VALUE);
     }
 
     /**
-     * Converts a map of TV show frequencies to an ordered list of FrequencyResponse objects.
+     * Retrieves a page of the TV shows of a type ordered by frequency for a given date.
      *
-     * @param showFrequencyMap A map containing TV show titles as keys and their frequencies as values.
-     * @return An ordered list of FrequencyResponse objects representing the TV shows by frequency.
+     * @param date   The date for which the TV shows are to be retrieved.
+     * @param type   The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param offset The number of leading TV shows to skip.
+     * @param limit  The maximum number of TV shows to return.
+     * @return A list of FrequencyResponse objects representing the requested page of the ordered TV shows, with the version of the date.
      */
-    private List<FrequencyResponse> convertMapToOrderedFrequencyResponsesList(Map<String, Integer> showFrequencyMap) {
-        List<FrequencyResponse> frequencyResponses = new ArrayList<>();
+    public Versioned<List<FrequencyResponse>> getOrderedShowsByFrequencyByType(String date, ShowType type, int offset, int limit) {
+        return metrics.timeQuery("orderedShowsByType", type,
+                () -> onDay(date, snapshot -> FrequencyIndex.page(snapshot.getFrequencyIndex().getOrdered(type), offset, limit)));
+    }
 
-        // Convert the HashMap to a list of FrequencyResponse objects
-        List<Map.Entry<String, Integer>> entryList = new ArrayList<>(showFrequencyMap.entrySet());
+    /**
+     * Retrieves the most frequent TV shows of a specific type airing on a given date.
+     *
+     * @param date The date for which the TV shows are to be retrieved.
+     * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @return A list of FrequencyResponse objects representing the most frequent TV shows of the specified type,
+     * with the version of the date.
+     */
+    public Versioned<List<FrequencyResponse>> getMostFrequentShowsByShowType(String date, ShowType type) {
+        return metrics.timeQuery("mostFrequentShowsByType", type,
+                () -> onDay(date, snapshot -> snapshot.getFrequencyIndex().getMostFrequent(type)));
+    }
 
-        // Sort the list based on frequency in descending order
-        entryList.sort((a, b) -> b.getValue().compareTo(a.getValue()));
+    /**
+     * Retrieves the most frequent TV show(s) aired within a date range.
+     *
+     * @param from The first date of the range (inclusive).
+     * @param to   The last date of the range (inclusive).
+     * @return A list of FrequencyResponse objects representing the most frequent TV show(s) of the range, with the version of the range.
+     * @throws IllegalArgumentException If the range is invalid.
+     */
+    public Versioned<List<FrequencyResponse>> getMostFrequentShows(String from, String to) {
+        return metrics.timeQuery("mostFrequentShowsInRange", null,
+                () -> onRange(from, to, snapshots -> FrequencyIndex.mostFrequent(frequenciesOf(snapshots).getFrequencies())));
+    }
 
-        // Convert the sorted list to a list of ShowFrequency objects
-        for (Map.Entry<String, Integer> entry : entryList) {
-            frequencyResponses.add(new FrequencyResponse(entry.getKey(), entry.getValue()));
-        }
+    /**
+     * Retrieves the ordered list of TV shows by frequency aggregated over a date range.
+     *
+     * @param from The first date of the range (inclusive).
+     * @param to   The last date of the range (inclusive).
+     * @return A list of FrequencyResponse objects representing the ordered TV shows by frequency, with the version of the range.
+     * @throws IllegalArgumentException If the range is invalid.
+     */
+    public Versioned<List<FrequencyResponse>> getOrderedShowsByFrequency(String from, String to) {
+        return getOrderedShowsByFrequency(from, to, 0, Integer.MAX_VALUE);
+    }
 
-        return frequencyResponses;
+    /**
+     * Retrieves a page of the TV shows ordered by frequency aggregated over a date range.
+     * Only the requested top entries are selected, the full ranking is never sorted.
+     *
+     * @param from   The first date of the range (inclusive).
+     * @param to     The last date of the range (inclusive).
+     * @param offset The number of leading TV shows to skip.
+     * @param limit  The maximum number of TV shows to return.
+     * @return A list of FrequencyResponse objects representing the requested page of the ordered TV shows, with the version of the range.
+     * @throws IllegalArgumentException If the range is invalid.
+     */
+    public Versioned<List<FrequencyResponse>> getOrderedShowsByFrequency(String from, String to, int offset, int limit) {
+        return metrics.timeQuery("orderedShowsInRange", null,
+                () -> onRange(from, to, snapshots -> FrequencyIndex.top(frequenciesOf(snapshots).getFrequencies(), offset, limit)));
     }
 
     /**
-     * Retrieves a map of TV shows frequencies by type for a given date.
+     * Retrieves the ordered list of TV shows of a type by frequency aggregated over a date range.
      *
-     * @param date The date for which the TV shows frequencies are to be retrieved.
+     * @param from The first date of the range (inclusive).
+     * @param to   The last date of the range (inclusive).
      * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
-     * @return A map containing TV show titles as keys and their frequencies as values for the specified type.
-     */
-    private Map<String, Integer> getShowsMapByType(String date, ShowType type) {
-        List<Item> items = epgItemsParser.parseItemsFromEPG(date);
-
-        Map<String, Integer> showFrequencyMap = new HashMap<>();
-
-        for (Item item : items) {
-
-            switch (type) {
-                case TVSHOW:
-                    if (item.getTitle() == null && item.getTvShow().getId() != null)
-                        addShowToMap(item, showFrequencyMap);
-                    break;
-                case SERIES:
-                    if (item.getTitle() != null && item.getTvShow().getId() != null)
-                        addShowToMap(item, showFrequencyMap);
-                    break;
-                case MOVIE:
-                    if (item.getTitle() == null && item.getTvShow().getId() == null)
-                        addShowToMap(item, showFrequencyMap);
-                    break;
-                default:
-                    break;
+     * @return A list of FrequencyResponse objects representing the ordered TV shows by frequency for the specified type,
+     * with the version of the range.
+     * @throws IllegalArgumentException If the range is invalid.
+     */
+    public Versioned<List<FrequencyResponse>> getOrderedShowsByFrequencyByType(String from, String to, ShowType type) {
+        return getOrderedShowsByFrequencyByType(from, to, type, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves a page of the TV shows of a type ordered by frequency aggregated over a date range.
+     *
+     * @param from   The first date of the range (inclusive).
+     * @param to     The last date of the range (inclusive).
+     * @param type   The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param offset The number of leading TV shows to skip.
+     * @param limit  The maximum number of TV shows to return.
+     * @return A list of FrequencyResponse objects representing the requested page of the ordered TV shows, with the version of the range.
+     * @throws IllegalArgumentException If the range is invalid.
+     */
+    public Versioned<List<FrequencyResponse>> getOrderedShowsByFrequencyByType(String from, String to, ShowType type, int offset, int limit) {
+        return metrics.timeQuery("orderedShowsByTypeInRange", type,
+                () -> onRange(from, to, snapshots -> FrequencyIndex.top(frequenciesOf(snapshots).getFrequencies(type), offset, limit)));
+    }
+
+    /**
+     * Combines the versions of the snapshots of a date, or of a date range. All queries of the snapshots answer the
+     * same as long as the version stays the same. If any of them is stale, the version is stale and has to be revalidated.
+     */
+    static SnapshotVersion versionOf(List<EpgSnapshot> snapshots, Duration maxAge) {
+        long version = 0;
+        boolean stale = false;
+        for (EpgSnapshot snapshot : snapshots) {
+            version = 31 * version + snapshot.getVersion();
+            stale |= snapshot.isStale();
+        }
+        return new SnapshotVersion(Long.toHexString(version), stale ? Duration.ZERO : maxAge, stale);
+    }
+
+    /**
+     * @return The channels that can be queried.
+     */
+    public List<String> getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return How long a multi-channel query waits for a channel.
+     */
+    Duration getChannelTimeout() {
+        return channelTimeout;
+    }
+
+    /**
+     * Retrieves the most frequent TV show(s) of several channels on a given date, per channel and combined.
+     * The channels that fail or time out are part of the version, so a partial response is never taken for a complete
+     * one, and responses with failed channels always have to be revalidated.
+     *
+     * @param date     The date for which the TV shows are to be retrieved.
+     * @param channels The channels to query, all channels if null or empty.
+     * @return The most frequent TV show(s) per channel and over all channels that answered, with the version of the channels.
+     */
+    public Versioned<ChannelFrequencyResponse> getMostFrequentShowsOfChannels(String date, List<String> channels) {
+        return metrics.timeQuery("mostFrequentShowsOfChannels", null, () -> aggregateChannels(date, channels,
+                FrequencyIndex::getMostFrequent,
+                frequencies -> FrequencyIndex.mostFrequent(frequencies.getFrequencies())));
+    }
+
+    /**
+     * Retrieves a page of the TV shows of several channels ordered by frequency on a given date, per channel and combined.
+     *
+     * @param date     The date for which the TV shows are to be retrieved.
+     * @param channels The channels to query, all channels if null or empty.
+     * @param offset   The number of leading TV shows to skip.
+     * @param limit    The maximum number of TV shows to return.
+     * @return The requested page per channel and over all channels that answered, with the version of the channels.
+     */
+    public Versioned<ChannelFrequencyResponse> getOrderedShowsByFrequencyOfChannels(String date, List<String> channels, int offset, int limit) {
+        return metrics.timeQuery("orderedShowsOfChannels", null, () -> aggregateChannels(date, channels,
+                frequencyIndex -> FrequencyIndex.page(frequencyIndex.getOrdered(), offset, limit),
+                frequencies -> FrequencyIndex.top(frequencies.getFrequencies(), offset, limit)));
+    }
+
+    /**
+     * Retrieves a page of the TV shows of a type of several channels ordered by frequency on a given date, per channel and combined.
+     *
+     * @param date     The date for which the TV shows are to be retrieved.
+     * @param channels The channels to query, all channels if null or empty.
+     * @param type     The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
+     * @param offset   The number of leading TV shows to skip.
+     * @param limit    The maximum number of TV shows to return.
+     * @return The requested page per channel and over all channels that answered, with the version of the channels.
+     */
+    public Versioned<ChannelFrequencyResponse> getOrderedShowsByFrequencyByTypeOfChannels(String date, List<String> channels, ShowType type,
+                                                                                          int offset, int limit) {
+        return metrics.timeQuery("orderedShowsByTypeOfChannels", type, () -> aggregateChannels(date, channels,
+                frequencyIndex -> FrequencyIndex.page(frequencyIndex.getOrdered(type), offset, limit),
+                frequencies -> FrequencyIndex.top(frequencies.getFrequencies(type), offset, limit)));
+    }
+
+    /**
+     * Answers a batch of queries in one call. The queries are grouped by date, so each date is fetched and indexed once
+     * however many queries ask for it; the dates are fetched concurrently (upstream calls are bounded by the parser)
+     * and the queries of a date are evaluated as soon as its index is available. A query that fails, e.g. because
+     * its date is malformed or could not be fetched, is answered with its error and does not fail the batch.
+     *
+     * @param queries The queries.
+     * @return The results in the order of the queries.
+     * @throws IllegalArgumentException If the batch is empty or has more than {@link #MAX_BATCH_QUERIES} queries.
+     */
+    public List<BatchResult> getBatch(List<BatchQuery> queries) {
+        return metrics.timeQuery("batch", null, () -> {
+            checkBatch(queries);
+            Map<String, CompletableFuture<FrequencyIndex>> indexes = new HashMap<>();
+            List<CompletableFuture<BatchResult>> results = new ArrayList<>(queries.size());
+            for (BatchQuery query : queries) {
+                CompletableFuture<FrequencyIndex> index = indexes.computeIfAbsent(batchDateOf(query), this::getFrequencyIndexAsync);
+                results.add(index.handle((frequencyIndex, e) -> frequencyIndex != null
+                        ? evaluate(query, frequencyIndex)
+                        : BatchResult.failed(query, messageOf(e))));
             }
+            return results.stream().map(CompletableFuture::join).toList();
+        });
+    }
+
+    private CompletableFuture<FrequencyIndex> getFrequencyIndexAsync(String date) {
+        try {
+            checkDate(date);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        return epgItemsParser.getSnapshotAsync(date).thenApply(EpgSnapshot::getFrequencyIndex);
+    }
 
-        return showFrequencyMap;
+    /**
+     * @throws IllegalArgumentException If the batch is empty or has more than {@link #MAX_BATCH_QUERIES} queries.
+     */
+    static void checkBatch(List<BatchQuery> queries) {
+        if (queries == null || queries.isEmpty()) {
+            throw new IllegalArgumentException("A batch must have at least one query");
+        }
+        if (queries.size() > MAX_BATCH_QUERIES) {
+            throw new IllegalArgumentException("A batch must not have more than " + MAX_BATCH_QUERIES + " queries");
+        }
     }
 
     /**
-     * Retrieves the most frequent TV shows of a specific type airing on a given date.
+     * @return The date of a batch query, today if it has none.
+     */
+    static String batchDateOf(BatchQuery query) {
+        return query.getDate() == null || query.getDate().isEmpty() ? LocalDate.now().toString() : query.getDate();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the date is malformed.
+     */
+    static void checkDate(String date) {
+        try {
+            LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Dates must have the format yyyy-MM-dd", e);
+        }
+    }
+
+    /**
+     * Evaluates a batch query on the frequency index of its date.
      *
-     * @param date The date for which the TV shows are to be retrieved.
-     * @param type The type of TV shows to retrieve. Possible values are "TvShow", "Series", and "Movie".
-     * @return A list of FrequencyResponse objects representing the most frequent TV shows of the specified type.
+     * @param query          The query.
+     * @param frequencyIndex The frequency index of the date of the query.
+     * @return The result of the query, or its error if it is invalid.
+     */
+    BatchResult evaluate(BatchQuery query, FrequencyIndex frequencyIndex) {
+        if (query.getOperation() == null) {
+            return BatchResult.failed(query, "The operation is required, expected one of " + Arrays.toString(BatchQuery.Operation.values()));
+        }
+        ShowType type = query.getType();
+        int offset = query.getOffset() == null ? 0 : query.getOffset();
+        int limit = query.getLimit() == null ? Integer.MAX_VALUE : query.getLimit();
+        try {
+            return BatchResult.of(query, switch (query.getOperation()) {
+                case MOST_FREQUENT -> type == null ? frequencyIndex.getMostFrequent() : frequencyIndex.getMostFrequent(type);
+                case ORDERED -> FrequencyIndex.page(type == null ? frequencyIndex.getOrdered() : frequencyIndex.getOrdered(type), offset, limit);
+                case SERIES_BY_STATUS -> seriesByStatus(frequencyIndex);
+            });
+        } catch (IllegalArgumentException e) {
+            return BatchResult.failed(query, e.getMessage());
+        }
+    }
+
+    /**
+     * @return The message of the cause of a failed fetch.
+     */
+    static String messageOf(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return String.valueOf(cause.getMessage());
+    }
+
+    /**
+     * Retrieves the TV shows starting within a time window of a date, e.g. between 20:15 and 23:00, with the number of
+     * their airings and their airtime within the window. The window is looked up in the start-time index of the cached
+     * day, so only its slots are visited.
+     *
+     * @param date The date of the window (yyyy-MM-dd), the current date if null.
+     * @param from The start of the window (HH:mm), inclusive.
+     * @param to   The end of the window (HH:mm), exclusive. An end not after the start is on the following day.
+     * @param type The type of TV shows to retrieve, all types if null.
+     * @return A list of AirtimeResponse objects ordered by frequency and then by airtime, with the version of the date.
+     * @throws IllegalArgumentException If the date or a time is malformed.
+     * @throws EPGProjectionException   If the items are fetched without their airing times.
+     */
+    public Versioned<List<AirtimeResponse>> getShowsInTimeWindow(String date, String from, String to, ShowType type) {
+        return metrics.timeQuery("showsInTimeWindow", type, () -> onSchedule(date, timeWindowQuery(date, from, to, type)));
+    }
+
+    /**
+     * Retrieves the TV shows starting in prime time ({@code epg.channels.prime-time-start} to
+     * {@code epg.channels.prime-time-end}) of a date, see {@link #getShowsInTimeWindow(String, String, String, ShowType)}.
+     *
+     * @param date The date (yyyy-MM-dd), the current date if null.
+     * @param type The type of TV shows to retrieve, all types if null.
+     * @return A list of AirtimeResponse objects ordered by frequency and then by airtime, with the version of the date.
      */
-    public List<FrequencyResponse> getMostFrequentShowsByShowType(String date, ShowType type) {
-        Map<String, Integer> showFrequencyMap = getShowsMapByType(date, type);
+    public Versioned<List<AirtimeResponse>> getPrimeTimeShows(String date, ShowType type) {
+        return metrics.timeQuery("primeTimeShows", type, () -> onSchedule(date, primeTimeQuery(date, type)));
+    }
 
-        List<FrequencyResponse> frequencyResponses = new ArrayList<>();
-        return getFrequencyResponses(showFrequencyMap, frequencyResponses);
+    /**
+     * Retrieves what airs at a time of a date.
+     *
+     * @param date The date (yyyy-MM-dd), the current date if null.
+     * @param time The time of day (HH:mm).
+     * @return The EPG items airing at the time, usually one, with the version of the date.
+     * @throws IllegalArgumentException If the date or the time is malformed.
+     * @throws EPGProjectionException   If the items are fetched without their airing times.
+     */
+    public Versioned<List<Item>> getAiringAt(String date, String time) {
+        return metrics.timeQuery("airingAt", null, () -> onSchedule(date, airingAtQuery(date, time)));
     }
 
     /**
-     * Calculates the frequency responses for TV shows based on the provided show frequency map.
+     * Validates a time-window query before the day is fetched.
      *
-     * @param showFrequencyMap   A map containing TV show titles as keys and their frequencies as values.
-     * @param frequencyResponses A list of FrequencyResponse objects to which the calculated responses will be added.
-     * @return The updated list of FrequencyResponse objects containing the most frequent TV show(s) and their frequencies.
+     * @return The query on the schedule of the date.
+     * @throws IllegalArgumentException If the date or a time is malformed.
      */
-    private List<FrequencyResponse> getFrequencyResponses(Map<String, Integer> showFrequencyMap, List<FrequencyResponse> frequencyResponses) {
-        List<String> mostFrequentShows = new ArrayList<>();
-        int maxFrequency = 0;
+    Function<DaySchedule, List<AirtimeResponse>> timeWindowQuery(String date, String from, String to, ShowType type) {
+        return timeWindowQuery(date, timeOf(from), timeOf(to), type);
+    }
 
-        for (Map.Entry<String, Integer> entry : showFrequencyMap.entrySet()) {
-            String show = entry.getKey();
-            int frequency = entry.getValue();
+    Function<DaySchedule, List<AirtimeResponse>> primeTimeQuery(String date, ShowType type) {
+        return timeWindowQuery(date, primeTimeStart, primeTimeEnd, type);
+    }
 
-            if (showFrequencyMap.get(show) > maxFrequency) {
-                // Update maxFrequency
-                maxFrequency = frequency;
-                // Clear the previous most frequent shows list
-                mostFrequentShows.clear();
-                // Add the current show to the list
-                mostFrequentShows.add(show);
-            } else if (frequency == maxFrequency) {
-                // If the frequency is equal to maxFrequency, add the show to the list
-                mostFrequentShows.add(show);
+    private Function<DaySchedule, List<AirtimeResponse>> timeWindowQuery(String date, LocalTime start, LocalTime end, ShowType type) {
+        epgQuery.require("The time-window queries", "startTime", "endTime");
+        if (date != null) {
+            checkDate(date);
+        }
+        return schedule -> {
+            ZonedDateTime windowStart = resolve(schedule, date, start);
+            ZonedDateTime windowEnd = windowStart.with(end);
+            if (!windowEnd.isAfter(windowStart)) {
+                windowEnd = windowEnd.plusDays(1);
             }
+            return schedule.countWindow(Math.toIntExact(windowStart.toEpochSecond()), Math.toIntExact(windowEnd.toEpochSecond()), type);
+        };
+    }
+
+    /**
+     * Validates a query for what airs at a time before the day is fetched.
+     *
+     * @return The query on the schedule of the date.
+     * @throws IllegalArgumentException If the date or the time is malformed.
+     */
+    Function<DaySchedule, List<Item>> airingAtQuery(String date, String time) {
+        epgQuery.require("The airing-at queries", "startTime", "endTime");
+        if (date != null) {
+            checkDate(date);
         }
+        LocalTime localTime = timeOf(time);
+        return schedule -> schedule.airingAt(Math.toIntExact(resolve(schedule, date, localTime).toEpochSecond()));
+    }
+
+    /**
+     * Resolves a time of day within the EPG of a date. The EPG of a date starts in the morning and runs past midnight,
+     * so a time before its first airing is taken on the following day if the EPG still runs then, e.g. 01:00 is
+     * the night after the date.
+     */
+    private ZonedDateTime resolve(DaySchedule schedule, String date, LocalTime time) {
+        LocalDate day = date == null ? LocalDate.now(zone) : LocalDate.parse(date);
+        ZonedDateTime resolved = day.atTime(time).atZone(zone);
+        ZonedDateTime nextDay = resolved.plusDays(1);
+        return resolved.toEpochSecond() < schedule.firstStartTime() && nextDay.toEpochSecond() < schedule.lastEndTime()
+                ? nextDay
+                : resolved;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the time is malformed.
+     */
+    static LocalTime timeOf(String time) {
+        if (time == null) {
+            throw new IllegalArgumentException("Times must have the format HH:mm");
+        }
+        try {
+            return LocalTime.parse(time);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Times must have the format HH:mm", e);
+        }
+    }
+
+    /**
+     * Searches the episode titles, TV show titles and descriptions of a date and counts the matching airings per TV show.
+     * Every word of the query matches the words starting with it, ignoring case and diacritics, and an airing matches
+     * if its texts match all words of the query. The airings are looked up in the inverted index of the cached day.
+     *
+     * @param date   The date to search (yyyy-MM-dd), the current date if null.
+     * @param query  The search query, e.g. "Simpsons" or "scrubs anf".
+     * @param offset The number of leading TV shows to skip.
+     * @param limit  The maximum number of TV shows to return.
+     * @return A list of FrequencyResponse objects of the matching TV shows, ordered by their number of matching airings,
+     * with the version of the date.
+     * @throws IllegalArgumentException If the query contains no word.
+     * @throws EPGProjectionException   If the items are fetched without their descriptions.
+     */
+    public Versioned<List<FrequencyResponse>> searchShows(String date, String query, int offset, int limit) {
+        return metrics.timeQuery("searchShows", null, () -> {
+            Function<List<DaySchedule>, List<FrequencyResponse>> search = searchQuery(query, offset, limit);
+            return onSchedule(date, schedule -> search.apply(List.of(schedule)));
+        });
+    }
+
+    /**
+     * Searches all days of a date range, see {@link #searchShows(String, String, int, int)}.
+     *
+     * @param from   The first date of the range (inclusive).
+     * @param to     The last date of the range (inclusive).
+     * @param query  The search query.
+     * @param offset The number of leading TV shows to skip.
+     * @param limit  The maximum number of TV shows to return.
+     * @return A list of FrequencyResponse objects of the matching TV shows, ordered by their number of matching airings,
+     * with the version of the range.
+     * @throws IllegalArgumentException If the query contains no word or the range is invalid.
+     */
+    public Versioned<List<FrequencyResponse>> searchShows(String from, String to, String query, int offset, int limit) {
+        return metrics.timeQuery("searchShowsInRange", null, () -> {
+            Function<List<DaySchedule>, List<FrequencyResponse>> search = searchQuery(query, offset, limit);
+            return onRange(from, to, snapshots -> search.apply(snapshots.stream().map(EpgSnapshot::getSchedule).toList()));
+        });
+    }
 
-        for (String mostFrequentShow : mostFrequentShows) {
-            frequencyResponses.add(new FrequencyResponse(mostFrequentShow, maxFrequency));
+    /**
+     * Validates a search query before the days are fetched.
+     *
+     * @return The query on the schedules of the days.
+     * @throws IllegalArgumentException If the query contains no word.
+     */
+    Function<List<DaySchedule>, List<FrequencyResponse>> searchQuery(String query, int offset, int limit) {
+        epgQuery.require("The searches", "title", "description", "tvShow");
+        List<String> prefixes = SearchIndex.prefixesOf(query);
+        if (prefixes.isEmpty()) {
+            throw new IllegalArgumentException("The search query must contain a word");
         }
+        return schedules -> {
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (DaySchedule schedule : schedules) {
+                schedule.searchIndex().countMatches(prefixes).forEach((title, count) -> frequencies.merge(title, count, Integer::sum));
+            }
+            return FrequencyIndex.top(frequencies, offset, limit);
+        };
+    }
 
-        return frequencyResponses;
+    /**
+     * Ranks the TV shows by how their frequency changed between the last {@code days} days up to a date and the
+     * {@code days} days before, e.g. to find the TV shows rising most over the last week. The sums of both periods are
+     * kept in {@link TrendWindows}: for the windows ending today they are updated as the days pass and the days are
+     * refreshed. The windows of the last {@link #MAX_PAST_TREND_WINDOWS} other end dates are kept as well, so only the
+     * first request for such a date sums up all its days.
+     * <p>
+     * Each request looks up the snapshots of the {@code 2 * days} days once, for both the version and the result.
+     * Under the lock of the windows, it compares the versions of the days, replaces the counts of the changed ones and
+     * collects the TV shows of the window, which is linear in the titles seen so far; it sorts them after the lock
+     * is released.
+     *
+     * @param date    The last day of the current period (yyyy-MM-dd), the current date if null.
+     * @param days    The length of both periods in days, one of {@link #TREND_WINDOWS}.
+     * @param type    The type of TV shows to rank, all types if null.
+     * @param measure The measure to rank by, the delta or the growth of the airings.
+     * @param falling Whether the TV shows falling most come first, otherwise those rising most.
+     * @param offset  The number of leading TV shows to skip.
+     * @param limit   The maximum number of TV shows to return.
+     * @return A list of TrendResponse objects of the TV shows airing in either period, with the version of the days of both periods.
+     * @throws IllegalArgumentException If the date is malformed or the window is not supported.
+     */
+    public Versioned<List<TrendResponse>> getTrendingShows(String date, int days, ShowType type, TrendWindows.Measure measure,
+                                                           boolean falling, int offset, int limit) {
+        return metrics.timeQuery("trendingShows", type, () -> {
+            List<LocalDate> dates = trendDates(date, days);
+            List<EpgSnapshot> snapshots = getSnapshots(dates);
+            return new Versioned<>(trendVersionOf(dates, snapshots),
+                    () -> trendQuery(dates, snapshots, type, measure, falling, offset, limit));
+        });
     }
 
     /**
-     * Adds the TV show from the given item to the show frequency map.
+     * Combines the versions of the snapshots of a trend query, see {@link #getTrendingShows}.
      *
-     * @param item             The item containing information about the TV show.
-     * @param showFrequencyMap A map containing TV show titles as keys and their frequencies as values.
+     * @param dates     The days of both periods, see {@link #trendDates(String, int)}.
+     * @param snapshots The snapshots of the days.
+     * @return The version of the days of both periods.
      */
-    private void addShowToMap(Item item, Map<String, Integer> showFrequencyMap) {
-        String showTitle = item.getTvShow().getTitle();
-        if (showFrequencyMap.containsKey(showTitle)) {
-            showFrequencyMap.put(showTitle, showFrequencyMap.get(showTitle) + 1);
+    SnapshotVersion trendVersionOf(List<LocalDate> dates, List<EpgSnapshot> snapshots) {
+        return versionOf(snapshots, maxAgeOf(dates.get(dates.size() - 1).toString()));
+    }
+
+    /**
+     * Lists the days of a trend query: the previous period followed by the current period, which ends on the date.
+     *
+     * @throws IllegalArgumentException If the date is malformed or the window is not supported.
+     */
+    List<LocalDate> trendDates(String date, int days) {
+        if (!trendWindows.supports(days)) {
+            throw new IllegalArgumentException("The trend window must be one of " + Arrays.toString(TREND_WINDOWS) + " days");
+        }
+        LocalDate last;
+        if (date == null || date.isEmpty()) {
+            last = LocalDate.now(zone);
         } else {
-            showFrequencyMap.put(showTitle, 1);
+            checkDate(date);
+            last = LocalDate.parse(date);
+        }
+        return last.minusDays(2L * days - 1).datesUntil(last.plusDays(1)).toList();
+    }
+
+    /**
+     * Ranks the TV shows of a trend query on the snapshots of its days, see {@link #trendWindowsOf(LocalDate)}.
+     */
+    List<TrendResponse> trendQuery(List<LocalDate> dates, List<EpgSnapshot> snapshots, ShowType type,
+                                   TrendWindows.Measure measure, boolean falling, int offset, int limit) {
+        LocalDate last = dates.get(dates.size() - 1);
+        return trendWindowsOf(last).rank(last, snapshots.stream().map(EpgSnapshot::getFrequencyIndex).toList(),
+                type, measure, falling, offset, limit);
+    }
+
+    /**
+     * Looks up the windows ending on a day. The windows ending today are shared by all requests, any other end date
+     * is ranked on windows of its own, so it does not move the shared ones. These are kept for the most recently
+     * ranked end dates, past days rarely change, so a repeated request only compares the versions of its days.
+     *
+     * @param last The last day of the current periods.
+     * @return The TrendWindows ending on the day.
+     */
+    TrendWindows trendWindowsOf(LocalDate last) {
+        if (last.equals(LocalDate.now(zone))) {
+            return trendWindows;
+        }
+        synchronized (pastTrendWindows) {
+            return pastTrendWindows.computeIfAbsent(last, day -> new TrendWindows(TREND_WINDOWS));
         }
     }
 
@@ -205,11 +891,15 @@ public class EPGService {
      * Retrieves a list of running series based on the provided date.
      *
      * @param date The date for which the running series are to be retrieved.
-     * @return A list of StatusResponse objects representing the running series.
+     * @return A list of StatusResponse objects representing the running series, with the version of the date.
      */
-    public List<StatusResponse> getSeriesByStatus(String date) {
-        // Retrieves a map of series titles and their respective statuses based on the provided date
-        Map<String, Integer> seriesMap = getShowsMapByType(date,ShowType.SERIES);
+    public Versioned<List<StatusResponse>> getSeriesByStatus(String date) {
+        return metrics.timeQuery("seriesByStatus", ShowType.SERIES, () -> onDay(date, snapshot -> seriesByStatus(snapshot.getFrequencyIndex())));
+    }
+
+    List<StatusResponse> seriesByStatus(FrequencyIndex frequencyIndex) {
+        // Retrieves a map of series titles and their respective statuses based on the provided index
+        Map<String, Integer> seriesMap = frequencyIndex.getFrequencies(ShowType.SERIES);
 
         // Initializes a list to store StatusResponse objects
         List<StatusResponse> statusResponses = new ArrayList<>();
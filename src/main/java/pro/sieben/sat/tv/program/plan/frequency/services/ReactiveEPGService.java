@@ -0,0 +1,293 @@
+package pro.sieben.sat.tv.program.plan.frequency.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import pro.sieben.sat.tv.program.plan.frequency.model.*;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGItemsParser;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGMetrics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The queries of {@link EPGService} as non-blocking pipelines, used by the reactive mode.
+ * The snapshots are fetched with {@link EPGItemsParser#getSnapshotReactive(String, String)}, so a query waiting for
+ * the EPG API holds no thread; the answers are computed from the same frequency indexes as the blocking queries.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveEPGService {
+
+    private final EPGService epgService;
+
+    private final EPGItemsParser epgItemsParser;
+
+    private final EPGMetrics metrics;
+
+    @Autowired
+    public ReactiveEPGService(EPGService epgService, EPGItemsParser epgItemsParser, EPGMetrics metrics) {
+        this.epgService = epgService;
+        this.epgItemsParser = epgItemsParser;
+        this.metrics = metrics;
+    }
+
+    private Mono<FrequencyIndex> getFrequencyIndex(String date) {
+        return epgItemsParser.getSnapshotReactive(date).map(EpgSnapshot::getFrequencyIndex);
+    }
+
+    /**
+     * Answers a query on the snapshot of a date, deriving the version and the result from the same snapshot,
+     * see {@link EPGService#getMostFrequentShows(String)}.
+     */
+    private <T> Mono<Versioned<T>> onDay(String date, Function<EpgSnapshot, T> query) {
+        return epgItemsParser.getSnapshotReactive(date)
+                .map(snapshot -> new Versioned<>(EPGService.versionOf(List.of(snapshot), epgService.maxAgeOf(date)), () -> query.apply(snapshot)));
+    }
+
+    /**
+     * Answers a query on the snapshots of all days from {@code from} to {@code to} (both inclusive), deriving the
+     * version and the result from the same snapshots.
+     */
+    private <T> Mono<Versioned<T>> onRange(String from, String to, Function<List<EpgSnapshot>, T> query) {
+        return getRangeSnapshots(from, to)
+                .map(snapshots -> new Versioned<>(EPGService.versionOf(snapshots, epgService.maxAgeOf(to)), () -> query.apply(snapshots)));
+    }
+
+    /**
+     * Fetches the snapshots of all days from {@code from} to {@code to} (both inclusive) concurrently.
+     *
+     * @param from The first date of the range (yyyy-MM-dd).
+     * @param to   The last date of the range (yyyy-MM-dd).
+     * @return A Mono emitting the snapshots of the days in order.
+     */
+    private Mono<List<EpgSnapshot>> getRangeSnapshots(String from, String to) {
+        return Mono.defer(() -> getSnapshots(EPGService.datesBetween(from, to)));
+    }
+
+    private Mono<List<EpgSnapshot>> getSnapshots(List<LocalDate> dates) {
+        return Flux.fromIterable(dates)
+                .flatMapSequential(date -> epgItemsParser.getSnapshotReactive(date.toString()))
+                .collectList();
+    }
+
+    private static ShowFrequencies frequenciesOf(List<EpgSnapshot> snapshots) {
+        ShowFrequencies frequencies = new ShowFrequencies();
+        snapshots.forEach(snapshot -> frequencies.addAll(snapshot.getFrequencyIndex()));
+        return frequencies;
+    }
+
+    /**
+     * Fetches the snapshots of several channels for a date concurrently, waiting at most the channel timeout for each.
+     *
+     * @param date      The date for which the snapshots are to be retrieved.
+     * @param requested The channels to query, all channels if null or empty.
+     * @return A Mono emitting the snapshots of the channels that answered and the errors of those that did not,
+     * or the first error if no channel answered.
+     */
+    private Mono<ChannelSnapshots> getChannelSnapshots(String date, List<String> requested) {
+        // Each channel emits how it is to be recorded, so the results are collected sequentially and in request order
+        return Mono.defer(() -> Flux.fromIterable(epgService.channelsOf(requested))
+                .flatMapSequential(channel -> epgItemsParser.getSnapshotReactive(date, channel)
+                        .timeout(epgService.getChannelTimeout())
+                        .<Consumer<ChannelSnapshots>>map(snapshot -> snapshots -> snapshots.answered(channel, snapshot))
+                        .onErrorResume(e -> Mono.just(snapshots -> snapshots.failed(channel, e))))
+                .collect(() -> new ChannelSnapshots(epgService.getChannelTimeout()),
+                        (snapshots, result) -> result.accept(snapshots))
+                .map(ChannelSnapshots::requireAnswer));
+    }
+
+    private Mono<Versioned<ChannelFrequencyResponse>> aggregateChannels(String date, List<String> requested,
+                                                                       Function<FrequencyIndex, List<FrequencyResponse>> perChannel,
+                                                                       Function<ShowFrequencies, List<FrequencyResponse>> combined) {
+        return getChannelSnapshots(date, requested).map(snapshots ->
+                new Versioned<>(snapshots.version(epgService.maxAgeOf(date)), () -> snapshots.aggregate(perChannel, combined)));
+    }
+
+    /**
+     * @see EPGService#getMostFrequentShows(String)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> getMostFrequentShows(String date) {
+        return metrics.timeQuery("mostFrequentShows", null, onDay(date, snapshot -> snapshot.getFrequencyIndex().getMostFrequent()));
+    }
+
+    /**
+     * @see EPGService#getOrderedShowsByFrequency(String, int, int)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> getOrderedShowsByFrequency(String date, int offset, int limit) {
+        return metrics.timeQuery("orderedShows", null,
+                onDay(date, snapshot -> FrequencyIndex.page(snapshot.getFrequencyIndex().getOrdered(), offset, limit)));
+    }
+
+    /**
+     * @see EPGService#getOrderedShowsByFrequencyByType(String, ShowType, int, int)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> getOrderedShowsByFrequencyByType(String date, ShowType type, int offset, int limit) {
+        return metrics.timeQuery("orderedShowsByType", type,
+                onDay(date, snapshot -> FrequencyIndex.page(snapshot.getFrequencyIndex().getOrdered(type), offset, limit)));
+    }
+
+    /**
+     * @see EPGService#getMostFrequentShowsByShowType(String, ShowType)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> getMostFrequentShowsByShowType(String date, ShowType type) {
+        return metrics.timeQuery("mostFrequentShowsByType", type,
+                onDay(date, snapshot -> snapshot.getFrequencyIndex().getMostFrequent(type)));
+    }
+
+    /**
+     * @see EPGService#getMostFrequentShows(String, String)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> getMostFrequentShows(String from, String to) {
+        return metrics.timeQuery("mostFrequentShowsInRange", null,
+                onRange(from, to, snapshots -> FrequencyIndex.mostFrequent(frequenciesOf(snapshots).getFrequencies())));
+    }
+
+    /**
+     * @see EPGService#getOrderedShowsByFrequency(String, String, int, int)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> getOrderedShowsByFrequency(String from, String to, int offset, int limit) {
+        return metrics.timeQuery("orderedShowsInRange", null,
+                onRange(from, to, snapshots -> FrequencyIndex.top(frequenciesOf(snapshots).getFrequencies(), offset, limit)));
+    }
+
+    /**
+     * @see EPGService#getOrderedShowsByFrequencyByType(String, String, ShowType, int, int)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> getOrderedShowsByFrequencyByType(String from, String to, ShowType type, int offset, int limit) {
+        return metrics.timeQuery("orderedShowsByTypeInRange", type,
+                onRange(from, to, snapshots -> FrequencyIndex.top(frequenciesOf(snapshots).getFrequencies(type), offset, limit)));
+    }
+
+    /**
+     * @see EPGService#getSeriesByStatus(String)
+     */
+    public Mono<Versioned<List<StatusResponse>>> getSeriesByStatus(String date) {
+        return metrics.timeQuery("seriesByStatus", ShowType.SERIES,
+                onDay(date, snapshot -> epgService.seriesByStatus(snapshot.getFrequencyIndex())));
+    }
+
+    /**
+     * @see EPGService#getShowsInTimeWindow(String, String, String, ShowType)
+     */
+    public Mono<Versioned<List<AirtimeResponse>>> getShowsInTimeWindow(String date, String from, String to, ShowType type) {
+        return metrics.timeQuery("showsInTimeWindow", type, onSchedule(date, () -> epgService.timeWindowQuery(date, from, to, type)));
+    }
+
+    /**
+     * @see EPGService#getPrimeTimeShows(String, ShowType)
+     */
+    public Mono<Versioned<List<AirtimeResponse>>> getPrimeTimeShows(String date, ShowType type) {
+        return metrics.timeQuery("primeTimeShows", type, onSchedule(date, () -> epgService.primeTimeQuery(date, type)));
+    }
+
+    /**
+     * @see EPGService#getAiringAt(String, String)
+     */
+    public Mono<Versioned<List<Item>>> getAiringAt(String date, String time) {
+        return metrics.timeQuery("airingAt", null, onSchedule(date, () -> epgService.airingAtQuery(date, time)));
+    }
+
+    /**
+     * @see EPGService#searchShows(String, String, int, int)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> searchShows(String date, String query, int offset, int limit) {
+        return metrics.timeQuery("searchShows", null, onSchedule(date, () -> {
+            Function<List<DaySchedule>, List<FrequencyResponse>> search = epgService.searchQuery(query, offset, limit);
+            return schedule -> search.apply(List.of(schedule));
+        }));
+    }
+
+    /**
+     * @see EPGService#searchShows(String, String, String, int, int)
+     */
+    public Mono<Versioned<List<FrequencyResponse>>> searchShows(String from, String to, String query, int offset, int limit) {
+        return metrics.timeQuery("searchShowsInRange", null, Mono.fromSupplier(() -> epgService.searchQuery(query, offset, limit))
+                .flatMap(search -> onRange(from, to, snapshots -> search.apply(snapshots.stream().map(EpgSnapshot::getSchedule).toList()))));
+    }
+
+    /**
+     * @see EPGService#getTrendingShows(String, int, ShowType, TrendWindows.Measure, boolean, int, int)
+     */
+    public Mono<Versioned<List<TrendResponse>>> getTrendingShows(String date, int days, ShowType type, TrendWindows.Measure measure,
+                                                                 boolean falling, int offset, int limit) {
+        return metrics.timeQuery("trendingShows", type, Mono.defer(() -> {
+            List<LocalDate> dates = epgService.trendDates(date, days);
+            return getSnapshots(dates).map(snapshots -> new Versioned<>(epgService.trendVersionOf(dates, snapshots),
+                    () -> epgService.trendQuery(dates, snapshots, type, measure, falling, offset, limit)));
+        }));
+    }
+
+    /**
+     * Validates a query when subscribed, so malformed parameters fail before the day is fetched, and runs it on the
+     * schedule of the date.
+     */
+    private <T> Mono<Versioned<T>> onSchedule(String date, Supplier<Function<DaySchedule, T>> query) {
+        return Mono.fromSupplier(query)
+                .flatMap(scheduleQuery -> onDay(date, snapshot -> scheduleQuery.apply(snapshot.getSchedule())));
+    }
+
+    /**
+     * @return The channels that can be queried.
+     */
+    public List<String> getChannels() {
+        return epgService.getChannels();
+    }
+
+    /**
+     * @see EPGService#getMostFrequentShowsOfChannels(String, List)
+     */
+    public Mono<Versioned<ChannelFrequencyResponse>> getMostFrequentShowsOfChannels(String date, List<String> channels) {
+        return metrics.timeQuery("mostFrequentShowsOfChannels", null, aggregateChannels(date, channels,
+                FrequencyIndex::getMostFrequent,
+                frequencies -> FrequencyIndex.mostFrequent(frequencies.getFrequencies())));
+    }
+
+    /**
+     * @see EPGService#getOrderedShowsByFrequencyOfChannels(String, List, int, int)
+     */
+    public Mono<Versioned<ChannelFrequencyResponse>> getOrderedShowsByFrequencyOfChannels(String date, List<String> channels, int offset, int limit) {
+        return metrics.timeQuery("orderedShowsOfChannels", null, aggregateChannels(date, channels,
+                frequencyIndex -> FrequencyIndex.page(frequencyIndex.getOrdered(), offset, limit),
+                frequencies -> FrequencyIndex.top(frequencies.getFrequencies(), offset, limit)));
+    }
+
+    /**
+     * @see EPGService#getOrderedShowsByFrequencyByTypeOfChannels(String, List, ShowType, int, int)
+     */
+    public Mono<Versioned<ChannelFrequencyResponse>> getOrderedShowsByFrequencyByTypeOfChannels(String date, List<String> channels, ShowType type,
+                                                                                                int offset, int limit) {
+        return metrics.timeQuery("orderedShowsByTypeOfChannels", type, aggregateChannels(date, channels,
+                frequencyIndex -> FrequencyIndex.page(frequencyIndex.getOrdered(type), offset, limit),
+                frequencies -> FrequencyIndex.top(frequencies.getFrequencies(type), offset, limit)));
+    }
+
+    /**
+     * @see EPGService#getBatch(List)
+     */
+    public Mono<List<BatchResult>> getBatch(List<BatchQuery> queries) {
+        return metrics.timeQuery("batch", null, Mono.defer(() -> {
+            EPGService.checkBatch(queries);
+            // Each date is fetched once, however many queries subscribe to it
+            Map<String, Mono<FrequencyIndex>> indexes = new HashMap<>();
+            for (BatchQuery query : queries) {
+                indexes.computeIfAbsent(EPGService.batchDateOf(query), date -> Mono.defer(() -> {
+                    EPGService.checkDate(date);
+                    return getFrequencyIndex(date);
+                }).cache());
+            }
+            return Flux.fromIterable(queries)
+                    .flatMapSequential(query -> indexes.get(EPGService.batchDateOf(query))
+                            .map(frequencyIndex -> epgService.evaluate(query, frequencyIndex))
+                            .onErrorResume(e -> Mono.just(BatchResult.failed(query, EPGService.messageOf(e)))))
+                    .collectList();
+        }));
+    }
+}
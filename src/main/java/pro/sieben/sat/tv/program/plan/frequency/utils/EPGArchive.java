@@ -0,0 +1,187 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import pro.sieben.sat.tv.program.plan.frequency.model.DaySchedule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * A local archive of the schedules of past days, which never change once they are over.
+ * Each day is written to its own binary segment file and read back through a memory-mapped buffer.
+ * A segment starts with a header holding a magic number, the format version, the {@link EPGQuery} the schedule was
+ * fetched with, the payload length and a CRC32 checksum of the payload; segments that are corrupted, written in another
+ * format version or fetched with a query lacking item fields of the configured query are deleted and fetched again.
+ */
+@Slf4j
+public class EPGArchive {
+
+    static final int MAGIC = 0x45504753; // "EPGS"
+    static final int FORMAT_VERSION = 3;
+    static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+
+    // The query the schedules are fetched with
+    private final EPGQuery query;
+
+    public EPGArchive(Path directory) {
+        this(directory, EPGQuery.SCHEDULE);
+    }
+
+    public EPGArchive(Path directory, EPGQuery query) {
+        this.directory = directory;
+        this.query = query;
+    }
+
+    /**
+     * Creates an archive that stores nothing, for setups without a writable directory.
+     *
+     * @return A disabled EPGArchive.
+     */
+    public static EPGArchive disabled() {
+        return new EPGArchive(null);
+    }
+
+    /**
+     * Checks whether the schedule of the given date can be archived, which is the case for past days only.
+     *
+     * @param date The date (yyyy-MM-dd) to check.
+     * @return true if the archive is enabled and the date is before today.
+     */
+    public boolean isArchivable(String date) {
+        if (directory == null) {
+            return false;
+        }
+        try {
+            return LocalDate.parse(SnapshotKeys.dateOf(date)).isBefore(LocalDate.now());
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the archived schedule of the given date.
+     *
+     * @param date The date (yyyy-MM-dd) to read.
+     * @return The archived DaySchedule, or an empty Optional if the date is not archived, its segment is invalid or
+     * lacks item fields of the configured query.
+     */
+    public Optional<DaySchedule> read(String date) {
+        if (!isArchivable(date)) {
+            return Optional.empty();
+        }
+        Path segment = segmentOf(date);
+        if (!Files.isRegularFile(segment)) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return Optional.of(decode(buffer));
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Discarding invalid EPG archive segment {}: {}", segment, e.getMessage());
+            delete(segment);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes the schedule of the given date to its segment, if the date is archivable and the schedule has items.
+     * An empty schedule is never archived: a past day without airings is more likely a failed or incomplete response,
+     * which would otherwise be served forever.
+     * The segment is written to a temporary file first and then moved into place, so readers never see partial segments.
+     * Failures are logged and otherwise ignored, the schedule is simply fetched again next time.
+     *
+     * @param date     The date (yyyy-MM-dd) of the schedule.
+     * @param schedule The schedule to archive.
+     */
+    public void write(String date, DaySchedule schedule) {
+        if (!isArchivable(date)) {
+            return;
+        }
+        if (schedule.size() == 0) {
+            log.debug("Not archiving the empty EPG of {}", date);
+            return;
+        }
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            schedule.writeTo(new DataOutputStream(payload));
+            byte[] bytes = payload.toByteArray();
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putInt(query.ordinal())
+                    .putInt(bytes.length)
+                    .putInt((int) checksum.getValue())
+                    .flip();
+
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, date, ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.write(new ByteBuffer[]{header, ByteBuffer.wrap(bytes)});
+                channel.force(false);
+            }
+            Files.move(temporary, segmentOf(date), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not archive the EPG of {}: {}", date, e.getMessage());
+        }
+    }
+
+    private DaySchedule decode(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not an EPG segment");
+        }
+        int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("outdated format version " + version);
+        }
+        int ordinal = buffer.getInt();
+        if (ordinal < 0 || ordinal >= EPGQuery.values().length) {
+            throw new IllegalArgumentException("unknown query " + ordinal);
+        }
+        EPGQuery segmentQuery = EPGQuery.values()[ordinal];
+        if (!segmentQuery.covers(query)) {
+            throw new IllegalArgumentException("fetched with the " + segmentQuery.name().toLowerCase(Locale.ROOT) + " query");
+        }
+        int length = buffer.getInt();
+        int expectedChecksum = buffer.getInt();
+        if (length != buffer.remaining()) {
+            throw new IllegalArgumentException("truncated payload");
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.duplicate());
+        if ((int) checksum.getValue() != expectedChecksum) {
+            throw new IllegalArgumentException("checksum mismatch");
+        }
+        return DaySchedule.readFrom(buffer);
+    }
+
+    private Path segmentOf(String date) {
+        return directory.resolve(date + SEGMENT_SUFFIX);
+    }
+
+    private static void delete(Path segment) {
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            log.warn("Could not delete EPG archive segment {}: {}", segment, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops calling the EPG API while it keeps failing, so requests fail fast instead of each waiting for its deadline.
+ * <ul>
+ *     <li>Closed: fetches are let through. After the configured number of failed fetches in a row, the circuit opens.</li>
+ *     <li>Open: fetches are rejected until the open duration is over.</li>
+ *     <li>Half open: a single trial fetch is let through. If it succeeds the circuit closes, otherwise it opens again.
+ *     A trial that has not finished within the open duration no longer blocks the next one.</li>
+ * </ul>
+ * A failure threshold of zero or less disables the breaker. The state is published as {@code epg.upstream.circuit}
+ * (0 closed, 1 open, 2 half open) and the rejected fetches as {@code epg.upstream.rejected}.
+ */
+@Slf4j
+public class EPGCircuitBreaker implements MeterBinder {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    private final LongAdder rejected = new LongAdder();
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int failures;
+    // When the circuit opened, or when the current trial started
+    private long since;
+
+    public EPGCircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+    EPGCircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Asks whether a fetch may call the EPG API. Every permitted fetch has to report its outcome with
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @throws EPGCircuitOpenException If the circuit is open.
+     */
+    public void acquire() {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        synchronized (this) {
+            long now = clock.millis();
+            if (state == State.CLOSED) {
+                return;
+            }
+            long remaining = openDuration.toMillis() - (now - since);
+            if (remaining <= 0) {
+                state = State.HALF_OPEN;
+                since = now;
+                return;
+            }
+            rejected.increment();
+            throw new EPGCircuitOpenException(Duration.ofMillis(remaining));
+        }
+    }
+
+    /**
+     * Records a fetch that succeeded, closing the circuit.
+     */
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("The EPG API answered again, closing the circuit");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Records a fetch that failed, opening the circuit after too many failures in a row or a failed trial.
+     */
+    public synchronized void onFailure() {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        failures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+            if (state == State.CLOSED) {
+                log.warn("The EPG API failed {} times in a row, failing fast for {} ms", failures, openDuration.toMillis());
+            }
+            state = State.OPEN;
+            since = clock.millis();
+        }
+    }
+
+    /**
+     * @return The current state, without letting a trial through.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("epg.upstream.circuit", this, breaker -> breaker.getState().ordinal())
+                .description("State of the circuit breaker of the EPG API: 0 closed, 1 open, 2 half open")
+                .register(registry);
+        FunctionCounter.builder("epg.upstream.rejected", rejected, LongAdder::sum)
+                .description("Fetches rejected while the circuit was open")
+                .register(registry);
+    }
+}
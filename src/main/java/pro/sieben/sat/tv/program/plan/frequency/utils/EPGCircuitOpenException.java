@@ -0,0 +1,23 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import lombok.Getter;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+
+/**
+ * Thrown instead of calling the EPG API while the circuit is open, see {@link EPGCircuitBreaker}.
+ */
+@Getter
+public class EPGCircuitOpenException extends ResourceAccessException {
+
+    private static final long serialVersionUID = 1L;
+
+    // How long until the next fetch is let through
+    private final Duration retryAfter;
+
+    public EPGCircuitOpenException(Duration retryAfter) {
+        super("The EPG API is unavailable, retrying in " + retryAfter.toSeconds() + " s");
+        this.retryAfter = retryAfter;
+    }
+}
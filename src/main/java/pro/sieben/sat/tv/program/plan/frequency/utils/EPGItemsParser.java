@@ -1,30 +1,159 @@
 package pro.sieben.sat.tv.program.plan.frequency.utils;
 
 import io.micrometer.common.util.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientException;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
 import pro.sieben.sat.tv.program.plan.frequency.model.ApiResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.DaySchedule;
+import pro.sieben.sat.tv.program.plan.frequency.model.EpgSnapshot;
 import pro.sieben.sat.tv.program.plan.frequency.model.Item;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * A utility class for parsing Electronic Programming Guide (EPG) items from a remote API.
  * This class retrieves EPG data from a specified URL and converts it into a list of Item objects.
+ * Fetched items are kept in an {@link EPGSnapshotCache} so repeated requests for the same date share one upstream call.
+ * The parser is shared by all request threads; the number of requests sent to the API at the same time is bounded.
+ * With a WebClient, snapshots can also be fetched without blocking any thread, see {@link #getSnapshotReactive(String, String)}.
+ * <p>
+ * The items are requested with the fields of the configured {@link EPGQuery}. With persisted queries, only the hash
+ * of the query is sent; if the API does not know it yet, the request is repeated with the full text, which registers
+ * the hash. After a few misses in a row, or if the API does not support persisted queries, the full text is always sent.
+ * <p>
+ * A fetch of a day has to complete within a deadline. If the API has not answered after its usual p95 latency,
+ * a second (hedged) request is sent and the first response is taken. After several failed fetches in a row,
+ * an {@link EPGCircuitBreaker} rejects fetches for a while, and the snapshot cache serves the last good snapshot
+ * of a date as stale.
  */
-public class EPGItemsParser {
-    private RestTemplate restTemplate = new RestTemplate();
+@Slf4j
+public class EPGItemsParser implements AutoCloseable {
+    private RestTemplate restTemplate;
+
+    // The non-blocking client of the reactive mode, null if snapshots are only fetched with the RestTemplate
+    private final WebClient webClient;
+
+    private final EPGSnapshotCache snapshotCache;
+
+    private final EPGArchive archive;
+
+    private final Semaphore upstreamPermits;
+
+    private final Duration permitTimeout;
+
+    private final ExecutorService fetchExecutor;
+
+    private final boolean streaming;
+
+    private final EPGMetrics metrics;
+
+    // The URLs of the EPG API with {domain} in place of the channel, with the full query and with its hash only
+    private final String epgUrl;
+    private final String persistedQueryUrl;
+
+    private final EPGQuery query;
+
+    private final boolean persistedQueries;
+
+    // The persisted queries in a row the API answered with another error than an unknown hash
+    private final AtomicInteger persistedQueryMisses = new AtomicInteger();
+
+    private final String defaultChannel;
+
+    private final EPGCircuitBreaker circuitBreaker;
+
+    // The latencies of the recent successful requests, the hedged request is sent after their p95
+    private final LatencyWindow latencies;
+
+    private final Duration deadline;
+
+    private final boolean hedging;
+
+    private final Duration initialHedgeDelay;
+
+    private final Duration minHedgeDelay;
 
-    private static final String EPG_URL_BASE = "https://magellan-api.p7s1.io/epg-broadcast/prosieben.de/graphql?";
     private static final String EPG_VARIABLES = "&variables={variables}";
 
-    private static final String EPG_QUERY = "&query={QUERY}";
-    private static final String QUERY = "query EpgQuery($domain: String!," + "$type: EpgType!, $date: DateTime) { site(domain: $domain) { epg(type: $type, date: $date) { items {" + "...fEpgItem } } } } fragment fEpgItem on EpgItem { id title description startTime endTime episode {" + "number } season { number } tvShow { title id } }";
-    private static final String EPG_QUERY_HASH = "&queryhash={hashCounter}";
+    private static final String EPG_EXTENSIONS = "&extensions={extensions}";
+
+    private static final String EPG_QUERY = "&query={query}";
+
+    // The misses after which persisted queries are no longer tried
+    private static final int MAX_PERSISTED_QUERY_MISSES = 3;
+
+    public EPGItemsParser() {
+        this(new RestTemplate(), new EPGProperties());
+    }
+
+    private EPGItemsParser(RestTemplate restTemplate, EPGProperties properties) {
+        this(restTemplate, new EPGSnapshotCache(properties.getCache().getMaxEntries(),
+                properties.getCache().getCurrentDayTtl(), properties.getCache().getPastDayTtl()), properties);
+    }
+
+    public EPGItemsParser(RestTemplate restTemplate, EPGSnapshotCache snapshotCache, EPGProperties properties) {
+        this(restTemplate, snapshotCache, EPGArchive.disabled(), properties);
+    }
 
-    private int hashCounter = 0;
+    public EPGItemsParser(RestTemplate restTemplate, EPGSnapshotCache snapshotCache, EPGArchive archive, EPGProperties properties) {
+        this(restTemplate, snapshotCache, archive, properties, EPGMetrics.disabled());
+    }
 
-    private Map<String,Integer> queryHashMap = new HashMap<>();
+    public EPGItemsParser(RestTemplate restTemplate, EPGSnapshotCache snapshotCache, EPGArchive archive, EPGProperties properties,
+                          EPGMetrics metrics) {
+        this(restTemplate, null, snapshotCache, archive, properties, metrics);
+    }
+
+    public EPGItemsParser(RestTemplate restTemplate, WebClient webClient, EPGSnapshotCache snapshotCache, EPGArchive archive,
+                          EPGProperties properties, EPGMetrics metrics) {
+        EPGProperties.Client client = properties.getClient();
+        this.restTemplate = restTemplate;
+        this.webClient = webClient;
+        this.snapshotCache = snapshotCache;
+        this.archive = archive;
+        this.upstreamPermits = new Semaphore(client.getMaxConcurrentRequests(), true);
+        this.permitTimeout = client.getConnectTimeout().plus(client.getReadTimeout());
+        this.fetchExecutor = client.isVirtualThreads()
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+        this.streaming = client.isStreaming();
+        this.query = client.getQuery();
+        this.persistedQueries = client.isPersistedQueries();
+        this.persistedQueryUrl = client.getBaseUrl() + "?" + EPG_VARIABLES + EPG_EXTENSIONS;
+        this.epgUrl = persistedQueries ? persistedQueryUrl + EPG_QUERY : client.getBaseUrl() + "?" + EPG_VARIABLES + EPG_QUERY;
+        this.defaultChannel = properties.getChannels().getNames().get(0);
+        this.metrics = metrics;
+        EPGProperties.Resilience resilience = properties.getResilience();
+        this.circuitBreaker = new EPGCircuitBreaker(resilience.getFailureThreshold(), resilience.getOpenDuration());
+        this.latencies = new LatencyWindow(resilience.getLatencyWindow());
+        this.deadline = resilience.getDeadline();
+        this.hedging = resilience.isHedging();
+        this.initialHedgeDelay = resilience.getInitialHedgeDelay();
+        this.minHedgeDelay = resilience.getMinHedgeDelay();
+        metrics.bind(circuitBreaker);
+    }
 
     /**
      * Parses EPG items from a remote API for the specified date.
@@ -33,26 +162,555 @@ public class EPGItemsParser {
      * @return A list of Item objects representing the EPG items retrieved from the API.
      */
     public List<Item> parseItemsFromEPG(String date) {
+        return metrics.timeParse(() -> getSnapshot(date).getSchedule().toItems());
+    }
+
+    /**
+     * Retrieves the EPG snapshot for the specified date, either from the cache, the local archive or the remote API.
+     *
+     * @param date The date for which the snapshot is to be retrieved. If null, the snapshot of the current date will be used.
+     * @return The EpgSnapshot holding the EPG items of the date.
+     */
+    public EpgSnapshot getSnapshot(String date) {
+        return getSnapshot(date, defaultChannel);
+    }
+
+    /**
+     * Retrieves the EPG snapshot of a channel for the specified date, either from the cache, the local archive or the remote API.
+     *
+     * @param date    The date for which the snapshot is to be retrieved. If null, the snapshot of the current date will be used.
+     * @param channel The channel (EPG domain), e.g. sat1.de.
+     * @return The EpgSnapshot holding the EPG items of the channel on the date.
+     */
+    public EpgSnapshot getSnapshot(String date, String channel) {
+        return snapshotCache.get(cacheKeyOf(date, channel), (key, previous) -> loadSnapshot(key, date, channel, previous));
+    }
+
+    /**
+     * Fetches the EPG snapshot for the specified date again and replaces the cached one.
+     * Requests for the date keep being answered from the previous snapshot until the new one is available.
+     *
+     * @param date The date for which the snapshot is to be refreshed. If null, the snapshot of the current date will be used.
+     * @return The refreshed EpgSnapshot.
+     */
+    public EpgSnapshot refreshSnapshot(String date) {
+        return refreshSnapshot(date, defaultChannel);
+    }
+
+    /**
+     * Fetches the EPG snapshot of a channel for the specified date again and replaces the cached one.
+     *
+     * @param date    The date for which the snapshot is to be refreshed. If null, the snapshot of the current date will be used.
+     * @param channel The channel (EPG domain), e.g. sat1.de.
+     * @return The refreshed EpgSnapshot.
+     */
+    public EpgSnapshot refreshSnapshot(String date, String channel) {
+        return snapshotCache.refresh(cacheKeyOf(date, channel), (key, previous) -> loadSnapshot(key, date, channel, previous));
+    }
+
+    /**
+     * Loads the schedule of a date and indexes it. If a previous snapshot of the date exists,
+     * only the slots that changed since then are applied to its index.
+     */
+    private EpgSnapshot loadSnapshot(String key, String date, String channel, EpgSnapshot previous) {
+        return snapshotOf(key, loadSchedule(key, date, channel), previous);
+    }
+
+    private EpgSnapshot snapshotOf(String key, DaySchedule schedule, EpgSnapshot previous) {
+        if (previous == null) {
+            return EpgSnapshot.of(key, schedule, Instant.now());
+        }
+        EpgSnapshot snapshot = EpgSnapshot.update(previous, schedule, Instant.now());
+        metrics.recordChangedSlots(snapshot.getChangedSlots());
+        log.debug("Refreshed the EPG snapshot of {}: {} of {} slots changed", key, snapshot.getChangedSlots(), schedule.size());
+        return snapshot;
+    }
+
+    private String cacheKeyOf(String date, String channel) {
+        return SnapshotKeys.of(StringUtils.isEmpty(date) ? LocalDate.now().toString() : date, channel, defaultChannel);
+    }
+
+    /**
+     * Loads the schedule of a date from the archive, or fetches it from the API and archives it if the date is over.
+     */
+    private DaySchedule loadSchedule(String key, String date, String channel) {
+        Optional<DaySchedule> archived = archive.read(key);
+        if (archived.isPresent()) {
+            metrics.recordItems("archive", archived.get().size());
+            return archived.get();
+        }
+
+        DaySchedule schedule = fetchSchedule(date, channel);
+        metrics.recordItems("upstream", schedule.size());
+        archive.write(key, schedule);
+        return schedule;
+    }
+
+    /**
+     * Retrieves the EPG snapshot for the specified date without blocking the calling thread.
+     * The fetch runs on the parser's executor, which uses virtual threads unless configured otherwise.
+     *
+     * @param date The date for which the snapshot is to be retrieved. If null, the snapshot of the current date will be used.
+     * @return A future completed with the EpgSnapshot of the date.
+     */
+    public CompletableFuture<EpgSnapshot> getSnapshotAsync(String date) {
+        return getSnapshotAsync(date, defaultChannel);
+    }
+
+    /**
+     * Retrieves the EPG snapshot of a channel for the specified date without blocking the calling thread.
+     *
+     * @param date    The date for which the snapshot is to be retrieved. If null, the snapshot of the current date will be used.
+     * @param channel The channel (EPG domain), e.g. sat1.de.
+     * @return A future completed with the EpgSnapshot of the channel on the date.
+     */
+    public CompletableFuture<EpgSnapshot> getSnapshotAsync(String date, String channel) {
+        return CompletableFuture.supplyAsync(() -> getSnapshot(date, channel), fetchExecutor);
+    }
+
+    /**
+     * Retrieves the EPG snapshot for the specified date as a Mono, see {@link #getSnapshotReactive(String, String)}.
+     *
+     * @param date The date for which the snapshot is to be retrieved. If null, the snapshot of the current date will be used.
+     * @return A Mono emitting the EpgSnapshot of the date.
+     */
+    public Mono<EpgSnapshot> getSnapshotReactive(String date) {
+        return getSnapshotReactive(date, defaultChannel);
+    }
+
+    /**
+     * Retrieves the EPG snapshot of a channel for the specified date as a Mono. With a WebClient, a missing snapshot
+     * is fetched without blocking any thread: the upstream call is non-blocking and the response is parsed on the
+     * parallel scheduler. Without one, the fetch runs on the parser's executor like {@link #getSnapshotAsync(String, String)}.
+     * The fetch is shared with concurrent callers and is not cancelled when a subscriber cancels.
+     *
+     * @param date    The date for which the snapshot is to be retrieved. If null, the snapshot of the current date will be used.
+     * @param channel The channel (EPG domain), e.g. sat1.de.
+     * @return A Mono emitting the EpgSnapshot of the channel on the date.
+     */
+    public Mono<EpgSnapshot> getSnapshotReactive(String date, String channel) {
+        if (webClient == null) {
+            return Mono.fromFuture(() -> getSnapshotAsync(date, channel), true);
+        }
+        return Mono.fromFuture(() -> snapshotCache.getAsync(cacheKeyOf(date, channel),
+                (key, previous) -> loadScheduleReactive(key, date, channel)
+                        .map(schedule -> snapshotOf(key, schedule, previous))
+                        .toFuture()), true);
+    }
+
+    /**
+     * Like {@link #loadSchedule(String, String, String)}, but fetches the schedule with the WebClient.
+     * The archive is only touched for past days, on the bounded elastic scheduler as it reads and writes files.
+     */
+    private Mono<DaySchedule> loadScheduleReactive(String key, String date, String channel) {
+        if (!archive.isArchivable(key)) {
+            return fetchScheduleReactive(date, channel)
+                    .doOnNext(schedule -> metrics.recordItems("upstream", schedule.size()));
+        }
+        return Mono.fromCallable(() -> archive.read(key))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(archived -> {
+                    if (archived.isPresent()) {
+                        metrics.recordItems("archive", archived.get().size());
+                        return Mono.just(archived.get());
+                    }
+                    return fetchScheduleReactive(date, channel)
+                            .publishOn(Schedulers.boundedElastic())
+                            .doOnNext(schedule -> {
+                                metrics.recordItems("upstream", schedule.size());
+                                archive.write(key, schedule);
+                            });
+                });
+    }
+
+    /**
+     * Fetches the EPG of the specified date with the WebClient. In streaming mode the body is read as bytes and encoded
+     * by the streaming parser, otherwise it is bound to ApiResponse by the WebClient's JSON decoder.
+     * The number of concurrent calls is bounded by the connection pool of the WebClient.
+     */
+    private Mono<DaySchedule> fetchScheduleReactive(String date, String channel) {
+        return Mono.defer(() -> {
+            circuitBreaker.acquire();
+            return hedged(timed(fetchAttemptReactive(date, channel)))
+                    .timeout(deadline)
+                    .onErrorMap(TimeoutException.class, e -> deadlineExceeded())
+                    .doOnSuccess(schedule -> circuitBreaker.onSuccess())
+                    .doOnError(e -> circuitBreaker.onFailure());
+        });
+    }
+
+    /**
+     * Like {@link #fetchHedged(String, Supplier)} without blocking: a second subscription to the request starts after
+     * the hedge delay, the first value wins and cancels the other request. A failure only ends the fetch if no other
+     * request is still running. Each request fails instead of completing empty, so the fetch ends with a schedule
+     * or an error and a cache never completes with null.
+     */
+    private Mono<DaySchedule> hedged(Mono<DaySchedule> attempt) {
+        if (!hedging) {
+            return attempt;
+        }
+        return Mono.defer(() -> {
+            AtomicInteger running = new AtomicInteger(1);
+            Mono<Signal<DaySchedule>> hedge = Mono.delay(Duration.ofNanos(hedgeDelayNanos()))
+                    .doOnNext(tick -> {
+                        running.incrementAndGet();
+                        metrics.recordHedge("reactive");
+                    })
+                    .then(attempt.materialize());
+            return Flux.merge(attempt.materialize(), hedge)
+                    .filter(signal -> signal.hasValue() || running.decrementAndGet() == 0)
+                    .next()
+                    .dematerialize();
+        });
+    }
+
+    private Mono<DaySchedule> timed(Mono<DaySchedule> attempt) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return attempt.doOnNext(schedule -> latencies.record(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * A single request for the EPG of a date, sending the hash of the query first if persisted queries are tried.
+     */
+    private Mono<DaySchedule> fetchAttemptReactive(String date, String channel) {
+        return Mono.defer(() -> {
+            Object[] uriVariables = uriVariables(date, channel);
+            if (!tryPersistedQuery()) {
+                return fetchScheduleReactive(urlOf(epgUrl, channel), uriVariables);
+            }
+            return fetchScheduleReactive(urlOf(persistedQueryUrl, channel), uriVariables)
+                    .doOnNext(schedule -> persistedQueryMisses.set(0))
+                    .onErrorResume(EPGQueryException.class, e -> {
+                        persistedQueryMissed(e);
+                        return fetchScheduleReactive(urlOf(epgUrl, channel), uriVariables);
+                    });
+        });
+    }
+
+    /**
+     * A single request for the EPG. A response without a body completes the body's Mono empty, so it is turned into
+     * the same error as a body without data.
+     */
+    private Mono<DaySchedule> fetchScheduleReactive(String url, Object[] uriVariables) {
+        WebClient.ResponseSpec response = webClient.get()
+                .uri(url, uriVariables)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve();
+        Mono<DaySchedule> schedule;
+        if (streaming) {
+            schedule = response.bodyToMono(byte[].class)
+                    .publishOn(Schedulers.parallel())
+                    .map(body -> {
+                        metrics.recordPayload(body.length);
+                        return parseSchedule(body);
+                    });
+        } else {
+            schedule = response.toEntity(ApiResponse.class)
+                    .map(entity -> {
+                        if (entity.getHeaders().getContentLength() >= 0) {
+                            metrics.recordPayload(entity.getHeaders().getContentLength());
+                        }
+                        return DaySchedule.of(itemsOf(entity.getBody()));
+                    });
+        }
+        return metrics.timeUpstream("reactive", schedule)
+                .switchIfEmpty(Mono.error(() -> new ResourceAccessException(EPGStreamingParser.NO_DATA)))
+                .onErrorMap(WebClientException.class, e -> new ResourceAccessException(e.getMessage()));
+    }
+
+    private static DaySchedule parseSchedule(byte[] body) {
+        DaySchedule.Builder schedule = DaySchedule.builder();
+        try {
+            EPGStreamingParser.parse(new ByteArrayInputStream(body), schedule::add);
+        } catch (IOException e) {
+            throw new ResourceAccessException("Could not parse the EPG: " + e.getMessage());
+        }
+        return schedule.build();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the snapshot cache.
+     *
+     * @return The current cache statistics.
+     */
+    public EPGSnapshotCache.Stats getCacheStats() {
+        return snapshotCache.getStats();
+    }
+
+    /**
+     * Fetches the EPG of the specified date within the deadline, unless the circuit is open.
+     */
+    private DaySchedule fetchSchedule(String date, String channel) {
+        circuitBreaker.acquire();
+        try {
+            DaySchedule schedule = fetchHedged(streaming ? "streaming" : "binding", () -> fetchAttempt(date, channel));
+            circuitBreaker.onSuccess();
+            return schedule;
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a fetch on the fetch executor and waits for it until the deadline. If it has not answered after the hedge
+     * delay, the fetch is started a second time and the first result is taken. A failure only ends the fetch if no
+     * other attempt is still running. The attempts still running at the end are interrupted.
+     */
+    private DaySchedule fetchHedged(String mode, Supplier<DaySchedule> fetch) {
+        long start = System.nanoTime();
+        long deadlineAt = start + deadline.toNanos();
+        long hedgeAt = start + hedgeDelayNanos();
+        Callable<DaySchedule> attempt = () -> {
+            long attemptStart = System.nanoTime();
+            DaySchedule schedule = fetch.get();
+            latencies.record(System.nanoTime() - attemptStart);
+            return schedule;
+        };
+
+        CompletionService<DaySchedule> attempts = new ExecutorCompletionService<>(fetchExecutor);
+        List<Future<DaySchedule>> started = new ArrayList<>(2);
+        started.add(attempts.submit(attempt));
+        int running = 1;
+        Throwable failure = null;
+        try {
+            while (running > 0) {
+                boolean canHedge = hedging && started.size() == 1;
+                long waitUntil = canHedge && hedgeAt - deadlineAt < 0 ? hedgeAt : deadlineAt;
+                Future<DaySchedule> done = attempts.poll(waitUntil - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (System.nanoTime() - deadlineAt >= 0) {
+                        throw deadlineExceeded();
+                    }
+                    if (canHedge) {
+                        started.add(attempts.submit(attempt));
+                        running++;
+                        metrics.recordHedge(mode);
+                    }
+                    continue;
+                }
+                running--;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting for the EPG API");
+        } finally {
+            for (Future<DaySchedule> future : started) {
+                future.cancel(true);
+            }
+        }
+        throw failure instanceof RuntimeException runtimeException
+                ? runtimeException
+                : new ResourceAccessException(String.valueOf(failure.getMessage()));
+    }
+
+    /**
+     * @return The delay before a hedged request: the p95 of the recent latencies, but at least the minimum delay.
+     */
+    private long hedgeDelayNanos() {
+        long p95 = latencies.percentile(0.95);
+        return p95 < 0 ? initialHedgeDelay.toNanos() : Math.max(p95, minHedgeDelay.toNanos());
+    }
+
+    private ResourceAccessException deadlineExceeded() {
+        metrics.recordDeadlineExceeded();
+        return new ResourceAccessException("The EPG API did not answer within " + deadline.toMillis() + " ms");
+    }
+
+    /**
+     * @return The state of the circuit breaker of the EPG API.
+     */
+    public EPGCircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * A single request for the EPG of a date, sending the hash of the query first if persisted queries are tried.
+     */
+    private DaySchedule fetchAttempt(String date, String channel) {
+        Object[] uriVariables = uriVariables(date, channel);
+        if (tryPersistedQuery()) {
+            try {
+                DaySchedule schedule = fetchSchedule(urlOf(persistedQueryUrl, channel), uriVariables);
+                persistedQueryMisses.set(0);
+                return schedule;
+            } catch (EPGQueryException e) {
+                persistedQueryMissed(e);
+            }
+        }
+        return fetchSchedule(urlOf(epgUrl, channel), uriVariables);
+    }
+
+    private DaySchedule fetchSchedule(String url, Object[] uriVariables) {
+        return streaming
+                ? streamScheduleFromEPG(url, uriVariables)
+                : DaySchedule.of(fetchItemsFromEPG(url, uriVariables));
+    }
+
+    private boolean tryPersistedQuery() {
+        return persistedQueries && persistedQueryMisses.get() < MAX_PERSISTED_QUERY_MISSES;
+    }
+
+    /**
+     * Counts a persisted query the API could not answer. An unknown hash is expected once per query and API instance,
+     * other errors mean the API probably does not support persisted queries.
+     */
+    private void persistedQueryMissed(EPGQueryException e) {
+        if (e.isPersistedQueryNotFound()) {
+            log.debug("The EPG API does not know the persisted query {} yet, sending its text", query);
+            return;
+        }
+        int misses = e.isPersistedQueryNotSupported()
+                ? persistedQueryMisses.updateAndGet(current -> Math.max(current, MAX_PERSISTED_QUERY_MISSES))
+                : persistedQueryMisses.incrementAndGet();
+        if (misses == MAX_PERSISTED_QUERY_MISSES) {
+            log.warn("Persisted queries failed {} times ({}), sending the query text from now on", misses, e.getCode());
+        }
+    }
+
+    /**
+     * Binds the response and takes its items while the call is timed, so a response without data counts as failed.
+     */
+    private List<Item> fetchItemsFromEPG(String url, Object[] uriVariables) {
+        return callUpstream("binding", () -> {
+            ResponseEntity<ApiResponse> entity = restTemplate.getForEntity(url, ApiResponse.class, uriVariables);
+            if (entity.getHeaders().getContentLength() >= 0) {
+                metrics.recordPayload(entity.getHeaders().getContentLength());
+            }
+            return itemsOf(entity.getBody());
+        });
+    }
+
+    /**
+     * @return The items of a bound response, empty if there is no response body.
+     * @throws EPGQueryException       If the response holds GraphQL errors and no data.
+     * @throws ResourceAccessException If the response holds neither data nor errors.
+     */
+    private static List<Item> itemsOf(ApiResponse response) {
+        if (response == null) {
+            return Collections.emptyList();
+        }
+        if (response.getData() == null) {
+            if (response.getErrors() != null && !response.getErrors().isEmpty()) {
+                throw EPGQueryException.of(response.getErrors().get(0));
+            }
+            throw new ResourceAccessException(EPGStreamingParser.NO_DATA);
+        }
+        return response.getData().getSite().getEpg().getItems();
+    }
+
+    /**
+     * Fetches the EPG of the specified date and encodes the schedule while the response is read,
+     * without binding it to ApiResponse and Item objects.
+     */
+    private DaySchedule streamScheduleFromEPG(String url, Object[] uriVariables) {
+        DaySchedule.Builder schedule = DaySchedule.builder();
+        callUpstream("streaming", () -> restTemplate.execute(url, HttpMethod.GET,
+                request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON)),
+                response -> {
+                    CountingInputStream body = new CountingInputStream(response.getBody());
+                    int items = EPGStreamingParser.parse(body, schedule::add);
+                    metrics.recordPayload(body.count);
+                    return items;
+                }, uriVariables));
+        return schedule.build();
+    }
+
+    /**
+     * Builds the GraphQL variables, the persisted query extension and the query sent to the API for the specified date.
+     * The variables are positional: URLs without the query leave out the last one.
+     */
+    private Object[] uriVariables(String date, String channel) {
         String variables;
         if (StringUtils.isEmpty(date)) {
             date = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").format(new Date());
-            variables = "{\"date\":\"" + date + "\",\"domain\":\"prosieben.de\",\"type\":\"FULL\"}";
+            variables = "{\"date\":\"" + date + "\",\"domain\":\"" + channel + "\",\"type\":\"FULL\"}";
         } else {
-            if (queryHashMap.containsKey(date)) {
-                hashCounter = queryHashMap.get(date);
-            } else {
-                hashCounter++;
-                queryHashMap.put(date,hashCounter);
+            variables = "{\"date\":\"" + date + "T00:00:00.000Z\",\"domain\":\"" + channel + "\",\"type\":\"FULL\"}";
+        }
+        if (!persistedQueries) {
+            return new Object[]{variables, query.getText()};
+        }
+        String extensions = "{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\"" + query.getSha256Hash() + "\"}}";
+        return new Object[]{variables, extensions, query.getText()};
+    }
+
+    /**
+     * Builds a URL of the EPG API for a channel. The channel is inserted literally, it is not a URI template variable.
+     */
+    private static String urlOf(String url, String channel) {
+        return url.replace("{domain}", channel);
+    }
+
+    /**
+     * Runs the given upstream call once a permit is available, so at most the configured number of calls run at once.
+     */
+    private <T> T callUpstream(String mode, Callable<T> call) {
+        try {
+            if (!upstreamPermits.tryAcquire(permitTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ResourceAccessException("Too many concurrent requests to the EPG API");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting for the EPG API");
+        }
+        try {
+            return metrics.timeUpstream(mode, call);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ResourceAccessException(e.getMessage());
+        } finally {
+            upstreamPermits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        fetchExecutor.shutdown();
+    }
+
+    /**
+     * Counts the bytes read from an upstream response.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
             }
-            variables = "{\"date\":\"" + date + "T00:00:00.000Z\",\"domain\":\"prosieben.de\",\"type\":\"FULL\"}";
+            return read;
         }
 
-        ApiResponse response = restTemplate.getForEntity(EPG_URL_BASE + EPG_VARIABLES + EPG_QUERY + EPG_QUERY_HASH,
-                ApiResponse.class, variables, QUERY,hashCounter).getBody();
-        if (response != null) {
-            return response.getData().getSite().getEpg().getItems();
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
         }
-        return Collections.emptyList();
     }
 
     // Package-private Setter for testing
@@ -0,0 +1,280 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import pro.sieben.sat.tv.program.plan.frequency.model.ShowType;
+import pro.sieben.sat.tv.program.plan.frequency.model.Versioned;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Records the Micrometer metrics of the EPG fetch and aggregation path.
+ * <ul>
+ *     <li>{@code epg.upstream.requests}: latency of the calls to the EPG API, tagged by mode and outcome</li>
+ *     <li>{@code epg.upstream.errors}: failed calls to the EPG API, tagged by mode and exception</li>
+ *     <li>{@code epg.upstream.payload}: size of the EPG API responses in bytes</li>
+ *     <li>{@code epg.upstream.hedges}: second requests sent because the first one was slower than usual, tagged by mode</li>
+ *     <li>{@code epg.upstream.deadlines}: fetches that did not complete within their deadline</li>
+ *     <li>{@code epg.snapshot.items}: number of items of a loaded day, tagged by source</li>
+ *     <li>{@code epg.snapshot.changed.slots}: number of slots applied to the index when a day is refreshed</li>
+ *     <li>{@code epg.parse}: latency of {@link EPGItemsParser#parseItemsFromEPG(String)}</li>
+ *     <li>{@code epg.queries}: latency of the EPGService queries, tagged by endpoint, type and outcome</li>
+ *     <li>{@code epg.query.results}: number of entries returned by the EPGService queries, tagged by endpoint and type</li>
+ *     <li>{@code epg.query.errors}: failed EPGService queries, tagged by endpoint, type and exception</li>
+ * </ul>
+ * Timers and distributions publish percentile histograms, so latencies can be aggregated across instances.
+ */
+public class EPGMetrics {
+
+    // The type tag of queries over all TV shows
+    public static final String ALL_TYPES = "ALL";
+
+    private final MeterRegistry registry;
+
+    private final DistributionSummary payloadSize;
+
+    private final DistributionSummary changedSlots;
+
+    private final Timer parse;
+
+    public EPGMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.payloadSize = DistributionSummary.builder("epg.upstream.payload")
+                .description("Size of the EPG API responses")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.changedSlots = DistributionSummary.builder("epg.snapshot.changed.slots")
+                .description("Number of slots applied to the index when a day is refreshed")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.parse = Timer.builder("epg.parse")
+                .description("Latency of parsing the EPG items of a day")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * @return EPGMetrics recording to a registry without any backend, for use outside of the application context.
+     */
+    public static EPGMetrics disabled() {
+        return new EPGMetrics(new CompositeMeterRegistry());
+    }
+
+    /**
+     * Times a call to the EPG API and counts it as an error if it fails.
+     *
+     * @param mode The way the response is read, e.g. streaming or binding.
+     * @param call The upstream call.
+     * @return The result of the call.
+     * @throws Exception If the call fails.
+     */
+    public <T> T timeUpstream(String mode, Callable<T> call) throws Exception {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "success";
+        try {
+            return call.call();
+        } catch (Exception e) {
+            outcome = "error";
+            upstreamError(mode, e);
+            throw e;
+        } finally {
+            stopUpstream(sample, mode, outcome);
+        }
+    }
+
+    /**
+     * Times a non-blocking call to the EPG API from subscription to completion and counts it as an error if it fails.
+     *
+     * @param mode The way the response is read, e.g. reactive.
+     * @param call The upstream call.
+     * @return The call, timed when subscribed.
+     */
+    public <T> Mono<T> timeUpstream(String mode, Mono<T> call) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return call
+                    .doOnSuccess(result -> stopUpstream(sample, mode, "success"))
+                    .doOnError(e -> {
+                        upstreamError(mode, e);
+                        stopUpstream(sample, mode, "error");
+                    });
+        });
+    }
+
+    private void upstreamError(String mode, Throwable e) {
+        registry.counter("epg.upstream.errors", "mode", mode, "exception", e.getClass().getSimpleName()).increment();
+    }
+
+    private void stopUpstream(Timer.Sample sample, String mode, String outcome) {
+        sample.stop(Timer.builder("epg.upstream.requests")
+                .description("Latency of the calls to the EPG API")
+                .tags("mode", mode, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    /**
+     * Counts a hedged request to the EPG API.
+     *
+     * @param mode The way the response is read, e.g. streaming or reactive.
+     */
+    public void recordHedge(String mode) {
+        registry.counter("epg.upstream.hedges", "mode", mode).increment();
+    }
+
+    /**
+     * Counts a fetch that did not complete within its deadline.
+     */
+    public void recordDeadlineExceeded() {
+        registry.counter("epg.upstream.deadlines").increment();
+    }
+
+    /**
+     * Registers the meters of a component, e.g. the circuit breaker, with the registry of these metrics.
+     *
+     * @param binder The component.
+     */
+    public void bind(MeterBinder binder) {
+        binder.bindTo(registry);
+    }
+
+    /**
+     * Times {@link EPGItemsParser#parseItemsFromEPG(String)}.
+     *
+     * @param parse The parsing.
+     * @return The parsed items.
+     */
+    public <T> T timeParse(Supplier<T> parse) {
+        return this.parse.record(parse);
+    }
+
+    /**
+     * Times a query of the EPGService and records the size of its result. The result of a versioned query is only
+     * computed when it is read, see {@link Versioned}: the timer then covers looking up the snapshots, and the size
+     * is recorded once the result is computed, never for a response answered from the version alone.
+     * Failed queries are counted as errors.
+     *
+     * @param endpoint The name of the query.
+     * @param type     The type of TV shows queried, or null if the query covers all types.
+     * @param query    The query.
+     * @return The result of the query.
+     */
+    public <T> T timeQuery(String endpoint, ShowType type, Supplier<T> query) {
+        String typeTag = type == null ? ALL_TYPES : type.name();
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "success";
+        try {
+            return recordResults(endpoint, typeTag, query.get());
+        } catch (RuntimeException e) {
+            outcome = "error";
+            queryError(endpoint, typeTag, e);
+            throw e;
+        } finally {
+            stopQuery(sample, endpoint, typeTag, outcome);
+        }
+    }
+
+    /**
+     * Like {@link #timeQuery(String, ShowType, Supplier)} for a query that completes without blocking.
+     * The query is timed from subscription to completion.
+     *
+     * @param endpoint The name of the query.
+     * @param type     The type of TV shows queried, or null if the query covers all types.
+     * @param query    The query.
+     * @return The query, timed when subscribed.
+     */
+    public <T> Mono<T> timeQuery(String endpoint, ShowType type, Mono<T> query) {
+        String typeTag = type == null ? ALL_TYPES : type.name();
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return query
+                    .map(result -> recordResults(endpoint, typeTag, result))
+                    .doOnSuccess(result -> stopQuery(sample, endpoint, typeTag, "success"))
+                    .doOnError(e -> {
+                        queryError(endpoint, typeTag, e);
+                        stopQuery(sample, endpoint, typeTag, "error");
+                    });
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T recordResults(String endpoint, String typeTag, T result) {
+        if (result instanceof Versioned<?> versioned) {
+            return (T) recordComputedResults(endpoint, typeTag, versioned);
+        }
+        if (result instanceof Collection<?> entries) {
+            DistributionSummary.builder("epg.query.results")
+                    .description("Number of entries returned by the EPG queries")
+                    .tags("endpoint", endpoint, "type", typeTag)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(entries.size());
+        }
+        return result;
+    }
+
+    /**
+     * @return The versioned query, recording the size of its result or its error once the result is computed.
+     */
+    private <T> Versioned<T> recordComputedResults(String endpoint, String typeTag, Versioned<T> versioned) {
+        return new Versioned<>(versioned.getVersion(), () -> {
+            try {
+                return recordResults(endpoint, typeTag, versioned.getResult());
+            } catch (RuntimeException e) {
+                queryError(endpoint, typeTag, e);
+                throw e;
+            }
+        });
+    }
+
+    private void queryError(String endpoint, String typeTag, Throwable e) {
+        registry.counter("epg.query.errors", "endpoint", endpoint, "type", typeTag,
+                "exception", e.getClass().getSimpleName()).increment();
+    }
+
+    private void stopQuery(Timer.Sample sample, String endpoint, String typeTag, String outcome) {
+        sample.stop(Timer.builder("epg.queries")
+                .description("Latency of the EPG queries")
+                .tags("endpoint", endpoint, "type", typeTag, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    /**
+     * Records the size of an EPG API response.
+     *
+     * @param bytes The number of bytes read.
+     */
+    public void recordPayload(long bytes) {
+        payloadSize.record(bytes);
+    }
+
+    /**
+     * Records the number of items of a loaded day.
+     *
+     * @param source Where the day has been loaded from, e.g. upstream or archive.
+     * @param items  The number of items.
+     */
+    public void recordItems(String source, int items) {
+        DistributionSummary.builder("epg.snapshot.items")
+                .description("Number of items of a loaded day")
+                .tags("source", source)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(items);
+    }
+
+    /**
+     * Records how many slots had to be applied to the index of a refreshed day.
+     *
+     * @param slots The size of the diff.
+     */
+    public void recordChangedSlots(int slots) {
+        changedSlots.record(slots);
+    }
+}
@@ -0,0 +1,14 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+/**
+ * Thrown by the queries that read item fields the configured {@link EPGQuery} does not request, e.g. the time-window
+ * queries with {@code epg.client.query=frequencies}, which would otherwise find no airings at all.
+ */
+public class EPGProjectionException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public EPGProjectionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,93 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The GraphQL queries of the EPG API, each projecting the EPG items to the fields it needs, so the API leaves out
+ * the rest of every item. Each query is also identified by the SHA-256 hash of its text, which is sent instead of
+ * the text once the API knows it (automatic persisted queries).
+ * The archive records the ordinal of the query a segment was fetched with, so new queries are only ever appended.
+ */
+public enum EPGQuery {
+
+    // Every field of an item, as bound to Item
+    FULL(List.of("id", "title", "description", "startTime", "endTime", "episode { number }", "season { number }", "tvShow { title id }")),
+    // The fields kept in a DaySchedule: the frequencies, the time-window queries, the search and the diff of refreshed days
+    SCHEDULE(List.of("id", "title", "description", "startTime", "endTime", "tvShow { title id }")),
+    // The fields read by the frequency queries and the diff, without the airing times and descriptions
+    FREQUENCIES(List.of("id", "title", "tvShow { title id }"));
+
+    private final List<String> fields;
+    private final String text;
+    private final String sha256Hash;
+
+    EPGQuery(List<String> fields) {
+        this.fields = fields;
+        this.text = "query EpgQuery($domain: String!, $type: EpgType!, $date: DateTime) { site(domain: $domain) { "
+                + "epg(type: $type, date: $date) { items { ...fEpgItem } } } } fragment fEpgItem on EpgItem { "
+                + String.join(" ", fields) + " }";
+        this.sha256Hash = sha256(text);
+    }
+
+    /**
+     * @return The GraphQL document of the query.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return The hex-encoded SHA-256 hash of the text, identifying the query as a persisted query.
+     */
+    public String getSha256Hash() {
+        return sha256Hash;
+    }
+
+    /**
+     * @return The names of the item fields requested by the query, e.g. {@code tvShow}.
+     */
+    public List<String> getItemFields() {
+        return fields.stream().map(field -> field.split(" ", 2)[0]).toList();
+    }
+
+    /**
+     * Checks whether the items of this query have every field the items of another query have, so the schedules
+     * fetched with this query can answer everything the other query's can.
+     *
+     * @param other The other query.
+     * @return true if this query requests all item fields of the other query.
+     */
+    public boolean covers(EPGQuery other) {
+        return getItemFields().containsAll(other.getItemFields());
+    }
+
+    /**
+     * Fails an operation that reads item fields this query does not request, instead of answering it from items
+     * without them.
+     *
+     * @param operation  The operation, e.g. "The time-window queries".
+     * @param itemFields The item fields the operation reads.
+     * @throws EPGProjectionException If the query does not request one of the fields.
+     */
+    public void require(String operation, String... itemFields) {
+        List<String> missing = Arrays.stream(itemFields).filter(field -> !getItemFields().contains(field)).toList();
+        if (!missing.isEmpty()) {
+            throw new EPGProjectionException(operation + " need the item fields " + missing + ", which epg.client.query="
+                    + name().toLowerCase(Locale.ROOT) + " does not request");
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
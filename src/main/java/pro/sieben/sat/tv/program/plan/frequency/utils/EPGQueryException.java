@@ -0,0 +1,51 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import org.springframework.web.client.ResourceAccessException;
+import pro.sieben.sat.tv.program.plan.frequency.model.ApiError;
+
+/**
+ * Thrown if the EPG API answers a query with GraphQL errors instead of data, e.g. because it does not know
+ * the hash of a persisted query yet.
+ */
+public class EPGQueryException extends ResourceAccessException {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String PERSISTED_QUERY_NOT_FOUND = "PERSISTED_QUERY_NOT_FOUND";
+    private static final String PERSISTED_QUERY_NOT_SUPPORTED = "PERSISTED_QUERY_NOT_SUPPORTED";
+
+    // The code of the error, or its message if it has none
+    private final String code;
+
+    public EPGQueryException(String message, String code) {
+        super("The EPG API rejected the query: " + message);
+        this.code = code != null ? code : String.valueOf(message);
+    }
+
+    /**
+     * @param error The first GraphQL error of a response.
+     * @return The EPGQueryException of the error.
+     */
+    public static EPGQueryException of(ApiError error) {
+        Object code = error.getExtensions() == null ? null : error.getExtensions().get("code");
+        return new EPGQueryException(error.getMessage(), code == null ? null : code.toString());
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return true if the API does not know the hash of the query, so the query has to be sent with its text.
+     */
+    public boolean isPersistedQueryNotFound() {
+        return PERSISTED_QUERY_NOT_FOUND.equals(code) || "PersistedQueryNotFound".equals(code);
+    }
+
+    /**
+     * @return true if the API does not support persisted queries at all.
+     */
+    public boolean isPersistedQueryNotSupported() {
+        return PERSISTED_QUERY_NOT_SUPPORTED.equals(code) || "PersistedQueryNotSupported".equals(code);
+    }
+}
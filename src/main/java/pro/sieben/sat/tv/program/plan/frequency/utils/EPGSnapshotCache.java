@@ -0,0 +1,433 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import pro.sieben.sat.tv.program.plan.frequency.model.EpgSnapshot;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A bounded in-memory cache of EPG snapshots keyed by date.
+ * Concurrent callers asking for the same date share a single upstream fetch. Snapshots of the current
+ * and future days expire after a short TTL, snapshots of past days are kept for a long TTL.
+ * When the cache is full the least recently used snapshot is evicted.
+ * <p>
+ * While a snapshot is being refreshed, callers are served the previous (stale) snapshot instead of waiting.
+ * With a revalidation executor, an expired snapshot is always served stale while it is reloaded in the background.
+ * <p>
+ * If reloading an expired snapshot fails, e.g. because the EPG API is down, the last good snapshot is kept and served
+ * marked as stale ({@link EpgSnapshot#isStale()}) until a reload succeeds.
+ * The counters of {@link #getStats()} are published as {@code epg.cache.*} meters when the cache is bound to a MeterRegistry.
+ */
+@Slf4j
+public class EPGSnapshotCache implements MeterBinder {
+
+    private final int maxEntries;
+    private final Duration currentDayTtl;
+    private final Duration pastDayTtl;
+    private final Clock clock;
+    private final Executor revalidationExecutor;
+
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public EPGSnapshotCache(int maxEntries, Duration currentDayTtl, Duration pastDayTtl) {
+        this(maxEntries, currentDayTtl, pastDayTtl, null);
+    }
+
+    /**
+     * @param revalidationExecutor The executor reloading expired snapshots in the background, or null to reload them
+     *                             on the calling thread.
+     */
+    public EPGSnapshotCache(int maxEntries, Duration currentDayTtl, Duration pastDayTtl, Executor revalidationExecutor) {
+        this(maxEntries, currentDayTtl, pastDayTtl, revalidationExecutor, Clock.systemDefaultZone());
+    }
+
+    EPGSnapshotCache(int maxEntries, Duration currentDayTtl, Duration pastDayTtl, Executor revalidationExecutor, Clock clock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.currentDayTtl = currentDayTtl;
+        this.pastDayTtl = pastDayTtl;
+        this.revalidationExecutor = revalidationExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached snapshot for the given date, loading it with the given loader if it is missing or expired.
+     * If another thread is already loading the date, the caller waits for that load instead of starting its own.
+     *
+     * @param date   The date (yyyy-MM-dd) the snapshot belongs to.
+     * @param loader The function fetching the snapshot from the upstream API.
+     * @return The snapshot for the given date.
+     */
+    public EpgSnapshot get(String date, Function<String, EpgSnapshot> loader) {
+        return get(date, (key, previous) -> loader.apply(key));
+    }
+
+    /**
+     * Like {@link #get(String, Function)}, but hands the loader the snapshot being replaced, if there is one,
+     * so the new snapshot can be derived from it.
+     *
+     * @param date   The date (yyyy-MM-dd) the snapshot belongs to.
+     * @param loader The function fetching the snapshot from the upstream API, given the date and the previous snapshot or null.
+     * @return The snapshot for the given date.
+     */
+    public EpgSnapshot get(String date, BiFunction<String, EpgSnapshot, EpgSnapshot> loader) {
+        while (true) {
+            long now = clock.millis();
+            CacheEntry entry = entries.get(date);
+            if (entry != null && !entry.isExpired(now)) {
+                hits.increment();
+                entry.lastAccess = now;
+                return await(entry.snapshot);
+            }
+            if (entry != null && entry.hasSnapshot() && (entry.refreshing.get() || revalidationExecutor != null)) {
+                staleHits.increment();
+                entry.lastAccess = now;
+                revalidateInBackground(date, entry, loader);
+                return entry.served();
+            }
+
+            CacheEntry loading = new CacheEntry(now);
+            boolean owner = entry == null
+                    ? entries.putIfAbsent(date, loading) == null
+                    : entries.replace(date, entry, loading);
+            if (!owner) {
+                // Another thread installed a fresh entry in the meantime, use that one
+                continue;
+            }
+
+            misses.increment();
+            evictIfFull();
+            try {
+                EpgSnapshot snapshot = loader.apply(date, entry != null && entry.hasSnapshot() ? entry.snapshot.join() : null);
+                loading.complete(snapshot, clock.millis() + ttlFor(date).toMillis());
+                return snapshot;
+            } catch (Throwable e) {
+                // Errors are passed on as well, the callers waiting for the load would hang otherwise
+                if (e instanceof RuntimeException && entry != null && entry.hasSnapshot()) {
+                    return fallBack(date, entry, loading, e);
+                }
+                entries.remove(date, loading);
+                loading.snapshot.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Like {@link #get(String, BiFunction)}, but without blocking the calling thread: the snapshot is returned as a future
+     * and the loader returns a future as well, so no thread waits for the upstream API.
+     *
+     * @param date   The date (yyyy-MM-dd) the snapshot belongs to.
+     * @param loader The function starting the fetch of the snapshot, given the date and the previous snapshot or null.
+     * @return A future completed with the snapshot for the given date.
+     */
+    public CompletableFuture<EpgSnapshot> getAsync(String date, BiFunction<String, EpgSnapshot, CompletableFuture<EpgSnapshot>> loader) {
+        while (true) {
+            long now = clock.millis();
+            CacheEntry entry = entries.get(date);
+            if (entry != null && !entry.isExpired(now)) {
+                hits.increment();
+                entry.lastAccess = now;
+                return entry.snapshot;
+            }
+            if (entry != null && entry.hasSnapshot() && (entry.refreshing.get() || revalidationExecutor != null)) {
+                staleHits.increment();
+                entry.lastAccess = now;
+                revalidateAsync(date, entry, loader);
+                return entry.revalidationFailed ? CompletableFuture.completedFuture(entry.served()) : entry.snapshot;
+            }
+
+            CacheEntry loading = new CacheEntry(now);
+            boolean owner = entry == null
+                    ? entries.putIfAbsent(date, loading) == null
+                    : entries.replace(date, entry, loading);
+            if (!owner) {
+                continue;
+            }
+
+            misses.increment();
+            evictIfFull();
+            CompletableFuture<EpgSnapshot> load;
+            try {
+                load = loader.apply(date, entry != null && entry.hasSnapshot() ? entry.snapshot.join() : null);
+            } catch (Throwable e) {
+                load = CompletableFuture.failedFuture(e);
+            }
+            load.whenComplete((snapshot, e) -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (e == null) {
+                    loading.complete(snapshot, clock.millis() + ttlFor(date).toMillis());
+                } else if (entry != null && entry.hasSnapshot()) {
+                    fallBack(date, entry, loading, cause);
+                } else {
+                    entries.remove(date, loading);
+                    loading.snapshot.completeExceptionally(cause);
+                }
+            });
+            return loading.snapshot;
+        }
+    }
+
+    /**
+     * Loads a new snapshot for the given date and replaces the cached one, even if it has not expired yet.
+     * Callers asking for the date meanwhile keep being served the previous snapshot. If the load fails,
+     * the previous snapshot stays in place.
+     *
+     * @param date   The date (yyyy-MM-dd) the snapshot belongs to.
+     * @param loader The function fetching the snapshot from the upstream API.
+     * @return The refreshed snapshot, or the cached one if another refresh of the date is already running.
+     */
+    public EpgSnapshot refresh(String date, Function<String, EpgSnapshot> loader) {
+        return refresh(date, (key, previous) -> loader.apply(key));
+    }
+
+    /**
+     * Like {@link #refresh(String, Function)}, but hands the loader the snapshot being replaced, if there is one.
+     *
+     * @param date   The date (yyyy-MM-dd) the snapshot belongs to.
+     * @param loader The function fetching the snapshot from the upstream API, given the date and the previous snapshot or null.
+     * @return The refreshed snapshot, or the cached one if another refresh of the date is already running.
+     */
+    public EpgSnapshot refresh(String date, BiFunction<String, EpgSnapshot, EpgSnapshot> loader) {
+        CacheEntry entry = entries.get(date);
+        if (entry == null || !entry.hasSnapshot()) {
+            return get(date, loader);
+        }
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return entry.snapshot.join();
+        }
+        try {
+            return reload(date, entry, loader);
+        } finally {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void revalidateInBackground(String date, CacheEntry entry, BiFunction<String, EpgSnapshot, EpgSnapshot> loader) {
+        if (revalidationExecutor == null || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            revalidationExecutor.execute(() -> {
+                try {
+                    reload(date, entry, loader);
+                } catch (RuntimeException e) {
+                    revalidationFailed(date, entry, e);
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void revalidateAsync(String date, CacheEntry entry, BiFunction<String, EpgSnapshot, CompletableFuture<EpgSnapshot>> loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture<EpgSnapshot> load;
+        try {
+            load = loader.apply(date, entry.snapshot.join());
+        } catch (Throwable e) {
+            load = CompletableFuture.failedFuture(e);
+        }
+        load.whenComplete((snapshot, e) -> {
+            try {
+                if (e == null) {
+                    replace(date, entry, snapshot);
+                } else {
+                    revalidationFailed(date, entry, e);
+                }
+            } finally {
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Marks the expired entry, so its snapshot is served as stale. Only the first failure is logged as a warning,
+     * as every lookup tries again while the EPG API is down.
+     */
+    private static void revalidationFailed(String date, CacheEntry entry, Throwable failure) {
+        if (entry.revalidationFailed) {
+            log.debug("Could not revalidate the EPG snapshot of {}: {}", date, failure.getMessage());
+        } else {
+            log.warn("Could not revalidate the EPG snapshot of {}, serving it as stale: {}", date, failure.getMessage());
+        }
+        entry.revalidationFailed = true;
+    }
+
+    /**
+     * Puts the expired entry back after its reload failed, so the next lookup tries again, and serves its snapshot
+     * as stale to the caller and to everyone waiting for the reload.
+     */
+    private EpgSnapshot fallBack(String date, CacheEntry expired, CacheEntry loading, Throwable failure) {
+        fallbacks.increment();
+        revalidationFailed(date, expired, failure);
+        entries.replace(date, loading, expired);
+        EpgSnapshot stale = expired.served();
+        loading.snapshot.complete(stale);
+        return stale;
+    }
+
+    private EpgSnapshot reload(String date, CacheEntry stale, BiFunction<String, EpgSnapshot, EpgSnapshot> loader) {
+        return replace(date, stale, loader.apply(date, stale.snapshot.join()));
+    }
+
+    private EpgSnapshot replace(String date, CacheEntry stale, EpgSnapshot snapshot) {
+        long now = clock.millis();
+        CacheEntry fresh = new CacheEntry(stale.lastAccess);
+        fresh.complete(snapshot, now + ttlFor(date).toMillis());
+        if (!entries.replace(date, stale, fresh) && entries.putIfAbsent(date, fresh) == null) {
+            evictIfFull();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Removes the snapshot of the given date, forcing the next request to fetch it again.
+     *
+     * @param date The date whose snapshot is to be removed.
+     */
+    public void invalidate(String date) {
+        entries.remove(date);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters collected since this cache has been created.
+     *
+     * @return The current cache statistics.
+     */
+    public Stats getStats() {
+        return new Stats(hits.sum(), staleHits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("epg.cache.lookups", hits, LongAdder::sum).tag("result", "hit")
+                .description("Snapshot lookups answered from the cache").register(registry);
+        FunctionCounter.builder("epg.cache.lookups", staleHits, LongAdder::sum).tag("result", "stale")
+                .description("Snapshot lookups answered with an expired snapshot").register(registry);
+        FunctionCounter.builder("epg.cache.lookups", misses, LongAdder::sum).tag("result", "miss")
+                .description("Snapshot lookups that triggered an upstream fetch").register(registry);
+        FunctionCounter.builder("epg.cache.fallbacks", fallbacks, LongAdder::sum)
+                .description("Snapshot lookups answered with the last good snapshot after a failed fetch").register(registry);
+        FunctionCounter.builder("epg.cache.evictions", evictions, LongAdder::sum)
+                .description("Snapshots removed because the cache was full").register(registry);
+        Gauge.builder("epg.cache.size", entries, Map::size)
+                .description("Number of snapshots held").register(registry);
+    }
+
+    private Duration ttlFor(String date) {
+        try {
+            return LocalDate.parse(SnapshotKeys.dateOf(date)).isBefore(LocalDate.now(clock)) ? pastDayTtl : currentDayTtl;
+        } catch (DateTimeParseException e) {
+            return currentDayTtl;
+        }
+    }
+
+    private void evictIfFull() {
+        while (entries.size() > maxEntries) {
+            Map.Entry<String, CacheEntry> eldest = null;
+            for (Map.Entry<String, CacheEntry> candidate : entries.entrySet()) {
+                // Entries that are still loading have waiters attached and are never evicted
+                if (candidate.getValue().snapshot.isDone()
+                        && (eldest == null || candidate.getValue().lastAccess < eldest.getValue().lastAccess)) {
+                    eldest = candidate;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static EpgSnapshot await(CompletableFuture<EpgSnapshot> snapshot) {
+        try {
+            return snapshot.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class CacheEntry {
+        private final CompletableFuture<EpgSnapshot> snapshot = new CompletableFuture<>();
+        private volatile long expiresAt = Long.MAX_VALUE;
+        private volatile long lastAccess;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        // Whether the last reload of the expired snapshot failed, so it is served as stale
+        private volatile boolean revalidationFailed;
+
+        private CacheEntry(long now) {
+            this.lastAccess = now;
+        }
+
+        private void complete(EpgSnapshot value, long expiresAt) {
+            this.expiresAt = expiresAt;
+            snapshot.complete(value);
+        }
+
+        /**
+         * @return The snapshot of an expired entry, marked as stale if reloading it failed.
+         */
+        private EpgSnapshot served() {
+            EpgSnapshot value = snapshot.join();
+            return revalidationFailed ? value.asStale() : value;
+        }
+
+        private boolean hasSnapshot() {
+            return snapshot.isDone() && !snapshot.isCompletedExceptionally();
+        }
+
+        private boolean isExpired(long now) {
+            return snapshot.isDone() && now >= expiresAt;
+        }
+    }
+
+    /**
+     * Counters describing how effective the cache is.
+     *
+     * @param hits      The number of lookups answered from the cache.
+     * @param staleHits The number of lookups answered with an expired snapshot while it was being refreshed.
+     * @param misses    The number of lookups that triggered an upstream fetch.
+     * @param evictions The number of snapshots removed because the cache was full.
+     * @param size      The number of snapshots currently held.
+     */
+    public record Stats(long hits, long staleHits, long misses, long evictions, int size) {
+    }
+}
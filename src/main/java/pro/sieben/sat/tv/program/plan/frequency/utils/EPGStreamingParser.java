@@ -0,0 +1,217 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.web.client.ResourceAccessException;
+import pro.sieben.sat.tv.program.plan.frequency.model.DaySchedule;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A token-level parser for the responses of the EPG GraphQL API.
+ * It walks {@code data.site.epg.items} and hands the fields kept in a {@link DaySchedule} to an {@link ItemHandler}
+ * without binding the response to {@code ApiResponse} and {@code Item} objects.
+ */
+public final class EPGStreamingParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    static final String NO_DATA = "The EPG API answered without data";
+
+    private EPGStreamingParser() {
+    }
+
+    /**
+     * Receives the fields of each EPG item in the order the items appear in the response.
+     * Start and end times are epoch seconds, or {@link DaySchedule#NO_TIME} if missing or unreadable.
+     */
+    @FunctionalInterface
+    public interface ItemHandler {
+        void onItem(String id, String title, String showTitle, String showId, int startTime, int endTime, String description);
+    }
+
+    /**
+     * Parses an EPG API response and passes every item to the given handler. An empty body has no items,
+     * a response without data is a failure of the API.
+     *
+     * @param body    The JSON response body.
+     * @param handler The handler receiving the items.
+     * @return The number of items found in the response.
+     * @throws IOException             If the body cannot be read or is not valid JSON.
+     * @throws EPGQueryException       If the response holds GraphQL errors and no data.
+     * @throws ResourceAccessException If the response holds neither data nor errors.
+     */
+    public static int parse(InputStream body, ItemHandler handler) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return 0;
+            }
+
+            // The errors may come before or after the data, they are only thrown if there is no data
+            EPGQueryException error = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                    return parseData(parser, handler);
+                } else if ("errors".equals(field) && value == JsonToken.START_ARRAY) {
+                    error = readFirstError(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            throw new ResourceAccessException(NO_DATA);
+        }
+    }
+
+    private static int parseData(JsonParser parser, ItemHandler handler) throws IOException {
+        if (!enterField(parser, "site", JsonToken.START_OBJECT)
+                || !enterField(parser, "epg", JsonToken.START_OBJECT)
+                || !enterField(parser, "items", JsonToken.START_ARRAY)) {
+            return 0;
+        }
+
+        int count = 0;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            parseItem(parser, handler);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the message and the code of the first error of the errors array and skips the others.
+     *
+     * @return The EPGQueryException of the first error, or null if the array is empty.
+     */
+    private static EPGQueryException readFirstError(JsonParser parser) throws IOException {
+        EPGQueryException error = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+            if (error != null || token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String message = null;
+            String code = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("message".equals(field)) {
+                    message = readScalar(parser);
+                } else if ("extensions".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String extension = parser.currentName();
+                        parser.nextToken();
+                        if ("code".equals(extension)) {
+                            code = readScalar(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            error = new EPGQueryException(message, code);
+        }
+        return error;
+    }
+
+    /**
+     * Advances the parser, positioned on the start of an object, to the value of the given field.
+     * Other fields are skipped without being materialized.
+     *
+     * @return true if the field exists and its value starts with the expected token.
+     */
+    private static boolean enterField(JsonParser parser, String name, JsonToken expected) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals(field)) {
+                return value == expected;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static void parseItem(JsonParser parser, ItemHandler handler) throws IOException {
+        String id = null;
+        String title = null;
+        String showTitle = null;
+        String showId = null;
+        int startTime = DaySchedule.NO_TIME;
+        int endTime = DaySchedule.NO_TIME;
+        String description = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("title".equals(field)) {
+                title = readScalar(parser);
+            } else if ("id".equals(field)) {
+                id = readScalar(parser);
+            } else if ("description".equals(field)) {
+                description = readScalar(parser);
+            } else if ("startTime".equals(field)) {
+                startTime = readEpochSecond(parser);
+            } else if ("endTime".equals(field)) {
+                endTime = readEpochSecond(parser);
+            } else if ("tvShow".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String showField = parser.currentName();
+                    parser.nextToken();
+                    if ("title".equals(showField)) {
+                        showTitle = readScalar(parser);
+                    } else if ("id".equals(showField)) {
+                        showId = readScalar(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        handler.onItem(id, title, showTitle, showId, startTime, endTime, description);
+    }
+
+    /**
+     * Reads the current value as text, skipping it if it unexpectedly is an object or an array.
+     */
+    private static String readScalar(JsonParser parser) throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getValueAsString();
+    }
+
+    /**
+     * Reads an ISO-8601 timestamp or epoch milliseconds, the formats Jackson accepts for {@code java.util.Date}.
+     */
+    private static int readEpochSecond(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return Math.toIntExact(Math.floorDiv(parser.getLongValue(), 1000L));
+        }
+        String text = readScalar(parser);
+        if (text == null) {
+            return DaySchedule.NO_TIME;
+        }
+        try {
+            return Math.toIntExact(OffsetDateTime.parse(text).toEpochSecond());
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return DaySchedule.NO_TIME;
+        }
+    }
+}
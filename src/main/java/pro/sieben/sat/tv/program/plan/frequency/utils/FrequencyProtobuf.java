@@ -0,0 +1,180 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import org.springframework.http.MediaType;
+import pro.sieben.sat.tv.program.plan.frequency.model.FrequencyResponse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes lists of {@link FrequencyResponse} in the protobuf wire format, as a sequence of length-prefixed messages
+ * (like protobuf's {@code writeDelimitedTo}) of the following schema:
+ * <pre>
+ * message FrequencyResponse {
+ *     string title = 1;
+ *     int32 frequency = 2;
+ * }
+ * </pre>
+ * Every protobuf library can read the messages one by one with {@code parseDelimitedFrom}, and a list can be encoded
+ * and decoded in a single pass, without knowing its size in advance.
+ */
+public final class FrequencyProtobuf {
+
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType("application/x-protobuf");
+
+    // Field 1, length-delimited
+    private static final int TITLE_TAG = 1 << 3 | 2;
+    // Field 2, varint
+    private static final int FREQUENCY_TAG = 2 << 3;
+
+    private FrequencyProtobuf() {
+    }
+
+    /**
+     * Writes the TV shows as length-prefixed messages.
+     *
+     * @param frequencies The TV shows and their frequencies.
+     * @param out         The stream to write to, not closed.
+     * @throws IOException If the stream fails.
+     */
+    public static void write(List<FrequencyResponse> frequencies, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64];
+        for (FrequencyResponse frequency : frequencies) {
+            byte[] title = frequency.getTitle() == null ? null : frequency.getTitle().getBytes(StandardCharsets.UTF_8);
+            int size = 0;
+            if (title != null) {
+                size += 1 + varintSize(title.length) + title.length;
+            }
+            if (frequency.getFrequency() != 0) {
+                size += 1 + varintSize(frequency.getFrequency());
+            }
+            if (buffer.length < size + 5) {
+                buffer = new byte[Math.max(size + 5, buffer.length * 2)];
+            }
+            int position = writeVarint(buffer, 0, size);
+            if (title != null) {
+                buffer[position++] = TITLE_TAG;
+                position = writeVarint(buffer, position, title.length);
+                System.arraycopy(title, 0, buffer, position, title.length);
+                position += title.length;
+            }
+            if (frequency.getFrequency() != 0) {
+                buffer[position++] = FREQUENCY_TAG;
+                position = writeVarint(buffer, position, frequency.getFrequency());
+            }
+            out.write(buffer, 0, position);
+        }
+    }
+
+    /**
+     * Reads length-prefixed messages until the end of the stream. Unknown fields are skipped.
+     *
+     * @param in The stream to read from, not closed.
+     * @return The TV shows and their frequencies.
+     * @throws IOException If the stream fails or does not hold valid messages.
+     */
+    public static List<FrequencyResponse> read(InputStream in) throws IOException {
+        List<FrequencyResponse> frequencies = new ArrayList<>();
+        int first;
+        while ((first = in.read()) >= 0) {
+            long size = readVarint(in, first);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Message too large");
+            }
+            byte[] message = in.readNBytes((int) size);
+            if (message.length < size) {
+                throw new EOFException("Truncated message");
+            }
+            frequencies.add(parse(message));
+        }
+        return frequencies;
+    }
+
+    private static FrequencyResponse parse(byte[] message) throws IOException {
+        FrequencyResponse frequency = new FrequencyResponse();
+        int[] position = {0};
+        while (position[0] < message.length) {
+            int tag = (int) readVarint(message, position);
+            switch (tag & 7) {
+                case 0 -> {
+                    long value = readVarint(message, position);
+                    if (tag == FREQUENCY_TAG) {
+                        frequency.setFrequency((int) value);
+                    }
+                }
+                case 2 -> {
+                    int length = (int) readVarint(message, position);
+                    if (length < 0 || position[0] + length > message.length) {
+                        throw new IOException("Truncated message");
+                    }
+                    if (tag == TITLE_TAG) {
+                        frequency.setTitle(new String(message, position[0], length, StandardCharsets.UTF_8));
+                    }
+                    position[0] += length;
+                }
+                case 1 -> position[0] += 8;
+                case 5 -> position[0] += 4;
+                default -> throw new IOException("Unsupported wire type " + (tag & 7));
+            }
+        }
+        return frequency;
+    }
+
+    private static int varintSize(int value) {
+        // Negative int32 values take ten bytes, as they are sign-extended to 64 bits
+        if (value < 0) {
+            return 10;
+        }
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        buffer[position++] = (byte) remaining;
+        return position;
+    }
+
+    private static long readVarint(InputStream in, int first) throws IOException {
+        long value = first & 0x7F;
+        int current = first;
+        for (int shift = 7; (current & 0x80) != 0; shift += 7) {
+            current = in.read();
+            if (current < 0) {
+                throw new EOFException("Truncated length prefix");
+            }
+            if (shift > 63) {
+                throw new IOException("Malformed varint");
+            }
+            value |= (long) (current & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    private static long readVarint(byte[] message, int[] position) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= message.length) {
+                throw new IOException("Truncated varint");
+            }
+            byte current = message[position[0]++];
+            value |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,42 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of the last successful calls to the EPG API, in a ring buffer, to estimate their usual percentiles.
+ */
+final class LatencyWindow {
+
+    // The number of latencies needed before a percentile is estimated
+    static final int MIN_SAMPLES = 20;
+
+    private final long[] nanos;
+    private int next;
+    private int size;
+
+    LatencyWindow(int capacity) {
+        this.nanos = new long[Math.max(capacity, MIN_SAMPLES)];
+    }
+
+    synchronized void record(long latencyNanos) {
+        nanos[next] = latencyNanos;
+        next = (next + 1) % nanos.length;
+        size = Math.min(size + 1, nanos.length);
+    }
+
+    /**
+     * @param percentile The percentile, e.g. 0.95.
+     * @return The percentile of the recorded latencies in nanoseconds, or -1 if fewer than {@link #MIN_SAMPLES} are recorded.
+     */
+    long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (size < MIN_SAMPLES) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(nanos, size);
+        }
+        Arrays.sort(sorted);
+        return sorted[Math.max((int) Math.ceil(percentile * sorted.length) - 1, 0)];
+    }
+}
@@ -0,0 +1,32 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+/**
+ * The keys of EPG snapshots in the cache and the archive. The snapshot of the default channel is keyed by its date
+ * (yyyy-MM-dd), snapshots of other channels by the date followed by {@code @} and the channel, e.g. {@code 2024-03-15@sat1.de}.
+ */
+final class SnapshotKeys {
+
+    private static final char CHANNEL_SEPARATOR = '@';
+
+    private SnapshotKeys() {
+    }
+
+    /**
+     * @param date           The date of the snapshot.
+     * @param channel        The channel of the snapshot.
+     * @param defaultChannel The default channel.
+     * @return The key of the snapshot.
+     */
+    static String of(String date, String channel, String defaultChannel) {
+        return channel.equals(defaultChannel) ? date : date + CHANNEL_SEPARATOR + channel;
+    }
+
+    /**
+     * @param key The key of a snapshot.
+     * @return The date part of the key.
+     */
+    static String dateOf(String key) {
+        int separator = key.indexOf(CHANNEL_SEPARATOR);
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+}
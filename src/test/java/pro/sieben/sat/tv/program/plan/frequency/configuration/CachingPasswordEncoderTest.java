@@ -0,0 +1,105 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class CachingPasswordEncoderTest {
+
+    private static final String ENCODED = "{bcrypt}hash";
+
+    private PasswordEncoder delegate;
+    private MutableClock clock;
+    private CachingPasswordEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(PasswordEncoder.class);
+        when(delegate.matches("password", ENCODED)).thenReturn(true);
+        clock = new MutableClock(Instant.parse("2024-03-15T12:00:00Z"));
+        encoder = new CachingPasswordEncoder(delegate, Duration.ofMinutes(5), 2, clock);
+    }
+
+    @Test
+    void testRemembersVerifiedCredentials() {
+        assertThat(encoder.matches("password", ENCODED)).isTrue();
+        assertThat(encoder.matches("password", ENCODED)).isTrue();
+
+        verify(delegate, times(1)).matches("password", ENCODED);
+    }
+
+    @Test
+    void testDoesNotRememberFailedCredentials() {
+        assertThat(encoder.matches("wrong", ENCODED)).isFalse();
+        assertThat(encoder.matches("wrong", ENCODED)).isFalse();
+
+        verify(delegate, times(2)).matches("wrong", ENCODED);
+        assertThat(encoder.size()).isZero();
+    }
+
+    @Test
+    void testVerifiesAgainAfterTtl() {
+        encoder.matches("password", ENCODED);
+        clock.advance(Duration.ofMinutes(5));
+
+        assertThat(encoder.matches("password", ENCODED)).isTrue();
+        verify(delegate, times(2)).matches("password", ENCODED);
+    }
+
+    @Test
+    void testVerifiesChangedPasswordsAgain() {
+        encoder.matches("password", ENCODED);
+
+        // The user's password has been changed, the remembered credential does not match the new hash
+        assertThat(encoder.matches("password", "{bcrypt}other")).isFalse();
+        verify(delegate).matches("password", "{bcrypt}other");
+    }
+
+    @Test
+    void testIsBounded() {
+        when(delegate.matches(anyString(), anyString())).thenReturn(true);
+        encoder.matches("a", ENCODED);
+        encoder.matches("b", ENCODED);
+        encoder.matches("c", ENCODED);
+
+        assertThat(encoder.size()).isLessThanOrEqualTo(2);
+        assertThat(encoder.matches("c", ENCODED)).isTrue();
+        verify(delegate, times(1)).matches("c", ENCODED);
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import pro.sieben.sat.tv.program.plan.frequency.model.ApiResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.BatchResult;
+import pro.sieben.sat.tv.program.plan.frequency.model.Item;
+import pro.sieben.sat.tv.program.plan.frequency.model.TvShow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EPGRuntimeHintsTest {
+
+    private RuntimeHints hints;
+
+    @BeforeEach
+    void setUp() {
+        hints = new RuntimeHints();
+        new EPGRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void testRegistersTheResponseOfTheEpgApiWithItsNestedTypes() {
+        assertThat(RuntimeHintsPredicates.reflection().onType(ApiResponse.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(Item.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(TvShow.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(Item.class, "setStartTime")).accepts(hints);
+    }
+
+    @Test
+    void testRegistersTheResponseBodies() {
+        assertThat(RuntimeHintsPredicates.reflection().onType(BatchResult.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(BatchResult.class, "getResult")).accepts(hints);
+    }
+}
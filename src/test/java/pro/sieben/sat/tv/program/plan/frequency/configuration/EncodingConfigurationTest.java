@@ -0,0 +1,46 @@
+package pro.sieben.sat.tv.program.plan.frequency.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EncodingConfigurationTest {
+
+    private final EncodingConfiguration configuration = new EncodingConfiguration();
+
+    @Test
+    void testProtobufConverterComesAfterJackson() {
+        List<HttpMessageConverter<?>> converters = new ArrayList<>(List.of(new MappingJackson2HttpMessageConverter()));
+
+        configuration.encodingWebMvcConfigurer().extendMessageConverters(converters);
+
+        assertThat(converters).hasSize(2);
+        assertThat(converters.get(1)).isInstanceOf(FrequencyProtobufHttpMessageConverter.class);
+    }
+
+    @Test
+    void testRequestsWithoutPreferenceResolveToJsonFirst() {
+        EncodingConfiguration.JsonFirstContentTypeResolver resolver = new EncodingConfiguration.JsonFirstContentTypeResolver();
+
+        assertThat(resolver.resolveMediaTypes(exchange(null))).containsExactly(MediaType.APPLICATION_JSON, MediaType.ALL);
+        assertThat(resolver.resolveMediaTypes(exchange("*/*"))).containsExactly(MediaType.APPLICATION_JSON, MediaType.ALL);
+        assertThat(resolver.resolveMediaTypes(exchange("application/x-protobuf")))
+                .containsExactly(MediaType.parseMediaType("application/x-protobuf"));
+    }
+
+    private static MockServerWebExchange exchange(String accept) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/api/mostFrequantShows");
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return MockServerWebExchange.from(request);
+    }
+}
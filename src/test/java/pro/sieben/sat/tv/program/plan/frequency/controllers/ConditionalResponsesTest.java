@@ -0,0 +1,57 @@
+package pro.sieben.sat.tv.program.plan.frequency.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import pro.sieben.sat.tv.program.plan.frequency.model.SnapshotVersion;
+import pro.sieben.sat.tv.program.plan.frequency.model.Versioned;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConditionalResponsesTest {
+
+    private static final SnapshotVersion VERSION = new SnapshotVersion("abc", Duration.ZERO);
+
+    // How often the query of the answer was run
+    private final AtomicInteger queries = new AtomicInteger();
+
+    private Versioned<List<String>> answer() {
+        return new Versioned<>(VERSION, () -> {
+            queries.incrementAndGet();
+            return List.of("Die Goldbergs");
+        });
+    }
+
+    @Test
+    void testMatchingETagNeverRunsTheQuery() {
+        ResponseEntity<List<String>> response = ConditionalResponses.conditional("W/\"other\", \"abc\"", answer());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getHeaders().getETag()).isEqualTo("\"abc\"");
+        assertThat(response.getBody()).isNull();
+        assertThat(queries).hasValue(0);
+    }
+
+    @Test
+    void testReactiveMatchingETagNeverRunsTheQuery() {
+        ResponseEntity<List<String>> response = ConditionalResponses.conditional("\"abc\"", Mono.just(answer())).block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(queries).hasValue(0);
+    }
+
+    @Test
+    void testOtherETagRunsTheQueryOnce() {
+        ResponseEntity<List<String>> response = ConditionalResponses.conditional("\"other\"", answer());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getETag()).isEqualTo("\"abc\"");
+        assertThat(response.getBody()).containsExactly("Die Goldbergs");
+        assertThat(queries).hasValue(1);
+    }
+}
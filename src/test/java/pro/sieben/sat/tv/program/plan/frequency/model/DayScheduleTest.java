@@ -0,0 +1,203 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DayScheduleTest {
+
+    private static final String FIXTURE = "/fixtures/epg-prosieben-2024-03-15.json";
+
+    private List<Item> items;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        try (InputStream in = DayScheduleTest.class.getResourceAsStream(FIXTURE)) {
+            items = objectMapper.readValue(Objects.requireNonNull(in), ApiResponse.class).getData().getSite().getEpg().getItems();
+        }
+    }
+
+    @Test
+    void testCountFrequenciesMatchesItems() {
+        ShowFrequencies expected = ShowFrequencies.of(items);
+        ShowFrequencies actual = DaySchedule.of(items).countFrequencies();
+
+        assertThat(new ArrayList<>(actual.getFrequencies().entrySet()))
+                .containsExactlyElementsOf(expected.getFrequencies().entrySet());
+        for (ShowType type : ShowType.values()) {
+            assertThat(new ArrayList<>(actual.getFrequencies(type).entrySet()))
+                    .containsExactlyElementsOf(expected.getFrequencies(type).entrySet());
+        }
+    }
+
+    @Test
+    void testToItemsRoundTrip() {
+        DaySchedule schedule = DaySchedule.of(items);
+
+        assertThat(schedule.size()).isEqualTo(items.size());
+        assertThat(schedule.toItems()).usingRecursiveFieldByFieldElementComparatorIgnoringFields("description", "season")
+                .containsExactlyElementsOf(items);
+    }
+
+    @Test
+    void testHeapFootprintComparedToItems() {
+        // A week of the fixture day, as the cache would hold it
+        List<Item> week = new ArrayList<>();
+        for (int day = 0; day < 7; day++) {
+            week.addAll(items);
+        }
+        List<Item> boundWeek = week.stream().map(DayScheduleTest::copy).toList();
+
+        long itemBytes = GraphLayout.parseInstance(boundWeek).totalSize();
+        long scheduleBytes = GraphLayout.parseInstance(DaySchedule.of(boundWeek)).totalSize();
+        System.out.printf("Heap footprint of %d slots: List<Item> %d bytes, DaySchedule %d bytes (%.1fx smaller)%n",
+                boundWeek.size(), itemBytes, scheduleBytes, (double) itemBytes / scheduleBytes);
+
+        assertThat(scheduleBytes).isLessThan(itemBytes / 2);
+    }
+
+    @Test
+    void testRefreshedSnapshotOnlyAppliesChangedSlots() {
+        List<Item> refreshed = new ArrayList<>(items);
+        refreshed.remove(0);
+        Item moved = copy(refreshed.get(1));
+        moved.setTvShow(new TvShow("New Movie", null));
+        moved.setTitle(null);
+        refreshed.set(1, moved);
+        Item rescheduled = copy(refreshed.get(2));
+        rescheduled.setStartTime(new Date());
+        refreshed.set(2, rescheduled);
+        refreshed.add(Item.builder().id("epg-new").title("Pilot").tvShow(new TvShow("New Series", "new-series")).build());
+
+        EpgSnapshot previous = EpgSnapshot.of("2024-03-15", items, Instant.now());
+        EpgSnapshot updated = EpgSnapshot.update(previous, DaySchedule.of(refreshed), Instant.now());
+        EpgSnapshot rebuilt = EpgSnapshot.of("2024-03-15", refreshed, Instant.now());
+
+        assertThat(updated.getChangedSlots()).isEqualTo(3);
+        assertIndexEquals(updated.getFrequencyIndex(), rebuilt.getFrequencyIndex());
+        assertThat(updated.getVersion()).isEqualTo(rebuilt.getVersion()).isNotEqualTo(previous.getVersion());
+    }
+
+    @Test
+    void testReplacedSlotsWithTheSameShowKeepVersion() {
+        List<Item> refreshed = new ArrayList<>(items);
+        Item replaced = copy(refreshed.get(0));
+        replaced.setId("epg-replaced");
+        refreshed.set(0, replaced);
+
+        EpgSnapshot previous = EpgSnapshot.of("2024-03-15", items, Instant.now());
+        EpgSnapshot updated = EpgSnapshot.update(previous, DaySchedule.of(refreshed), Instant.now());
+
+        assertThat(updated.getChangedSlots()).isEqualTo(2);
+        assertThat(updated.getVersion()).isEqualTo(previous.getVersion());
+    }
+
+    @Test
+    void testUnchangedRefreshKeepsIndex() {
+        EpgSnapshot previous = EpgSnapshot.of("2024-03-15", items, Instant.now());
+        EpgSnapshot updated = EpgSnapshot.update(previous, DaySchedule.of(items), Instant.now());
+
+        assertThat(updated.getChangedSlots()).isZero();
+        assertThat(updated.getFrequencyIndex()).isSameAs(previous.getFrequencyIndex());
+    }
+
+    @Test
+    void testDiffOfSlotsWithoutUniqueIds() {
+        List<Item> refreshed = new ArrayList<>(items);
+        refreshed.add(0, items.get(5));
+        refreshed.add(Item.builder().title("Pilot").tvShow(new TvShow("New Series", "new-series")).build());
+
+        EpgSnapshot updated = EpgSnapshot.update(EpgSnapshot.of("2024-03-15", items, Instant.now()), DaySchedule.of(refreshed), Instant.now());
+
+        assertIndexEquals(updated.getFrequencyIndex(), EpgSnapshot.of("2024-03-15", refreshed, Instant.now()).getFrequencyIndex());
+    }
+
+    @Test
+    void testCountWindow() {
+        DaySchedule schedule = DaySchedule.builder()
+                .add("1", null, "Late", null, 500, 700)
+                .add("2", "Ep1", "Show1", "id1", 100, 200)
+                .add("3", "Ep2", "Show1", "id1", 200, 300)
+                .add("4", null, "Show2", null, 300, 460)
+                .add("5", null, "Untimed", null, DaySchedule.NO_TIME, DaySchedule.NO_TIME)
+                .build();
+
+        // Airings starting at 100 (inclusive) up to 400 (exclusive), their airtime clipped at the end of the window
+        assertThat(schedule.countWindow(100, 400, null)).containsExactly(
+                new AirtimeResponse("Show1", 2, 3),
+                new AirtimeResponse("Show2", 1, 1));
+        assertThat(schedule.countWindow(100, 400, ShowType.SERIES)).containsExactly(new AirtimeResponse("Show1", 2, 3));
+        assertThat(schedule.countWindow(101, 200, null)).isEmpty();
+        assertThat(schedule.firstStartTime()).isEqualTo(100);
+    }
+
+    @Test
+    void testCountWindowMatchesScan() {
+        DaySchedule schedule = DaySchedule.of(items);
+        int from = (int) (items.get(10).getStartTime().getTime() / 1000);
+        int to = from + 3 * 3600;
+
+        Map<String, Integer> expected = new HashMap<>();
+        for (Item item : items) {
+            long start = item.getStartTime().getTime() / 1000;
+            if (start >= from && start < to) {
+                expected.merge(item.getTvShow().getTitle(), 1, Integer::sum);
+            }
+        }
+        Map<String, Integer> actual = new HashMap<>();
+        schedule.countWindow(from, to, null).forEach(airtime -> actual.put(airtime.getTitle(), airtime.getFrequency()));
+
+        assertThat(actual).isNotEmpty().isEqualTo(expected);
+    }
+
+    @Test
+    void testAiringAt() {
+        DaySchedule schedule = DaySchedule.builder()
+                .add("1", null, "Movie", null, 100, 400)
+                .add("2", "Ep1", "Show1", "id1", 200, 250)
+                .add("3", "Ep2", "Show1", "id1", 250, 300)
+                .build();
+
+        assertThat(schedule.airingAt(260)).extracting(Item::getId).containsExactly("1", "3");
+        assertThat(schedule.airingAt(250)).extracting(Item::getId).containsExactly("1", "3");
+        assertThat(schedule.airingAt(400)).isEmpty();
+        assertThat(schedule.airingAt(99)).isEmpty();
+    }
+
+    private static void assertIndexEquals(FrequencyIndex actual, FrequencyIndex expected) {
+        assertThat(actual.getFrequencies()).isEqualTo(expected.getFrequencies());
+        assertThat(actual.getOrdered()).containsExactlyElementsOf(expected.getOrdered());
+        assertThat(actual.getMostFrequent()).containsExactlyElementsOf(expected.getMostFrequent());
+        for (ShowType type : ShowType.values()) {
+            assertThat(actual.getFrequencies(type)).isEqualTo(expected.getFrequencies(type));
+            assertThat(actual.getOrdered(type)).containsExactlyElementsOf(expected.getOrdered(type));
+            assertThat(actual.getMostFrequent(type)).containsExactlyElementsOf(expected.getMostFrequent(type));
+        }
+    }
+
+    /**
+     * Copies an item with its own strings and dates, as Jackson creates them for every item of a response.
+     */
+    private static Item copy(Item item) {
+        return Item.builder()
+                .id(item.getId() == null ? null : new String(item.getId()))
+                .title(item.getTitle() == null ? null : new String(item.getTitle()))
+                .description(item.getDescription() == null ? null : new String(item.getDescription()))
+                .startTime(item.getStartTime() == null ? null : new Date(item.getStartTime().getTime()))
+                .endTime(item.getEndTime() == null ? null : new Date(item.getEndTime().getTime()))
+                .season(item.getSeason() == null ? null : new Season(item.getSeason().getNumber()))
+                .tvShow(new TvShow(new String(item.getTvShow().getTitle()),
+                        item.getTvShow().getId() == null ? null : new String(item.getTvShow().getId())))
+                .build();
+    }
+}
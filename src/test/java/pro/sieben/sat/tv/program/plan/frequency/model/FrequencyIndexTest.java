@@ -0,0 +1,141 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FrequencyIndexTest {
+
+    private static Map<String, Integer> randomFrequencies(int titles) {
+        Random random = new Random(42);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (int i = 0; i < titles; i++) {
+            // Few distinct frequencies, so many titles tie
+            frequencies.put("Show" + i, 1 + random.nextInt(5));
+        }
+        return frequencies;
+    }
+
+    @Test
+    void testTopMatchesFullOrdering() {
+        Map<String, Integer> frequencies = randomFrequencies(500);
+        List<FrequencyResponse> ordered = FrequencyIndex.top(frequencies, 0, Integer.MAX_VALUE);
+
+        assertThat(ordered).isSortedAccordingTo(FrequencyIndex.ORDER).hasSize(500);
+        assertThat(FrequencyIndex.top(frequencies, 0, 10)).isEqualTo(ordered.subList(0, 10));
+        assertThat(FrequencyIndex.top(frequencies, 40, 20)).isEqualTo(ordered.subList(40, 60));
+    }
+
+    @Test
+    void testPagesAreStableAndComplete() {
+        Map<String, Integer> frequencies = randomFrequencies(95);
+        List<FrequencyResponse> pages = new ArrayList<>();
+        for (int offset = 0; offset < 100; offset += 10) {
+            pages.addAll(FrequencyIndex.top(frequencies, offset, 10));
+        }
+
+        assertThat(pages).isEqualTo(FrequencyIndex.top(frequencies, 0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void testTiesAreBrokenByTitle() {
+        Map<String, Integer> frequencies = Map.of("B", 2, "A", 2, "C", 3);
+
+        assertThat(FrequencyIndex.top(frequencies, 0, 2))
+                .containsExactly(new FrequencyResponse("C", 3), new FrequencyResponse("A", 2));
+    }
+
+    @Test
+    void testPageBeyondEnd() {
+        assertThat(FrequencyIndex.top(Map.of("A", 1), 5, 10)).isEmpty();
+        assertThat(FrequencyIndex.top(Map.of("A", 1, "B", 2), 0, 0)).isEmpty();
+        assertThatThrownBy(() -> FrequencyIndex.top(Map.of(), -1, 10)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testUpdatesMatchRebuiltIndex() {
+        Random random = new Random(7);
+        Map<String, Integer> counts = new HashMap<>(randomFrequencies(200));
+        FrequencyIndex index = FrequencyIndex.of(frequenciesOf(counts));
+        for (int step = 0; step < 50; step++) {
+            // Changes some shows, removes some and adds new ones
+            ShowFrequencies changes = new ShowFrequencies();
+            for (int i = 0; i < 1 + random.nextInt(20); i++) {
+                String title = "Show" + random.nextInt(260);
+                int count = counts.getOrDefault(title, 0);
+                int change = Math.max(-count, random.nextInt(7) - 3);
+                changes.add(title, change);
+                changes.add(title, ShowType.SERIES, change);
+                counts.merge(title, change, Integer::sum);
+                counts.remove(title, 0);
+            }
+            index = index.update(changes);
+            FrequencyIndex rebuilt = FrequencyIndex.of(frequenciesOf(counts));
+
+            assertThat(index.getOrdered()).isEqualTo(rebuilt.getOrdered());
+            assertThat(index.getOrdered(ShowType.SERIES)).isEqualTo(rebuilt.getOrdered(ShowType.SERIES));
+            assertThat(index.getMostFrequent()).isEqualTo(rebuilt.getMostFrequent());
+            assertThat(index.getFrequencies()).isEqualTo(rebuilt.getFrequencies());
+            assertThat(index.getVersion()).isEqualTo(rebuilt.getVersion());
+        }
+    }
+
+    private static ShowFrequencies frequenciesOf(Map<String, Integer> counts) {
+        ShowFrequencies frequencies = new ShowFrequencies();
+        counts.forEach((title, count) -> {
+            frequencies.add(title, count);
+            frequencies.add(title, ShowType.SERIES, count);
+        });
+        return frequencies;
+    }
+
+    @Test
+    void testIndexIsNotChangedByItsFrequencies() {
+        ShowFrequencies frequencies = new ShowFrequencies();
+        frequencies.add("Galileo", 2);
+        frequencies.add("Galileo", ShowType.SERIES, 2);
+        FrequencyIndex index = FrequencyIndex.of(frequencies);
+        long version = index.getVersion();
+
+        frequencies.add("Galileo", 3);
+        frequencies.add("Scrubs", ShowType.SERIES, 1);
+
+        assertThat(index.getFrequencies()).containsExactly(Map.entry("Galileo", 2));
+        assertThat(index.getFrequencies(ShowType.SERIES)).containsExactly(Map.entry("Galileo", 2));
+        assertThat(index.getOrdered()).containsExactly(new FrequencyResponse("Galileo", 2));
+        assertThat(index.getVersion()).isEqualTo(version);
+    }
+
+    @Test
+    void testVersionIdentifiesFrequencies() {
+        ShowFrequencies frequencies = new ShowFrequencies();
+        add(frequencies, "A", ShowType.SERIES, 2);
+        add(frequencies, "B", ShowType.MOVIE, 1);
+        ShowFrequencies sameFrequencies = new ShowFrequencies();
+        add(sameFrequencies, "B", ShowType.MOVIE, 1);
+        add(sameFrequencies, "A", ShowType.SERIES, 2);
+        ShowFrequencies otherType = new ShowFrequencies();
+        add(otherType, "A", ShowType.TVSHOW, 2);
+        add(otherType, "B", ShowType.MOVIE, 1);
+
+        FrequencyIndex index = FrequencyIndex.of(frequencies);
+        assertThat(FrequencyIndex.of(sameFrequencies).getVersion()).isEqualTo(index.getVersion());
+        assertThat(FrequencyIndex.of(otherType).getVersion()).isNotEqualTo(index.getVersion());
+
+        ShowFrequencies changes = new ShowFrequencies();
+        add(changes, "A", ShowType.SERIES, 1);
+        FrequencyIndex updated = index.update(changes);
+        assertThat(updated.getVersion()).isNotEqualTo(index.getVersion());
+        changes = new ShowFrequencies();
+        add(changes, "A", ShowType.SERIES, -1);
+        assertThat(updated.update(changes).getVersion()).isEqualTo(index.getVersion());
+    }
+
+    private static void add(ShowFrequencies frequencies, String showTitle, ShowType type, int count) {
+        frequencies.add(showTitle, count);
+        frequencies.add(showTitle, type, count);
+    }
+}
@@ -0,0 +1,68 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchIndexTest {
+
+    private static final String FIXTURE = "/fixtures/epg-prosieben-2024-03-15.json";
+
+    private List<Item> items;
+
+    private SearchIndex index;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        try (InputStream in = SearchIndexTest.class.getResourceAsStream(FIXTURE)) {
+            items = objectMapper.readValue(Objects.requireNonNull(in), ApiResponse.class).getData().getSite().getEpg().getItems();
+        }
+        index = DaySchedule.of(items).searchIndex();
+    }
+
+    @Test
+    void testPrefixesAreFolded() {
+        assertThat(SearchIndex.prefixesOf("Scrubs - Die ANFÄNGER")).containsExactly("scrubs", "die", "anfanger");
+        assertThat(SearchIndex.prefixesOf("Straße, Café")).containsExactly("strasse", "cafe");
+        assertThat(SearchIndex.prefixesOf(" - ")).isEmpty();
+        assertThat(SearchIndex.termsOf("Die Anfänger")).containsExactly("die", "anfanger", "anfaenger");
+    }
+
+    @Test
+    void testMatchesIgnoreCaseAndDiacritics() {
+        Map<String, Integer> scrubs = Map.of("Scrubs - Die Anfänger", countShow("Scrubs - Die Anfänger"));
+
+        assertThat(index.countMatches(SearchIndex.prefixesOf("Anfänger"))).isEqualTo(scrubs);
+        assertThat(index.countMatches(SearchIndex.prefixesOf("anfanger"))).isEqualTo(scrubs);
+        assertThat(index.countMatches(SearchIndex.prefixesOf("ANFAENGER"))).isEqualTo(scrubs);
+        assertThat(index.countMatches(SearchIndex.prefixesOf("scrubs anf"))).isEqualTo(scrubs);
+        assertThat(index.countMatches(SearchIndex.prefixesOf("Simpsons"))).isEqualTo(Map.of("Die Simpsons", countShow("Die Simpsons")));
+        assertThat(index.countMatches(SearchIndex.prefixesOf("simpsons anfänger"))).isEmpty();
+        assertThat(index.countMatches(List.of())).isEmpty();
+    }
+
+    @Test
+    void testMatchesEqualScanOfItems() {
+        // Every description of a movie starts with "Spielfilm", no title contains it
+        Map<String, Integer> expected = items.stream()
+                .filter(item -> item.getDescription() != null && item.getDescription().toLowerCase(Locale.ROOT).contains("spielfilm"))
+                .collect(Collectors.groupingBy(item -> item.getTvShow().getTitle(), Collectors.summingInt(item -> 1)));
+
+        assertThat(expected).isNotEmpty();
+        assertThat(index.countMatches(SearchIndex.prefixesOf("spielf"))).isEqualTo(expected);
+        assertThat(index.size()).isPositive();
+    }
+
+    private int countShow(String title) {
+        return (int) items.stream().filter(item -> title.equals(item.getTvShow().getTitle())).count();
+    }
+}
@@ -0,0 +1,150 @@
+package pro.sieben.sat.tv.program.plan.frequency.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrendWindowsTest {
+
+    private static final LocalDate LAST = LocalDate.parse("2024-03-15");
+
+    private static FrequencyIndex day(Object... titlesAndCounts) {
+        ShowFrequencies frequencies = new ShowFrequencies();
+        for (int i = 0; i < titlesAndCounts.length; i += 2) {
+            String title = (String) titlesAndCounts[i];
+            int count = (Integer) titlesAndCounts[i + 1];
+            frequencies.add(title, count);
+            frequencies.add(title, title.startsWith("Movie") ? ShowType.MOVIE : ShowType.SERIES, count);
+        }
+        return FrequencyIndex.of(frequencies);
+    }
+
+    private static List<String> titlesOf(List<TrendResponse> trends) {
+        return trends.stream().map(TrendResponse::getTitle).toList();
+    }
+
+    @Test
+    void testRanksByDeltaAndGrowth() {
+        TrendWindows windows = new TrendWindows(2);
+        List<FrequencyIndex> days = List.of(
+                day("Galileo", 2, "Scrubs", 4),
+                day("Galileo", 2, "Scrubs", 4),
+                day("Galileo", 3, "Scrubs", 1, "Movie Titanic", 1),
+                day("Galileo", 3, "Scrubs", 1, "Movie Titanic", 1));
+
+        List<TrendResponse> rising = windows.rank(LAST, days, null, TrendWindows.Measure.DELTA, false, 0, Integer.MAX_VALUE);
+        assertThat(rising).containsExactly(
+                TrendResponse.of("Galileo", 6, 4),
+                TrendResponse.of("Movie Titanic", 2, 0),
+                TrendResponse.of("Scrubs", 2, 8));
+        assertThat(rising.get(0).getDelta()).isEqualTo(2);
+        assertThat(rising.get(1).getGrowth()).isEqualTo(3.0);
+
+        assertThat(titlesOf(windows.rank(LAST, days, null, TrendWindows.Measure.GROWTH, false, 0, Integer.MAX_VALUE)))
+                .containsExactly("Movie Titanic", "Galileo", "Scrubs");
+        assertThat(titlesOf(windows.rank(LAST, days, null, TrendWindows.Measure.DELTA, true, 0, 1)))
+                .containsExactly("Scrubs");
+        assertThat(titlesOf(windows.rank(LAST, days, ShowType.MOVIE, TrendWindows.Measure.DELTA, false, 0, Integer.MAX_VALUE)))
+                .containsExactly("Movie Titanic");
+    }
+
+    @Test
+    void testRefreshedDayReplacesItsCounts() {
+        TrendWindows windows = new TrendWindows(1);
+        windows.rank(LAST, List.of(day("Galileo", 1), day("Galileo", 2)), null, TrendWindows.Measure.DELTA, false, 0, 10);
+
+        List<TrendResponse> trends = windows.rank(LAST, List.of(day("Galileo", 1), day("Scrubs", 3)),
+                null, TrendWindows.Measure.DELTA, false, 0, 10);
+
+        assertThat(trends).containsExactly(TrendResponse.of("Scrubs", 3, 0), TrendResponse.of("Galileo", 0, 1));
+    }
+
+    @Test
+    void testRollingSumsMatchSumsOfAllDays() {
+        Random random = new Random(42);
+        String[] titles = {"Galileo", "Scrubs", "Die Simpsons", "Modern Family", "Movie Titanic", "Movie Alien"};
+        Map<LocalDate, FrequencyIndex> schedule = new HashMap<>();
+        TrendWindows rolling = new TrendWindows(3, 7);
+
+        LocalDate last = LAST;
+        for (int step = 0; step < 60; step++) {
+            // Advances by up to three days, sometimes refreshing one of the days
+            last = last.plusDays(random.nextInt(4));
+            if (random.nextBoolean()) {
+                schedule.remove(last.minusDays(random.nextInt(14)));
+            }
+            int window = random.nextBoolean() ? 3 : 7;
+            List<FrequencyIndex> days = new ArrayList<>();
+            for (LocalDate date = last.minusDays(2L * window - 1); !date.isAfter(last); date = date.plusDays(1)) {
+                days.add(schedule.computeIfAbsent(date, d -> {
+                    List<Object> counts = new ArrayList<>();
+                    for (String title : titles) {
+                        if (random.nextInt(3) > 0) {
+                            counts.add(title);
+                            counts.add(1 + random.nextInt(5));
+                        }
+                    }
+                    return day(counts.toArray());
+                }));
+            }
+            ShowType type = random.nextBoolean() ? null : ShowType.SERIES;
+
+            assertThat(rolling.rank(last, days, type, TrendWindows.Measure.DELTA, false, 0, Integer.MAX_VALUE))
+                    .isEqualTo(new TrendWindows(window).rank(last, days, type, TrendWindows.Measure.DELTA, false, 0, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void testEarlierLastDayStartsOver() {
+        TrendWindows windows = new TrendWindows(1);
+        windows.rank(LAST, List.of(day("Galileo", 1), day("Galileo", 2)), null, TrendWindows.Measure.DELTA, false, 0, 10);
+
+        List<TrendResponse> trends = windows.rank(LAST.minusDays(5), List.of(day("Scrubs", 1), day("Scrubs", 1)),
+                null, TrendWindows.Measure.DELTA, false, 0, 10);
+
+        assertThat(trends).containsExactly(TrendResponse.of("Scrubs", 1, 1));
+    }
+
+    @Test
+    void testConcurrentRanksOfDifferentLastDays() throws Exception {
+        TrendWindows windows = new TrendWindows(1);
+        List<FrequencyIndex> days = List.of(day("Galileo", 1), day("Scrubs", 2));
+        List<FrequencyIndex> nextDays = List.of(day("Scrubs", 2), day("Movie Titanic", 3));
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> ranks = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                boolean next = i % 2 == 0;
+                ranks.add(threads.submit(() -> next
+                        ? windows.rank(LAST.plusDays(1), nextDays, null, TrendWindows.Measure.DELTA, false, 0, 10)
+                                .equals(List.of(TrendResponse.of("Movie Titanic", 3, 0), TrendResponse.of("Scrubs", 0, 2)))
+                        : windows.rank(LAST, days, null, TrendWindows.Measure.DELTA, false, 0, 10)
+                                .equals(List.of(TrendResponse.of("Scrubs", 2, 0), TrendResponse.of("Galileo", 0, 1)))));
+            }
+            for (Future<Boolean> rank : ranks) {
+                assertThat(rank.get(5, TimeUnit.SECONDS)).isTrue();
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void testRejectsUnsupportedWindow() {
+        TrendWindows windows = new TrendWindows(7, 28);
+
+        assertThat(windows.supports(7)).isTrue();
+        assertThat(windows.supports(14)).isFalse();
+        assertThatThrownBy(() -> windows.rank(LAST, Collections.nCopies(3, day("Galileo", 1)), null, TrendWindows.Measure.DELTA, false, 0, 10))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("The trend window must be one of [7, 28] days");
+    }
+}
@@ -0,0 +1,69 @@
+package pro.sieben.sat.tv.program.plan.frequency.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.ResourceAccessException;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGItemsParser;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EPGPrefetchSchedulerTest {
+
+    @Mock
+    private EPGItemsParser epgItemsParser;
+
+    private EPGPrefetchScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        EPGProperties properties = new EPGProperties();
+        properties.getPrefetch().setDaysAhead(2);
+        properties.getPrefetch().setInterval(Duration.ofMinutes(2));
+        properties.getPrefetch().setInitialBackoff(Duration.ofSeconds(10));
+        properties.getPrefetch().setMaxBackoff(Duration.ofSeconds(60));
+        scheduler = new EPGPrefetchScheduler(epgItemsParser, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void testRefreshesTodayAndDaysAhead() {
+        scheduler.refresh();
+
+        LocalDate today = LocalDate.now();
+        verify(epgItemsParser).refreshSnapshot(today.toString());
+        verify(epgItemsParser).refreshSnapshot(today.plusDays(1).toString());
+        verify(epgItemsParser).refreshSnapshot(today.plusDays(2).toString());
+        assertThat(scheduler.nextDelay()).isEqualTo(Duration.ofMinutes(2));
+    }
+
+    @Test
+    void testBacksOffWithJitterAfterFailures() {
+        when(epgItemsParser.refreshSnapshot(any())).thenThrow(new ResourceAccessException("upstream down"));
+
+        scheduler.refresh();
+        assertThat(scheduler.nextDelay()).isBetween(Duration.ofSeconds(5), Duration.ofSeconds(10));
+
+        scheduler.refresh();
+        assertThat(scheduler.nextDelay()).isBetween(Duration.ofSeconds(10), Duration.ofSeconds(20));
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.refresh();
+        }
+        assertThat(scheduler.nextDelay()).isBetween(Duration.ofSeconds(30), Duration.ofSeconds(60));
+    }
+}
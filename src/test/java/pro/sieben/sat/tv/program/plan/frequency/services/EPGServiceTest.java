@@ -1,19 +1,38 @@
 package pro.sieben.sat.tv.program.plan.frequency.services;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.ResourceAccessException;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
 import pro.sieben.sat.tv.program.plan.frequency.model.*;
 import pro.sieben.sat.tv.program.plan.frequency.utils.EPGItemsParser;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGMetrics;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGProjectionException;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGQuery;
 
 @ExtendWith(MockitoExtension.class)
 class EPGServiceTest {
@@ -24,6 +43,14 @@ class EPGServiceTest {
     @Mock
     private EPGItemsParser epgItemsParser;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private EPGMetrics metrics = new EPGMetrics(meterRegistry);
+
+    @Spy
+    private EPGProperties properties = channelProperties();
+
     @BeforeEach
     void setUp() {
         List<Item> mockItems = Arrays.asList(
@@ -36,7 +63,9 @@ class EPGServiceTest {
                 new Item(new TvShow("Show4", "id4"))
         );
         epgService.setUp();
-        when(epgItemsParser.parseItemsFromEPG(any())).thenReturn(mockItems);
+        EpgSnapshot snapshot = EpgSnapshot.of("", mockItems, Instant.now());
+        lenient().when(epgItemsParser.getSnapshot(any())).thenReturn(snapshot);
+        lenient().when(epgItemsParser.getSnapshotAsync(any())).thenReturn(CompletableFuture.completedFuture(snapshot));
     }
 
     @Test
@@ -63,26 +92,26 @@ class EPGServiceTest {
 
     @Test
     void testGetMostFrequentShows() {
-        assertThat(epgService.getMostFrequentShows("")).allMatch(frequencyResponse -> frequencyResponse.getTitle().equals("Show1"));
+        assertThat(epgService.getMostFrequentShows("").getResult()).allMatch(frequencyResponse -> frequencyResponse.getTitle().equals("Show1"));
     }
 
     @Test
     void testGetOrderedShowsByFrequency() {
-        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequency("");
+        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequency("").getResult();
         assertThat(frequencyResponses.get(0).getTitle()).isEqualTo("Show1");
         assertThat(frequencyResponses.get(1).getTitle()).isEqualTo("Show2");
     }
 
     @Test
     void testGetOrderedShowsByFrequencyByTypSeries() {
-        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequencyByType("", ShowType.SERIES);
+        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequencyByType("", ShowType.SERIES).getResult();
         assertThat(frequencyResponses).hasSize(1);
         assertThat(frequencyResponses.get(0).getTitle()).isEqualTo("Show1");
     }
 
     @Test
     void testGetOrderedShowsByFrequencyByTypeTvShow() {
-        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequencyByType("", ShowType.TVSHOW);
+        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequencyByType("", ShowType.TVSHOW).getResult();
         assertThat(frequencyResponses).hasSize(2);
         assertThat(frequencyResponses.get(0).getTitle()).isEqualTo("Show2");
         assertThat(frequencyResponses.get(1).getTitle()).isEqualTo("Show4");
@@ -90,36 +119,446 @@ class EPGServiceTest {
 
     @Test
     void testGetOrderedShowsByFrequencyByTypeMovie() {
-        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequencyByType("", ShowType.MOVIE);
+        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequencyByType("", ShowType.MOVIE).getResult();
         assertThat(frequencyResponses).hasSize(1);
         assertThat(frequencyResponses.get(0).getTitle()).isEqualTo("Show3");
     }
 
     @Test
     void testGetMostFrequentShowsByShowTypeSeries() {
-        List<FrequencyResponse> frequencyResponses = epgService.getMostFrequentShowsByShowType("", ShowType.SERIES);
+        List<FrequencyResponse> frequencyResponses = epgService.getMostFrequentShowsByShowType("", ShowType.SERIES).getResult();
         assertThat(frequencyResponses).hasSize(1);
         assertThat(frequencyResponses.get(0).getTitle()).isEqualTo("Show1");
     }
 
     @Test
     void testGetMostFrequentShowsByShowTypeTvShow() {
-        List<FrequencyResponse> frequencyResponses = epgService.getMostFrequentShowsByShowType("", ShowType.TVSHOW);
+        List<FrequencyResponse> frequencyResponses = epgService.getMostFrequentShowsByShowType("", ShowType.TVSHOW).getResult();
         assertThat(frequencyResponses).hasSize(1);
         assertThat(frequencyResponses.get(0).getTitle()).isEqualTo("Show2");
     }
 
     @Test
     void testGetMostFrequentShowsByShowTypeMovie() {
-        List<FrequencyResponse> frequencyResponses = epgService.getMostFrequentShowsByShowType("", ShowType.MOVIE);
+        List<FrequencyResponse> frequencyResponses = epgService.getMostFrequentShowsByShowType("", ShowType.MOVIE).getResult();
         assertThat(frequencyResponses).hasSize(1);
         assertThat(frequencyResponses.get(0).getTitle()).isEqualTo("Show3");
     }
 
     @Test
     void testGetSeriesByStatus() {
-        List<StatusResponse> frequencyResponses = epgService.getSeriesByStatus("");
+        List<StatusResponse> frequencyResponses = epgService.getSeriesByStatus("").getResult();
         assertThat(frequencyResponses).hasSize(1);
         assertThat(frequencyResponses.get(0).getTitle()).isEqualTo("Show1");
     }
+
+    @Test
+    void testGetOrderedShowsByFrequencyForRange() {
+        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequency("2024-03-13", "2024-03-15").getResult();
+        assertThat(frequencyResponses.get(0)).isEqualTo(new FrequencyResponse("Show1", 9));
+        assertThat(frequencyResponses.get(1)).isEqualTo(new FrequencyResponse("Show2", 6));
+        verify(epgItemsParser, times(3)).getSnapshotAsync(any());
+    }
+
+    @Test
+    void testGetOrderedShowsByFrequencyByTypeForRange() {
+        List<FrequencyResponse> frequencyResponses = epgService.getOrderedShowsByFrequencyByType("2024-03-14", "2024-03-15", ShowType.TVSHOW).getResult();
+        assertThat(frequencyResponses).containsExactly(new FrequencyResponse("Show2", 4), new FrequencyResponse("Show4", 2));
+    }
+
+    @Test
+    void testGetMostFrequentShowsForRange() {
+        assertThat(epgService.getMostFrequentShows("2024-03-15", "2024-03-15").getResult()).containsExactly(new FrequencyResponse("Show1", 3));
+    }
+
+    @Test
+    void testRangeValidation() {
+        assertThatThrownBy(() -> epgService.getOrderedShowsByFrequency("2024-03-15", "2024-03-14").getResult())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> epgService.getOrderedShowsByFrequency("2024-03-01", "2024-04-15").getResult())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> epgService.getOrderedShowsByFrequency("15.03.2024", "2024-03-15").getResult())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testGetOrderedShowsByFrequencyPage() {
+        assertThat(epgService.getOrderedShowsByFrequency("", 1, 2).getResult())
+                .containsExactly(new FrequencyResponse("Show2", 2), new FrequencyResponse("Show3", 1));
+        assertThat(epgService.getOrderedShowsByFrequencyByType("", ShowType.TVSHOW, 0, 1).getResult())
+                .containsExactly(new FrequencyResponse("Show2", 2));
+    }
+
+    @Test
+    void testGetOrderedShowsByFrequencyForRangePage() {
+        assertThat(epgService.getOrderedShowsByFrequency("2024-03-14", "2024-03-15", 0, 2).getResult())
+                .containsExactly(new FrequencyResponse("Show1", 6), new FrequencyResponse("Show2", 4));
+    }
+
+    @Test
+    void testQueriesAreTimedByEndpointAndType() {
+        epgService.getOrderedShowsByFrequencyByType("", ShowType.SERIES).getResult();
+        epgService.getOrderedShowsByFrequencyByType("", ShowType.SERIES, 0, 1).getResult();
+
+        assertThat(meterRegistry.get("epg.queries")
+                .tags("endpoint", "orderedShowsByType", "type", "SERIES", "outcome", "success").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("epg.query.results")
+                .tags("endpoint", "orderedShowsByType", "type", "SERIES").summary().totalAmount()).isEqualTo(2);
+    }
+
+    @Test
+    void testFailedQueriesAreCounted() {
+        assertThatThrownBy(() -> epgService.getOrderedShowsByFrequency("2024-03-15", "2024-03-01").getResult())
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(meterRegistry.get("epg.query.errors")
+                .tags("endpoint", "orderedShowsInRange", "type", EPGMetrics.ALL_TYPES, "exception", "IllegalArgumentException")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("epg.queries").tags("outcome", "error").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testGetMostFrequentShowsOfChannels() {
+        stubChannel("prosieben.de", CompletableFuture.completedFuture(snapshotOf("Show1", "Show1", "Show2")));
+        stubChannel("sat1.de", CompletableFuture.completedFuture(snapshotOf("Show2", "Show2", "Show3")));
+        stubChannel("sixx.de", CompletableFuture.completedFuture(snapshotOf("Show2")));
+
+        ChannelFrequencyResponse response = epgService.getMostFrequentShowsOfChannels("2024-03-15", null).getResult();
+
+        assertThat(response.getCombined()).containsExactly(new FrequencyResponse("Show2", 4));
+        assertThat(response.getChannels()).containsOnlyKeys("prosieben.de", "sat1.de", "sixx.de");
+        assertThat(response.getChannels().get("prosieben.de")).containsExactly(new FrequencyResponse("Show1", 2));
+        assertThat(response.getFailedChannels()).isEmpty();
+    }
+
+    @Test
+    void testGetOrderedShowsByFrequencyOfSelectedChannels() {
+        stubChannel("prosieben.de", CompletableFuture.completedFuture(snapshotOf("Show1", "Show1", "Show2")));
+        stubChannel("sixx.de", CompletableFuture.completedFuture(snapshotOf("Show2", "Show2", "Show3")));
+
+        ChannelFrequencyResponse response = epgService.getOrderedShowsByFrequencyOfChannels("2024-03-15",
+                List.of("sixx.de", "prosieben.de", "sixx.de"), 0, 2).getResult();
+
+        assertThat(response.getCombined()).containsExactly(new FrequencyResponse("Show2", 3), new FrequencyResponse("Show1", 2));
+        assertThat(response.getChannels()).containsOnlyKeys("sixx.de", "prosieben.de");
+        verify(epgItemsParser, never()).getSnapshotAsync(any(), eq("sat1.de"));
+        verify(epgItemsParser, times(1)).getSnapshotAsync(any(), eq("sixx.de"));
+    }
+
+    @Test
+    void testChannelsThatFailOrTimeOutAreReported() {
+        stubChannel("prosieben.de", CompletableFuture.completedFuture(snapshotOf("Show1", "Show1", "Show2")));
+        stubChannel("sat1.de", CompletableFuture.failedFuture(new ResourceAccessException("EPG API unavailable")));
+        stubChannel("sixx.de", new CompletableFuture<>());
+
+        ChannelFrequencyResponse response = epgService.getOrderedShowsByFrequencyByTypeOfChannels("2024-03-15", null,
+                ShowType.SERIES, 0, Integer.MAX_VALUE).getResult();
+
+        assertThat(response.getCombined()).containsExactly(new FrequencyResponse("Show1", 2), new FrequencyResponse("Show2", 1));
+        assertThat(response.getChannels()).containsOnlyKeys("prosieben.de");
+        assertThat(response.getFailedChannels()).containsEntry("sat1.de", "EPG API unavailable")
+                .containsEntry("sixx.de", "No answer within 200 ms");
+    }
+
+    @Test
+    void testFailsIfNoChannelAnswers() {
+        stubChannel("prosieben.de", CompletableFuture.failedFuture(new ResourceAccessException("EPG API unavailable")));
+
+        assertThatThrownBy(() -> epgService.getMostFrequentShowsOfChannels("2024-03-15", List.of("prosieben.de")).getResult())
+                .isInstanceOf(ResourceAccessException.class);
+    }
+
+    @Test
+    void testUnknownChannelsAreRejected() {
+        assertThatThrownBy(() -> epgService.getMostFrequentShowsOfChannels("2024-03-15", List.of("prosieben.de", "example.org")).getResult())
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(epgItemsParser, never()).getSnapshotAsync(any(), any());
+    }
+
+    @Test
+    void testVersionsFollowTheSnapshots() {
+        SnapshotVersion version = epgService.getMostFrequentShows("2024-03-15").getVersion();
+
+        assertThat(version.getTag()).isEqualTo(epgService.getSeriesByStatus("2024-03-16").getVersion().getTag());
+        assertThat(version.getMaxAge()).isEqualTo(properties.getCache().getPastDayTtl());
+        assertThat(epgService.getMostFrequentShows(null).getVersion().getMaxAge()).isZero();
+        assertThat(epgService.getMostFrequentShows("2024-03-14", "2024-03-15").getVersion().getTag())
+                .isNotEqualTo(version.getTag())
+                .isEqualTo(epgService.searchShows("2024-03-15", "2024-03-16", "show", 0, 10).getVersion().getTag());
+    }
+
+    @Test
+    void testVersionAndResultComeFromTheSameSnapshot() {
+        // The day is refreshed between the lookups, the version must still describe the result
+        EpgSnapshot before = snapshotOf("Show1", "Show1", "Show2");
+        EpgSnapshot after = snapshotOf("Show2", "Show2", "Show2");
+        when(epgItemsParser.getSnapshot("2024-03-15")).thenReturn(before, after);
+
+        Versioned<List<FrequencyResponse>> answer = epgService.getMostFrequentShows("2024-03-15");
+
+        assertThat(answer.getResult()).containsExactly(new FrequencyResponse("Show1", 2));
+        assertThat(answer.getVersion().getTag())
+                .isEqualTo(EPGService.versionOf(List.of(before), Duration.ZERO).getTag())
+                .isNotEqualTo(EPGService.versionOf(List.of(after), Duration.ZERO).getTag());
+        verify(epgItemsParser, times(1)).getSnapshot("2024-03-15");
+    }
+
+    @Test
+    void testRangeVersionAndResultComeFromTheSameSnapshots() {
+        EpgSnapshot before = snapshotOf("Show1");
+        EpgSnapshot after = snapshotOf("Show2");
+        when(epgItemsParser.getSnapshotAsync("2024-03-15")).thenReturn(CompletableFuture.completedFuture(before),
+                CompletableFuture.completedFuture(after));
+
+        Versioned<List<FrequencyResponse>> answer = epgService.getOrderedShowsByFrequency("2024-03-15", "2024-03-15", 0, 10);
+
+        assertThat(answer.getResult()).containsExactly(new FrequencyResponse("Show1", 1));
+        assertThat(answer.getVersion().getTag()).isEqualTo(EPGService.versionOf(List.of(before), Duration.ZERO).getTag());
+        verify(epgItemsParser, times(1)).getSnapshotAsync("2024-03-15");
+    }
+
+    @Test
+    void testVersionOfChannelsMarksFailedChannels() {
+        stubChannel("prosieben.de", CompletableFuture.completedFuture(snapshotOf("Show1", "Show1", "Show2")));
+        stubChannel("sat1.de", CompletableFuture.completedFuture(snapshotOf("Show2")));
+        SnapshotVersion complete = epgService.getMostFrequentShowsOfChannels("2024-03-15", List.of("prosieben.de", "sat1.de")).getVersion();
+
+        stubChannel("sat1.de", CompletableFuture.failedFuture(new ResourceAccessException("EPG API unavailable")));
+        SnapshotVersion partial = epgService.getMostFrequentShowsOfChannels("2024-03-15", List.of("prosieben.de", "sat1.de")).getVersion();
+
+        assertThat(partial.getTag()).isNotEqualTo(complete.getTag());
+        assertThat(complete.getMaxAge()).isPositive();
+        assertThat(partial.getMaxAge()).isZero();
+    }
+
+    @Test
+    void testBatchFetchesEachDateOnce() {
+        List<BatchResult> results = epgService.getBatch(List.of(
+                new BatchQuery("q1", BatchQuery.Operation.MOST_FREQUENT, "2024-03-15", null, null, null),
+                new BatchQuery("q2", BatchQuery.Operation.ORDERED, "2024-03-15", ShowType.TVSHOW, 0, 1),
+                new BatchQuery("q3", BatchQuery.Operation.SERIES_BY_STATUS, "2024-03-16", null, null, null),
+                new BatchQuery("q4", BatchQuery.Operation.ORDERED, "2024-03-16", null, 1, 2)));
+
+        assertThat(results).extracting(BatchResult::getId).containsExactly("q1", "q2", "q3", "q4");
+        assertThat(results).allMatch(result -> result.getError() == null);
+        assertThat(results.get(0).getResult()).isEqualTo(epgService.getMostFrequentShows("2024-03-15").getResult());
+        assertThat(results.get(1).getResult()).isEqualTo(List.of(new FrequencyResponse("Show2", 2)));
+        assertThat(results.get(2).getResult()).isEqualTo(epgService.getSeriesByStatus("2024-03-16").getResult());
+        assertThat(results.get(3).getResult()).isEqualTo(epgService.getOrderedShowsByFrequency("2024-03-16", 1, 2).getResult());
+        verify(epgItemsParser, times(1)).getSnapshotAsync("2024-03-15");
+        verify(epgItemsParser, times(1)).getSnapshotAsync("2024-03-16");
+        assertThat(meterRegistry.get("epg.query.results").tags("endpoint", "batch").summary().totalAmount()).isEqualTo(4);
+    }
+
+    @Test
+    void testBatchReportsErrorsPerQuery() {
+        lenient().when(epgItemsParser.getSnapshotAsync("2024-03-17"))
+                .thenReturn(CompletableFuture.failedFuture(new ResourceAccessException("EPG API unavailable")));
+
+        List<BatchResult> results = epgService.getBatch(List.of(
+                new BatchQuery("bad date", BatchQuery.Operation.MOST_FREQUENT, "15.03.2024", null, null, null),
+                new BatchQuery("no operation", null, "2024-03-15", null, null, null),
+                new BatchQuery("bad page", BatchQuery.Operation.ORDERED, "2024-03-15", null, -1, 10),
+                new BatchQuery("upstream down", BatchQuery.Operation.ORDERED, "2024-03-17", null, null, null),
+                new BatchQuery("ok", BatchQuery.Operation.MOST_FREQUENT, "2024-03-15", null, null, null)));
+
+        assertThat(results.subList(0, 4)).allMatch(result -> result.getError() != null && result.getResult() == null);
+        assertThat(results.get(0).getError()).isEqualTo("Dates must have the format yyyy-MM-dd");
+        assertThat(results.get(3).getError()).isEqualTo("EPG API unavailable");
+        assertThat(results.get(4).getError()).isNull();
+        assertThat(results.get(4).getResult()).isNotEmpty();
+    }
+
+    @Test
+    void testBatchSizeIsLimited() {
+        assertThatThrownBy(() -> epgService.getBatch(List.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+        List<BatchQuery> tooMany = Collections.nCopies(EPGService.MAX_BATCH_QUERIES + 1,
+                new BatchQuery(null, BatchQuery.Operation.MOST_FREQUENT, "2024-03-15", null, null, null));
+        assertThatThrownBy(() -> epgService.getBatch(tooMany))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(epgItemsParser, never()).getSnapshotAsync(any());
+    }
+
+    private void stubChannel(String channel, CompletableFuture<EpgSnapshot> snapshot) {
+        lenient().when(epgItemsParser.getSnapshotAsync(any(), eq(channel))).thenReturn(snapshot);
+    }
+
+    private static EpgSnapshot snapshotOf(String... showTitles) {
+        List<Item> items = Arrays.stream(showTitles)
+                .map(showTitle -> new Item(new TvShow(showTitle, showTitle), "Ep"))
+                .toList();
+        return EpgSnapshot.of("2024-03-15", items, Instant.now());
+    }
+
+    @Test
+    void testGetShowsInTimeWindow() {
+        mockEvening();
+
+        assertThat(epgService.getShowsInTimeWindow(EVENING, "20:15", "23:00", null).getResult()).containsExactly(
+                new AirtimeResponse("Show1", 2, 110),
+                new AirtimeResponse("Show2", 1, 55));
+        assertThat(epgService.getPrimeTimeShows(EVENING, ShowType.MOVIE).getResult()).containsExactly(new AirtimeResponse("Show2", 1, 55));
+    }
+
+    @Test
+    void testTimeWindowRunsPastMidnight() {
+        mockEvening();
+
+        assertThat(epgService.getShowsInTimeWindow(EVENING, "23:00", "02:00", null).getResult())
+                .containsExactly(new AirtimeResponse("Night", 1, 30));
+        // Times before the first airing of the day belong to the following night
+        assertThat(epgService.getShowsInTimeWindow(EVENING, "00:00", "02:00", null).getResult())
+                .containsExactly(new AirtimeResponse("Night", 1, 30));
+    }
+
+    @Test
+    void testGetAiringAt() {
+        mockEvening();
+
+        assertThat(epgService.getAiringAt(EVENING, "22:30").getResult()).extracting(Item::getId).containsExactly("4");
+        assertThat(epgService.getAiringAt(EVENING, "00:45").getResult()).extracting(Item::getId).containsExactly("5");
+        assertThat(epgService.getAiringAt(EVENING, "01:00").getResult()).isEmpty();
+    }
+
+    @Test
+    void testTimeWindowValidation() {
+        assertThatThrownBy(() -> epgService.getShowsInTimeWindow(EVENING, "8pm", "23:00", null).getResult())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Times must have the format HH:mm");
+        assertThatThrownBy(() -> epgService.getAiringAt("15.03.2024", "20:15").getResult())
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(epgItemsParser, never()).getSnapshot(any());
+    }
+
+    @Test
+    void testQueriesFailWithoutTheFieldsTheyRead() {
+        properties.getClient().setQuery(EPGQuery.FREQUENCIES);
+        EPGService frequenciesOnly = new EPGService(epgItemsParser, metrics, properties);
+
+        assertThatThrownBy(() -> frequenciesOnly.getShowsInTimeWindow(EVENING, "20:15", "23:00", null))
+                .isInstanceOf(EPGProjectionException.class)
+                .hasMessage("The time-window queries need the item fields [startTime, endTime], which epg.client.query=frequencies does not request");
+        assertThatThrownBy(() -> frequenciesOnly.getPrimeTimeShows(EVENING, null)).isInstanceOf(EPGProjectionException.class);
+        assertThatThrownBy(() -> frequenciesOnly.getAiringAt(EVENING, "22:30")).isInstanceOf(EPGProjectionException.class);
+        assertThatThrownBy(() -> frequenciesOnly.searchShows(EVENING, "simpsons", 0, 10))
+                .isInstanceOf(EPGProjectionException.class)
+                .hasMessageContaining("[description]");
+        verify(epgItemsParser, never()).getSnapshot(any());
+
+        // The frequency queries only read the fields the projection requests
+        assertThat(frequenciesOnly.getMostFrequentShows(EVENING).getResult()).containsExactly(new FrequencyResponse("Show1", 3));
+    }
+
+    @Test
+    void testSearchShows() {
+        DaySchedule schedule = DaySchedule.builder()
+                .add("1", "Der Ernstfall", "Die Simpsons", "simpsons", 100, 200, "Die Simpsons: Der Ernstfall.")
+                .add("2", "Mein erster Tag", "Scrubs - Die Anfänger", "scrubs", 200, 300, null)
+                .add("3", null, "Der Marsianer", null, 300, 400, "Spielfilm mit Matt Damon")
+                .add("4", "Lisas Pony", "Die Simpsons", "simpsons", 400, 500, null)
+                .build();
+        EpgSnapshot snapshot = EpgSnapshot.of("2024-03-15", schedule, Instant.now());
+        lenient().when(epgItemsParser.getSnapshot("2024-03-15")).thenReturn(snapshot);
+        lenient().when(epgItemsParser.getSnapshotAsync(any())).thenReturn(CompletableFuture.completedFuture(snapshot));
+
+        assertThat(epgService.searchShows("2024-03-15", "simpson", 0, Integer.MAX_VALUE).getResult())
+                .containsExactly(new FrequencyResponse("Die Simpsons", 2));
+        assertThat(epgService.searchShows("2024-03-15", "die", 0, Integer.MAX_VALUE).getResult())
+                .containsExactly(new FrequencyResponse("Die Simpsons", 2), new FrequencyResponse("Scrubs - Die Anfänger", 1));
+        assertThat(epgService.searchShows("2024-03-01", "2024-03-31", "anfaenger", 0, Integer.MAX_VALUE).getResult())
+                .containsExactly(new FrequencyResponse("Scrubs - Die Anfänger", 31));
+        assertThat(epgService.searchShows("2024-03-15", "Damon", 0, Integer.MAX_VALUE).getResult())
+                .containsExactly(new FrequencyResponse("Der Marsianer", 1));
+        assertThatThrownBy(() -> epgService.searchShows("2024-03-15", " ", 0, 10).getResult())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("The search query must contain a word");
+    }
+
+    @Test
+    void testGetTrendingShowsComparesTheLastDaysWithTheDaysBefore() {
+        // Show2 airs once a day in the week up to 2024-03-08, Show5 every day from 2024-03-09
+        EpgSnapshot before = EpgSnapshot.of("", List.of(new Item(new TvShow("Show2", "id2"))), Instant.now());
+        EpgSnapshot after = EpgSnapshot.of("", List.of(new Item(new TvShow("Show5", "id5")), new Item(new TvShow("Show5", "id5"))), Instant.now());
+        lenient().when(epgItemsParser.getSnapshotAsync(any())).thenAnswer(invocation -> CompletableFuture.completedFuture(
+                invocation.<String>getArgument(0).compareTo("2024-03-09") < 0 ? before : after));
+
+        assertThat(epgService.getTrendingShows("2024-03-15", 7, null, TrendWindows.Measure.DELTA, false, 0, Integer.MAX_VALUE).getResult())
+                .containsExactly(TrendResponse.of("Show5", 14, 0), TrendResponse.of("Show2", 0, 7));
+        assertThat(epgService.getTrendingShows("2024-03-15", 7, ShowType.TVSHOW, TrendWindows.Measure.GROWTH, true, 0, 1).getResult())
+                .containsExactly(TrendResponse.of("Show2", 0, 7));
+        verify(epgItemsParser, times(2)).getSnapshotAsync("2024-03-02");
+        verify(epgItemsParser, never()).getSnapshotAsync("2024-03-01");
+    }
+
+    @Test
+    void testTrendWindowsOfPastEndDatesAreKept() {
+        LocalDate today = LocalDate.now(properties.getChannels().getZone());
+        LocalDate past = LocalDate.parse("2024-03-15");
+
+        TrendWindows todaysWindows = epgService.trendWindowsOf(today);
+        assertThat(todaysWindows).isSameAs(epgService.trendWindowsOf(today));
+        TrendWindows pastWindows = epgService.trendWindowsOf(past);
+        assertThat(pastWindows).isSameAs(epgService.trendWindowsOf(past)).isNotSameAs(epgService.trendWindowsOf(today));
+
+        // The least recently ranked end date is dropped
+        for (int i = 1; i <= EPGService.MAX_PAST_TREND_WINDOWS; i++) {
+            epgService.trendWindowsOf(past.minusDays(i));
+        }
+        assertThat(epgService.trendWindowsOf(past)).isNotSameAs(pastWindows);
+        // The windows ending today are not among them
+        assertThat(epgService.trendWindowsOf(today)).isSameAs(todaysWindows);
+    }
+
+    @Test
+    void testTrendsEndTodayInTheConfiguredZone() {
+        // Ahead of every other zone, so its date differs from the system date for part of the day
+        properties.getChannels().setZone(ZoneId.of("Pacific/Kiritimati"));
+        EPGService kiritimati = new EPGService(epgItemsParser, metrics, properties);
+        LocalDate today = LocalDate.now(ZoneId.of("Pacific/Kiritimati"));
+
+        assertThat(kiritimati.trendDates(null, 7)).hasSize(14).last().isEqualTo(today);
+        TrendWindows todaysWindows = kiritimati.trendWindowsOf(today);
+        for (int i = 1; i <= EPGService.MAX_PAST_TREND_WINDOWS; i++) {
+            kiritimati.trendWindowsOf(today.minusDays(i));
+        }
+        assertThat(kiritimati.trendWindowsOf(today)).isSameAs(todaysWindows);
+    }
+
+    @Test
+    void testGetTrendingShowsValidatesTheWindow() {
+        assertThatThrownBy(() -> epgService.getTrendingShows("2024-03-15", 14, null, TrendWindows.Measure.DELTA, false, 0, 10).getResult())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("The trend window must be one of [7, 28] days");
+        assertThatThrownBy(() -> epgService.getTrendingShows("15.03.2024", 7, null, TrendWindows.Measure.DELTA, false, 0, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(epgItemsParser, never()).getSnapshotAsync(any());
+    }
+
+    private static final String EVENING = "2024-03-15";
+
+    /**
+     * An evening of {@link #EVENING} in Berlin, from 19:30 to 01:00 of the following night.
+     */
+    private void mockEvening() {
+        DaySchedule schedule = DaySchedule.builder()
+                .add("1", null, "News", "news", berlin(EVENING, "19:30"), berlin(EVENING, "20:15"))
+                .add("2", "Ep1", "Show1", "id1", berlin(EVENING, "20:15"), berlin(EVENING, "21:10"))
+                .add("3", "Ep2", "Show1", "id1", berlin(EVENING, "21:10"), berlin(EVENING, "22:05"))
+                .add("4", null, "Show2", null, berlin(EVENING, "22:05"), berlin(EVENING, "23:30"))
+                .add("5", null, "Night", "night", berlin("2024-03-16", "00:30"), berlin("2024-03-16", "01:00"))
+                .build();
+        lenient().when(epgItemsParser.getSnapshot(EVENING)).thenReturn(EpgSnapshot.of(EVENING, schedule, Instant.now()));
+    }
+
+    private static int berlin(String date, String time) {
+        return (int) LocalDate.parse(date).atTime(LocalTime.parse(time)).atZone(ZoneId.of("Europe/Berlin")).toEpochSecond();
+    }
+
+    private static EPGProperties channelProperties() {
+        EPGProperties properties = new EPGProperties();
+        properties.getChannels().setNames(List.of("prosieben.de", "sat1.de", "sixx.de"));
+        properties.getChannels().setTimeout(Duration.ofMillis(200));
+        return properties;
+    }
 }
@@ -0,0 +1,200 @@
+package pro.sieben.sat.tv.program.plan.frequency.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.ResourceAccessException;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
+import pro.sieben.sat.tv.program.plan.frequency.model.*;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGItemsParser;
+import pro.sieben.sat.tv.program.plan.frequency.utils.EPGMetrics;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveEPGServiceTest {
+
+    @Mock
+    private EPGItemsParser epgItemsParser;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private EPGService epgService;
+
+    private ReactiveEPGService reactiveEPGService;
+
+    @BeforeEach
+    void setUp() {
+        EPGProperties properties = new EPGProperties();
+        properties.getChannels().setNames(List.of("prosieben.de", "sat1.de", "sixx.de"));
+        properties.getChannels().setTimeout(Duration.ofMillis(200));
+        EPGMetrics metrics = new EPGMetrics(meterRegistry);
+        epgService = new EPGService(epgItemsParser, metrics, properties);
+        epgService.setUp();
+        reactiveEPGService = new ReactiveEPGService(epgService, epgItemsParser, metrics);
+
+        EpgSnapshot snapshot = EpgSnapshot.of("", Arrays.asList(
+                new Item(new TvShow("Show1", "id1"), "Ep1"),
+                new Item(new TvShow("Show2", "id2")),
+                new Item(new TvShow("Show1", "id1"), "Ep1"),
+                new Item(new TvShow("Galileo", "id3"), "Ep1")
+        ), Instant.now());
+        lenient().when(epgItemsParser.getSnapshot(any())).thenReturn(snapshot);
+        lenient().when(epgItemsParser.getSnapshotAsync(any())).thenReturn(CompletableFuture.completedFuture(snapshot));
+        lenient().when(epgItemsParser.getSnapshotReactive(any())).thenReturn(Mono.just(snapshot));
+    }
+
+    @Test
+    void testQueriesAnswerLikeTheBlockingService() {
+        assertThat(reactiveEPGService.getMostFrequentShows("2024-03-15").block().getResult())
+                .isEqualTo(epgService.getMostFrequentShows("2024-03-15").getResult());
+        assertThat(reactiveEPGService.getOrderedShowsByFrequency("2024-03-15", 1, 2).block().getResult())
+                .isEqualTo(epgService.getOrderedShowsByFrequency("2024-03-15", 1, 2).getResult());
+        assertThat(reactiveEPGService.getOrderedShowsByFrequencyByType("2024-03-15", ShowType.SERIES, 0, 10).block().getResult())
+                .isEqualTo(epgService.getOrderedShowsByFrequencyByType("2024-03-15", ShowType.SERIES, 0, 10).getResult());
+        assertThat(reactiveEPGService.getOrderedShowsByFrequency("2024-03-14", "2024-03-16", 0, 10).block().getResult())
+                .isEqualTo(epgService.getOrderedShowsByFrequency("2024-03-14", "2024-03-16", 0, 10).getResult());
+        assertThat(reactiveEPGService.getSeriesByStatus("2024-03-15").block().getResult())
+                .isEqualTo(epgService.getSeriesByStatus("2024-03-15").getResult());
+        assertThat(reactiveEPGService.getMostFrequentShows("2024-03-14", "2024-03-16").block().getVersion().getTag())
+                .isEqualTo(epgService.getMostFrequentShows("2024-03-14", "2024-03-16").getVersion().getTag());
+        assertThat(meterRegistry.get("epg.queries").tags("endpoint", "orderedShowsInRange").timers()).isNotEmpty();
+    }
+
+    @Test
+    void testTimeWindowQueriesAnswerLikeTheBlockingService() {
+        // 2024-03-15 20:15 and 21:10 in Berlin
+        EpgSnapshot evening = EpgSnapshot.of("2024-03-15", DaySchedule.builder()
+                .add("1", "Ep1", "Show1", "id1", 1710530100, 1710533400)
+                .add("2", null, "Show2", null, 1710533400, 1710540000)
+                .build(), Instant.now());
+        lenient().when(epgItemsParser.getSnapshot("2024-03-15")).thenReturn(evening);
+        lenient().when(epgItemsParser.getSnapshotReactive("2024-03-15")).thenReturn(Mono.just(evening));
+
+        assertThat(reactiveEPGService.getShowsInTimeWindow("2024-03-15", "20:00", "21:00", null).block().getResult())
+                .isEqualTo(epgService.getShowsInTimeWindow("2024-03-15", "20:00", "21:00", null).getResult())
+                .hasSize(1);
+        assertThat(reactiveEPGService.getPrimeTimeShows("2024-03-15", null).block().getResult())
+                .isEqualTo(epgService.getPrimeTimeShows("2024-03-15", null).getResult())
+                .hasSize(2);
+        assertThat(reactiveEPGService.getAiringAt("2024-03-15", "21:30").block().getResult())
+                .isEqualTo(epgService.getAiringAt("2024-03-15", "21:30").getResult());
+
+        Mono<Versioned<List<Item>>> invalid = reactiveEPGService.getAiringAt("2024-03-15", "25:00");
+        assertThatThrownBy(invalid::block).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testSearchAnswersLikeTheBlockingService() {
+        assertThat(reactiveEPGService.searchShows("2024-03-15", "show", 0, 10).block().getResult())
+                .isEqualTo(epgService.searchShows("2024-03-15", "show", 0, 10).getResult())
+                .hasSize(2);
+        assertThat(reactiveEPGService.searchShows("2024-03-14", "2024-03-16", "ep1", 0, 10).block().getResult())
+                .isEqualTo(epgService.searchShows("2024-03-14", "2024-03-16", "ep1", 0, 10).getResult())
+                .containsExactly(new FrequencyResponse("Show1", 6), new FrequencyResponse("Galileo", 3));
+
+        Mono<Versioned<List<FrequencyResponse>>> invalid = reactiveEPGService.searchShows("2024-03-14", "2024-03-16", "", 0, 10);
+        assertThatThrownBy(invalid::block).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testTrendsAnswerLikeTheBlockingService() {
+        assertThat(reactiveEPGService.getTrendingShows(null, 28, null, TrendWindows.Measure.GROWTH, false, 0, 10).block().getResult())
+                .isEqualTo(epgService.getTrendingShows(null, 28, null, TrendWindows.Measure.GROWTH, false, 0, 10).getResult())
+                .contains(TrendResponse.of("Show1", 56, 56));
+        assertThat(reactiveEPGService.getTrendingShows("2024-03-15", 7, null, TrendWindows.Measure.DELTA, false, 0, 10).block().getVersion().getTag())
+                .isEqualTo(epgService.getTrendingShows("2024-03-15", 7, null, TrendWindows.Measure.DELTA, false, 0, 10).getVersion().getTag());
+
+        Mono<Versioned<List<TrendResponse>>> invalid = reactiveEPGService.getTrendingShows("2024-03-15", 3, null, TrendWindows.Measure.DELTA, false, 0, 10);
+        assertThatThrownBy(invalid::block).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testVersionAndResultComeFromTheSameSnapshot() {
+        // The day is refreshed between the lookups, the version must still describe the result
+        EpgSnapshot before = snapshotOf("Show1", "Show1", "Show2");
+        EpgSnapshot after = snapshotOf("Show2", "Show2", "Show2");
+        when(epgItemsParser.getSnapshotReactive("2024-03-15")).thenReturn(Mono.just(before), Mono.just(after));
+
+        Versioned<List<FrequencyResponse>> answer = reactiveEPGService.getOrderedShowsByFrequency("2024-03-15", 0, 1).block();
+
+        assertThat(answer.getResult()).containsExactly(new FrequencyResponse("Show1", 2));
+        assertThat(answer.getVersion().getTag())
+                .isEqualTo(EPGService.versionOf(List.of(before), Duration.ZERO).getTag())
+                .isNotEqualTo(EPGService.versionOf(List.of(after), Duration.ZERO).getTag());
+        verify(epgItemsParser, times(1)).getSnapshotReactive("2024-03-15");
+    }
+
+    @Test
+    void testInvalidRangeFailsOnSubscription() {
+        Mono<Versioned<List<FrequencyResponse>>> query = reactiveEPGService.getMostFrequentShows("2024-03-16", "2024-03-14");
+
+        assertThatThrownBy(query::block).isInstanceOf(IllegalArgumentException.class);
+        verify(epgItemsParser, never()).getSnapshotReactive(any());
+    }
+
+    @Test
+    void testChannelsThatFailOrTimeOutAreReported() {
+        stubChannel("prosieben.de", Mono.just(snapshotOf("Show1", "Show1", "Show2")));
+        stubChannel("sat1.de", Mono.error(new ResourceAccessException("EPG API unavailable")));
+        stubChannel("sixx.de", Mono.never());
+
+        Versioned<ChannelFrequencyResponse> answer = reactiveEPGService.getMostFrequentShowsOfChannels("2024-03-15", null).block();
+        ChannelFrequencyResponse response = answer.getResult();
+        SnapshotVersion version = answer.getVersion();
+
+        assertThat(response.getCombined()).containsExactly(new FrequencyResponse("Show1", 2));
+        assertThat(response.getChannels()).containsOnlyKeys("prosieben.de");
+        assertThat(response.getFailedChannels()).containsExactly(
+                Map.entry("sat1.de", "EPG API unavailable"),
+                Map.entry("sixx.de", "No answer within 200 ms"));
+        assertThat(version.getMaxAge()).isZero();
+    }
+
+    @Test
+    void testFailsIfNoChannelAnswers() {
+        stubChannel("prosieben.de", Mono.error(new ResourceAccessException("EPG API unavailable")));
+
+        assertThatThrownBy(() -> reactiveEPGService.getMostFrequentShowsOfChannels("2024-03-15", List.of("prosieben.de")).block().getResult())
+                .isInstanceOf(ResourceAccessException.class);
+    }
+
+    @Test
+    void testBatchAnswersLikeTheBlockingService() {
+        List<BatchQuery> queries = List.of(
+                new BatchQuery("q1", BatchQuery.Operation.ORDERED, "2024-03-15", ShowType.SERIES, 0, 10),
+                new BatchQuery("q2", BatchQuery.Operation.SERIES_BY_STATUS, "2024-03-15", null, null, null),
+                new BatchQuery("q3", BatchQuery.Operation.MOST_FREQUENT, "2024-13-01", null, null, null));
+
+        assertThat(reactiveEPGService.getBatch(queries).block()).isEqualTo(epgService.getBatch(queries));
+        verify(epgItemsParser).getSnapshotReactive("2024-03-15");
+    }
+
+    private void stubChannel(String channel, Mono<EpgSnapshot> snapshot) {
+        lenient().when(epgItemsParser.getSnapshotReactive(any(), eq(channel))).thenReturn(snapshot);
+    }
+
+    private static EpgSnapshot snapshotOf(String... showTitles) {
+        List<Item> items = Arrays.stream(showTitles)
+                .map(showTitle -> new Item(new TvShow(showTitle, showTitle), "Ep"))
+                .toList();
+        return EpgSnapshot.of("2024-03-15", items, Instant.now());
+    }
+}
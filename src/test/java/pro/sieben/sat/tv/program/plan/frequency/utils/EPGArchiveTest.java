@@ -0,0 +1,117 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pro.sieben.sat.tv.program.plan.frequency.model.DaySchedule;
+import pro.sieben.sat.tv.program.plan.frequency.model.Item;
+import pro.sieben.sat.tv.program.plan.frequency.model.TvShow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EPGArchiveTest {
+
+    private static final String PAST_DATE = "2024-03-15";
+
+    @TempDir
+    Path directory;
+
+    private EPGArchive archive;
+
+    private List<Item> items;
+
+    @BeforeEach
+    void setUp() {
+        archive = new EPGArchive(directory);
+        items = Arrays.asList(
+                Item.builder().id("1").title("Ep1").tvShow(new TvShow("Show1", "id1"))
+                        .startTime(new Date(1710478800000L)).endTime(new Date(1710480300000L)).build(),
+                Item.builder().id("2").tvShow(new TvShow("Show2", "id2")).build(),
+                Item.builder().id("3").tvShow(new TvShow("Scrubs - Die Anfänger", null)).build(),
+                Item.builder().id("4").title("Ep2").tvShow(new TvShow("Show1", "id1")).build()
+        );
+    }
+
+    @Test
+    void testWriteAndReadRoundTrip() {
+        archive.write(PAST_DATE, DaySchedule.of(items));
+
+        assertThat(archive.read(PAST_DATE)).hasValueSatisfying(schedule -> assertThat(schedule.toItems()).isEqualTo(items));
+    }
+
+    @Test
+    void testEmptyScheduleIsNotArchived() {
+        archive.write(PAST_DATE, DaySchedule.of(List.of()));
+
+        assertThat(archive.read(PAST_DATE)).isEmpty();
+        assertThat(directory).isEmptyDirectory();
+    }
+
+    @Test
+    void testCurrentDayIsNotArchived() {
+        String today = LocalDate.now().toString();
+        archive.write(today, DaySchedule.of(items));
+
+        assertThat(archive.read(today)).isEmpty();
+        assertThat(directory).isEmptyDirectory();
+    }
+
+    @Test
+    void testCorruptedSegmentIsDiscarded() throws IOException {
+        archive.write(PAST_DATE, DaySchedule.of(items));
+        Path segment = directory.resolve(PAST_DATE + ".seg");
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 3] ^= 0x5A;
+        Files.write(segment, bytes);
+
+        assertThat(archive.read(PAST_DATE)).isEmpty();
+        assertThat(segment).doesNotExist();
+    }
+
+    @Test
+    void testOutdatedVersionIsDiscarded() throws IOException {
+        archive.write(PAST_DATE, DaySchedule.of(items));
+        Path segment = directory.resolve(PAST_DATE + ".seg");
+        byte[] bytes = Files.readAllBytes(segment);
+        ByteBuffer.wrap(bytes).putInt(Integer.BYTES, EPGArchive.FORMAT_VERSION + 1);
+        Files.write(segment, bytes);
+
+        assertThat(archive.read(PAST_DATE)).isEmpty();
+        assertThat(segment).doesNotExist();
+    }
+
+    @Test
+    void testSegmentOfANarrowerQueryIsDiscarded() {
+        new EPGArchive(directory, EPGQuery.FREQUENCIES).write(PAST_DATE, DaySchedule.of(items));
+        Path segment = directory.resolve(PAST_DATE + ".seg");
+
+        assertThat(new EPGArchive(directory, EPGQuery.FREQUENCIES).read(PAST_DATE)).isPresent();
+        assertThat(archive.read(PAST_DATE)).isEmpty();
+        assertThat(segment).doesNotExist();
+    }
+
+    @Test
+    void testSegmentOfAWiderQueryIsRead() {
+        new EPGArchive(directory, EPGQuery.FULL).write(PAST_DATE, DaySchedule.of(items));
+
+        assertThat(archive.read(PAST_DATE)).hasValueSatisfying(schedule -> assertThat(schedule.toItems()).isEqualTo(items));
+        assertThat(new EPGArchive(directory, EPGQuery.FREQUENCIES).read(PAST_DATE)).isPresent();
+    }
+
+    @Test
+    void testDisabledArchive() {
+        EPGArchive disabled = EPGArchive.disabled();
+        disabled.write(PAST_DATE, DaySchedule.of(items));
+
+        assertThat(disabled.read(PAST_DATE)).isEmpty();
+    }
+}
@@ -0,0 +1,109 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EPGCircuitBreakerTest {
+
+    private MutableClock clock;
+    private EPGCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2024-03-15T12:00:00Z"));
+        breaker = new EPGCircuitBreaker(3, Duration.ofSeconds(30), clock);
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.acquire();
+            breaker.onFailure();
+        }
+    }
+
+    @Test
+    void testOpensAfterFailuresInARow() {
+        fail(2);
+        breaker.acquire();
+        breaker.onSuccess();
+        fail(2);
+        assertThat(breaker.getState()).isEqualTo(EPGCircuitBreaker.State.CLOSED);
+
+        fail(1);
+        assertThat(breaker.getState()).isEqualTo(EPGCircuitBreaker.State.OPEN);
+        clock.advance(Duration.ofSeconds(10));
+        assertThatThrownBy(() -> breaker.acquire())
+                .isInstanceOfSatisfying(EPGCircuitOpenException.class,
+                        e -> assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(20)));
+    }
+
+    @Test
+    void testLetsOneTrialThroughAfterTheOpenDuration() {
+        fail(3);
+        clock.advance(Duration.ofSeconds(30));
+
+        breaker.acquire();
+        assertThat(breaker.getState()).isEqualTo(EPGCircuitBreaker.State.HALF_OPEN);
+        assertThatThrownBy(() -> breaker.acquire()).isInstanceOf(EPGCircuitOpenException.class);
+
+        breaker.onSuccess();
+        assertThat(breaker.getState()).isEqualTo(EPGCircuitBreaker.State.CLOSED);
+        breaker.acquire();
+    }
+
+    @Test
+    void testFailedTrialOpensAgain() {
+        fail(3);
+        clock.advance(Duration.ofSeconds(30));
+
+        fail(1);
+
+        assertThat(breaker.getState()).isEqualTo(EPGCircuitBreaker.State.OPEN);
+        assertThatThrownBy(() -> breaker.acquire()).isInstanceOf(EPGCircuitOpenException.class);
+    }
+
+    @Test
+    void testDisabledWithoutThreshold() {
+        breaker = new EPGCircuitBreaker(0, Duration.ofSeconds(30), clock);
+
+        fail(10);
+
+        assertThat(breaker.getState()).isEqualTo(EPGCircuitBreaker.State.CLOSED);
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -3,17 +3,44 @@ package pro.sieben.sat.tv.program.plan.frequency.utils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
 import pro.sieben.sat.tv.program.plan.frequency.model.*;
 
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -29,9 +56,9 @@ class EPGItemParserTest {
     void setUp() {
         epgItemsParser = new EPGItemsParser();
         epgItemsParser.setRestTemplate(restTemplate);
-        when(restTemplate.getForEntity(any(), any(), any(), any(), any())).thenReturn(new ResponseEntity<>
+        lenient().when(restTemplate.getForEntity(any(), any(), any(), any(), any())).thenReturn(new ResponseEntity<>
                 (new ApiResponse(new Data(new Site(new Epg(List.of
-                        (new Item(new TvShow("Show1", "id1")))))), null),
+                        (new Item(new TvShow("Show1", "id1")))))), null, null),
                         HttpStatusCode.valueOf(200)));
     }
 
@@ -53,4 +80,199 @@ class EPGItemParserTest {
                 (null, HttpStatusCode.valueOf(200)));
         assertThat(epgItemsParser.parseItemsFromEPG("")).isEmpty();
     }
+
+    @Test
+    void testParseItemsFromConfiguredBaseUrl() {
+        EPGProperties properties = new EPGProperties();
+        properties.getClient().setBaseUrl("http://localhost:8089/graphql");
+        EPGItemsParser parser = new EPGItemsParser(restTemplate, new EPGSnapshotCache(1, Duration.ofMinutes(5), Duration.ofHours(1)), properties);
+
+        assertThat(parser.parseItemsFromEPG("2024-03-15")).hasSize(1);
+        verify(restTemplate).getForEntity(startsWith("http://localhost:8089/graphql?&variables="), eq(ApiResponse.class), any(), any(), any());
+    }
+
+    @Test
+    void testSnapshotReactiveWithWebClient() throws IOException {
+        assertReactiveSnapshotMatchesFixture(false);
+    }
+
+    @Test
+    void testSnapshotReactiveWithWebClientStreaming() throws IOException {
+        assertReactiveSnapshotMatchesFixture(true);
+    }
+
+    private void assertReactiveSnapshotMatchesFixture(boolean streaming) throws IOException {
+        String fixture = readFixture();
+        AtomicInteger calls = new AtomicInteger();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    calls.incrementAndGet();
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(fixture)
+                            .build());
+                })
+                .build();
+        EPGProperties properties = new EPGProperties();
+        properties.getClient().setStreaming(streaming);
+        EPGItemsParser parser = new EPGItemsParser(restTemplate, webClient,
+                new EPGSnapshotCache(1, Duration.ofMinutes(5), Duration.ofHours(1)), EPGArchive.disabled(), properties,
+                EPGMetrics.disabled());
+
+        EpgSnapshot snapshot = parser.getSnapshotReactive("2024-03-15").block(Duration.ofSeconds(5));
+        EpgSnapshot cached = parser.getSnapshotReactive("2024-03-15").block(Duration.ofSeconds(5));
+
+        assertThat(snapshot).isNotNull();
+        assertThat(snapshot.getSchedule().size()).isPositive();
+        assertThat(snapshot.getFrequencyIndex().getOrdered()).isNotEmpty();
+        assertThat(cached).isSameAs(snapshot);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void testPersistedQueryFallsBackToQueryText() throws IOException {
+        String fixture = readFixture();
+        String notFound = "{\"errors\":[{\"message\":\"PersistedQueryNotFound\","
+                + "\"extensions\":{\"code\":\"PERSISTED_QUERY_NOT_FOUND\"}}]}";
+        Set<String> registered = ConcurrentHashMap.newKeySet();
+        List<String> queries = new CopyOnWriteArrayList<>();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    String uri = request.url().getRawQuery();
+                    queries.add(uri);
+                    // The API registers the hash of a query sent with its text
+                    if (uri.contains("&query=")) {
+                        registered.add(EPGQuery.SCHEDULE.getSha256Hash());
+                    }
+                    boolean known = registered.contains(EPGQuery.SCHEDULE.getSha256Hash());
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(known ? fixture : notFound)
+                            .build());
+                })
+                .build();
+        EPGProperties properties = new EPGProperties();
+        properties.getClient().setStreaming(true);
+        EPGItemsParser parser = new EPGItemsParser(restTemplate, webClient,
+                new EPGSnapshotCache(4, Duration.ofMinutes(5), Duration.ofHours(1)), EPGArchive.disabled(), properties,
+                EPGMetrics.disabled());
+
+        EpgSnapshot first = parser.getSnapshotReactive("2024-03-15").block(Duration.ofSeconds(5));
+        EpgSnapshot second = parser.getSnapshotReactive("2024-03-16").block(Duration.ofSeconds(5));
+
+        assertThat(first.getSchedule().size()).isPositive();
+        assertThat(second.getSchedule().size()).isEqualTo(first.getSchedule().size());
+        assertThat(queries).hasSize(3);
+        assertThat(queries.get(0)).contains("sha256Hash").doesNotContain("&query=");
+        assertThat(queries.get(1)).contains("sha256Hash").contains("&query=");
+        assertThat(queries.get(2)).doesNotContain("&query=");
+    }
+
+    @Test
+    void testPersistedQueriesNotSupported() {
+        ApiError notSupported = new ApiError("PersistedQueryNotSupported", null);
+        when(restTemplate.getForEntity(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            String url = invocation.getArgument(0);
+            ApiResponse response = url.contains("&query=")
+                    ? new ApiResponse(new Data(new Site(new Epg(List.of(new Item(new TvShow("Show1", "id1")))))), null, null)
+                    : new ApiResponse(null, null, List.of(notSupported));
+            return new ResponseEntity<>(response, HttpStatusCode.valueOf(200));
+        });
+        EPGItemsParser parser = new EPGItemsParser(restTemplate, new EPGSnapshotCache(4, Duration.ofMinutes(5), Duration.ofHours(1)),
+                new EPGProperties());
+
+        assertThat(parser.parseItemsFromEPG("2024-03-15")).hasSize(1);
+        assertThat(parser.parseItemsFromEPG("2024-03-16")).hasSize(1);
+
+        // Only the first date tries the hash
+        verify(restTemplate, times(3)).getForEntity(any(), any(), any(), any(), any());
+        verify(restTemplate, times(2)).getForEntity(contains("&query="), eq(ApiResponse.class), any(), any(), any());
+    }
+
+    @Test
+    void testResponseWithoutDataFails() {
+        when(restTemplate.getForEntity(any(), any(), any(), any(), any())).thenReturn(new ResponseEntity<>(
+                new ApiResponse(null, null, List.of(new ApiError("Internal server error", null))), HttpStatusCode.valueOf(200)));
+        EPGItemsParser parser = new EPGItemsParser(restTemplate, new EPGSnapshotCache(4, Duration.ofMinutes(5), Duration.ofHours(1)),
+                new EPGProperties());
+
+        // The hash is tried first, then the full text fails as well
+        assertThatThrownBy(() -> parser.parseItemsFromEPG("2024-03-15"))
+                .isInstanceOf(EPGQueryException.class)
+                .hasMessageContaining("Internal server error");
+
+        when(restTemplate.getForEntity(any(), any(), any(), any(), any())).thenReturn(new ResponseEntity<>(
+                new ApiResponse(null, null, null), HttpStatusCode.valueOf(200)));
+        assertThatThrownBy(() -> parser.parseItemsFromEPG("2024-03-15"))
+                .isInstanceOf(ResourceAccessException.class)
+                .hasMessage("The EPG API answered without data");
+        // The failures were not cached
+        verify(restTemplate, times(1)).getForEntity(contains("&query="), eq(ApiResponse.class), any(), any(), any());
+        verify(restTemplate, times(3)).getForEntity(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testFailedPastDayIsNotArchived(@TempDir Path directory) {
+        when(restTemplate.getForEntity(any(), any(), any(), any(), any())).thenReturn(new ResponseEntity<>(
+                new ApiResponse(null, null, List.of(new ApiError("Internal server error", null))), HttpStatusCode.valueOf(200)));
+        EPGItemsParser parser = new EPGItemsParser(restTemplate, new EPGSnapshotCache(4, Duration.ofMinutes(5), Duration.ofHours(1)),
+                new EPGArchive(directory), new EPGProperties());
+
+        assertThatThrownBy(() -> parser.parseItemsFromEPG("2024-03-15")).isInstanceOf(EPGQueryException.class);
+        assertThat(directory).isEmptyDirectory();
+
+        // The day is fetched again and archived once the API answers with data
+        when(restTemplate.getForEntity(any(), any(), any(), any(), any())).thenReturn(new ResponseEntity<>(
+                new ApiResponse(new Data(new Site(new Epg(List.of(new Item(new TvShow("Show1", "id1")))))), null, null),
+                HttpStatusCode.valueOf(200)));
+        assertThat(parser.parseItemsFromEPG("2024-03-15")).hasSize(1);
+        assertThat(new EPGArchive(directory).read("2024-03-15")).isPresent();
+    }
+
+    @Test
+    void testReactiveFailedPastDayIsNotArchived(@TempDir Path directory) {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body("{\"data\":null,\"errors\":[{\"message\":\"Internal server error\"}]}")
+                        .build()))
+                .build();
+        EPGProperties properties = new EPGProperties();
+        properties.getClient().setStreaming(true);
+        EPGItemsParser parser = new EPGItemsParser(restTemplate, webClient,
+                new EPGSnapshotCache(4, Duration.ofMinutes(5), Duration.ofHours(1)), new EPGArchive(directory), properties,
+                EPGMetrics.disabled());
+
+        assertThatThrownBy(() -> parser.getSnapshotReactive("2024-03-15").block(Duration.ofSeconds(5)))
+                .isInstanceOf(EPGQueryException.class);
+        assertThat(directory).isEmptyDirectory();
+    }
+
+    @Test
+    void testReactiveResponseWithoutDataFails() {
+        for (boolean streaming : new boolean[]{false, true}) {
+            WebClient webClient = WebClient.builder()
+                    .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body("{\"data\":null,\"errors\":[{\"message\":\"Internal server error\"}]}")
+                            .build()))
+                    .build();
+            EPGProperties properties = new EPGProperties();
+            properties.getClient().setStreaming(streaming);
+            properties.getClient().setPersistedQueries(false);
+            EPGItemsParser parser = new EPGItemsParser(restTemplate, webClient,
+                    new EPGSnapshotCache(4, Duration.ofMinutes(5), Duration.ofHours(1)), EPGArchive.disabled(), properties,
+                    EPGMetrics.disabled());
+
+            assertThatThrownBy(() -> parser.getSnapshotReactive("2024-03-15").block(Duration.ofSeconds(5)))
+                    .isInstanceOf(EPGQueryException.class)
+                    .hasMessageContaining("Internal server error");
+        }
+    }
+
+    private static String readFixture() throws IOException {
+        try (InputStream in = EPGItemParserTest.class.getResourceAsStream("/fixtures/epg-prosieben-2024-03-15.json")) {
+            return new String(Objects.requireNonNull(in).readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
 }
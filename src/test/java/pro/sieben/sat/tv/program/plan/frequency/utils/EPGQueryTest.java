@@ -0,0 +1,48 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EPGQueryTest {
+
+    @Test
+    void testHashIdentifiesText() throws NoSuchAlgorithmException {
+        for (EPGQuery query : EPGQuery.values()) {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(query.getText().getBytes(StandardCharsets.UTF_8));
+            assertThat(query.getSha256Hash()).isEqualTo(HexFormat.of().formatHex(hash)).hasSize(64);
+        }
+        assertThat(EPGQuery.SCHEDULE.getSha256Hash()).isNotEqualTo(EPGQuery.FULL.getSha256Hash());
+    }
+
+    @Test
+    void testProjections() {
+        assertThat(EPGQuery.FULL.getItemFields())
+                .containsExactly("id", "title", "description", "startTime", "endTime", "episode", "season", "tvShow");
+        assertThat(EPGQuery.SCHEDULE.getItemFields()).containsExactly("id", "title", "description", "startTime", "endTime", "tvShow");
+        assertThat(EPGQuery.FREQUENCIES.getItemFields()).containsExactly("id", "title", "tvShow");
+        assertThat(EPGQuery.FREQUENCIES.getText())
+                .startsWith("query EpgQuery(")
+                .endsWith("fragment fEpgItem on EpgItem { id title tvShow { title id } }")
+                .doesNotContain("description");
+    }
+
+    @Test
+    void testCoveredProjections() {
+        assertThat(EPGQuery.FULL.covers(EPGQuery.SCHEDULE)).isTrue();
+        assertThat(EPGQuery.SCHEDULE.covers(EPGQuery.FREQUENCIES)).isTrue();
+        assertThat(EPGQuery.SCHEDULE.covers(EPGQuery.SCHEDULE)).isTrue();
+        assertThat(EPGQuery.FREQUENCIES.covers(EPGQuery.SCHEDULE)).isFalse();
+
+        EPGQuery.SCHEDULE.require("The searches", "title", "description");
+        assertThatThrownBy(() -> EPGQuery.FREQUENCIES.require("The searches", "title", "description"))
+                .isInstanceOf(EPGProjectionException.class)
+                .hasMessage("The searches need the item fields [description], which epg.client.query=frequencies does not request");
+    }
+}
@@ -0,0 +1,211 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.reactive.function.client.WebClient;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGConfiguration;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
+import pro.sieben.sat.tv.program.plan.frequency.model.EpgSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the parser against a local stub of the EPG API that answers slowly or fails, depending on the request.
+ */
+class EPGResilienceTest {
+
+    private static final String DATE = "2024-03-15";
+
+    private static final byte[] DAY = """
+            {"data":{"site":{"epg":{"items":[{"id":"epg-0","title":"Der Kinoabend",\
+            "startTime":"2024-03-15T05:00:00.000Z","endTime":"2024-03-15T05:25:00.000Z",\
+            "tvShow":{"title":"Die Goldbergs","id":"s-goldbergs"}}]}}}}""".getBytes(StandardCharsets.UTF_8);
+
+    private static final Reply OK = new Reply(Duration.ZERO, 200, DAY);
+    private static final Reply SLOW = new Reply(Duration.ofSeconds(3), 200, DAY);
+    private static final Reply FAILED = new Reply(Duration.ZERO, 500, DAY);
+    private static final Reply EMPTY = new Reply(Duration.ZERO, 200, new byte[0]);
+    private static final Reply SLOW_EMPTY = new Reply(Duration.ofMillis(300), 200, new byte[0]);
+
+    private HttpServer stub;
+    private final AtomicInteger requests = new AtomicInteger();
+    // The reply to each request, by its index
+    private volatile IntFunction<Reply> replies = index -> OK;
+
+    private EPGProperties properties;
+    private EPGItemsParser parser;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/graphql", this::reply);
+        stub.start();
+
+        properties = new EPGProperties();
+        properties.getClient().setBaseUrl("http://localhost:" + stub.getAddress().getPort() + "/graphql");
+        properties.getClient().setPersistedQueries(false);
+        properties.getResilience().setDeadline(Duration.ofSeconds(1));
+        properties.getResilience().setInitialHedgeDelay(Duration.ofMillis(100));
+        properties.getResilience().setFailureThreshold(3);
+        properties.getResilience().setOpenDuration(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (parser != null) {
+            parser.close();
+        }
+        stub.stop(0);
+    }
+
+    private void reply(HttpExchange exchange) throws IOException {
+        Reply reply = replies.apply(requests.getAndIncrement());
+        try {
+            Thread.sleep(reply.delay().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // A length of -1 sends no body at all, 0 would send a chunked one
+        exchange.sendResponseHeaders(reply.status(), reply.body().length == 0 ? -1 : reply.body().length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(reply.body());
+        }
+    }
+
+    /**
+     * Creates the parser with a cache whose snapshots expire at once, so every lookup calls the stub.
+     */
+    private EPGItemsParser parser(boolean reactive) {
+        EPGSnapshotCache cache = new EPGSnapshotCache(8, Duration.ZERO, Duration.ZERO);
+        parser = new EPGItemsParser(new EPGConfiguration().epgRestTemplate(properties),
+                reactive ? WebClient.create() : null, cache, EPGArchive.disabled(), properties, EPGMetrics.disabled());
+        return parser;
+    }
+
+    @Test
+    void testSlowUpstreamFailsAtTheDeadline() {
+        replies = index -> SLOW;
+        properties.getResilience().setHedging(false);
+        EPGItemsParser parser = parser(false);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> parser.getSnapshot(DATE))
+                .isInstanceOf(ResourceAccessException.class)
+                .hasMessageContaining("did not answer within 1000 ms");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void testSlowRequestIsHedged() {
+        replies = index -> index == 0 ? SLOW : OK;
+        EPGItemsParser parser = parser(false);
+
+        long start = System.nanoTime();
+        EpgSnapshot snapshot = parser.getSnapshot(DATE);
+
+        assertThat(snapshot.getSchedule().size()).isEqualTo(1);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void testCircuitOpensAfterFailuresInARow() {
+        replies = index -> FAILED;
+        // The first request of a test may take longer than the hedge delay
+        properties.getResilience().setHedging(false);
+        EPGItemsParser parser = parser(false);
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> parser.getSnapshot(DATE)).isInstanceOf(RestClientException.class)
+                    .isNotInstanceOf(EPGCircuitOpenException.class);
+        }
+        assertThatThrownBy(() -> parser.getSnapshot(DATE)).isInstanceOf(EPGCircuitOpenException.class);
+
+        assertThat(parser.getCircuitState()).isEqualTo(EPGCircuitBreaker.State.OPEN);
+        assertThat(requests).hasValue(3);
+    }
+
+    @Test
+    void testLastGoodSnapshotIsServedStale() {
+        replies = index -> index == 0 ? OK : FAILED;
+        // The first request of a test may take longer than the hedge delay
+        properties.getResilience().setHedging(false);
+        EPGItemsParser parser = parser(false);
+
+        EpgSnapshot fresh = parser.getSnapshot(DATE);
+        EpgSnapshot stale = parser.getSnapshot(DATE);
+        for (int i = 0; i < 5; i++) {
+            stale = parser.getSnapshot(DATE);
+        }
+
+        assertThat(fresh.isStale()).isFalse();
+        assertThat(stale.isStale()).isTrue();
+        assertThat(stale.getSchedule()).isSameAs(fresh.getSchedule());
+        assertThat(parser.getCircuitState()).isEqualTo(EPGCircuitBreaker.State.OPEN);
+        // The circuit opened after three failures, the other lookups did not call the stub
+        assertThat(requests).hasValue(4);
+    }
+
+    @Test
+    void testReactiveSlowRequestIsHedged() {
+        replies = index -> index == 0 ? SLOW : OK;
+        EPGItemsParser parser = parser(true);
+
+        long start = System.nanoTime();
+        EpgSnapshot snapshot = parser.getSnapshotReactive(DATE).block();
+
+        assertThat(snapshot.getSchedule().size()).isEqualTo(1);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void testReactiveSlowUpstreamFailsAtTheDeadline() {
+        replies = index -> SLOW;
+        EPGItemsParser parser = parser(true);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> parser.getSnapshotReactive(DATE).block())
+                .isInstanceOf(ResourceAccessException.class)
+                .hasMessageContaining("did not answer within 1000 ms");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        // The first request and its hedge
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void testReactiveEmptyResponsesFail() {
+        replies = index -> index == 0 ? SLOW_EMPTY : EMPTY;
+        properties.getClient().setStreaming(true);
+        EPGItemsParser parser = parser(true);
+
+        assertThatThrownBy(() -> parser.getSnapshotReactive(DATE).block())
+                .isInstanceOf(ResourceAccessException.class)
+                .hasMessage(EPGStreamingParser.NO_DATA);
+        // The first request and its hedge
+        assertThat(requests).hasValue(2);
+
+        replies = index -> OK;
+        assertThat(parser.getSnapshotReactive(DATE).block().getSchedule().size()).isEqualTo(1);
+    }
+
+    private record Reply(Duration delay, int status, byte[] body) {
+    }
+}
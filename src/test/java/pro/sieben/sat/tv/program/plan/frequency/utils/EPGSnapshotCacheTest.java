@@ -0,0 +1,347 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pro.sieben.sat.tv.program.plan.frequency.model.EpgSnapshot;
+
+import java.time.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EPGSnapshotCacheTest {
+
+    private static final String TODAY = "2024-03-15";
+    private static final String YESTERDAY = "2024-03-14";
+
+    private MutableClock clock;
+    private EPGSnapshotCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse(TODAY + "T12:00:00Z"));
+        cache = new EPGSnapshotCache(2, Duration.ofMinutes(5), Duration.ofHours(24), null, clock);
+        loads = new AtomicInteger();
+    }
+
+    private EpgSnapshot load(String date) {
+        loads.incrementAndGet();
+        return EpgSnapshot.of(date, List.of(), clock.instant());
+    }
+
+    @Test
+    void testGetCachesSnapshot() {
+        EpgSnapshot first = cache.get(TODAY, this::load);
+        EpgSnapshot second = cache.get(TODAY, this::load);
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads).hasValue(1);
+        assertThat(cache.getStats()).isEqualTo(new EPGSnapshotCache.Stats(1, 0, 1, 0, 1));
+    }
+
+    @Test
+    void testCurrentDayExpiresAfterShortTtl() {
+        cache.get(TODAY, this::load);
+        clock.advance(Duration.ofMinutes(6));
+        cache.get(TODAY, this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testPastDayIsKeptForLongTtl() {
+        cache.get(YESTERDAY, this::load);
+        clock.advance(Duration.ofHours(1));
+        cache.get(YESTERDAY, this::load);
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        cache.get("2024-03-01", this::load);
+        clock.advance(Duration.ofSeconds(1));
+        cache.get("2024-03-02", this::load);
+        clock.advance(Duration.ofSeconds(1));
+        cache.get("2024-03-01", this::load);
+        clock.advance(Duration.ofSeconds(1));
+        cache.get("2024-03-03", this::load);
+        cache.get("2024-03-01", this::load);
+
+        assertThat(loads).hasValue(3);
+        assertThat(cache.getStats().evictions()).isEqualTo(1);
+        assertThat(cache.getStats().size()).isEqualTo(2);
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        assertThatThrownBy(() -> cache.get(TODAY, date -> {
+            throw new IllegalStateException("upstream down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        cache.get(TODAY, this::load);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void testLoaderErrorReleasesWaitingCallers() throws Exception {
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<EpgSnapshot> first = executor.submit(() -> cache.get(TODAY, date -> {
+                loaderStarted.countDown();
+                await(releaseLoader);
+                throw new StackOverflowError("parser recursion");
+            }));
+            loaderStarted.await();
+
+            List<Future<EpgSnapshot>> waiters = new java.util.ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                waiters.add(executor.submit(() -> cache.get(TODAY, this::load)));
+            }
+            releaseLoader.countDown();
+
+            assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(StackOverflowError.class);
+            for (Future<EpgSnapshot> waiter : waiters) {
+                // A waiter fails with the error of the shared load, or loads again if it came after it
+                try {
+                    assertThat(waiter.get(5, TimeUnit.SECONDS)).isNotNull();
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(StackOverflowError.class);
+                }
+            }
+            assertThat(cache.getAsync(YESTERDAY, (date, stale) -> {
+                throw new StackOverflowError("parser recursion");
+            })).isCompletedExceptionally();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<EpgSnapshot> first = executor.submit(() -> cache.get(TODAY, date -> {
+                loaderStarted.countDown();
+                await(releaseLoader);
+                return load(date);
+            }));
+            loaderStarted.await();
+
+            List<Future<EpgSnapshot>> waiters = new java.util.ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                waiters.add(executor.submit(() -> cache.get(TODAY, this::load)));
+            }
+            releaseLoader.countDown();
+
+            EpgSnapshot snapshot = first.get(5, TimeUnit.SECONDS);
+            for (Future<EpgSnapshot> waiter : waiters) {
+                assertThat(waiter.get(5, TimeUnit.SECONDS)).isSameAs(snapshot);
+            }
+            assertThat(loads).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testRefreshReplacesSnapshotAndServesStaleMeanwhile() throws Exception {
+        EpgSnapshot first = cache.get(TODAY, this::load);
+        clock.advance(Duration.ofMinutes(6));
+
+        CountDownLatch refreshStarted = new CountDownLatch(1);
+        CountDownLatch releaseRefresh = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<EpgSnapshot> refreshed = executor.submit(() -> cache.refresh(TODAY, date -> {
+                refreshStarted.countDown();
+                await(releaseRefresh);
+                return load(date);
+            }));
+            refreshStarted.await();
+
+            // The expired snapshot is served while the refresh is running
+            assertThat(cache.get(TODAY, this::load)).isSameAs(first);
+            releaseRefresh.countDown();
+
+            EpgSnapshot second = refreshed.get(5, TimeUnit.SECONDS);
+            assertThat(second).isNotSameAs(first);
+            assertThat(cache.get(TODAY, this::load)).isSameAs(second);
+            assertThat(loads).hasValue(2);
+            assertThat(cache.getStats().staleHits()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailedRefreshKeepsSnapshot() {
+        EpgSnapshot first = cache.get(TODAY, this::load);
+
+        assertThatThrownBy(() -> cache.refresh(TODAY, date -> {
+            throw new IllegalStateException("upstream down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.get(TODAY, this::load)).isSameAs(first);
+    }
+
+    @Test
+    void testFailedReloadServesLastGoodSnapshotAsStale() {
+        EpgSnapshot first = cache.get(TODAY, this::load);
+        clock.advance(Duration.ofMinutes(6));
+
+        EpgSnapshot stale = cache.get(TODAY, date -> {
+            throw new IllegalStateException("upstream down");
+        });
+        assertThat(stale.isStale()).isTrue();
+        assertThat(stale.getSchedule()).isSameAs(first.getSchedule());
+
+        EpgSnapshot fresh = cache.get(TODAY, this::load);
+        assertThat(fresh.isStale()).isFalse();
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testFailedRevalidationServesSnapshotAsStale() {
+        List<Runnable> revalidations = new java.util.ArrayList<>();
+        cache = new EPGSnapshotCache(2, Duration.ofMinutes(5), Duration.ofHours(24), revalidations::add, clock);
+        Function<String, EpgSnapshot> failing = date -> {
+            throw new IllegalStateException("upstream down");
+        };
+        EpgSnapshot first = cache.get(TODAY, this::load);
+        clock.advance(Duration.ofMinutes(6));
+
+        assertThat(cache.get(TODAY, failing)).isSameAs(first);
+        revalidations.get(0).run();
+
+        EpgSnapshot stale = cache.get(TODAY, failing);
+        assertThat(stale.isStale()).isTrue();
+        assertThat(stale.getSchedule()).isSameAs(first.getSchedule());
+        assertThat(cache.getAsync(TODAY, (date, previous) -> CompletableFuture.failedFuture(new IllegalStateException())).join().isStale()).isTrue();
+    }
+
+    @Test
+    void testFailedGetAsyncServesLastGoodSnapshotAsStale() {
+        EpgSnapshot first = cache.get(TODAY, this::load);
+        clock.advance(Duration.ofMinutes(6));
+
+        EpgSnapshot stale = cache.getAsync(TODAY,
+                (date, previous) -> CompletableFuture.failedFuture(new IllegalStateException("upstream down"))).join();
+
+        assertThat(stale.isStale()).isTrue();
+        assertThat(stale.getSchedule()).isSameAs(first.getSchedule());
+    }
+
+    @Test
+    void testReloadsReceiveThePreviousSnapshot() {
+        List<EpgSnapshot> previous = new java.util.ArrayList<>();
+        EpgSnapshot first = cache.get(TODAY, (date, stale) -> {
+            previous.add(stale);
+            return load(date);
+        });
+        EpgSnapshot second = cache.refresh(TODAY, (date, stale) -> {
+            previous.add(stale);
+            return load(date);
+        });
+        clock.advance(Duration.ofMinutes(6));
+        cache.get(TODAY, (date, stale) -> {
+            previous.add(stale);
+            return load(date);
+        });
+
+        assertThat(previous).containsExactly(null, first, second);
+    }
+
+    @Test
+    void testStaleWhileRevalidate() {
+        List<Runnable> revalidations = new java.util.ArrayList<>();
+        cache = new EPGSnapshotCache(2, Duration.ofMinutes(5), Duration.ofHours(24), revalidations::add, clock);
+        EpgSnapshot first = cache.get(TODAY, this::load);
+        clock.advance(Duration.ofMinutes(6));
+
+        assertThat(cache.get(TODAY, this::load)).isSameAs(first);
+        assertThat(cache.get(TODAY, this::load)).isSameAs(first);
+        assertThat(revalidations).hasSize(1);
+
+        revalidations.get(0).run();
+        EpgSnapshot second = cache.get(TODAY, this::load);
+        assertThat(second).isNotSameAs(first);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testGetAsyncSharesPendingLoad() {
+        CompletableFuture<EpgSnapshot> pending = new CompletableFuture<>();
+        CompletableFuture<EpgSnapshot> first = cache.getAsync(TODAY, (date, stale) -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<EpgSnapshot> second = cache.getAsync(TODAY, (date, stale) -> CompletableFuture.completedFuture(load(date)));
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+
+        EpgSnapshot snapshot = EpgSnapshot.of(TODAY, List.of(), clock.instant());
+        pending.complete(snapshot);
+
+        assertThat(first.join()).isSameAs(snapshot);
+        assertThat(second.join()).isSameAs(snapshot);
+        assertThat(cache.get(TODAY, this::load)).isSameAs(snapshot);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void testFailedGetAsyncIsNotCached() {
+        CompletableFuture<EpgSnapshot> failed = cache.getAsync(TODAY,
+                (date, stale) -> CompletableFuture.failedFuture(new IllegalStateException("upstream down")));
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(cache.getAsync(TODAY, (date, stale) -> CompletableFuture.completedFuture(load(date))).join()).isNotNull();
+        assertThat(loads).hasValue(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
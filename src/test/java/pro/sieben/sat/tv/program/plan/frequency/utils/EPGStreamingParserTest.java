@@ -0,0 +1,152 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
+import pro.sieben.sat.tv.program.plan.frequency.model.*;
+import pro.sieben.sat.tv.program.plan.frequency.services.EPGService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EPGStreamingParserTest {
+
+    private static final String FIXTURE = "/fixtures/epg-prosieben-2024-03-15.json";
+
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    @Test
+    void testParseFixtureMatchesBoundItems() throws IOException {
+        List<Item> items = bindItems(readFixture());
+        DaySchedule.Builder streamed = DaySchedule.builder();
+
+        int count = EPGStreamingParser.parse(new ByteArrayInputStream(readFixture()), streamed::add);
+
+        assertThat(count).isEqualTo(items.size());
+        DaySchedule schedule = streamed.build();
+        assertSameFrequencies(schedule.countFrequencies(), ShowFrequencies.of(items));
+        assertThat(schedule.toItems()).usingRecursiveFieldByFieldElementComparatorIgnoringFields("description", "season")
+                .containsExactlyElementsOf(items);
+    }
+
+    @Test
+    void testParseServiceFixtureMatchesBoundItems() throws IOException {
+        List<Item> items = Arrays.asList(
+                new Item(new TvShow("Show1", "id1"),"Ep1"),
+                new Item(new TvShow("Show2", "id2")),
+                new Item(new TvShow("Show1", "id1"),"Ep1"),
+                new Item(new TvShow("Show3", null)),
+                new Item(new TvShow("Show2", "id2")),
+                new Item(new TvShow("Show1", "id1"),"Ep1"),
+                new Item(new TvShow("Show4", "id4"))
+        );
+        byte[] body = objectMapper.writeValueAsBytes(new ApiResponse(new Data(new Site(new Epg(items))), null, null));
+        DaySchedule.Builder streamed = DaySchedule.builder();
+
+        EPGStreamingParser.parse(new ByteArrayInputStream(body), streamed::add);
+
+        assertSameFrequencies(streamed.build().countFrequencies(), ShowFrequencies.of(items));
+    }
+
+    @Test
+    void testServiceResultsAreIdentical() throws IOException {
+        List<Item> items = bindItems(readFixture());
+        DaySchedule.Builder streamed = DaySchedule.builder();
+        EPGStreamingParser.parse(new ByteArrayInputStream(readFixture()), streamed::add);
+
+        EPGService boundService = serviceFor(new EpgSnapshot("2024-03-15", null, FrequencyIndex.of(ShowFrequencies.of(items)), Instant.now(), items.size()));
+        EPGService streamedService = serviceFor(EpgSnapshot.of("2024-03-15", streamed.build(), Instant.now()));
+
+        assertThat(streamedService.getMostFrequentShows(null).getResult()).isEqualTo(boundService.getMostFrequentShows(null).getResult());
+        assertThat(streamedService.getOrderedShowsByFrequency(null).getResult()).isEqualTo(boundService.getOrderedShowsByFrequency(null).getResult());
+        assertThat(streamedService.getSeriesByStatus(null).getResult()).isEqualTo(boundService.getSeriesByStatus(null).getResult());
+        for (ShowType type : ShowType.values()) {
+            assertThat(streamedService.getMostFrequentShowsByShowType(null, type).getResult())
+                    .isEqualTo(boundService.getMostFrequentShowsByShowType(null, type).getResult());
+            assertThat(streamedService.getOrderedShowsByFrequencyByType(null, type).getResult())
+                    .isEqualTo(boundService.getOrderedShowsByFrequencyByType(null, type).getResult());
+        }
+    }
+
+    @Test
+    void testParseWithoutDataFails() {
+        byte[] failed = "{\"data\":null,\"errors\":[{\"message\":\"boom\"}]}".getBytes(StandardCharsets.UTF_8);
+        byte[] empty = "{\"extensions\":{}}".getBytes(StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> EPGStreamingParser.parse(new ByteArrayInputStream(failed), (id, title, showTitle, showId, startTime, endTime, description) -> {
+            throw new AssertionError("No item expected");
+        }))
+                .isInstanceOf(EPGQueryException.class)
+                .hasMessageContaining("boom");
+        assertThatThrownBy(() -> EPGStreamingParser.parse(new ByteArrayInputStream(empty), (id, title, showTitle, showId, startTime, endTime, description) -> {
+        }))
+                .isInstanceOf(ResourceAccessException.class)
+                .hasMessage("The EPG API answered without data");
+    }
+
+    @Test
+    void testParseEmptyBody() throws IOException {
+        assertThat(EPGStreamingParser.parse(new ByteArrayInputStream(new byte[0]), (id, title, showTitle, showId, startTime, endTime, description) -> {
+            throw new AssertionError("No item expected");
+        })).isZero();
+    }
+
+    @Test
+    void testParseFailsOnPersistedQueryErrors() {
+        byte[] body = ("{\"errors\":[{\"message\":\"PersistedQueryNotFound\",\"extensions\":{\"code\":\"PERSISTED_QUERY_NOT_FOUND\"}},"
+                + "{\"message\":\"other\"}],\"data\":null}").getBytes(StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> EPGStreamingParser.parse(new ByteArrayInputStream(body), (id, title, showTitle, showId, startTime, endTime, description) -> {
+        }))
+                .isInstanceOfSatisfying(EPGQueryException.class, e -> {
+                    assertThat(e.getCode()).isEqualTo("PERSISTED_QUERY_NOT_FOUND");
+                    assertThat(e.isPersistedQueryNotFound()).isTrue();
+                });
+    }
+
+    private static void assertSameFrequencies(ShowFrequencies actual, ShowFrequencies expected) {
+        // Compare the entries in iteration order, since the service output depends on it
+        assertThat(new ArrayList<>(actual.getFrequencies().entrySet()))
+                .containsExactlyElementsOf(expected.getFrequencies().entrySet());
+        for (ShowType type : ShowType.values()) {
+            assertThat(new ArrayList<>(actual.getFrequencies(type).entrySet()))
+                    .containsExactlyElementsOf(expected.getFrequencies(type).entrySet());
+        }
+    }
+
+    private List<Item> bindItems(byte[] body) throws IOException {
+        return objectMapper.readValue(body, ApiResponse.class).getData().getSite().getEpg().getItems();
+    }
+
+    private static byte[] readFixture() throws IOException {
+        try (InputStream in = EPGStreamingParserTest.class.getResourceAsStream(FIXTURE)) {
+            return Objects.requireNonNull(in).readAllBytes();
+        }
+    }
+
+    private static EPGService serviceFor(EpgSnapshot snapshot) {
+        EPGItemsParser parser = mock(EPGItemsParser.class);
+        when(parser.getSnapshot(any())).thenReturn(snapshot);
+        EPGService service = new EPGService(parser, EPGMetrics.disabled(), new EPGProperties());
+        service.setUp();
+        return service;
+    }
+}
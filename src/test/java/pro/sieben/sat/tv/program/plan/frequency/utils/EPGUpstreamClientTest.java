@@ -0,0 +1,222 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGConfiguration;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.EPGProperties;
+import pro.sieben.sat.tv.program.plan.frequency.model.EpgSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the parser with the RestTemplate of {@link EPGConfiguration} against a local stub of the EPG API,
+ * checking the bounds of the upstream client: the concurrent requests, the read timeout and the persisted query
+ * bookkeeping shared by all request threads.
+ */
+class EPGUpstreamClientTest {
+
+    private static final byte[] DAY = """
+            {"data":{"site":{"epg":{"items":[{"id":"epg-0","title":"Der Kinoabend",\
+            "tvShow":{"title":"Die Goldbergs","id":"s-goldbergs"}}]}}}}""".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NOT_FOUND = """
+            {"errors":[{"message":"PersistedQueryNotFound","extensions":{"code":"PERSISTED_QUERY_NOT_FOUND"}}]}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NOT_SUPPORTED = """
+            {"errors":[{"message":"PersistedQueryNotSupported","extensions":{"code":"PERSISTED_QUERY_NOT_SUPPORTED"}}]}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer stub;
+    private EPGProperties properties;
+    private EPGItemsParser parser;
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    // The requests being answered, the most seen at once, and all requests with and without the query text
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger hashRequests = new AtomicInteger();
+    private final AtomicInteger textRequests = new AtomicInteger();
+
+    // The stub holds every request until released
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean holdRequests;
+    private volatile Duration delay = Duration.ZERO;
+
+    // Whether the stub knows the hash of the query, and whether it supports persisted queries at all
+    private final AtomicBoolean registered = new AtomicBoolean();
+    private volatile boolean persistedQueriesSupported = true;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/graphql", this::reply);
+        stub.start();
+
+        properties = new EPGProperties();
+        properties.getClient().setBaseUrl("http://localhost:" + stub.getAddress().getPort() + "/graphql");
+        properties.getClient().setPersistedQueries(false);
+        properties.getResilience().setDeadline(Duration.ofSeconds(10));
+        properties.getResilience().setHedging(false);
+        properties.getResilience().setFailureThreshold(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        callers.shutdownNow();
+        if (parser != null) {
+            parser.close();
+        }
+        stub.stop(0);
+    }
+
+    private void reply(HttpExchange exchange) throws IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            if (holdRequests) {
+                release.await();
+            }
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+
+        byte[] body = DAY;
+        if (exchange.getRequestURI().getRawQuery().contains("&query=")) {
+            textRequests.incrementAndGet();
+            registered.set(persistedQueriesSupported);
+        } else {
+            hashRequests.incrementAndGet();
+            if (!persistedQueriesSupported) {
+                body = NOT_SUPPORTED;
+            } else if (!registered.get()) {
+                body = NOT_FOUND;
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private EPGItemsParser parser() {
+        parser = new EPGItemsParser(new EPGConfiguration().epgRestTemplate(properties), null,
+                new EPGSnapshotCache(16, Duration.ofMinutes(5), Duration.ofHours(1)), EPGArchive.disabled(), properties,
+                EPGMetrics.disabled());
+        return parser;
+    }
+
+    /**
+     * Fetches the given number of dates at the same time, each from another thread.
+     */
+    private List<Future<EpgSnapshot>> fetchConcurrently(EPGItemsParser parser, int dates) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<EpgSnapshot>> fetches = new ArrayList<>();
+        for (int day = 1; day <= dates; day++) {
+            String date = String.format("2024-03-%02d", day);
+            fetches.add(callers.submit(() -> {
+                start.await();
+                return parser.getSnapshot(date);
+            }));
+        }
+        start.countDown();
+        return fetches;
+    }
+
+    @Test
+    void testConcurrentRequestsAreBounded() throws Exception {
+        properties.getClient().setMaxConcurrentRequests(2);
+        holdRequests = true;
+        EPGItemsParser parser = parser();
+
+        List<Future<EpgSnapshot>> fetches = fetchConcurrently(parser, 6);
+        long waitUntil = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (inFlight.get() < 2 && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        // Give the other callers the time to send their requests if they were not bounded
+        Thread.sleep(300);
+
+        assertThat(inFlight).hasValue(2);
+        release.countDown();
+        for (Future<EpgSnapshot> fetch : fetches) {
+            assertThat(fetch.get(5, TimeUnit.SECONDS).getSchedule().size()).isEqualTo(1);
+        }
+        assertThat(maxInFlight).hasValue(2);
+        assertThat(textRequests).hasValue(6);
+    }
+
+    @Test
+    void testReadTimeoutSurfacesAsResourceAccessException() {
+        properties.getClient().setReadTimeout(Duration.ofMillis(200));
+        delay = Duration.ofSeconds(3);
+        EPGItemsParser parser = parser();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> parser.getSnapshot("2024-03-15"))
+                .isInstanceOf(ResourceAccessException.class)
+                .hasMessageNotContaining("did not answer within");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+
+        assertThatThrownBy(() -> new EPGConfiguration().epgRestTemplate(properties)
+                .getForObject(properties.getClient().getBaseUrl() + "?variables=", String.class))
+                .isInstanceOf(ResourceAccessException.class);
+    }
+
+    @Test
+    void testConcurrentFetchesRegisterThePersistedQuery() throws Exception {
+        properties.getClient().setPersistedQueries(true);
+        EPGItemsParser parser = parser();
+
+        for (Future<EpgSnapshot> fetch : fetchConcurrently(parser, 8)) {
+            assertThat(fetch.get(5, TimeUnit.SECONDS).getSchedule().size()).isEqualTo(1);
+        }
+        // An unknown hash is not a miss, so the next date only sends the registered hash
+        int texts = textRequests.get();
+        assertThat(texts).isBetween(1, 8);
+        assertThat(hashRequests).hasValue(8);
+
+        parser.getSnapshot("2024-03-20");
+        assertThat(textRequests).hasValue(texts);
+        assertThat(hashRequests).hasValue(9);
+    }
+
+    @Test
+    void testConcurrentFetchesStopTryingUnsupportedPersistedQueries() throws Exception {
+        properties.getClient().setPersistedQueries(true);
+        persistedQueriesSupported = false;
+        EPGItemsParser parser = parser();
+
+        for (Future<EpgSnapshot> fetch : fetchConcurrently(parser, 8)) {
+            assertThat(fetch.get(5, TimeUnit.SECONDS).getSchedule().size()).isEqualTo(1);
+        }
+        assertThat(textRequests).hasValue(8);
+        int hashes = hashRequests.get();
+
+        parser.getSnapshot("2024-03-20");
+        assertThat(hashRequests).hasValue(hashes);
+        assertThat(textRequests).hasValue(9);
+    }
+}
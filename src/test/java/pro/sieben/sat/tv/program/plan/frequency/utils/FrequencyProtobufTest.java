@@ -0,0 +1,66 @@
+package pro.sieben.sat.tv.program.plan.frequency.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import pro.sieben.sat.tv.program.plan.frequency.configuration.FrequencyProtobufHttpMessageConverter;
+import pro.sieben.sat.tv.program.plan.frequency.model.FrequencyResponse;
+import pro.sieben.sat.tv.program.plan.frequency.model.StatusResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FrequencyProtobufTest {
+
+    @Test
+    void testWritesLengthPrefixedMessages() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrequencyProtobuf.write(List.of(new FrequencyResponse("Ab", 3), new FrequencyResponse("", 0)), out);
+
+        // The second message only holds the empty title, a zero frequency is not written
+        assertThat(out.toByteArray()).containsExactly(6, 0x0A, 2, 'A', 'b', 0x10, 3, 2, 0x0A, 0);
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        List<FrequencyResponse> frequencies = List.of(
+                new FrequencyResponse("Scrubs - Die Anfänger", 300),
+                new FrequencyResponse("x".repeat(200), 1),
+                new FrequencyResponse(null, 7),
+                new FrequencyResponse("Negative", -1));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FrequencyProtobuf.write(frequencies, out);
+
+        assertThat(FrequencyProtobuf.read(new ByteArrayInputStream(out.toByteArray()))).isEqualTo(frequencies);
+    }
+
+    @Test
+    void testSkipsUnknownFields() throws IOException {
+        // Field 3 (varint) and field 4 (length-delimited) are not part of the schema
+        byte[] message = {10, 0x0A, 1, 'A', 0x18, 5, 0x22, 1, 'z', 0x10, 2};
+
+        assertThat(FrequencyProtobuf.read(new ByteArrayInputStream(message))).containsExactly(new FrequencyResponse("A", 2));
+    }
+
+    @Test
+    void testRejectsTruncatedMessages() {
+        byte[] message = {6, 0x0A, 2, 'A', 'b'};
+
+        assertThatThrownBy(() -> FrequencyProtobuf.read(new ByteArrayInputStream(message))).isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    void testConverterOnlyWritesFrequencies() {
+        FrequencyProtobufHttpMessageConverter converter = new FrequencyProtobufHttpMessageConverter();
+
+        assertThat(converter.canWrite(new ParameterizedTypeReference<List<FrequencyResponse>>() {
+        }.getType(), List.class, FrequencyProtobuf.MEDIA_TYPE)).isTrue();
+        assertThat(converter.canWrite(new ParameterizedTypeReference<List<StatusResponse>>() {
+        }.getType(), List.class, FrequencyProtobuf.MEDIA_TYPE)).isFalse();
+    }
+}